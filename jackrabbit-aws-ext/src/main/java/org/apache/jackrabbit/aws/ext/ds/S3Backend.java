@@ -17,6 +17,7 @@
 
 package org.apache.jackrabbit.aws.ext.ds;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,6 +58,7 @@ import com.amazonaws.services.s3.AmazonS3Client;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsRequest;
 import com.amazonaws.services.s3.model.DeleteObjectsResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.PutObjectRequest;
@@ -405,6 +407,39 @@ public class S3Backend extends AbstractBackend {
         }
     }
 
+    /**
+     * Reads a range of the object with a ranged GET request, so that only
+     * the requested bytes are transferred from S3.
+     */
+    @Override
+    public InputStream read(DataIdentifier identifier, long offset,
+            long length) throws DataStoreException {
+        if (length <= 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        long start = System.currentTimeMillis();
+        String key = getKeyName(identifier);
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            Thread.currentThread().setContextClassLoader(
+                getClass().getClassLoader());
+            GetObjectRequest request = new GetObjectRequest(bucket, key);
+            request.setRange(offset, offset + length - 1);
+            S3Object object = s3service.getObject(request);
+            S3ObjectInputStream s3in = object.getObjectContent();
+            InputStream in = new S3BackendResourceAbortableInputStream(s3in);
+            LOG.debug("[{}] ranged read took [{}]ms", identifier,
+                (System.currentTimeMillis() - start));
+            return in;
+        } catch (AmazonServiceException e) {
+            throw new DataStoreException("Object not found: " + key, e);
+        } finally {
+            if (contextClassLoader != null) {
+                Thread.currentThread().setContextClassLoader(contextClassLoader);
+            }
+        }
+    }
+
     @Override
     public Iterator<DataIdentifier> getAllIdentifiers()
             throws DataStoreException {
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.core;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import javax.jcr.AccessDeniedException;
@@ -759,6 +760,27 @@ public class ItemManager implements ItemStateListener {
         return new LazyItemIterator(sessionContext, childIds, parentId);
     }
 
+    /**
+     * Prefetches the states of the given child nodes that are not yet
+     * cached by this item manager, so that they can be loaded from the
+     * persistence layer in bulk instead of one at a time.
+     *
+     * @param childIds the ids of the child nodes to prefetch
+     */
+    void prefetchChildNodes(List<? extends ItemId> childIds) {
+        List<NodeId> missing = new ArrayList<NodeId>(childIds.size());
+        synchronized (itemCache) {
+            for (ItemId id : childIds) {
+                if (id.denotesNode() && !itemCache.containsKey(id)) {
+                    missing.add((NodeId) id);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            sism.prefetch(missing);
+        }
+    }
+
     /**
      * @param parentId
      * @return
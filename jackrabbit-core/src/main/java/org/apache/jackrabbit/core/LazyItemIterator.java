@@ -55,6 +55,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** Logger instance for this class */
     private static Logger log = LoggerFactory.getLogger(LazyItemIterator.class);
 
+    /** the number of child nodes that are prefetched at once */
+    private static final int CHILD_NODE_PREFETCH_SIZE = 100;
+
     /**
      * The session context used to access the repository.
      */
@@ -75,6 +78,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** prefetched item to be returned on <code>{@link #next()}</code> */
     private Item next;
 
+    /** the position up to which the child node states have been prefetched */
+    private int prefetchedUpTo;
+
     /**
      * Creates a new <code>LazyItemIterator</code> instance.
      *
@@ -114,6 +120,10 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         // reset
         next = null;
         while (next == null && pos < idList.size()) {
+            if (parentId != null && pos >= prefetchedUpTo) {
+                prefetchedUpTo = Math.min(pos + CHILD_NODE_PREFETCH_SIZE, idList.size());
+                itemMgr.prefetchChildNodes(idList.subList(pos, prefetchedUpTo));
+            }
             ItemId id = idList.get(pos);
             try {
                 if (parentId != null) {
@@ -278,6 +278,7 @@ public class RepositoryImpl extends AbstractRepository
             // Create item state cache manager
             context.setItemStateCacheFactory(
                     new ManagedMLRUItemStateCacheFactory(cacheMgr));
+            cacheMgr.registerMBean(repConfig.getHomeDir());
 
             DataStore dataStore = repConfig.getDataStore();
             if (dataStore != null) {
@@ -1180,6 +1181,8 @@ public class RepositoryImpl extends AbstractRepository
 
         repConfig.getConnectionFactory().close();
 
+        cacheMgr.unregisterMBean();
+
         // finally release repository lock
         if (repLock != null) {
             try {
@@ -2139,6 +2142,7 @@ public class RepositoryImpl extends AbstractRepository
                                 | Event.PROPERTY_ADDED | Event.PROPERTY_REMOVED
                                 | Event.PROPERTY_CHANGED,
                         "/", true, null, null, false);
+                searchMgr.observeAccessControl(getSystemSession());
             }
             log.debug("SearchManager initialized (" + (System.currentTimeMillis() - t0) + "ms)");
         }
@@ -44,6 +44,8 @@ import org.apache.jackrabbit.core.query.QueryHandler;
 import org.apache.jackrabbit.core.query.QueryHandlerContext;
 import org.apache.jackrabbit.core.query.QueryHandlerFactory;
 import org.apache.jackrabbit.core.query.QueryObjectModelImpl;
+import org.apache.jackrabbit.core.security.authorization.AccessControlChangeObserver;
+import org.apache.jackrabbit.core.security.authorization.AccessControlListener;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.NodeState;
@@ -108,6 +110,12 @@ public class SearchManager implements SynchronousEventListener {
      */
     private Path excludePath;
 
+    /**
+     * Informs the query handler about access control modifications, or
+     * <code>null</code> if the query handler is not interested.
+     */
+    private AccessControlChangeObserver acObserver;
+
     /**
      * Creates a new <code>SearchManager</code>.
      *
@@ -215,6 +223,10 @@ public class SearchManager implements SynchronousEventListener {
      * {@link FileSystem} configured in {@link SearchConfig}.
      */
     public void close() {
+        if (acObserver != null) {
+            acObserver.close();
+            acObserver = null;
+        }
         try {
             shutdownQueryHandler();
         } catch (IOException e) {
@@ -222,6 +234,22 @@ public class SearchManager implements SynchronousEventListener {
         }
     }
 
+    /**
+     * Registers an observer that informs the query handler about access
+     * control modifications, if the query handler implements
+     * {@link AccessControlListener}.
+     *
+     * @param systemSession a system session of the workspace.
+     * @throws RepositoryException if the observer cannot be registered.
+     */
+    public void observeAccessControl(SessionImpl systemSession)
+            throws RepositoryException {
+        if (handler instanceof AccessControlListener && acObserver == null) {
+            acObserver = new AccessControlChangeObserver(systemSession);
+            acObserver.addListener((AccessControlListener) handler);
+        }
+    }
+
     /**
      * Creates a query object that can be executed on the workspace.
      *
@@ -80,6 +80,11 @@ public abstract class AbstractCache implements Cache {
      */
     private final AtomicLong missCount = new AtomicLong();
 
+    /**
+     * Total time spent loading entries after cache misses, in nanoseconds.
+     */
+    private final AtomicLong missDuration = new AtomicLong();
+
     /**
      * Cache access listener. Set in the
      * {@link #setAccessListener(CacheAccessListener)} method and accessed
@@ -148,6 +153,14 @@ public abstract class AbstractCache implements Cache {
         missCount.set(0);
     }
 
+    public long getMissDuration() {
+        return missDuration.get();
+    }
+
+    public void recordMissDuration(long nanos) {
+        missDuration.addAndGet(nanos);
+    }
+
     public long getMemoryUsed() {
         return memoryUsed.get();
     }
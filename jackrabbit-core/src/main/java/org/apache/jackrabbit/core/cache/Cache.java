@@ -70,6 +70,23 @@ public interface Cache {
      */
     void resetMissCount();
 
+    /**
+     * Get the total time spent loading entries after cache misses, as
+     * reported by {@link #recordMissDuration(long)}.
+     *
+     * @return the duration in nanoseconds
+     */
+    long getMissDuration();
+
+    /**
+     * Record the time it took to load an entry after a cache miss. This
+     * allows the {@link CacheManager} to weigh the caches by the cost of
+     * their misses.
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    void recordMissDuration(long nanos);
+
     /**
      * Get the number of elements/objects in the cache.
      * @return the number of elements
@@ -19,6 +19,11 @@ package org.apache.jackrabbit.core.cache;
 /**
  * The cache access listener can be registered to a class.
  * From time to time, the method cacheAccess is called.
+ * <p>
+ * Besides the access and miss counts, a listener can use
+ * {@link Cache#getMissDuration()} to learn how expensive the misses of the
+ * cache are. Caches whose users know the cost of loading a missing entry
+ * should report it through {@link Cache#recordMissDuration(long)}.
  */
 public interface CacheAccessListener {
 
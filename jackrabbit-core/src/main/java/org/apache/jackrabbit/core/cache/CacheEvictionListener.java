@@ -0,0 +1,36 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+/**
+ * The cache eviction listener is informed about the entries that a
+ * {@link MapCache} evicts to stay within its maximum size. Entries that are
+ * removed, replaced or cleared explicitly are not reported.
+ */
+public interface CacheEvictionListener<K, V> {
+
+    /**
+     * The cache calls this method after it evicted an entry. The cache may
+     * hold the lock of the segment of the entry, so implementations should
+     * return quickly and must not access the cache.
+     *
+     * @param key the key of the evicted entry
+     * @param value the value of the evicted entry
+     */
+    void entryEvicted(K key, V value);
+
+}
@@ -16,10 +16,16 @@
  */
 package org.apache.jackrabbit.core.cache;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.WeakHashMap;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +40,18 @@ import org.slf4j.LoggerFactory;
  * distributing the memory in this way, there might be some unused memory (if
  * one or more caches did not use some of the allocated memory). This unused
  * memory is distributed evenly across the full caches.
+ * <p>
+ * The access counts are weighted by the average cost of a cache miss,
+ * as measured by the caches through {@link Cache#recordMissDuration(long)}.
+ * A cache whose misses are expensive, for example because they require a
+ * database round trip, therefore gets more memory than a cache that is
+ * accessed as often but whose misses are cheap. Caches that do not report
+ * the cost of their misses are assumed to have average costs, so if no cache
+ * reports them the memory is distributed by access count alone.
+ * <p>
+ * The allocation can be monitored over JMX, see {@link CacheManagerMBean}.
  */
-public class CacheManager implements CacheAccessListener {
+public class CacheManager implements CacheAccessListener, CacheManagerMBean {
 
     /** The logger instance. */
     private static Logger log = LoggerFactory.getLogger(CacheManager.class);
@@ -49,8 +65,8 @@ public class CacheManager implements CacheAccessListener {
     /** The default maximum memory per cache. */
     private static final long DEFAULT_MAX_MEMORY_PER_CACHE = 4 * 1024 * 1024;
 
-    /** The set of caches (weakly referenced). */
-    private WeakHashMap<Cache, Object> caches = new WeakHashMap<Cache, Object>();
+    /** The set of caches (weakly referenced), with their miss costs. */
+    private WeakHashMap<Cache, MissCost> caches = new WeakHashMap<Cache, MissCost>();
 
     /** The default minimum resize interval (in ms). */
     private static final int DEFAULT_MIN_RESIZE_INTERVAL = 1000;
@@ -61,6 +77,12 @@ public class CacheManager implements CacheAccessListener {
     /** The size of a big object, to detect if a cache is full or not. */
     private static final int BIG_OBJECT_SIZE = 16 * 1024;
 
+    /**
+     * The weight of the latest measurement when updating the average cost
+     * of a cache miss, to smooth out short spikes.
+     */
+    private static final double MISS_COST_SMOOTHING = 0.2;
+
     /** The amount of memory to distribute across the caches. */
     private long maxMemory = Long.getLong(
             "org.apache.jackrabbit.maxCacheMemory",
@@ -95,6 +117,8 @@ public class CacheManager implements CacheAccessListener {
     private volatile long nextLogStats =
             System.currentTimeMillis() + DEFAULT_LOG_STATS_INTERVAL;
 
+    /** The name this cache manager is registered with over JMX, or null. */
+    private ObjectName objectName;
 
     public long getMaxMemory() {
         return maxMemory;
@@ -194,27 +218,37 @@ public class CacheManager implements CacheAccessListener {
         }
         CacheInfo[] infos = new CacheInfo[list.size()];
         for (int i = 0; i < list.size(); i++) {
-            infos[i] = new CacheInfo((Cache) list.get(i));
+            infos[i] = new CacheInfo((Cache) list.get(i), getMissCost(list.get(i)));
+        }
+        // caches without measured miss costs are assumed to be average
+        double totalMissCost = 0;
+        int measuredCount = 0;
+        for (CacheInfo info : infos) {
+            if (info.getMissCost() > 0) {
+                totalMissCost += info.getMissCost();
+                measuredCount++;
+            }
         }
-        // calculate the total access count and memory used
-        long totalAccessCount = 0;
+        double defaultMissCost = measuredCount > 0 ? totalMissCost / measuredCount : 1.;
+        // calculate the total weighted access count and memory used
+        double totalAccessCost = 0;
         long totalMemoryUsed = 0;
         for (CacheInfo info : infos) {
-            totalAccessCount += info.getAccessCount();
+            totalAccessCost += info.getAccessCost(defaultMissCost);
             totalMemoryUsed += info.getMemoryUsed();
         }
-        // try to distribute the memory based on the access count
-        // and memory used (higher numbers - more memory)
+        // try to distribute the memory based on the access count weighted
+        // by the miss cost, and memory used (higher numbers - more memory)
         // and find out how many caches are full
-        // 50% is distributed according to access count,
+        // 50% is distributed according to the weighted access count,
         // and 50% according to memory used
-        double memoryPerAccess = (double) maxMemory / 2.
-                / Math.max(1., (double) totalAccessCount);
+        double memoryPerAccessCost = (double) maxMemory / 2.
+                / Math.max(1., totalAccessCost);
         double memoryPerUsed = (double) maxMemory / 2.
                 / Math.max(1., (double) totalMemoryUsed);
         int fullCacheCount = 0;
         for (CacheInfo info : infos) {
-            long mem = (long) (memoryPerAccess * info.getAccessCount());
+            long mem = (long) (memoryPerAccessCost * info.getAccessCost(defaultMissCost));
             mem += (long) (memoryPerUsed * info.getMemoryUsed());
             mem = Math.min(mem, maxMemoryPerCache);
             if (info.wasFull()) {
@@ -246,6 +280,7 @@ public class CacheManager implements CacheAccessListener {
             if (log.isTraceEnabled()) {
                 log.trace(cache + " now:" + cache.getMaxMemorySize() + " used:"
                         + info.getMemoryUsed() + " access:" + info.getAccessCount()
+                        + " misscost:" + info.getMissCost()
                         + " new:" + info.getMemory());
             }
             cache.setMaxMemorySize(info.getMemory());
@@ -260,7 +295,7 @@ public class CacheManager implements CacheAccessListener {
      */
     public void add(Cache cache) {
         synchronized (caches) {
-            caches.put(cache, null);
+            caches.put(cache, new MissCost());
         }
     }
 
@@ -278,6 +313,117 @@ public class CacheManager implements CacheAccessListener {
         }
     }
 
+    /**
+     * Updates and returns the average cost of a miss of the given cache.
+     *
+     * @param cache the cache
+     * @return the average miss duration in nanoseconds, or 0 if unknown
+     */
+    private double getMissCost(Cache cache) {
+        MissCost cost;
+        synchronized (caches) {
+            cost = caches.get(cache);
+        }
+        return cost != null ? cost.update(cache) : 0;
+    }
+
+    public int getCacheCount() {
+        synchronized (caches) {
+            return caches.size();
+        }
+    }
+
+    public String[] getCacheAllocation() {
+        List<String> list = new ArrayList<String>();
+        synchronized (caches) {
+            for (Map.Entry<Cache, MissCost> entry : caches.entrySet()) {
+                Cache cache = entry.getKey();
+                if (cache != null) {
+                    list.add(cache.getCacheInfoAsString() + ", misscostus="
+                            + (long) (entry.getValue().getAverage() / 1000));
+                }
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Registers this cache manager with the platform MBean server. Failures
+     * are logged, as monitoring is not essential.
+     *
+     * @param name the name of the repository, used in the object name
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName("org.apache.jackrabbit.core:type=CacheManager,name="
+                    + ObjectName.quote(name));
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (JMException e) {
+            log.warn("Unable to register the cache manager MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Unregisters this cache manager from the platform MBean server, if it
+     * was registered.
+     */
+    public synchronized void unregisterMBean() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("Unable to unregister the cache manager MBean: " + e.getMessage());
+            }
+            objectName = null;
+        }
+    }
+
+    /**
+     * The measured cost of the misses of a cache.
+     */
+    private static class MissCost {
+
+        /** The miss count at the last update. */
+        private long missCount;
+
+        /** The miss duration at the last update. */
+        private long missDuration;
+
+        /** The smoothed average duration of a miss in nanoseconds. */
+        private volatile double average;
+
+        /**
+         * Updates the average with the misses since the last update.
+         *
+         * @param cache the cache
+         * @return the new average, or 0 if no miss duration was reported yet
+         */
+        synchronized double update(Cache cache) {
+            long count = cache.getMissCount();
+            long duration = cache.getMissDuration();
+            long deltaCount = count - missCount;
+            long deltaDuration = duration - missDuration;
+            missCount = count;
+            missDuration = duration;
+            if (deltaCount > 0 && deltaDuration > 0) {
+                double latest = (double) deltaDuration / deltaCount;
+                if (average == 0) {
+                    average = latest;
+                } else {
+                    average += MISS_COST_SMOOTHING * (latest - average);
+                }
+            }
+            return average;
+        }
+
+        double getAverage() {
+            return average;
+        }
+
+    }
+
     /**
      * Internal copy of the cache information.
      */
@@ -286,14 +432,17 @@ public class CacheManager implements CacheAccessListener {
 
         private long accessCount;
 
+        private double missCost;
+
         private long memory;
 
         private long memoryUsed;
 
         private boolean wasFull;
 
-        CacheInfo(Cache cache) {
+        CacheInfo(Cache cache, double missCost) {
             this.cache = cache;
+            this.missCost = missCost;
             // copy the data as this runs in a different thread
             // the exact values are not important, but it is important that the
             // values don't change
@@ -316,6 +465,21 @@ public class CacheManager implements CacheAccessListener {
             return accessCount;
         }
 
+        double getMissCost() {
+            return missCost;
+        }
+
+        /**
+         * Returns the expected cost if none of the accessed entries were
+         * cached, the access count weighted by the miss cost.
+         *
+         * @param defaultMissCost the cost to use if the miss cost is unknown
+         * @return the weighted access count
+         */
+        double getAccessCost(double defaultMissCost) {
+            return accessCount * (missCost > 0 ? missCost : defaultMissCost);
+        }
+
         long getMemoryUsed() {
             return memoryUsed;
         }
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+/**
+ * JMX interface of the {@link CacheManager}. Exposes the limits used to
+ * distribute the memory and the resulting allocation of each cache.
+ */
+public interface CacheManagerMBean {
+
+    long getMaxMemory();
+
+    void setMaxMemory(long maxMemory);
+
+    long getMaxMemoryPerCache();
+
+    void setMaxMemoryPerCache(long maxMemoryPerCache);
+
+    long getMinMemoryPerCache();
+
+    void setMinMemoryPerCache(long minMemoryPerCache);
+
+    long getMinResizeInterval();
+
+    void setMinResizeInterval(long minResizeInterval);
+
+    /**
+     * Get the number of managed caches.
+     *
+     * @return the number of caches
+     */
+    int getCacheCount();
+
+    /**
+     * Get the current allocation of each managed cache, including the
+     * estimated cost of a cache miss that was used to allocate the memory.
+     *
+     * @return one entry per cache
+     */
+    String[] getCacheAllocation();
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent cache implementation with lock-free reads. Entries are kept in
+ * {@link ConcurrentHashMap} segments, so a cache hit neither takes a monitor
+ * nor reorders a linked list like the access-ordered segments of the
+ * {@link ConcurrentCache} do.
+ * <p>
+ * Instead of strict LRU ordering, every entry carries a small saturating
+ * access counter that is incremented on each hit. When the cache is too big,
+ * a clock hand sweeps over a bounded sample of the entries of a segment,
+ * decrementing the counters it passes. The first entry found with a counter
+ * of zero is evicted, or otherwise the least frequently used entry of the
+ * sample (generalized CLOCK). Entries that are accessed repeatedly therefore
+ * survive scans over large numbers of entries that are read only once.
+ * <p>
+ * Only eviction is synchronized, on the segment being swept. None of the
+ * public methods of this class are synchronized, but they are all
+ * thread-safe.
+ */
+public class ClockCache<K, V> extends AbstractCache implements MapCache<K, V> {
+
+    /**
+     * Default number of cache segments to use, see
+     * {@link ConcurrentCache}.
+     */
+    private static final int DEFAULT_NUMBER_OF_SEGMENTS =
+        Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum value of the access counter of an entry. Bounding the
+     * counter makes sure that formerly hot entries age out within a few
+     * sweeps of the clock hand.
+     */
+    private static final int MAX_FREQUENCY = 7;
+
+    /**
+     * The maximum number of entries the clock hand visits to find an entry
+     * to evict.
+     */
+    private static final int SAMPLE_SIZE = 16;
+
+    private static class E<V> {
+
+        private final V value;
+
+        private final long size;
+
+        /**
+         * Saturating access counter. Updates are not atomic, as a lost
+         * increment or decrement only affects the eviction order slightly.
+         */
+        private volatile int frequency = 1;
+
+        public E(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+
+        private void hit() {
+            if (frequency < MAX_FREQUENCY) {
+                frequency++;
+            }
+        }
+
+    }
+
+    private class Segment {
+
+        private final ConcurrentHashMap<K, E<V>> map =
+            new ConcurrentHashMap<K, E<V>>();
+
+        /**
+         * The clock hand of this segment. Guarded by the segment monitor.
+         */
+        private Iterator<Map.Entry<K, E<V>>> hand;
+
+        /**
+         * Evicts one entry of this segment.
+         *
+         * @return <code>true</code> if an entry was found to be evicted,
+         *         <code>false</code> if the segment is empty
+         */
+        private synchronized boolean evict() {
+            Map.Entry<K, E<V>> victim = null;
+            int victimFrequency = Integer.MAX_VALUE;
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                if (hand == null || !hand.hasNext()) {
+                    hand = map.entrySet().iterator();
+                    if (!hand.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<K, E<V>> candidate = hand.next();
+                E<V> entry = candidate.getValue();
+                int frequency = entry.frequency;
+                if (frequency == 0) {
+                    victim = candidate;
+                    break;
+                }
+                entry.frequency = frequency - 1;
+                if (frequency < victimFrequency) {
+                    victim = candidate;
+                    victimFrequency = frequency;
+                }
+            }
+            if (victim == null) {
+                return false;
+            }
+            if (map.remove(victim.getKey(), victim.getValue())) {
+                recordSizeChange(-victim.getValue().size);
+                CacheEvictionListener<K, V> listener = evictionListener;
+                if (listener != null) {
+                    listener.entryEvicted(
+                            victim.getKey(), victim.getValue().value);
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private final String name;
+
+    private final Segment[] segments;
+
+    private volatile CacheEvictionListener<K, V> evictionListener;
+
+    @SuppressWarnings("unchecked")
+    public ClockCache(String name, int numberOfSegments) {
+        this.name = name;
+        this.segments = new ClockCache.Segment[numberOfSegments];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public ClockCache(String name) {
+        this(name, DEFAULT_NUMBER_OF_SEGMENTS);
+    }
+
+    /**
+     * Returns the cache segment for the given entry key.
+     *
+     * @param key entry key
+     * @return cache segment
+     */
+    private Segment getSegment(K key) {
+        // Unsigned shift right to prevent negative indexes and to
+        // prevent too similar keys to all get stored in the same segment
+        return segments[(key.hashCode() >>> 1) % segments.length];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean containsKey(K key) {
+        return getSegment(key).map.containsKey(key);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public V get(K key) {
+        recordCacheAccess();
+
+        E<V> entry = getSegment(key).map.get(key);
+        if (entry != null) {
+            entry.hit();
+            return entry.value;
+        }
+        recordCacheMiss();
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note that this method does not take a snapshot of the entire cache,
+     * so it is only guaranteed to return accurate results when there are
+     * no concurrent threads modifying the cache.
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>();
+        for (Segment segment : segments) {
+            for (E<V> entry : segment.map.values()) {
+                values.add(entry.value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public V put(K key, V value, long size) {
+        recordSizeChange(size);
+        E<V> previous = getSegment(key).map.put(key, new E<V>(value, size));
+        if (previous != null) {
+            recordSizeChange(-previous.size);
+        }
+        shrinkIfNeeded();
+        return previous != null ? previous.value : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public V remove(K key) {
+        E<V> entry = getSegment(key).map.remove(key);
+        if (entry != null) {
+            recordSizeChange(-entry.size);
+            return entry.value;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Note that this method is not atomic, entries that are concurrently
+     * added by other threads may remain in the cache.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            for (Map.Entry<K, E<V>> entry : segment.map.entrySet()) {
+                if (segment.map.remove(entry.getKey(), entry.getValue())) {
+                    recordSizeChange(-entry.getValue().size);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isEmpty() {
+        return getMemoryUsed() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setEvictionListener(CacheEvictionListener<K, V> listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * Sets the maximum size of the cache and evicts any excess items until
+     * the current size falls within the given limit.
+     */
+    @Override
+    public void setMaxMemorySize(long size) {
+        super.setMaxMemorySize(size);
+        shrinkIfNeeded();
+    }
+
+    /**
+     * Evicts entries from the cache until the cache is small enough.
+     */
+    private void shrinkIfNeeded() {
+        // Semi-random start index to prevent bias against the first segments
+        int start = (int) Math.abs(getAccessCount() % segments.length);
+        int empty = 0;
+        for (int i = start; isTooBig() && empty < segments.length;
+                i = (i + 1) % segments.length) {
+            if (segments[i].evict()) {
+                empty = 0;
+            } else {
+                empty++;
+            }
+        }
+    }
+
+    public long getElementCount() {
+        long count = 0;
+        for (Segment segment : segments) {
+            count += segment.map.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + getClass().getSimpleName() + "@"
+                + Integer.toHexString(hashCode()) + "]";
+    }
+}
@@ -29,7 +29,7 @@ import java.util.Map;
  * eviction algorithm similar but not exactly the same as LRU. None of the
  * methods of this class are synchronized, but they are all thread-safe.
  */
-public class ConcurrentCache<K, V> extends AbstractCache {
+public class ConcurrentCache<K, V> extends AbstractCache implements MapCache<K, V> {
 
     /**
      * Default number of cache segments to use. Use the number of available
@@ -60,6 +60,8 @@ public class ConcurrentCache<K, V> extends AbstractCache {
     private final String name;
     private final Map<K, E<V>>[] segments;
 
+    private volatile CacheEvictionListener<K, V> evictionListener;
+
     @SuppressWarnings({ "unchecked", "serial" })
     public ConcurrentCache(String name, int numberOfSegments) {
         this.name = name;
@@ -70,6 +72,11 @@ public class ConcurrentCache<K, V> extends AbstractCache {
                 protected boolean removeEldestEntry(Map.Entry<K, E<V>> eldest) {
                     if (isTooBig()) {
                         recordSizeChange(-eldest.getValue().size);
+                        CacheEvictionListener<K, V> listener = evictionListener;
+                        if (listener != null) {
+                            listener.entryEvicted(
+                                    eldest.getKey(), eldest.getValue().value);
+                        }
                         return true;
                     } else {
                         return false;
@@ -222,6 +229,13 @@ public class ConcurrentCache<K, V> extends AbstractCache {
         return getMemoryUsed() == 0;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public void setEvictionListener(CacheEvictionListener<K, V> listener) {
+        this.evictionListener = listener;
+    }
+
     /**
      * Sets the maximum size of the cache and evicts any excess items until
      * the current size falls within the given limit.
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.Locale;
+
+/**
+ * The eviction policies of the available {@link MapCache} implementations.
+ * Used to select the implementation of a cache by configuration.
+ */
+public enum EvictionPolicy {
+
+    /**
+     * Segmented least recently used eviction, see {@link ConcurrentCache}.
+     * This is the default.
+     */
+    LRU {
+        @Override
+        public <K, V> MapCache<K, V> createCache(String name) {
+            return new ConcurrentCache<K, V>(name);
+        }
+    },
+
+    /**
+     * Lock-free reads with frequency based clock eviction, see
+     * {@link ClockCache}.
+     */
+    CLOCK {
+        @Override
+        public <K, V> MapCache<K, V> createCache(String name) {
+            return new ClockCache<K, V>(name);
+        }
+    };
+
+    /**
+     * Creates a new cache that uses this eviction policy.
+     *
+     * @param name the name of the cache
+     * @return the new cache
+     */
+    public abstract <K, V> MapCache<K, V> createCache(String name);
+
+    /**
+     * Returns the eviction policy with the given name, ignoring case.
+     *
+     * @param name the name of the eviction policy, e.g. "lru" or "clock"
+     * @return the eviction policy
+     * @throws IllegalArgumentException if there is no such policy
+     */
+    public static EvictionPolicy fromString(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+    }
+
+}
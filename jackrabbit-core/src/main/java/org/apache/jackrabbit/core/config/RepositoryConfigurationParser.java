@@ -25,9 +25,11 @@ import java.util.UUID;
 
 import javax.jcr.RepositoryException;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.core.cluster.ClusterNode;
+import org.apache.jackrabbit.core.data.ChunkingDataStore;
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.data.DataStoreFactory;
 import org.apache.jackrabbit.core.data.MultiDataStore;
@@ -194,6 +196,12 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
     /** Name of the archive DataStore class attribute. */
     public static final String ARCHIVE_DATASTORE_ATTRIBUTE = "archive";
 
+    /** Name of the manifests DataStore class attribute. */
+    public static final String MANIFEST_DATASTORE_ATTRIBUTE = "manifests";
+
+    /** Name of the chunks DataStore class attribute. */
+    public static final String CHUNK_DATASTORE_ATTRIBUTE = "chunks";
+
     /** Default synchronization delay, in milliseconds. */
     public static final String DEFAULT_SYNC_DELAY = "5000";
 
@@ -1008,6 +1016,18 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
      *     &lt;/param&gt;
      *   &lt;/DataStore&gt;
      * </pre>
+     * A chunking data store is configured in the same way with nested
+     * <code>manifests</code> and <code>chunks</code> data stores:
+     * <pre>
+     *   &lt;DataStore class="org.apache.jackrabbit.core.data.ChunkingDataStore"&gt;
+     *     &lt;param name="manifests" value="org.apache.jackrabbit.core.data.FileDataStore"&gt;
+     *         &lt;param name="..." value="..."&gt;
+     *     &lt;/param&gt;
+     *     &lt;param name="chunks" value="org.apache.jackrabbit.core.data.FileDataStore"&gt;
+     *         &lt;param name="..." value="..."&gt;
+     *     &lt;/param&gt;
+     *   &lt;/DataStore&gt;
+     * </pre>
      * <p>
      * <code>DataStore</code> is a {@link #parseBeanConfig(Element,String) bean configuration}
      * element.
@@ -1040,21 +1060,7 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
                                         && (PRIMARY_DATASTORE_ATTRIBUTE.equals(paramNode.getAttributes().getNamedItem("name").getNodeValue())
                                                 || ARCHIVE_DATASTORE_ATTRIBUTE.equals(paramNode.getAttributes().getNamedItem("name").getNodeValue()))) {
                                     try {
-                                        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-                                        Element newParent = document.createElement("parent");
-                                        document.appendChild(newParent);
-                                        Element datastoreElement = document.createElement(DATA_STORE_ELEMENT);
-                                        newParent.appendChild(datastoreElement);
-                                        NodeList childNodes = paramNode.getChildNodes();
-                                        for (int y = 0; childNodes.getLength() > y; y++) {
-                                            datastoreElement.appendChild(document.importNode(childNodes.item(y), true));
-                                        }
-                                        NamedNodeMap attributes = paramNode.getAttributes();
-                                        for (int z = 0; attributes.getLength() > z; z++) {
-                                            Node item = attributes.item(z);
-                                            datastoreElement.setAttribute(CLASS_ATTRIBUTE, item.getNodeValue());
-                                        }
-                                        DataStore subDataStore = getDataStoreFactory(newParent, directory).getDataStore();
+                                        DataStore subDataStore = getSubDataStore((Element) paramNode, directory);
                                         if (!MultiDataStoreAware.class.isAssignableFrom(subDataStore.getClass())) {
                                             throw new ConfigurationException("Only MultiDataStoreAware datastore's can be used within a MultiDataStore.");
                                         }
@@ -1074,6 +1080,26 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
                             }
                             ((MultiDataStore) store).setPrimaryDataStore(primary);
                             ((MultiDataStore) store).setArchiveDataStore(archive);
+                        } else if (store instanceof ChunkingDataStore) {
+                            DataStore manifests = null;
+                            DataStore chunks = null;
+                            NodeList subParamNodes = child.getChildNodes();
+                            for (int x = 0; x < subParamNodes.getLength(); x++) {
+                                Node paramNode = subParamNodes.item(x);
+                                if (paramNode.getNodeType() == Node.ELEMENT_NODE) {
+                                    String type = getAttribute((Element) paramNode, NAME_ATTRIBUTE);
+                                    if (MANIFEST_DATASTORE_ATTRIBUTE.equals(type)) {
+                                        manifests = getSubDataStore((Element) paramNode, directory);
+                                    } else if (CHUNK_DATASTORE_ATTRIBUTE.equals(type)) {
+                                        chunks = getSubDataStore((Element) paramNode, directory);
+                                    }
+                                }
+                            }
+                            if (manifests == null || chunks == null) {
+                                throw new ConfigurationException("A ChunkingDataStore must have configured a manifests and chunks datastore");
+                            }
+                            ((ChunkingDataStore) store).setManifestDataStore(manifests);
+                            ((ChunkingDataStore) store).setChunkDataStore(chunks);
                         }
                         store.init(directory);
                         return store;
@@ -1084,6 +1110,41 @@ public class RepositoryConfigurationParser extends ConfigurationParser {
         };
     }
 
+    /**
+     * Creates and initializes a data store that is configured in a nested
+     * <code>param</code> element of a data store element. The value of the
+     * element is the class name of the data store.
+     *
+     * @param paramNode the nested param element
+     * @param directory the repository directory
+     * @return the initialized data store
+     * @throws RepositoryException if the configuration is broken or the
+     *                             data store cannot be initialized
+     */
+    private DataStore getSubDataStore(Element paramNode, String directory)
+            throws RepositoryException {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new ConfigurationException("Failed to parse a nested DataStore element.", e);
+        }
+        Element newParent = document.createElement("parent");
+        document.appendChild(newParent);
+        Element datastoreElement = document.createElement(DATA_STORE_ELEMENT);
+        newParent.appendChild(datastoreElement);
+        NodeList childNodes = paramNode.getChildNodes();
+        for (int y = 0; childNodes.getLength() > y; y++) {
+            datastoreElement.appendChild(document.importNode(childNodes.item(y), true));
+        }
+        NamedNodeMap attributes = paramNode.getAttributes();
+        for (int z = 0; attributes.getLength() > z; z++) {
+            Node item = attributes.item(z);
+            datastoreElement.setAttribute(CLASS_ATTRIBUTE, item.getNodeValue());
+        }
+        return getDataStoreFactory(newParent, directory).getDataStore();
+    }
+
     /**
      * Parses repository lock mechanism configuration. Repository lock mechanism
      * configuration uses the following format:
@@ -16,7 +16,11 @@
  */
 package org.apache.jackrabbit.core.persistence;
 
+import java.util.Collection;
+
+import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemStateException;
 
 /**
  * Marker interface that is used by the shared item state manager for invalidate
@@ -32,4 +36,17 @@ public interface CachingPersistenceManager {
      */
     void onExternalUpdate(ChangeLog changes);
 
+    /**
+     * Hints the persistence manager that the node states with the given ids
+     * are likely to be loaded soon. An implementation may use this to load
+     * the states into its cache with as few round trips to the underlying
+     * storage as possible. States that are already cached or that do not
+     * exist are ignored. The default implementation does nothing.
+     *
+     * @param ids the ids of the node states to prefetch
+     * @throws ItemStateException if an error occurs while loading the states
+     */
+    default void prefetch(Collection<NodeId> ids) throws ItemStateException {
+    }
+
 }
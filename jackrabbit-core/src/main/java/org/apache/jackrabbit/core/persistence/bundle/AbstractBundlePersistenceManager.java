@@ -20,11 +20,20 @@ import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_MIXINTYPE
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_UUID;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.PropertyType;
@@ -33,7 +42,9 @@ import javax.jcr.RepositoryException;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.cache.Cache;
 import org.apache.jackrabbit.core.cache.CacheAccessListener;
-import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.CacheEvictionListener;
+import org.apache.jackrabbit.core.cache.EvictionPolicy;
+import org.apache.jackrabbit.core.cache.MapCache;
 import org.apache.jackrabbit.core.cluster.UpdateEventChannel;
 import org.apache.jackrabbit.core.fs.FileSystem;
 import org.apache.jackrabbit.core.fs.FileSystemResource;
@@ -48,6 +59,7 @@ import org.apache.jackrabbit.core.persistence.check.ConsistencyCheckListener;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyChecker;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyReport;
 import org.apache.jackrabbit.core.persistence.util.BLOBStore;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
 import org.apache.jackrabbit.core.persistence.util.FileBasedIndex;
 import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
@@ -92,6 +104,9 @@ import org.slf4j.LoggerFactory;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/&gt;
+ * <li>&lt;param name="{@link #setBundleCacheEvictionPolicy(String) bundleCacheEvictionPolicy}" value="lru"/&gt;
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/&gt;
+ * <li>&lt;param name="{@link #setBundleCacheSnapshotInterval(String) bundleCacheSnapshotInterval}" value="0"/&gt;
  * </ul>
  */
 public abstract class AbstractBundlePersistenceManager implements
@@ -121,12 +136,18 @@ public abstract class AbstractBundlePersistenceManager implements
 
     /**
      * The size estimate for the MISSING NodePropBundle. The sum of:
-     * - ConcurrentCache.E: 32 bytes
-     * - LinkedHashMap.Entry: 64 bytes
+     * - cache entry: 32 bytes
+     * - map entry: 64 bytes
      * - NodeId: 32 bytes
      */
     private static final long MISSING_SIZE_ESTIMATE = 128;
 
+    /** the name of the bundle cache snapshot file in the home directory */
+    private static final String BUNDLE_CACHE_SNAPSHOT_FILE = "bundlecache.snapshot";
+
+    /** the initial size of the buffer used to serialize off-heap bundles */
+    private static final int INITIAL_OFF_HEAP_BUFFER_SIZE = 1024;
+
     /** the index for namespaces */
     private StringIndex nsIndex;
 
@@ -134,7 +155,42 @@ public abstract class AbstractBundlePersistenceManager implements
     private StringIndex nameIndex;
 
     /** the cache of loaded bundles */
-    private ConcurrentCache<NodeId, NodePropBundle> bundles;
+    private MapCache<NodeId, NodePropBundle> bundles;
+
+    /** the eviction policy of the bundle cache */
+    private EvictionPolicy bundleCacheEvictionPolicy = EvictionPolicy.LRU;
+
+    /** the off-heap cache of serialized bundles, or <code>null</code> */
+    private OffHeapBundleCache offHeapBundles;
+
+    /** size of the off-heap bundle cache, disabled by default */
+    private long offHeapBundleCacheSize = 0;
+
+    /**
+     * the bundles evicted from the bundle cache that are not yet written to
+     * the off-heap bundle cache
+     */
+    private final Map<NodeId, NodePropBundle> evictedBundles =
+        new ConcurrentHashMap<NodeId, NodePropBundle>();
+
+    /**
+     * guards the moves of bundles from {@link #evictedBundles} to the
+     * off-heap bundle cache against lookups and stores of the same bundle
+     */
+    private final Object offHeapLock = new Object();
+
+    /** the snapshot of the bundle cache, or <code>null</code> */
+    private BundleCacheSnapshot snapshot;
+
+    /** interval between bundle cache snapshots in seconds, disabled by default */
+    private long bundleCacheSnapshotInterval = 0;
+
+    /**
+     * the number of changes of bundles, guarded by this persistence manager.
+     * Prefetched bundles are discarded if a change happened while they were
+     * loaded.
+     */
+    private long modificationCount;
 
     /** The default minimum stats logging interval (in ms). */
     private static final int DEFAULT_LOG_STATS_INTERVAL = 60 * 1000;
@@ -196,6 +252,73 @@ public abstract class AbstractBundlePersistenceManager implements
         this.bundleCacheSize = Long.parseLong(bundleCacheSize) * 1024 * 1024;
     }
 
+    /**
+     * Returns the eviction policy of the bundle cache.
+     * @return the eviction policy of the bundle cache.
+     */
+    public String getBundleCacheEvictionPolicy() {
+        return bundleCacheEvictionPolicy.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Sets the eviction policy of the bundle cache, see {@link EvictionPolicy}.
+     * The default is "lru". The "clock" policy avoids lock contention on
+     * cache hits and is preferable on hosts with many cores.
+     *
+     * @param bundleCacheEvictionPolicy the name of the eviction policy.
+     */
+    public void setBundleCacheEvictionPolicy(String bundleCacheEvictionPolicy) {
+        this.bundleCacheEvictionPolicy = EvictionPolicy.fromString(bundleCacheEvictionPolicy);
+    }
+
+    /**
+     * Returns the size of the off-heap bundle cache in megabytes.
+     * @return the size of the off-heap bundle cache in megabytes.
+     */
+    public String getOffHeapBundleCacheSize() {
+        return String.valueOf(offHeapBundleCacheSize / (1024 * 1024));
+    }
+
+    /**
+     * Sets the size of the off-heap bundle cache in megabytes. The off-heap
+     * cache keeps serialized bundles in direct memory, outside of the Java
+     * heap, and is consulted on a miss of the bundle cache before the
+     * bundle is loaded from the underlying system. Bundles are written to
+     * the off-heap cache when they are evicted from the bundle cache, and
+     * updated there when they are stored. The default is 0, which
+     * disables the off-heap cache. Note that the direct memory of the JVM
+     * is limited by the <code>-XX:MaxDirectMemorySize</code> option.
+     * <p>
+     * The off-heap cache is only used by persistence managers that return
+     * a binding from {@link #getBundleBinding()}.
+     *
+     * @param offHeapBundleCacheSize the off-heap bundle cache size in megabytes.
+     */
+    public void setOffHeapBundleCacheSize(String offHeapBundleCacheSize) {
+        this.offHeapBundleCacheSize = Long.parseLong(offHeapBundleCacheSize) * 1024 * 1024;
+    }
+
+    /**
+     * Returns the interval between bundle cache snapshots in seconds.
+     * @return the interval between bundle cache snapshots in seconds.
+     */
+    public String getBundleCacheSnapshotInterval() {
+        return String.valueOf(bundleCacheSnapshotInterval);
+    }
+
+    /**
+     * Sets the interval between bundle cache snapshots in seconds. When
+     * enabled, the ids of the cached bundles are periodically written to a
+     * file in the home directory, and after a restart the bundles listed in
+     * that file are loaded into the bundle cache in the background. The
+     * default is 0, which disables the snapshots.
+     *
+     * @param bundleCacheSnapshotInterval the interval in seconds.
+     */
+    public void setBundleCacheSnapshotInterval(String bundleCacheSnapshotInterval) {
+        this.bundleCacheSnapshotInterval = Long.parseLong(bundleCacheSnapshotInterval);
+    }
+
     /**
      * Creates the folder path for the given node id that is suitable for
      * storing states in a filesystem.
@@ -351,15 +474,88 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     public synchronized void onExternalUpdate(ChangeLog changes) {
         for (ItemState state : changes.modifiedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.deletedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.addedStates()) {
             // There may have been a cache miss entry
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Loads the bundles that are not yet cached through
+     * {@link #loadBundles(Collection)} and puts them into the bundle cache.
+     * Ids of bundles that do not exist are cached as missing.
+     * <p>
+     * The bundles are loaded without holding the lock of this persistence
+     * manager, and discarded if bundles were stored or evicted meanwhile.
+     */
+    public void prefetch(Collection<NodeId> ids)
+            throws ItemStateException {
+        List<NodeId> missing = new ArrayList<NodeId>(ids.size());
+        for (NodeId id : ids) {
+            // bundles found in the off-heap cache are moved to the bundle cache
+            if (!bundles.containsKey(id) && getEvictedBundle(id) == null) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        long count;
+        synchronized (this) {
+            count = modificationCount;
         }
+        long time = System.nanoTime();
+        Map<NodeId, NodePropBundle> loaded = loadBundles(missing);
+        time = System.nanoTime() - time;
+        cacheMissDuration.addAndGet(time);
+        bundles.recordMissDuration(time);
+        final long timeMs = time / 1000000;
+        log.debug("Prefetched {} bundles in {}ms", missing.size(), timeMs);
+        cacheMissCounter.addAndGet(missing.size());
+
+        synchronized (this) {
+            if (count != modificationCount) {
+                log.debug("Discarding prefetched bundles after a concurrent change");
+                return;
+            }
+            for (NodeId id : missing) {
+                if (bundles.containsKey(id)) {
+                    continue;
+                }
+                NodePropBundle bundle = loaded.get(id);
+                if (bundle != null) {
+                    bundle.markOld();
+                    bundles.put(id, bundle, bundle.getSize());
+                } else {
+                    bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
+                }
+            }
+        }
+        spillEvictedBundles();
+    }
+
+    /**
+     * Returns the ids of the bundles in the bundle cache, for the bundle
+     * cache snapshot.
+     *
+     * @return the ids of the cached bundles
+     */
+    List<NodeId> getCachedBundleIds() {
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (NodePropBundle bundle : bundles.values()) {
+            if (bundle != MISSING) {
+                ids.add(bundle.getId());
+            }
+        }
+        return ids;
     }
 
     private NodeId getBundleId(ItemState state) {
@@ -395,6 +591,30 @@ public abstract class AbstractBundlePersistenceManager implements
     protected abstract NodePropBundle loadBundle(NodeId id)
             throws ItemStateException;
 
+    /**
+     * Loads several bundles from the underlying system. The default
+     * implementation calls {@link #loadBundle(NodeId)} for each of the given
+     * ids. Subclasses that are able to load multiple bundles with a single
+     * request should override this method.
+     *
+     * @param ids the node ids of the bundles
+     * @return the loaded bundles keyed by their node id. Bundles that do not
+     *         exist are not contained in the returned map.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>(ids.size());
+        for (NodeId id : ids) {
+            NodePropBundle bundle = loadBundle(id);
+            if (bundle != null) {
+                result.put(id, bundle);
+            }
+        }
+        return result;
+    }
+
     /**
      * Stores a bundle to the underlying system.
      *
@@ -439,6 +659,18 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     protected abstract BLOBStore getBlobStore();
 
+    /**
+     * Returns the binding used to serialize the bundles of this persistence
+     * manager. The binding is used to keep bundles in the off-heap bundle
+     * cache. The default implementation returns <code>null</code>, which
+     * disables the off-heap bundle cache.
+     *
+     * @return the bundle binding, or <code>null</code>
+     */
+    protected BundleBinding getBundleBinding() {
+        return null;
+    }
+
     //-------------------------------------------------< PersistenceManager >---
 
     /**
@@ -449,9 +681,27 @@ public abstract class AbstractBundlePersistenceManager implements
     public void init(PMContext context) throws Exception {
         this.context = context;
         // init bundle cache
-        bundles = new ConcurrentCache<NodeId, NodePropBundle>(context.getHomeDir().getName() + "BundleCache");
+        bundles = bundleCacheEvictionPolicy.createCache(context.getHomeDir().getName() + "BundleCache");
         bundles.setMaxMemorySize(bundleCacheSize);
         bundles.setAccessListener(this);
+        if (offHeapBundleCacheSize > 0 && getBundleBinding() != null) {
+            offHeapBundles = new OffHeapBundleCache(
+                    context.getHomeDir().getName() + "OffHeapBundleCache",
+                    offHeapBundleCacheSize);
+            bundles.setEvictionListener(
+                    new CacheEvictionListener<NodeId, NodePropBundle>() {
+                        public void entryEvicted(NodeId id, NodePropBundle bundle) {
+                            if (bundle != MISSING) {
+                                evictedBundles.put(id, bundle);
+                            }
+                        }
+                    });
+        }
+        if (bundleCacheSnapshotInterval > 0) {
+            snapshot = new BundleCacheSnapshot(this,
+                    new File(context.getHomeDir(), BUNDLE_CACHE_SNAPSHOT_FILE),
+                    bundleCacheSnapshotInterval * 1000);
+        }
 
         // statistics
         RepositoryStatisticsImpl stats = context.getRepositoryStatistics();
@@ -477,8 +727,14 @@ public abstract class AbstractBundlePersistenceManager implements
      *  Closes the persistence manager, release acquired resources.
      */
     public void close() throws Exception {
+        if (snapshot != null) {
+            snapshot.stop();
+        }
         // clear caches
         bundles.clear();
+        if (offHeapBundles != null) {
+            offHeapBundles.close();
+        }
     }
 
     /**
@@ -588,6 +844,7 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     public synchronized void store(ChangeLog changeLog)
             throws ItemStateException {
+        modificationCount++;
         boolean success = false;
         try {
             storeInternal(changeLog);
@@ -595,7 +852,14 @@ public abstract class AbstractBundlePersistenceManager implements
         } finally {
             if (!success) {
                 bundles.clear();
+                if (offHeapBundles != null) {
+                    synchronized (offHeapLock) {
+                        evictedBundles.clear();
+                        offHeapBundles.clear();
+                    }
+                }
             }
+            spillEvictedBundles();
         }
     }
 
@@ -738,6 +1002,10 @@ public abstract class AbstractBundlePersistenceManager implements
      * @throws ItemStateException if an error occurs.
      */
     private NodePropBundle getBundle(NodeId id) throws ItemStateException {
+        if (snapshot != null) {
+            // started lazily, as subclasses are initialized after this class
+            snapshot.start();
+        }
         NodePropBundle bundle = bundles.get(id);
         readCounter.incrementAndGet();
         if (bundle == MISSING) {
@@ -762,10 +1030,17 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     private NodePropBundle getBundleCacheMiss(NodeId id)
             throws ItemStateException {
+        NodePropBundle bundle = getEvictedBundle(id);
+        if (bundle != null) {
+            spillEvictedBundles();
+            return bundle;
+        }
+
         long time = System.nanoTime();
-        NodePropBundle bundle = loadBundle(id);
+        bundle = loadBundle(id);
         time = System.nanoTime() - time;
         cacheMissDuration.addAndGet(time);
+        bundles.recordMissDuration(time);
         final long timeMs = time / 1000000;
         log.debug("Loaded bundle {} in {}ms", id, timeMs);
         cacheMissCounter.incrementAndGet();
@@ -775,9 +1050,96 @@ public abstract class AbstractBundlePersistenceManager implements
         } else {
             bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
         }
+        spillEvictedBundles();
         return bundle;
     }
 
+    /**
+     * Returns a bundle that was evicted from the bundle cache, either one
+     * that is not yet written to the off-heap bundle cache or one read from
+     * it, and puts it back to the bundle cache.
+     *
+     * @param id the id of the bundle
+     * @return the bundle, or <code>null</code> if it is not cached off-heap
+     */
+    private NodePropBundle getEvictedBundle(NodeId id) {
+        if (offHeapBundles == null) {
+            return null;
+        }
+        NodePropBundle bundle;
+        byte[] data = null;
+        synchronized (offHeapLock) {
+            bundle = evictedBundles.remove(id);
+            if (bundle == null) {
+                data = offHeapBundles.get(id);
+            }
+        }
+        if (bundle == null && data != null) {
+            try {
+                bundle = getBundleBinding().readBundle(
+                        new ByteArrayInputStream(data), id);
+                bundle.markOld();
+            } catch (IOException e) {
+                log.warn("Unable to read bundle " + id + " from the off-heap cache", e);
+                synchronized (offHeapLock) {
+                    offHeapBundles.remove(id);
+                }
+            }
+        }
+        if (bundle != null) {
+            bundles.put(id, bundle, bundle.getSize());
+        }
+        return bundle;
+    }
+
+    /**
+     * Writes the bundles that were evicted from the bundle cache to the
+     * off-heap bundle cache.
+     */
+    private void spillEvictedBundles() {
+        for (NodeId id : evictedBundles.keySet()) {
+            synchronized (offHeapLock) {
+                NodePropBundle bundle = evictedBundles.remove(id);
+                if (bundle != null) {
+                    putOffHeapBundle(bundle);
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializes the given bundle to the off-heap bundle cache. The caller
+     * holds the {@link #offHeapLock}.
+     *
+     * @param bundle the bundle to cache
+     */
+    private void putOffHeapBundle(NodePropBundle bundle) {
+        try {
+            ByteArrayOutputStream out =
+                new ByteArrayOutputStream(INITIAL_OFF_HEAP_BUFFER_SIZE);
+            getBundleBinding().writeBundle(out, bundle);
+            offHeapBundles.put(bundle.getId(), out.toByteArray());
+        } catch (Exception e) {
+            // also a concurrent modification of the bundle by a store
+            log.warn("Unable to write bundle " + bundle.getId() + " to the off-heap cache", e);
+            offHeapBundles.remove(bundle.getId());
+        }
+    }
+
+    /**
+     * Removes the bundle with the given id from the off-heap bundle cache.
+     *
+     * @param id the id of the bundle
+     */
+    private void removeOffHeapBundle(NodeId id) {
+        if (offHeapBundles != null) {
+            synchronized (offHeapLock) {
+                evictedBundles.remove(id);
+                offHeapBundles.remove(id);
+            }
+        }
+    }
+
     /**
      * Deletes the bundle
      *
@@ -787,6 +1149,7 @@ public abstract class AbstractBundlePersistenceManager implements
     private void deleteBundle(NodePropBundle bundle) throws ItemStateException {
         destroyBundle(bundle);
         bundle.removeAllProperties(getBlobStore());
+        removeOffHeapBundle(bundle.getId());
         bundles.put(bundle.getId(), MISSING, MISSING_SIZE_ESTIMATE);
     }
 
@@ -812,6 +1175,14 @@ public abstract class AbstractBundlePersistenceManager implements
 
         // only put to cache if already exists. this is to ensure proper
         // overwrite and not creating big contention during bulk loads
+        if (offHeapBundles != null) {
+            synchronized (offHeapLock) {
+                if (evictedBundles.remove(bundle.getId()) != null
+                        || offHeapBundles.containsKey(bundle.getId())) {
+                    putOffHeapBundle(bundle);
+                }
+            }
+        }
         if (bundles.containsKey(bundle.getId())) {
             bundles.put(bundle.getId(), bundle, bundle.getSize());
         }
@@ -858,7 +1229,11 @@ public abstract class AbstractBundlePersistenceManager implements
      * @param id the id of the bundle.
      */
     protected void evictBundle(NodeId id) {
+        synchronized (this) {
+            modificationCount++;
+        }
         bundles.remove(id);
+        removeOffHeapBundle(id);
     }
 
     public void cacheAccessed(long accessCount) {
@@ -874,6 +1249,9 @@ public abstract class AbstractBundlePersistenceManager implements
                 return;
             }
             log.info(bundles.getCacheInfoAsString());
+            if (offHeapBundles != null) {
+                log.info(offHeapBundles.getCacheInfoAsString());
+            }
             nextLogStats = now + minLogStatsInterval;
         }
     }
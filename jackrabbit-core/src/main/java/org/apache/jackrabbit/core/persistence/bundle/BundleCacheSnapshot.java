@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a snapshot of the ids of the bundles in the bundle cache of a
+ * persistence manager in a file, so that the cache can be warmed up after
+ * a restart instead of starting empty.
+ * <p>
+ * Once started, the snapshot thread first prefetches the bundles listed in
+ * the snapshot file, in batches. Afterwards it periodically replaces the
+ * file with the ids of the currently cached bundles. A final snapshot is
+ * written when the persistence manager is closed. The file is not written
+ * before the warm up has completed, so that a restart during the warm up
+ * does not lose the previous snapshot.
+ */
+class BundleCacheSnapshot implements Runnable {
+
+    /** the default logger */
+    private static Logger log = LoggerFactory.getLogger(BundleCacheSnapshot.class);
+
+    /** the number of bundles to prefetch at a time during the warm up */
+    private static final int WARM_UP_BATCH_SIZE = 100;
+
+    /** the persistence manager */
+    private final AbstractBundlePersistenceManager pm;
+
+    /** the snapshot file */
+    private final File file;
+
+    /** the interval between snapshots in milliseconds */
+    private final long interval;
+
+    /** the snapshot thread, <code>null</code> until started */
+    private volatile Thread thread;
+
+    /** set to <code>true</code> once the warm up has completed */
+    private volatile boolean warmedUp;
+
+    /** set to <code>true</code> when the persistence manager is closed */
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new snapshot for the given persistence manager.
+     *
+     * @param pm the persistence manager
+     * @param file the snapshot file
+     * @param interval the interval between snapshots in milliseconds
+     */
+    BundleCacheSnapshot(AbstractBundlePersistenceManager pm, File file, long interval) {
+        this.pm = pm;
+        this.file = file;
+        this.interval = interval;
+    }
+
+    /**
+     * Starts the snapshot thread unless it is already running. Has to be
+     * called after the persistence manager has been fully initialized.
+     */
+    void start() {
+        if (thread == null) {
+            synchronized (this) {
+                if (thread == null && !stopped) {
+                    Thread t = new Thread(this, "Jackrabbit-BundleCacheSnapshot-"
+                            + file.getParentFile().getName());
+                    t.setDaemon(true);
+                    t.start();
+                    thread = t;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the snapshot thread and writes a final snapshot. Waits for a
+     * prefetch that is in progress to complete.
+     */
+    void stop() {
+        synchronized (pm) {
+            stopped = true;
+        }
+        Thread t;
+        synchronized (this) {
+            t = thread;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+        if (warmedUp) {
+            save();
+        }
+    }
+
+    /**
+     * Warms up the bundle cache and then periodically writes the snapshot.
+     */
+    public void run() {
+        warmUp();
+        while (!stopped && !Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (!stopped) {
+                save();
+            }
+        }
+    }
+
+    /**
+     * Prefetches the bundles listed in the snapshot file.
+     */
+    private void warmUp() {
+        long time = System.currentTimeMillis();
+        List<NodeId> ids = load();
+        int count = 0;
+        try {
+            for (int i = 0; i < ids.size() && !stopped; i += WARM_UP_BATCH_SIZE) {
+                List<NodeId> batch =
+                    ids.subList(i, Math.min(i + WARM_UP_BATCH_SIZE, ids.size()));
+                synchronized (pm) {
+                    if (stopped) {
+                        return;
+                    }
+                    pm.prefetch(batch);
+                }
+                count += batch.size();
+            }
+            log.info("Warmed up bundle cache with {} bundles in {}ms", count,
+                    System.currentTimeMillis() - time);
+        } catch (Exception e) {
+            log.warn("Unable to warm up bundle cache from " + file, e);
+        } finally {
+            warmedUp = true;
+        }
+    }
+
+    /**
+     * Reads the node ids from the snapshot file.
+     *
+     * @return the node ids, or an empty list if there is no snapshot
+     */
+    private List<NodeId> load() {
+        List<NodeId> ids = new ArrayList<NodeId>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                long msb;
+                try {
+                    msb = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                ids.add(new NodeId(msb, in.readLong()));
+            }
+        } catch (FileNotFoundException ignore) {
+            // expected if no snapshot has been written yet
+        } catch (IOException e) {
+            log.warn("Bundle cache snapshot " + file + " is corrupt, ignoring it", e);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
+        return ids;
+    }
+
+    /**
+     * Replaces the snapshot file with the ids of the currently cached
+     * bundles. The new snapshot is written to a temporary file first.
+     */
+    private synchronized void save() {
+        List<NodeId> ids = pm.getCachedBundleIds();
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            for (NodeId id : ids) {
+                out.writeLong(id.getMostSignificantBits());
+                out.writeLong(id.getLeastSignificantBits());
+            }
+            out.close();
+            out = null;
+            if ((file.exists() && !file.delete()) || !temp.renameTo(file)) {
+                log.warn("Unable to replace bundle cache snapshot {}", file);
+            } else {
+                log.debug("Saved {} ids to bundle cache snapshot {}", ids.size(), file);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to save bundle cache snapshot " + file, e);
+        } finally {
+            IOUtils.closeQuietly(out);
+        }
+    }
+
+}
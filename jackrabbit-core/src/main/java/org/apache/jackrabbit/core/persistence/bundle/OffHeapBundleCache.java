@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * Second level cache of serialized bundles that keeps the data outside of
+ * the Java heap, in direct {@link ByteBuffer}s. This allows caching a much
+ * larger number of bundles than the on-heap bundle cache without increasing
+ * garbage collection pauses. The direct memory is limited by the
+ * <code>-XX:MaxDirectMemorySize</code> JVM option.
+ * <p>
+ * The memory is divided into equally sized segments that are filled like a
+ * log: new records are appended to the current segment. Once all segments
+ * are in use, the oldest segment is recycled and all records in it are
+ * evicted (FIFO eviction at segment granularity). Records that are replaced
+ * or removed remain in their segment until it is recycled.
+ * <p>
+ * Each record starts with the node id and the length of the data, so a read
+ * can verify that the record was not overwritten in the meantime. Only the
+ * index from node id to record position is kept on the heap.
+ */
+class OffHeapBundleCache {
+
+    /** the maximum size of a segment */
+    private static final int MAX_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /** the minimum number of segments */
+    private static final int MIN_SEGMENTS = 4;
+
+    /** the size of a record header: two longs for the id, one int length */
+    private static final int HEADER_SIZE = 8 + 8 + 4;
+
+    private static class Segment {
+
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        /** the data of this segment, allocated on first use */
+        private ByteBuffer buffer;
+
+        /** the ids of the records written to this segment */
+        private final List<NodeId> ids = new ArrayList<NodeId>();
+
+    }
+
+    /** the name of this cache, used for logging */
+    private final String name;
+
+    /** the segments */
+    private final Segment[] segments;
+
+    /** the size of each segment */
+    private final int segmentSize;
+
+    /** the record positions by node id, segment index in the upper 32 bits */
+    private final ConcurrentHashMap<NodeId, Long> index =
+        new ConcurrentHashMap<NodeId, Long>();
+
+    /** the index of the segment that is currently written to */
+    private int current;
+
+    /** the next write position in the current segment */
+    private int position;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new off-heap cache.
+     *
+     * @param name the name of the cache, used for logging
+     * @param maxMemorySize the maximum amount of direct memory to use
+     */
+    OffHeapBundleCache(String name, long maxMemorySize) {
+        this.name = name;
+        long size = Math.min(MAX_SEGMENT_SIZE, maxMemorySize / MIN_SEGMENTS);
+        this.segmentSize = (int) Math.max(size, HEADER_SIZE);
+        int count = (int) Math.max(MIN_SEGMENTS, maxMemorySize / segmentSize);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Checks if a record for the given id is cached.
+     *
+     * @param id the node id
+     * @return <code>true</code> if a record is cached
+     */
+    boolean containsKey(NodeId id) {
+        return index.containsKey(id);
+    }
+
+    /**
+     * Returns a copy of the serialized bundle with the given id.
+     *
+     * @param id the node id
+     * @return the serialized bundle, or <code>null</code> if not cached
+     */
+    byte[] get(NodeId id) {
+        Long location = index.get(id);
+        if (location != null) {
+            Segment segment = segments[(int) (location >>> 32)];
+            int offset = (int) location.longValue();
+            segment.lock.readLock().lock();
+            try {
+                ByteBuffer buffer = segment.buffer;
+                if (buffer != null
+                        && buffer.getLong(offset) == id.getMostSignificantBits()
+                        && buffer.getLong(offset + 8) == id.getLeastSignificantBits()) {
+                    byte[] data = new byte[buffer.getInt(offset + 16)];
+                    buffer = buffer.duplicate();
+                    // cast, ByteBuffer.position(int) does not exist in Java 8
+                    ((Buffer) buffer).position(offset + HEADER_SIZE);
+                    buffer.get(data);
+                    hits.incrementAndGet();
+                    return data;
+                }
+            } finally {
+                segment.lock.readLock().unlock();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Adds or replaces the serialized bundle with the given id. Records that
+     * do not fit into a single segment are not cached.
+     *
+     * @param id the node id
+     * @param data the serialized bundle
+     */
+    synchronized void put(NodeId id, byte[] data) {
+        int length = HEADER_SIZE + data.length;
+        if (length > segmentSize) {
+            index.remove(id);
+            return;
+        }
+        if (position + length > segmentSize || segments[current].buffer == null) {
+            current = (current + 1) % segments.length;
+            position = 0;
+            recycle(current);
+        }
+        Segment segment = segments[current];
+        segment.lock.writeLock().lock();
+        try {
+            ByteBuffer buffer = segment.buffer.duplicate();
+            ((Buffer) buffer).position(position);
+            buffer.putLong(id.getMostSignificantBits());
+            buffer.putLong(id.getLeastSignificantBits());
+            buffer.putInt(data.length);
+            buffer.put(data);
+            segment.ids.add(id);
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+        index.put(id, ((long) current << 32) | position);
+        position += length;
+    }
+
+    /**
+     * Evicts all records of the given segment and prepares it for writing,
+     * allocating its memory on first use.
+     *
+     * @param i the segment index
+     */
+    private void recycle(int i) {
+        Segment segment = segments[i];
+        segment.lock.writeLock().lock();
+        try {
+            if (segment.buffer == null) {
+                segment.buffer = ByteBuffer.allocateDirect(segmentSize);
+            }
+            for (NodeId id : segment.ids) {
+                Long location = index.get(id);
+                if (location != null && (location >>> 32) == i) {
+                    index.remove(id, location);
+                }
+            }
+            segment.ids.clear();
+        } finally {
+            segment.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the record with the given id.
+     *
+     * @param id the node id
+     */
+    void remove(NodeId id) {
+        index.remove(id);
+    }
+
+    /**
+     * Removes all records. The allocated memory is retained.
+     */
+    synchronized void clear() {
+        index.clear();
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+            try {
+                segment.ids.clear();
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+        position = segmentSize;
+    }
+
+    /**
+     * Releases the allocated memory. The direct buffers are freed once
+     * they are garbage collected.
+     */
+    synchronized void close() {
+        clear();
+        for (Segment segment : segments) {
+            segment.lock.writeLock().lock();
+            try {
+                segment.buffer = null;
+            } finally {
+                segment.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached records.
+     *
+     * @return the number of cached records
+     */
+    long getElementCount() {
+        return index.size();
+    }
+
+    /**
+     * Gathers the stats of the cache for logging.
+     *
+     * @return the cache stats
+     */
+    String getCacheInfoAsString() {
+        long allocated = 0;
+        for (Segment segment : segments) {
+            if (segment.buffer != null) {
+                allocated += segmentSize;
+            }
+        }
+        StringBuilder c = new StringBuilder();
+        c.append("cachename=");
+        c.append(name);
+        c.append(", elements=");
+        c.append(getElementCount());
+        c.append(", allocatedkb=");
+        c.append(allocated / 1024);
+        c.append(", maxmemorykb=");
+        c.append((long) segmentSize * segments.length / 1024);
+        c.append(", hit=");
+        c.append(hits.get());
+        c.append(", miss=");
+        c.append(misses.get());
+        return c.toString();
+    }
+
+}
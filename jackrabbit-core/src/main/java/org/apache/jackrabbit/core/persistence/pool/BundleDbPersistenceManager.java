@@ -26,6 +26,9 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,6 +84,7 @@ import org.slf4j.LoggerFactory;
  * <li>&lt;param name="{@link #setErrorHandling(String) errorHandling}" value=""/&gt;
  * <li>&lt;param name="{@link #setBlockOnConnectionLoss(String) blockOnConnectionLoss}" value="false"/&gt;
  * <li>&lt;param name="{@link #setSchemaCheckEnabled(boolean) schemaCheckEnabled}" value="true"/&gt;
+ * <li>&lt;param name="{@link #setBundleSelectBatchSize(String) bundleSelectBatchSize}" value="100"/&gt;
  * </ul>
  */
 public class BundleDbPersistenceManager
@@ -185,6 +189,12 @@ public class BundleDbPersistenceManager
      */
     private boolean schemaCheckEnabled = true;
 
+    /**
+     * The maximum number of bundles that are selected with a single statement.
+     * @see #setBundleSelectBatchSize(String)
+     */
+    private int bundleSelectBatchSize = 100;
+
     /**
      * The repositories {@link ConnectionFactory}.
      */
@@ -465,6 +475,27 @@ public class BundleDbPersistenceManager
         schemaCheckEnabled = enabled;
     }
 
+    /**
+     * Returns the maximum number of bundles that are selected with a single
+     * statement when several bundles are loaded at once.
+     * @return the maximum number of bundles per select statement.
+     */
+    public String getBundleSelectBatchSize() {
+        return String.valueOf(bundleSelectBatchSize);
+    }
+
+    /**
+     * Sets the maximum number of bundles that are selected with a single
+     * statement when several bundles are loaded at once. Some databases limit
+     * the number of expressions in an <code>IN</code> list (e.g. 1000 for
+     * Oracle), so this value should not be set too high. The default is 100.
+     *
+     * @param bundleSelectBatchSize the maximum number of bundles per select.
+     */
+    public void setBundleSelectBatchSize(String bundleSelectBatchSize) {
+        this.bundleSelectBatchSize = Math.max(1, Integer.parseInt(bundleSelectBatchSize));
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -612,6 +643,14 @@ public class BundleDbPersistenceManager
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * Creates a suitable blobstore
      * @return a blobstore
@@ -903,6 +942,78 @@ public class BundleDbPersistenceManager
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Selects the bundles in batches of at most
+     * {@link #setBundleSelectBatchSize(String) bundleSelectBatchSize} ids
+     * per statement.
+     */
+    @Override
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>(ids.size());
+        List<NodeId> batch = new ArrayList<NodeId>(bundleSelectBatchSize);
+        for (NodeId id : ids) {
+            batch.add(id);
+            if (batch.size() == bundleSelectBatchSize) {
+                loadBundleBatch(batch, result);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            loadBundleBatch(batch, result);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the bundles with the given ids with a single select statement
+     * and adds them to the given result map.
+     *
+     * @param ids the node ids of the bundles
+     * @param result the map to add the loaded bundles to
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    private void loadBundleBatch(List<NodeId> ids, Map<NodeId, NodePropBundle> result)
+            throws ItemStateException {
+        if (ids.size() == 1) {
+            NodeId id = ids.get(0);
+            NodePropBundle bundle = loadBundle(id);
+            if (bundle != null) {
+                result.put(id, bundle);
+            }
+            return;
+        }
+
+        List<Object> params = new ArrayList<Object>();
+        for (NodeId id : ids) {
+            params.addAll(Arrays.asList(getKey(id)));
+        }
+        ResultSet rs = null;
+        try {
+            rs = conHelper.exec(buildBundleSelectBatchSQL(ids.size()), params.toArray(), false, 0);
+            while (rs.next()) {
+                NodeId current;
+                if (getStorageModel() == SM_BINARY_KEYS) {
+                    current = new NodeId(rs.getBytes(1));
+                } else {
+                    current = new NodeId(rs.getLong(1), rs.getLong(2));
+                }
+                NodePropBundle bundle = readBundle(current, rs, getStorageModel() == SM_LONGLONG_KEYS ? 3 : 2);
+                result.put(current, bundle);
+            }
+        } catch (SQLException e) {
+            String msg = "failed to read " + ids.size() + " bundles (stacktrace on DEBUG log level): " + e;
+            log.error(msg);
+            log.debug("failed to read bundles: " + ids, e);
+            throw new ItemStateException(msg, e);
+        } finally {
+            DbUtility.close(rs);
+        }
+    }
+
     /**
      * Reads and parses a bundle from the BLOB in the given column of the
      * current row of the given result set. This is a helper method to
@@ -1160,6 +1271,36 @@ public class BundleDbPersistenceManager
 
     }
 
+    /**
+     * Builds the statement that selects the given number of bundles at once.
+     * The parameters of the statement are the keys of the bundles as returned
+     * by {@link #getKey(NodeId)}, in the same order as the ids.
+     *
+     * @param count the number of bundles to select
+     * @return the select statement
+     */
+    protected String buildBundleSelectBatchSQL(int count) {
+        StringBuilder sql = new StringBuilder();
+        if (getStorageModel() == SM_BINARY_KEYS) {
+            sql.append("select NODE_ID, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix).append("BUNDLE where NODE_ID in (");
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+        } else {
+            sql.append("select NODE_ID_HI, NODE_ID_LO, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix).append("BUNDLE where ");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(" or ");
+                }
+                sql.append("(NODE_ID_HI = ? and NODE_ID_LO = ?)");
+            }
+        }
+        return sql.toString();
+    }
+
     /**
      * Helper interface for closeable stores
      */
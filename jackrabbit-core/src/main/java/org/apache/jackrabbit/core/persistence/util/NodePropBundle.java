@@ -20,8 +20,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jcr.PropertyType;
@@ -30,6 +33,7 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.core.state.ChildNodeEntriesDelta;
 import org.apache.jackrabbit.core.state.PropertyState;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.spi.Name;
@@ -137,14 +141,62 @@ public class NodePropBundle {
         mixinTypeNames = state.getMixinTypeNames();
         isReferenceable = state.hasPropertyName(NameConstants.JCR_UUID);
         modCount = state.getModCount();
-        List<org.apache.jackrabbit.core.state.ChildNodeEntry> list = state.getChildNodeEntries();
-        childNodeEntries.clear();
-        for (org.apache.jackrabbit.core.state.ChildNodeEntry cne : list) {
-            addChildNodeEntry(cne.getName(), cne.getId());
+        ChildNodeEntriesDelta delta = state.getChildNodeEntriesDelta();
+        if (delta == null || !update(delta, state.getChildNodeEntryCount())) {
+            List<org.apache.jackrabbit.core.state.ChildNodeEntry> list = state.getChildNodeEntries();
+            childNodeEntries.clear();
+            for (org.apache.jackrabbit.core.state.ChildNodeEntry cne : list) {
+                addChildNodeEntry(cne.getName(), cne.getId());
+            }
         }
         sharedSet = state.getSharedSet();
     }
 
+    /**
+     * Applies the changes of the given delta to the child node entries,
+     * so that the complete list does not need to be copied from the node
+     * state when only a few child nodes have been added or removed.
+     *
+     * @param delta the changes to the child node entries
+     * @param count the expected number of child node entries afterwards
+     * @return <code>true</code> if the delta was applied, <code>false</code>
+     *         if it does not match these child node entries
+     */
+    private boolean update(ChildNodeEntriesDelta delta, int count) {
+        if (delta.getBaseSize() != childNodeEntries.size()) {
+            return false;
+        }
+        Set<NodeId> removed = new HashSet<NodeId>();
+        LinkedHashMap<NodeId, Name> appended = new LinkedHashMap<NodeId, Name>();
+        for (int i = 0; i < delta.size(); i++) {
+            NodeId childId = delta.getId(i);
+            if (delta.isRemoval(i)) {
+                if (appended.remove(childId) == null) {
+                    removed.add(childId);
+                }
+            } else {
+                appended.put(childId, delta.getName(i));
+            }
+        }
+        if (!removed.isEmpty()) {
+            int n = 0;
+            Iterator<ChildNodeEntry> iterator = childNodeEntries.iterator();
+            while (iterator.hasNext() && n < removed.size()) {
+                if (removed.contains(iterator.next().getId())) {
+                    iterator.remove();
+                    n++;
+                }
+            }
+            if (n < removed.size()) {
+                return false;
+            }
+        }
+        for (Map.Entry<NodeId, Name> entry : appended.entrySet()) {
+            addChildNodeEntry(entry.getValue(), entry.getKey());
+        }
+        return childNodeEntries.size() == count;
+    }
+
     /**
      * Creates a node state from the values of this bundle
      * @param pMgr the persistence manager
@@ -28,6 +28,7 @@ import org.apache.jackrabbit.core.nodetype.NodeTypeRegistry;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.core.state.SharedItemStateManager;
+import org.apache.jackrabbit.core.stats.StatManager;
 
 /**
  * Acts as an argument for the {@link QueryHandler} to keep the interface
@@ -221,6 +222,15 @@ public class QueryHandlerContext {
         return repositoryContext.getClusterNode();
     }
 
+    /**
+     * Returns the statistics manager of this repository.
+     *
+     * @return statistics manager
+     */
+    public StatManager getStatManager() {
+        return repositoryContext.getStatManager();
+    }
+
     public String getWorkspace() {
         return workspace;
     }
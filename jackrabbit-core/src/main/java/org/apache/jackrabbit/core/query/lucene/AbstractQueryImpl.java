@@ -105,6 +105,19 @@ public abstract class AbstractQueryImpl implements ExecutableQuery {
         return workspace.getQueryManager().getQOMFactory();
     }
 
+    /**
+     * Returns the key of this query in the query result cache of the search
+     * index. Queries with the same key must return the same hits from the
+     * same index, regardless of the session that executes them.
+     *
+     * @return the key or <code>null</code> if the results of this query
+     *         must not be cached.
+     * @throws RepositoryException if an error occurs.
+     */
+    public String getResultCacheKey() throws RepositoryException {
+        return null;
+    }
+
     /**
      * Returns <code>true</code> if this query node needs items under
      * /jcr:system to be queried.
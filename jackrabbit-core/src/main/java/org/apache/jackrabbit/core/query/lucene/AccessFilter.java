@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.query.lucene.AccessFilterCache.SegmentAccess;
+import org.apache.jackrabbit.core.query.lucene.AccessFilterCache.Segments;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * <code>AccessFilter</code> filters the query hits of a session with the
+ * access checks cached in an {@link AccessFilterCache}. As a lucene filter
+ * it excludes the documents that are known to be not readable before they
+ * are scored and sorted. Access checks on the query result first look up
+ * and otherwise record the outcome in the cache. The filter follows the
+ * generations of the cache, a query result that is iterated over a long
+ * time uses the entries of the current generation for each check.
+ */
+class AccessFilter extends Filter {
+
+    private static final long serialVersionUID = 2418537165243014128L;
+
+    /**
+     * The cache this filter belongs to.
+     */
+    private final AccessFilterCache cache;
+
+    /**
+     * The principal names of the session.
+     */
+    private final Set<String> names;
+
+    /**
+     * The cached access checks of the index segments in the generation of
+     * the cache that was current when they were last used.
+     */
+    private volatile Segments segments;
+
+    /**
+     * The index reader of the current query hits or <code>null</code> if
+     * the document numbers of the hits are unknown.
+     */
+    private IndexReader reader;
+
+    /**
+     * The index segments of {@link #reader}.
+     */
+    private IndexReader[] leaves;
+
+    /**
+     * The document number starts of the {@link #leaves}.
+     */
+    private int[] starts;
+
+    /**
+     * Creates a new filter.
+     *
+     * @param cache the cache of the access checks.
+     * @param names the principal names of the session.
+     */
+    AccessFilter(AccessFilterCache cache, Set<String> names) {
+        this.cache = cache;
+        this.names = names;
+        this.segments = cache.getSegments(names);
+    }
+
+    /**
+     * Sets the index reader that returns the query hits which are access
+     * checked next.
+     *
+     * @param reader the index reader or <code>null</code> if unknown.
+     */
+    void setIndexReader(IndexReader reader) {
+        this.reader = reader;
+        if (reader == null) {
+            leaves = null;
+            starts = null;
+        } else {
+            List<IndexReader> list = new ArrayList<IndexReader>();
+            getLeaves(list, reader);
+            leaves = list.toArray(new IndexReader[list.size()]);
+            starts = getStarts(leaves);
+        }
+    }
+
+    /**
+     * Checks if read access is granted to all <code>nodes</code>.
+     *
+     * @param nodes     the nodes to check.
+     * @param accessMgr the access manager of the session.
+     * @return <code>true</code> if read access is granted to all
+     *         <code>nodes</code>.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    boolean isAccessGranted(ScoreNode[] nodes, AccessManager accessMgr)
+            throws RepositoryException {
+        for (ScoreNode node : nodes) {
+            if (node != null && !isReadable(node, accessMgr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+        IndexReader[] leaves = this.leaves;
+        int[] starts = this.starts;
+        if (reader != this.reader) {
+            List<IndexReader> list = new ArrayList<IndexReader>();
+            getLeaves(list, reader);
+            leaves = list.toArray(new IndexReader[list.size()]);
+            starts = getStarts(leaves);
+        }
+        Segments segments = getSegments();
+        OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+        bits.set(0, reader.maxDoc());
+        for (int i = 0; i < leaves.length; i++) {
+            SegmentAccess access = segments.map.get(leaves[i]);
+            if (access != null) {
+                access.clearDenied(bits, starts[i]);
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Checks read access on a single node.
+     */
+    private boolean isReadable(ScoreNode node, AccessManager accessMgr)
+            throws RepositoryException {
+        Segments segments = getSegments();
+        SegmentAccess access = null;
+        int doc = -1;
+        if (reader != null) {
+            try {
+                int n = node.getDoc(reader);
+                int idx = readerIndex(n);
+                doc = n - starts[idx];
+                synchronized (segments.map) {
+                    access = segments.map.get(leaves[idx]);
+                    if (access == null) {
+                        access = new SegmentAccess();
+                        segments.map.put(leaves[idx], access);
+                    }
+                }
+                Boolean readable = access.isReadable(doc);
+                if (readable != null) {
+                    return readable;
+                }
+            } catch (IOException e) {
+                // node not in the index anymore, check without cache
+                access = null;
+            }
+        }
+        boolean readable;
+        try {
+            readable = accessMgr.canRead(null, node.getNodeId());
+        } catch (ItemNotFoundException e) {
+            // node deleted while query was executed
+            return true;
+        }
+        // do not record the check if access control was modified meanwhile
+        if (access != null && segments.generation == cache.getGeneration()) {
+            access.setReadable(doc, readable);
+        }
+        return readable;
+    }
+
+    /**
+     * Returns the cached access checks of the current generation of the
+     * cache.
+     */
+    private Segments getSegments() {
+        Segments s = segments;
+        if (s.generation != cache.getGeneration()) {
+            s = cache.getSegments(names);
+            segments = s;
+        }
+        return s;
+    }
+
+    /**
+     * Returns the index of the segment that contains document <code>n</code>.
+     */
+    private int readerIndex(int n) {
+        int idx = Arrays.binarySearch(starts, 0, leaves.length, n);
+        if (idx < 0) {
+            return -idx - 2;
+        }
+        // skip empty segments
+        while (idx + 1 < leaves.length && starts[idx + 1] == n) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * Adds the index segments of <code>reader</code> to <code>leaves</code>.
+     * Segments that are filtered for deleted documents are replaced by the
+     * underlying segment, which lives as long as the segment.
+     */
+    private static void getLeaves(List<IndexReader> leaves, IndexReader reader) {
+        if (reader instanceof MultiIndexReader) {
+            for (IndexReader r : ((MultiIndexReader) reader).getIndexReaders()) {
+                getLeaves(leaves, r);
+            }
+        } else if (reader instanceof ReadOnlyIndexReader) {
+            leaves.add(((ReadOnlyIndexReader) reader).getBase());
+        } else {
+            leaves.add(reader);
+        }
+    }
+
+    private static int[] getStarts(IndexReader[] leaves) {
+        int[] starts = new int[leaves.length];
+        int maxDoc = 0;
+        for (int i = 0; i < leaves.length; i++) {
+            starts[i] = maxDoc;
+            maxDoc += leaves[i].maxDoc();
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.security.Principal;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.security.authorization.AccessControlListener;
+import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * <code>AccessFilterCache</code> remembers the outcome of read access checks
+ * on query hits per set of principals. The outcome is kept in bitsets per
+ * index segment, which are released together with the segment. All entries
+ * are cleared when access control content is modified or a node is moved.
+ * <p>
+ * Every clear starts a new generation of the cache. Filters only look up and
+ * record access checks while the generation they were created in is
+ * current, and switch to the entries of the current generation otherwise.
+ * A check that was made with access control content that has been
+ * invalidated in the meantime is therefore never recorded. The cache is
+ * cleared again once the access control providers have processed a
+ * modification, see
+ * {@link org.apache.jackrabbit.core.security.authorization.AccessControlChangeObserver}.
+ * <p>
+ * The cache assumes that read access only depends on the principals of a
+ * session, which is the case for the default access manager.
+ */
+class AccessFilterCache implements AccessControlListener {
+
+    /**
+     * The segment access maps, keyed by the set of principal names.
+     */
+    private final Map<Set<String>, Segments> cache;
+
+    /**
+     * The current generation of the cache.
+     */
+    private volatile long generation = 0;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param size the maximum number of principal sets.
+     */
+    @SuppressWarnings("unchecked")
+    AccessFilterCache(int size) {
+        this.cache = new LRUMap(size);
+    }
+
+    /**
+     * Creates a filter for the query hits of the given session.
+     *
+     * @param session the session that executes a query.
+     * @return the filter, or <code>null</code> if the session is not access
+     *         checked.
+     */
+    AccessFilter createFilter(SessionImpl session) {
+        if (session.isSystem() || session.isAdmin()) {
+            return null;
+        }
+        Set<String> names = new HashSet<String>();
+        for (Principal p : session.getSubject().getPrincipals()) {
+            names.add(p.getName());
+        }
+        return new AccessFilter(this, names);
+    }
+
+    /**
+     * Returns the segment access map of the given principals in the current
+     * generation.
+     *
+     * @param names the set of principal names.
+     * @return the segment access map.
+     */
+    Segments getSegments(Set<String> names) {
+        synchronized (cache) {
+            Segments segments = cache.get(names);
+            if (segments == null) {
+                segments = new Segments(generation);
+                cache.put(names, segments);
+            }
+            return segments;
+        }
+    }
+
+    /**
+     * @return the current generation of the cache.
+     */
+    long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return the number of cached principal sets.
+     */
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Clears the cache and starts a new generation. Filters that were
+     * created before stop using the previous entries.
+     *
+     * @param modifications the access control modifications.
+     */
+    public void acModified(AccessControlModifications modifications) {
+        synchronized (cache) {
+            generation++;
+            cache.clear();
+        }
+    }
+
+    /**
+     * The segment access maps of a set of principals in a generation of the
+     * cache.
+     */
+    static final class Segments {
+
+        /**
+         * The generation of the cache these entries belong to.
+         */
+        final long generation;
+
+        /**
+         * The segment access, keyed by index segment.
+         */
+        final Map<IndexReader, SegmentAccess> map = Collections.synchronizedMap(
+                new WeakHashMap<IndexReader, SegmentAccess>());
+
+        Segments(long generation) {
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The outcome of the access checks on the documents of an index segment.
+     */
+    static final class SegmentAccess {
+
+        /**
+         * The documents that were checked.
+         */
+        private final BitSet checked = new BitSet();
+
+        /**
+         * The checked documents that are readable.
+         */
+        private final BitSet readable = new BitSet();
+
+        /**
+         * @param doc a document of the segment.
+         * @return whether the document is readable or <code>null</code> if
+         *         the document was not checked yet.
+         */
+        synchronized Boolean isReadable(int doc) {
+            return checked.get(doc) ? readable.get(doc) : null;
+        }
+
+        /**
+         * Records the outcome of an access check.
+         *
+         * @param doc      a document of the segment.
+         * @param readable whether the document is readable.
+         */
+        synchronized void setReadable(int doc, boolean readable) {
+            checked.set(doc);
+            this.readable.set(doc, readable);
+        }
+
+        /**
+         * Clears the bits of the documents that are known to be not
+         * readable.
+         *
+         * @param bits  the bits of the documents.
+         * @param start the number of the first document of this segment in
+         *              <code>bits</code>.
+         */
+        synchronized void clearDenied(OpenBitSet bits, int start) {
+            for (int i = checked.nextSetBit(0); i >= 0; i = checked.nextSetBit(i + 1)) {
+                if (!readable.get(i)) {
+                    bits.fastClear(start + i);
+                }
+            }
+        }
+    }
+}
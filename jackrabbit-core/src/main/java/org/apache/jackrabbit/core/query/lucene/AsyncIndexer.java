@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>AsyncIndexer</code> applies the updates of a {@link SearchIndex} in
+ * the background. A save only appends the ids of the changed nodes to a
+ * persisted {@link IndexingQueueStore}. A background task periodically
+ * creates the documents of the pending nodes and updates the index in
+ * batches. Pending nodes that were not applied yet when the repository
+ * stopped are applied after the next start.
+ */
+class AsyncIndexer {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AsyncIndexer.class);
+
+    /**
+     * The name of the log files of the queue store.
+     */
+    private static final String QUEUE_NAME = "async_indexing";
+
+    /**
+     * The maximum number of nodes that are applied to the index at once.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The search index.
+     */
+    private final SearchIndex handler;
+
+    /**
+     * The uuids of the pending nodes.
+     */
+    private final IndexingQueueStore store;
+
+    /**
+     * The uuids of the nodes that are currently applied to the index.
+     */
+    private final Set<String> applying = new HashSet<String>();
+
+    /**
+     * The uuids of nodes that changed again while being applied. They stay
+     * pending for the next run.
+     */
+    private final Set<String> changed = new HashSet<String>();
+
+    /**
+     * Serializes the runs that apply the pending nodes.
+     */
+    private final Object applyLock = new Object();
+
+    /**
+     * The background task.
+     */
+    private final ScheduledFuture<?> task;
+
+    /**
+     * Creates a new <code>AsyncIndexer</code> and schedules the background
+     * task.
+     *
+     * @param handler   the search index.
+     * @param directory the directory where the queue store is persisted.
+     * @param lag       the delay in milliseconds between two runs of the
+     *                  background task.
+     * @throws IOException if the queue store cannot be read.
+     */
+    AsyncIndexer(SearchIndex handler, Directory directory, long lag)
+            throws IOException {
+        this.handler = handler;
+        this.store = new IndexingQueueStore(directory, QUEUE_NAME);
+        if (store.size() > 0) {
+            log.info("{} nodes pending from previous run", store.size());
+        }
+        this.task = handler.getContext().getExecutor().scheduleWithFixedDelay(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            apply();
+                        } catch (Exception e) {
+                            log.warn("Unable to apply pending index updates", e);
+                        }
+                    }
+                }, lag, lag, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds nodes to the queue.
+     *
+     * @param ids the ids of added, changed or removed nodes.
+     * @throws IOException if the queue store cannot be written.
+     */
+    void enqueue(Collection<NodeId> ids) throws IOException {
+        List<String> uuids = new ArrayList<String>(ids.size());
+        for (NodeId id : ids) {
+            uuids.add(id.toString());
+        }
+        synchronized (store) {
+            for (String uuid : uuids) {
+                if (applying.contains(uuid)) {
+                    changed.add(uuid);
+                }
+            }
+            store.addUUIDs(uuids);
+        }
+    }
+
+    /**
+     * @return the number of pending nodes.
+     */
+    int getNumPending() {
+        synchronized (store) {
+            return store.size();
+        }
+    }
+
+    /**
+     * Applies all pending nodes to the index.
+     *
+     * @throws IOException if an error occurs while updating the index.
+     * @throws RepositoryException if an error occurs while indexing a node.
+     */
+    void apply() throws IOException, RepositoryException {
+        synchronized (applyLock) {
+            String[] pending;
+            synchronized (store) {
+                pending = store.getPending();
+            }
+            for (int i = 0; i < pending.length; i += BATCH_SIZE) {
+                List<String> batch = new ArrayList<String>(BATCH_SIZE);
+                for (int j = i; j < Math.min(i + BATCH_SIZE, pending.length); j++) {
+                    batch.add(pending[j]);
+                }
+                apply(batch);
+            }
+        }
+    }
+
+    /**
+     * Stops the background task and applies the pending nodes.
+     */
+    void close() {
+        task.cancel(false);
+        try {
+            apply();
+        } catch (Exception e) {
+            log.warn("Unable to apply pending index updates, "
+                    + "will retry after restart", e);
+        }
+        synchronized (store) {
+            store.close();
+        }
+    }
+
+    /**
+     * Applies the given nodes to the index and removes them from the queue.
+     *
+     * @param batch the uuids of the nodes.
+     */
+    private void apply(List<String> batch)
+            throws IOException, RepositoryException {
+        synchronized (store) {
+            applying.addAll(batch);
+        }
+        try {
+            ItemStateManager ism = handler.getContext().getItemStateManager();
+            List<NodeId> removed = new ArrayList<NodeId>(batch.size());
+            List<NodeState> added = new ArrayList<NodeState>(batch.size());
+            for (String uuid : batch) {
+                NodeId id;
+                try {
+                    id = new NodeId(uuid);
+                } catch (IllegalArgumentException e) {
+                    log.warn("Invalid UUID in indexing queue store: " + uuid);
+                    continue;
+                }
+                // the node may have been indexed before
+                removed.add(id);
+                try {
+                    if (ism.hasItemState(id)) {
+                        added.add((NodeState) ism.getItemState(id));
+                    }
+                } catch (ItemStateException e) {
+                    log.debug("Node {} does not exist anymore", id);
+                }
+            }
+            handler.applyUpdates(removed.iterator(), added.iterator());
+            synchronized (store) {
+                List<String> done = new ArrayList<String>(batch);
+                done.removeAll(changed);
+                store.removeUUIDs(done);
+            }
+            log.debug("applied {} pending nodes to the index", batch.size());
+        } finally {
+            synchronized (store) {
+                applying.clear();
+                changed.clear();
+            }
+        }
+    }
+}
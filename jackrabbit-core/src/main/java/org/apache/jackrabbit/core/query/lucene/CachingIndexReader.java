@@ -16,8 +16,12 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel.MapMode;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.BitSet;
@@ -28,6 +32,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.CorruptIndexException;
@@ -37,6 +42,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.ReaderUtil;
@@ -75,11 +81,13 @@ class CachingIndexReader extends FilterIndexReader {
     private final BitSet shareableNodes;
 
     /**
-     * Cache of nodes parent relation. If an entry in the array is >= 0,
-     * then that means the node with the document number = array-index has the
-     * node with the value at that position as parent.
+     * Cache of nodes parent relation. If an entry in the buffer is >= 0,
+     * then that means the node with the document number = buffer-index has
+     * the node with the value at that position as parent. If the cache was
+     * persisted for this index segment, the buffer is a private (copy on
+     * write) memory mapping of the persisted file.
      */
-    private final int[] inSegmentParents;
+    private final IntBuffer inSegmentParents;
 
     /**
      * Cache of nodes parent relation that point to a foreign index segment.
@@ -130,12 +138,18 @@ class CachingIndexReader extends FilterIndexReader {
             throws IOException {
         super(delegatee);
         this.cache = cache;
-        this.inSegmentParents = new int[delegatee.maxDoc()];
-        Arrays.fill(this.inSegmentParents, -1);
         this.shareableNodes = initShareableNodes(delegatee);
         this.cacheInitializer = new CacheInitializer(delegatee);
-        if (initCache) {
-            cacheInitializer.run();
+        IntBuffer persisted = cacheInitializer.loadCacheFromFile();
+        if (persisted != null) {
+            this.inSegmentParents = persisted;
+        } else {
+            int[] parents = new int[delegatee.maxDoc()];
+            Arrays.fill(parents, -1);
+            this.inSegmentParents = IntBuffer.wrap(parents);
+            if (initCache) {
+                cacheInitializer.run();
+            }
         }
         // limit cache to 1% of maxDoc(), but at least 10.
         this.docNumber2id = Collections.synchronizedMap(
@@ -170,7 +184,7 @@ class CachingIndexReader extends FilterIndexReader {
     DocId getParent(int n, BitSet deleted) throws IOException {
         DocId parent;
         boolean existing = false;
-        int parentDocNum = inSegmentParents[n];
+        int parentDocNum = inSegmentParents.get(n);
         if (parentDocNum != -1) {
             parent = DocId.create(parentDocNum);
         } else {
@@ -226,7 +240,7 @@ class CachingIndexReader extends FilterIndexReader {
             // finally put to cache
             if (plainDocId != -1) {
                 // PlainDocId
-                inSegmentParents[n] = plainDocId;
+                inSegmentParents.put(n, plainDocId);
             } else {
                 // UUIDDocId
                 foreignParentDocIds.put(n, parent);
@@ -235,7 +249,7 @@ class CachingIndexReader extends FilterIndexReader {
                     // inSegmentParents, which was invalid and is replaced
                     // with a UUIDDocId (points to a foreign segment).
                     // mark as unknown
-                    inSegmentParents[n] = -1;
+                    inSegmentParents.put(n, -1);
                 }
             }
         }
@@ -414,13 +428,10 @@ class CachingIndexReader extends FilterIndexReader {
                     // immediately return when stop is requested
                     return;
                 }
-                boolean initCacheFromFile = loadCacheFromFile();
-                if (!initCacheFromFile) {
-                    // file-based cache is not available, load from the
-                    // repository
-                    log.debug("persisted cache is not available, will load directly from the repository.");
-                    initializeParents(reader);
-                }
+                // file-based cache is not available, load from the
+                // repository
+                log.debug("persisted cache is not available, will load directly from the repository.");
+                initializeParents(reader);
             } catch (Exception e) {
                 // only log warn message during regular operation
                 if (!stopRequested) {
@@ -549,7 +560,7 @@ class CachingIndexReader extends FilterIndexReader {
                         }
                     }
                     if (parentDocId != -1) {
-                        inSegmentParents[info.docId] = parentDocId;
+                        inSegmentParents.put(info.docId, parentDocId);
                     } else if (info.parent != null) {
                         foreignParents++;
                         foreignParentDocIds.put(info.docId, DocId.create(info.parent));
@@ -567,12 +578,12 @@ class CachingIndexReader extends FilterIndexReader {
                 NumberFormat nf = NumberFormat.getPercentInstance();
                 nf.setMaximumFractionDigits(1);
                 time = System.currentTimeMillis() - time;
-                if (inSegmentParents.length > 0) {
-                    foreignParents /= inSegmentParents.length;
+                if (inSegmentParents.limit() > 0) {
+                    foreignParents /= inSegmentParents.limit();
                 }
                 log.debug("initialized {} DocIds in {} ms, {} foreign parents",
                         new Object[]{
-                            inSegmentParents.length,
+                            inSegmentParents.limit(),
                             time,
                             nf.format(foreignParents)
                         });
@@ -633,8 +644,8 @@ class CachingIndexReader extends FilterIndexReader {
             IndexOutput io = null;
             try {
                 io = reader.directory().createOutput(FILE_CACHE_NAME_ARRAY);
-                for (int parent : inSegmentParents) {
-                    io.writeInt(parent);
+                for (int i = 0; i < inSegmentParents.limit(); i++) {
+                    io.writeInt(inSegmentParents.get(i));
                 }
             } catch (Exception e) {
                 log.error(
@@ -649,29 +660,48 @@ class CachingIndexReader extends FilterIndexReader {
 
         /**
          * Loads the cache info {@link #inSegmentParents} from the file
-         * {@link #FILE_CACHE_NAME_ARRAY}.
+         * {@link #FILE_CACHE_NAME_ARRAY}. The file is memory mapped if the
+         * index is stored in the file system, which makes opening a reader
+         * on an index segment with a persisted cache an O(1) operation and
+         * keeps the cache off the heap. Otherwise the file is read into a
+         * heap buffer.
          * 
          * see https://issues.apache.org/jira/browse/JCR-3107
          * 
-         * @return true if the cache has been initialized of false if the cache
-         *         file does not exist yet, or an error happened
+         * @return the cache or <code>null</code> if the cache file does not
+         *         exist yet, or an error happened
          */
-        private boolean loadCacheFromFile() throws IOException {
-            IndexInput ii = null;
+        IntBuffer loadCacheFromFile() throws IOException {
+            Directory dir = reader.directory();
+            int maxDoc = reader.maxDoc();
             try {
+                if (!dir.fileExists(FILE_CACHE_NAME_ARRAY)) {
+                    // expected in the case where the file-based cache has
+                    // not been initialized yet
+                    return null;
+                }
+                long length = dir.fileLength(FILE_CACHE_NAME_ARRAY);
+                if (length != 4L * maxDoc) {
+                    throw new IOException("Unexpected length of "
+                            + FILE_CACHE_NAME_ARRAY + ": " + length
+                            + ", expected " + (4L * maxDoc));
+                }
                 long time = System.currentTimeMillis();
-                ii = reader.directory().openInput(FILE_CACHE_NAME_ARRAY);
-                for (int i = 0; i < inSegmentParents.length; i++) {
-                    inSegmentParents[i] = ii.readInt();
+                IntBuffer parents = null;
+                File file = FSDirectoryManager.getFile(dir, FILE_CACHE_NAME_ARRAY);
+                if (file != null && length <= Integer.MAX_VALUE) {
+                    parents = mapCacheFile(file, length);
+                }
+                if (parents == null) {
+                    parents = readCacheFile(dir, maxDoc);
                 }
                 log.debug(
                         "persisted cache initialized {} DocIds in {} ms",
-                        new Object[] { inSegmentParents.length,
+                        new Object[] { maxDoc,
                                 System.currentTimeMillis() - time });
-                return true;
+                return parents;
             } catch (FileNotFoundException ignore) {
-                // expected in the case where the file-based cache has not been
-                // initialized yet
+                // removed concurrently
             } catch (IOException ignore) {
                 log.warn(
                         "Saved state of CachingIndexReader is corrupt, will try to remove offending file "
@@ -679,13 +709,57 @@ class CachingIndexReader extends FilterIndexReader {
                 // In the case where is a read error, the cache file is removed
                 // so it can be recreated after
                 // the cache loads the data from the repository directly
-                reader.directory().deleteFile(FILE_CACHE_NAME_ARRAY);
-            } finally {
-                if (ii != null) {
-                    ii.close();
+                dir.deleteFile(FILE_CACHE_NAME_ARRAY);
+            }
+            return null;
+        }
+
+        /**
+         * Maps the given cache file into memory. The mapping is private,
+         * that is, parents resolved later on by this reader are not written
+         * to the file.
+         *
+         * @param file   the cache file.
+         * @param length the length of the file.
+         * @return the mapped cache or <code>null</code> if the file cannot
+         *         be mapped.
+         */
+        private IntBuffer mapCacheFile(File file, long length) {
+            try {
+                // a private mapping requires a channel open for writing
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    return raf.getChannel().map(
+                            MapMode.PRIVATE, 0, length).asIntBuffer();
+                } finally {
+                    raf.close();
                 }
+            } catch (IOException e) {
+                log.debug("Unable to map " + file + ": " + e);
+                return null;
+            }
+        }
+
+        /**
+         * Reads the cache file into a heap buffer.
+         *
+         * @param dir    the directory of the index.
+         * @param maxDoc the number of documents in the index.
+         * @return the cache.
+         * @throws IOException if an error occurs while reading the file.
+         */
+        private IntBuffer readCacheFile(Directory dir, int maxDoc)
+                throws IOException {
+            int[] parents = new int[maxDoc];
+            IndexInput ii = dir.openInput(FILE_CACHE_NAME_ARRAY);
+            try {
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = ii.readInt();
+                }
+            } finally {
+                ii.close();
             }
-            return false;
+            return IntBuffer.wrap(parents);
         }
     }
 
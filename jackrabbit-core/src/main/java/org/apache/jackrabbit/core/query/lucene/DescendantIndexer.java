@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ChildNodeEntry;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>DescendantIndexer</code> re-indexes the descendants of moved nodes
+ * in the background, when the ancestors of nodes are indexed. A move only
+ * appends the id of the moved node to a persisted
+ * {@link IndexingQueueStore}. A background task re-indexes the child nodes
+ * of each pending node in batches and queues the children that have child
+ * nodes in turn, so that neither the subtree nor its documents are held in
+ * memory at once. Pending nodes that were not processed yet when the
+ * repository stopped are processed after the next start.
+ */
+class DescendantIndexer {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(DescendantIndexer.class);
+
+    /**
+     * The name of the log files of the queue store.
+     */
+    private static final String QUEUE_NAME = "descendant_indexing";
+
+    /**
+     * The maximum number of child nodes that are re-indexed at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The search index.
+     */
+    private final SearchIndex handler;
+
+    /**
+     * The uuids of the nodes whose descendants are pending.
+     */
+    private final IndexingQueueStore store;
+
+    /**
+     * Serializes the runs that process the pending nodes.
+     */
+    private final Object applyLock = new Object();
+
+    /**
+     * The background task.
+     */
+    private final ScheduledFuture<?> task;
+
+    /**
+     * Set once this indexer is closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new <code>DescendantIndexer</code> and schedules the
+     * background task.
+     *
+     * @param handler   the search index.
+     * @param directory the directory where the queue store is persisted.
+     * @param delay     the delay in milliseconds between two runs of the
+     *                  background task.
+     * @throws IOException if the queue store cannot be read.
+     */
+    DescendantIndexer(SearchIndex handler, Directory directory, long delay)
+            throws IOException {
+        this.handler = handler;
+        this.store = new IndexingQueueStore(directory, QUEUE_NAME);
+        if (store.size() > 0) {
+            log.info("descendants of {} moved nodes pending from previous run",
+                    store.size());
+        }
+        this.task = handler.getContext().getExecutor().scheduleWithFixedDelay(
+                new Runnable() {
+                    public void run() {
+                        try {
+                            apply();
+                        } catch (Exception e) {
+                            log.warn("Unable to re-index descendants of moved nodes", e);
+                        }
+                    }
+                }, delay, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds moved nodes to the queue.
+     *
+     * @param ids the ids of the moved nodes.
+     * @throws IOException if the queue store cannot be written.
+     */
+    void enqueue(Collection<NodeId> ids) throws IOException {
+        List<String> uuids = new ArrayList<String>(ids.size());
+        for (NodeId id : ids) {
+            uuids.add(id.toString());
+        }
+        synchronized (store) {
+            store.addUUIDs(uuids);
+        }
+    }
+
+    /**
+     * @return the number of nodes whose descendants are pending.
+     */
+    int getNumPending() {
+        synchronized (store) {
+            return store.size();
+        }
+    }
+
+    /**
+     * Re-indexes the descendants of all pending nodes.
+     *
+     * @throws IOException if an error occurs while updating the index.
+     * @throws RepositoryException if an error occurs while indexing a node.
+     */
+    void apply() throws IOException, RepositoryException {
+        synchronized (applyLock) {
+            for (;;) {
+                String[] pending;
+                synchronized (store) {
+                    pending = store.getPending();
+                }
+                if (pending.length == 0) {
+                    return;
+                }
+                for (String uuid : pending) {
+                    if (closed) {
+                        return;
+                    }
+                    apply(uuid);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the background task. The pending nodes are processed after the
+     * next start.
+     */
+    void close() {
+        closed = true;
+        task.cancel(false);
+        synchronized (applyLock) {
+            synchronized (store) {
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Re-indexes the child nodes of the given node, queues the child nodes
+     * that have child nodes and removes the node from the queue.
+     *
+     * @param uuid the uuid of the node.
+     */
+    private void apply(String uuid) throws IOException, RepositoryException {
+        List<NodeId> children = new ArrayList<NodeId>();
+        try {
+            NodeId id = new NodeId(uuid);
+            ItemStateManager ism = handler.getContext().getItemStateManager();
+            if (ism.hasItemState(id)) {
+                NodeState state = (NodeState) ism.getItemState(id);
+                for (ChildNodeEntry child : state.getChildNodeEntries()) {
+                    children.add(child.getId());
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid UUID in indexing queue store: " + uuid);
+        } catch (ItemStateException e) {
+            log.debug("Node {} does not exist anymore", uuid);
+        }
+
+        for (int i = 0; i < children.size(); i += BATCH_SIZE) {
+            List<NodeId> batch = children.subList(
+                    i, Math.min(i + BATCH_SIZE, children.size()));
+            // queue the next level before this one is done, which keeps
+            // the queue complete if the repository stops in between
+            enqueue(handler.reindexNodes(batch));
+        }
+        synchronized (store) {
+            store.removeUUIDs(Collections.singletonList(uuid));
+        }
+        log.debug("re-indexed {} children of moved node {}",
+                children.size(), uuid);
+    }
+}
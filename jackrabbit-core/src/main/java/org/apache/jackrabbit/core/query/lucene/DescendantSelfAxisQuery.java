@@ -21,6 +21,7 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -55,14 +56,16 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
     private static final Logger log = LoggerFactory.getLogger(DescendantSelfAxisQuery.class);
 
     /**
-     * The context query
+     * The maximum number of context hits for which the descendants are
+     * looked up with {@link FieldNames#ANCESTORS} terms. With more context
+     * hits the hierarchy of the sub hits is walked instead.
      */
-    private final Query contextQuery;
+    private static final int MAX_ANCESTOR_TERMS = 1024;
 
     /**
-     * The scorer of the context query
+     * The context query
      */
-    private Scorer contextScorer;
+    private final Query contextQuery;
 
     /**
      * The sub query to filter
@@ -75,11 +78,6 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      */
     private final int minLevels;
 
-    /**
-     * The scorer of the sub query to filter
-     */
-    private Scorer subScorer;
-
     /**
      * Creates a new <code>DescendantSelfAxisQuery</code> based on a
      * <code>context</code> and matches all descendants of the context nodes.
@@ -142,6 +140,13 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
         return contextQuery;
     }
 
+    /**
+     * @return the sub query of this <code>DescendantSelfAxisQuery</code>.
+     */
+    Query getSubQuery() {
+        return subQuery;
+    }
+
     /**
      * @return <code>true</code> if the sub query of this <code>DescendantSelfAxisQuery</code>
      *         matches all nodes.
@@ -230,7 +235,8 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
     public QueryHits execute(final JackrabbitIndexSearcher searcher,
                              final SessionImpl session,
                              final Sort sort) throws IOException {
-        if (sort.getSort().length == 0 && subQueryMatchesAll()) {
+        if (sort.getSort().length == 0 && subQueryMatchesAll()
+                && !useAncestors(searcher)) {
             // maps path String to ScoreNode
             Map<String, ScoreNode> startingPoints = new TreeMap<String, ScoreNode>();
             QueryHits result = searcher.evaluate(getContextQuery());
@@ -329,6 +335,19 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
         }
     }
 
+    /**
+     * Returns <code>true</code> if the descendants of the context nodes can
+     * be looked up with {@link FieldNames#ANCESTORS} terms.
+     *
+     * @param searcher the searcher.
+     * @return whether the ancestors are indexed and the minimal levels
+     *         between context and sub nodes are at most one.
+     */
+    private boolean useAncestors(Searcher searcher) {
+        return minLevels <= 1 && searcher instanceof JackrabbitIndexSearcher
+                && ((JackrabbitIndexSearcher) searcher).isIndexAncestors();
+    }
+
     //--------------------< DescendantSelfAxisWeight >--------------------------
 
     /**
@@ -392,10 +411,12 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
          */
         public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder,
                 boolean topScorer) throws IOException {
-            contextScorer = searcher.createNormalizedWeight(contextQuery).scorer(reader, scoreDocsInOrder, false);
-            subScorer = searcher.createNormalizedWeight(subQuery).scorer(reader, scoreDocsInOrder, false);
+            Scorer contextScorer = searcher.createNormalizedWeight(contextQuery).scorer(reader, scoreDocsInOrder, false);
+            Scorer subScorer = searcher.createNormalizedWeight(subQuery).scorer(reader, scoreDocsInOrder, false);
             HierarchyResolver resolver = (HierarchyResolver) reader;
-            return new DescendantSelfAxisScorer(searcher.getSimilarity(), reader, resolver);
+            return new DescendantSelfAxisScorer(searcher.getSimilarity(),
+                    reader, resolver, contextScorer, subScorer,
+                    useAncestors(searcher));
         }
 
         /**
@@ -413,16 +434,43 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      */
     private class DescendantSelfAxisScorer extends Scorer {
 
+        /**
+         * The index reader.
+         */
+        private final IndexReader reader;
+
         /**
          * The <code>HierarchyResolver</code> of the index.
          */
         private final HierarchyResolver hResolver;
 
+        /**
+         * The scorer of the context query
+         */
+        private final Scorer contextScorer;
+
+        /**
+         * The scorer of the sub query to filter
+         */
+        private final Scorer subScorer;
+
         /**
          * BitSet storing the id's of selected documents
          */
         private final BitSet contextHits;
 
+        /**
+         * Whether the ancestors of nodes are indexed.
+         */
+        private final boolean indexAncestors;
+
+        /**
+         * The descendants of the context hits looked up with
+         * {@link FieldNames#ANCESTORS} terms, or <code>null</code> if the
+         * hierarchy is walked for each sub hit.
+         */
+        private BitSet descendants;
+
         /**
          * Set <code>true</code> once the context hits have been calculated.
          */
@@ -454,12 +502,22 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
          * @param similarity the <code>Similarity</code> instance to use.
          * @param reader     for index access.
          * @param hResolver  the hierarchy resolver of <code>reader</code>.
+         * @param contextScorer the scorer of the context query.
+         * @param subScorer  the scorer of the sub query.
+         * @param indexAncestors whether the ancestors of nodes are indexed.
          */
         protected DescendantSelfAxisScorer(Similarity similarity,
                                            IndexReader reader,
-                                           HierarchyResolver hResolver) {
+                                           HierarchyResolver hResolver,
+                                           Scorer contextScorer,
+                                           Scorer subScorer,
+                                           boolean indexAncestors) {
             super(similarity);
+            this.reader = reader;
             this.hResolver = hResolver;
+            this.indexAncestors = indexAncestors;
+            this.contextScorer = contextScorer;
+            this.subScorer = subScorer;
             // todo reuse BitSets?
             this.contextHits = new BitSet(reader.maxDoc());
         }
@@ -517,6 +575,10 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                 return currentDoc;
             }
 
+            if (subScorer == null) {
+                currentDoc = NO_MORE_DOCS;
+                return currentDoc;
+            }
             currentDoc = subScorer.advance(target);
             if (currentDoc == NO_MORE_DOCS) {
                 return NO_MORE_DOCS;
@@ -537,6 +599,10 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                         }
                     }); // find all
                 }
+                if (indexAncestors
+                        && contextHits.cardinality() <= MAX_ANCESTOR_TERMS) {
+                    descendants = collectDescendants();
+                }
                 contextHitsCalculated = true;
                 time = System.currentTimeMillis() - time;
                 if (log.isDebugEnabled()) {
@@ -550,6 +616,32 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
             }
         }
 
+        /**
+         * Collects the descendants of the context hits with the
+         * {@link FieldNames#ANCESTORS} terms of the context nodes.
+         *
+         * @return the descendants of the context hits.
+         * @throws IOException if an error occurs while reading from the index.
+         */
+        private BitSet collectDescendants() throws IOException {
+            BitSet docs = new BitSet(reader.maxDoc());
+            TermDocs tDocs = reader.termDocs();
+            try {
+                for (int i = contextHits.nextSetBit(0); i >= 0;
+                        i = contextHits.nextSetBit(i + 1)) {
+                    String uuid = reader.document(
+                            i, FieldSelectors.UUID).get(FieldNames.UUID);
+                    tDocs.seek(new Term(FieldNames.ANCESTORS, uuid));
+                    while (tDocs.next()) {
+                        docs.set(tDocs.doc());
+                    }
+                }
+            } finally {
+                tDocs.close();
+            }
+            return docs;
+        }
+
         /**
          * Returns <code>true</code> if <code>doc</code> is a valid match from
          * the sub scorer against the context hits. The caller must ensure
@@ -565,6 +657,10 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                 return true;
             }
 
+            if (descendants != null) {
+                return descendants.get(doc);
+            }
+
             // check if doc is a descendant of one of the context nodes
             pDocs = hResolver.getParents(doc, pDocs);
 
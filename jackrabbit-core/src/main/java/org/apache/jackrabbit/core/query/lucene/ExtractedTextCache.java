@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jackrabbit.core.data.DataIdentifier;
+import org.apache.tika.metadata.Metadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>ExtractedTextCache</code> persists the text extracted from binaries
+ * in the data store. The text is keyed by the data identifier, which is
+ * derived from the content of a binary. Identical binaries and binaries
+ * that are indexed again, e.g. when the index is re-created, are therefore
+ * only extracted once.
+ * <p>
+ * The text of a binary is kept in a compressed file. The files are
+ * distributed over three levels of directories, the same way the file data
+ * store distributes its records. A file is only used if the content type and
+ * encoding of the binary match and if it was extracted with at least the
+ * current maximum extract length, or was not truncated.
+ */
+class ExtractedTextCache {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(ExtractedTextCache.class);
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The suffix of the text files.
+     */
+    private static final String SUFFIX = ".txt.gz";
+
+    /**
+     * The prefix of temporary files.
+     */
+    private static final String TMP = "tmp";
+
+    /**
+     * The encoding of the text.
+     */
+    private static final String UTF8 = "UTF-8";
+
+    /**
+     * The root directory of the cache.
+     */
+    private final File directory;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param directory the root directory of the cache.
+     * @throws IOException if the directory cannot be created.
+     */
+    ExtractedTextCache(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached text of a binary.
+     *
+     * @param identifier the data identifier of the binary.
+     * @param type       the type of the binary, see {@link #getType}.
+     * @param maxLength  the maximum number of characters to extract.
+     * @return the text or <code>null</code> if not cached.
+     */
+    String get(DataIdentifier identifier, String type, int maxLength) {
+        File file = getFile(identifier);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new GZIPInputStream(
+                    new BufferedInputStream(new FileInputStream(file))));
+            try {
+                if (in.readInt() != VERSION
+                        || !in.readUTF().equals(type)) {
+                    return null;
+                }
+                int limit = in.readInt();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                String text = new String(bytes, UTF8);
+                if (text.length() < limit || limit >= maxLength) {
+                    // complete, or extracted with at least the current limit
+                    return text.length() > maxLength
+                            ? text.substring(0, maxLength) : text;
+                }
+                return null;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            log.warn("Unable to read extracted text of " + identifier, e);
+            return null;
+        }
+    }
+
+    /**
+     * Caches the text of a binary.
+     *
+     * @param identifier the data identifier of the binary.
+     * @param type       the type of the binary, see {@link #getType}.
+     * @param maxLength  the maximum number of characters that were
+     *                   extracted.
+     * @param text       the extracted text.
+     */
+    void put(DataIdentifier identifier, String type, int maxLength,
+             String text) {
+        File file = getFile(identifier);
+        File parent = file.getParentFile();
+        try {
+            if (!parent.isDirectory() && !parent.mkdirs()
+                    && !parent.isDirectory()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+            File temporary = File.createTempFile(TMP, null, parent);
+            DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temporary))));
+            try {
+                out.writeInt(VERSION);
+                out.writeUTF(type);
+                out.writeInt(maxLength);
+                byte[] bytes = text.getBytes(UTF8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } finally {
+                out.close();
+            }
+            // replace atomically, readers never see a partial file
+            if (!temporary.renameTo(file)) {
+                file.delete();
+                if (!temporary.renameTo(file)) {
+                    temporary.delete();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Unable to cache extracted text of " + identifier, e);
+        }
+    }
+
+    /**
+     * Returns the file of a binary.
+     */
+    private File getFile(DataIdentifier identifier) {
+        String string = identifier.toString();
+        File file = directory;
+        file = new File(file, string.substring(0, 2));
+        file = new File(file, string.substring(2, 4));
+        file = new File(file, string.substring(4, 6));
+        return new File(file, string + SUFFIX);
+    }
+
+    /**
+     * Returns the content type and encoding of a binary, which determine how
+     * its text is extracted. Must be called before the binary is parsed,
+     * parsers add detected values to the metadata.
+     *
+     * @param metadata the metadata of the binary.
+     * @return the type of the binary.
+     */
+    static String getType(Metadata metadata) {
+        String encoding = metadata.get(Metadata.CONTENT_ENCODING);
+        return metadata.get(Metadata.CONTENT_TYPE)
+                + (encoding != null ? ";" + encoding : "");
+    }
+}
@@ -51,6 +51,13 @@ public class FieldNames {
      */
     public static final String PARENT = "_:PARENT".intern();
 
+    /**
+     * Name of the field that contains the UUIDs of all ancestors of the node.
+     * Terms are not tokenized and not stored, only indexed. The field is only
+     * present if {@link SearchIndex#isIndexAncestors()} is enabled.
+     */
+    public static final String ANCESTORS = "_:ANCESTORS".intern();
+
     /**
      * Name of the field that contains the label of the node. Terms are not
      * tokenized.
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import org.apache.jackrabbit.core.query.lucene.directory.IndexInputStream;
+import org.apache.jackrabbit.core.query.lucene.directory.IndexOutputStream;
 import org.apache.lucene.store.Directory;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -24,9 +25,15 @@ import org.slf4j.Logger;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 
@@ -36,6 +43,11 @@ import java.util.HashSet;
  * was also persisted to disk. Starting with 1.5 the pending
  * nodes are marked directly in the index with a special field.
  * See {@link FieldNames#REINDEXING_REQUIRED}.
+ * <p>
+ * A store created with a name persists the uuids added and removed with
+ * {@link #addUUIDs(Collection)} and {@link #removeUUIDs(Collection)} in a
+ * log file. The log is rewritten to a new generation once it contains many
+ * more entries than pending uuids. See {@link AsyncIndexer}.
  */
 class IndexingQueueStore {
 
@@ -64,6 +76,17 @@ class IndexingQueueStore {
      */
     private static final String INDEXING_QUEUE_FILE = "indexing_queue.log";
 
+    /**
+     * The .log extension.
+     */
+    private static final String DOT_LOG = ".log";
+
+    /**
+     * The minimum number of entries in the log file of a persisted store
+     * before it is rewritten.
+     */
+    private static final int MIN_COMPACT_ENTRIES = 10000;
+
     /**
      * The UUID Strings of the pending documents.
      */
@@ -74,6 +97,27 @@ class IndexingQueueStore {
      */
     private final Directory dir;
 
+    /**
+     * The name of a persisted store or <code>null</code> if changes are not
+     * persisted.
+     */
+    private final String name;
+
+    /**
+     * The generation of the current log file of a persisted store.
+     */
+    private long generation;
+
+    /**
+     * The number of entries in the current log file.
+     */
+    private int entryCount;
+
+    /**
+     * Writer to the current log file.
+     */
+    private Writer out;
+
     /**
      * Creates a new <code>IndexingQueueStore</code> using the given directory.
      *
@@ -82,7 +126,33 @@ class IndexingQueueStore {
      */
     IndexingQueueStore(Directory directory) throws IOException {
         this.dir = directory;
-        readStore();
+        this.name = null;
+        readStore(INDEXING_QUEUE_FILE, pending);
+    }
+
+    /**
+     * Creates a new persisted <code>IndexingQueueStore</code> using the given
+     * directory. The pending uuids of all log files with the given name are
+     * read and written to a new log file.
+     *
+     * @param directory the directory to use.
+     * @param name      the name of the log files.
+     * @throws IOException if an error ocurrs while reading or writing pending
+     *                     UUIDs.
+     */
+    IndexingQueueStore(Directory directory, String name) throws IOException {
+        this.dir = directory;
+        this.name = name;
+        List<String> logs = getLogFiles();
+        for (String fileName : logs) {
+            // a crash while the log was rewritten may leave two generations,
+            // use the union of both
+            Set<String> uuids = new HashSet<String>();
+            readStore(fileName, uuids);
+            pending.addAll(uuids);
+            generation = Math.max(generation, getGeneration(fileName));
+        }
+        compact();
     }
 
     /**
@@ -110,10 +180,61 @@ class IndexingQueueStore {
         pending.remove(uuid);
     }
 
+    /**
+     * @return the number of pending uuids.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Adds the given uuids to the store. If the store is persisted, the
+     * uuids are written to the log file before this method returns.
+     *
+     * @param uuids the uuids to add.
+     * @throws IOException if an error occurs while writing to the log file.
+     */
+    public void addUUIDs(Collection<String> uuids) throws IOException {
+        pending.addAll(uuids);
+        append(ADD, uuids);
+    }
+
+    /**
+     * Removes the given uuids from the store. If the store is persisted, the
+     * removal is written to the log file before this method returns.
+     *
+     * @param uuids the uuids to remove.
+     * @throws IOException if an error occurs while writing to the log file.
+     */
+    public void removeUUIDs(Collection<String> uuids) throws IOException {
+        pending.removeAll(uuids);
+        append(REMOVE, uuids);
+        if (out != null && entryCount >= MIN_COMPACT_ENTRIES
+                && entryCount > 2 * pending.size()) {
+            compact();
+        }
+    }
+
     /**
      * Closes this queue store.
      */
     public void close() {
+        if (name != null) {
+            try {
+                if (out != null) {
+                    out.close();
+                    out = null;
+                }
+                if (pending.isEmpty()) {
+                    for (String fileName : getLogFiles()) {
+                        dir.deleteFile(fileName);
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("unable to close " + name + ": " + e);
+            }
+            return;
+        }
         if (pending.isEmpty()) {
             try {
                 if (dir.fileExists(INDEXING_QUEUE_FILE)) {
@@ -128,14 +249,102 @@ class IndexingQueueStore {
     //----------------------------< internal >----------------------------------
 
     /**
-     * Reads all pending UUIDs from the file and puts them into {@link
-     * #pending}.
+     * Appends entries for the given uuids to the log file of a persisted
+     * store and flushes the log.
+     *
+     * @param cmd   the operation identifier.
+     * @param uuids the uuids.
+     * @throws IOException if an error occurs while writing.
+     */
+    private void append(String cmd, Collection<String> uuids)
+            throws IOException {
+        if (out == null) {
+            return;
+        }
+        for (String uuid : uuids) {
+            out.write(cmd + ' ' + uuid + '\n');
+            entryCount++;
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the pending uuids of a persisted store to a log file with a new
+     * generation and deletes the previous log files.
+     *
+     * @throws IOException if an error occurs while writing.
+     */
+    private void compact() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+        List<String> previous = getLogFiles();
+        generation++;
+        out = new BufferedWriter(new OutputStreamWriter(new IndexOutputStream(
+                dir.createOutput(getLogFile(generation))), ENCODING));
+        entryCount = 0;
+        append(ADD, new ArrayList<String>(pending));
+        for (String fileName : previous) {
+            dir.deleteFile(fileName);
+        }
+    }
+
+    /**
+     * @return the names of the existing log files of a persisted store.
+     * @throws IOException if an error occurs while listing the files.
+     */
+    private List<String> getLogFiles() throws IOException {
+        List<String> logs = new ArrayList<String>();
+        String[] files = dir.listAll();
+        if (files != null) {
+            for (String fileName : files) {
+                if (getGeneration(fileName) > 0) {
+                    logs.add(fileName);
+                }
+            }
+        }
+        return logs;
+    }
+
+    /**
+     * @param generation a generation number.
+     * @return the name of the log file with the given generation.
+     */
+    private String getLogFile(long generation) {
+        return name + '_' + Long.toString(generation, Character.MAX_RADIX) + DOT_LOG;
+    }
+
+    /**
+     * @param fileName a file name.
+     * @return the generation of the log file or <code>0</code> if
+     *         <code>fileName</code> is not a log file of this store.
+     */
+    private long getGeneration(String fileName) {
+        String prefix = name + '_';
+        if (!fileName.startsWith(prefix) || !fileName.endsWith(DOT_LOG)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(),
+                    fileName.length() - DOT_LOG.length()), Character.MAX_RADIX);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads all pending UUIDs from the given file and puts them into
+     * <code>uuids</code>.
      *
+     * @param fileName the name of the file.
+     * @param uuids    the set of pending uuids.
      * @throws IOException if an error occurs while reading.
      */
-    private void readStore() throws IOException {
-        if (dir.fileExists(INDEXING_QUEUE_FILE)) {
-            InputStream in = new IndexInputStream(dir.openInput(INDEXING_QUEUE_FILE));
+    private void readStore(String fileName, Set<String> uuids)
+            throws IOException {
+        if (dir.fileExists(fileName)) {
+            InputStream in = new IndexInputStream(dir.openInput(fileName));
             BufferedReader reader = new BufferedReader(
                     new InputStreamReader(in, ENCODING));
             try {
@@ -144,17 +353,17 @@ class IndexingQueueStore {
                     int idx = line.indexOf(' ');
                     if (idx == -1) {
                         // invalid line
-                        log.warn("invalid line in {}: {}", INDEXING_QUEUE_FILE, line);
+                        log.warn("invalid line in {}: {}", fileName, line);
                     } else {
                         String cmd = line.substring(0, idx);
                         String uuid = line.substring(idx + 1, line.length());
                         if (ADD.equals(cmd)) {
-                            pending.add(uuid);
+                            uuids.add(uuid);
                         } else if (REMOVE.equals(cmd)) {
-                            pending.remove(uuid);
+                            uuids.remove(uuid);
                         } else {
                             // invalid line
-                            log.warn("invalid line in {}: {}", INDEXING_QUEUE_FILE, line);
+                            log.warn("invalid line in {}: {}", fileName, line);
                         }
                     }
                 }
@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.query.lucene.constraint.EvaluationContext;
@@ -24,6 +25,8 @@ import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
@@ -51,6 +54,28 @@ public class JackrabbitIndexSearcher
      */
     private final ItemStateManager ism;
 
+    /**
+     * The pool for scoring the index segments in parallel, or
+     * <code>null</code> if queries are scored on the calling thread.
+     */
+    private ForkJoinPool searchPool;
+
+    /**
+     * Whether the ancestors of nodes are indexed.
+     */
+    private boolean indexAncestors;
+
+    /**
+     * Whether a query traversed the nodes of the session.
+     */
+    private boolean sessionDependent;
+
+    /**
+     * Excludes documents that are known to be not readable, or
+     * <code>null</code>.
+     */
+    private Filter accessFilter;
+
     /**
      * Creates a new jackrabbit index searcher.
      *
@@ -67,6 +92,60 @@ public class JackrabbitIndexSearcher
         this.ism = ism;
     }
 
+    /**
+     * Sets the pool that scores the index segments in parallel.
+     *
+     * @param searchPool the pool, or <code>null</code> to score the index
+     *                   segments on the calling thread.
+     */
+    public void setSearchPool(ForkJoinPool searchPool) {
+        this.searchPool = searchPool;
+    }
+
+    /**
+     * Sets whether the ancestors of nodes are indexed in the
+     * {@link FieldNames#ANCESTORS} field.
+     *
+     * @param indexAncestors <code>true</code> if the ancestors are indexed.
+     */
+    public void setIndexAncestors(boolean indexAncestors) {
+        this.indexAncestors = indexAncestors;
+    }
+
+    /**
+     * @return <code>true</code> if the ancestors of nodes are indexed in the
+     *         {@link FieldNames#ANCESTORS} field.
+     */
+    public boolean isIndexAncestors() {
+        return indexAncestors;
+    }
+
+    /**
+     * Sets a filter that excludes documents before they are scored. The
+     * filter is applied to queries passed to
+     * {@link #execute(Query, Sort, long, Name)} that are scored by lucene.
+     * It is not applied to sub queries, to {@link JackrabbitQuery}s that
+     * evaluate themselves or to queries that are scored in parallel. It must
+     * therefore only exclude documents that are also dropped later on, like
+     * documents that are not readable.
+     *
+     * @param accessFilter the filter or <code>null</code>.
+     */
+    public void setAccessFilter(Filter accessFilter) {
+        this.accessFilter = accessFilter;
+    }
+
+    /**
+     * Returns <code>true</code> if a query of this searcher was evaluated
+     * by traversing the nodes of the session instead of the index. The hits
+     * of such a query depend on the nodes the session can read.
+     *
+     * @return whether the hits depend on the session.
+     */
+    public boolean isSessionDependent() {
+        return sessionDependent;
+    }
+
     /**
      * Executes the query and returns the hits that match the query.
      *
@@ -83,7 +162,7 @@ public class JackrabbitIndexSearcher
                                         Name selectorName)
             throws IOException {
         return new QueryHitsAdapter(
-                evaluate(query, sort, resultFetchHint), selectorName);
+                evaluate(query, sort, resultFetchHint, accessFilter), selectorName);
     }
 
     /**
@@ -97,22 +176,61 @@ public class JackrabbitIndexSearcher
      */
     public QueryHits evaluate(Query query, Sort sort, long resultFetchHint)
             throws IOException {
+        return evaluate(query, sort, resultFetchHint, null);
+    }
+
+    /**
+     * Evaluates the query and returns the hits that match the query.
+     *
+     * @param query           the query to execute.
+     * @param sort            the sort criteria.
+     * @param resultFetchHint a hint on how many results should be fetched.
+     * @param filter          excludes documents before they are scored, or
+     *                        <code>null</code>.
+     * @return the query hits.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    private QueryHits evaluate(Query query, Sort sort, long resultFetchHint,
+                               Filter filter)
+            throws IOException {
         query = query.rewrite(reader);
         QueryHits hits = null;
         if (query instanceof JackrabbitQuery) {
             hits = ((JackrabbitQuery) query).execute(this, session, sort);
+            if (hits != null) {
+                sessionDependent = true;
+            }
         }
         if (hits == null) {
             if (sort.getSort().length == 0) {
-                hits = new LuceneQueryHits(reader, this, query);
+                if (searchPool != null
+                        && ParallelQueryHits.isSupported(reader, query)) {
+                    hits = new ParallelQueryHits(reader, this, query, searchPool);
+                } else {
+                    hits = new LuceneQueryHits(reader, this, filter(query, filter));
+                }
             } else {
-                hits = new SortedLuceneQueryHits(this, query, sort,
+                hits = new SortedLuceneQueryHits(this, filter(query, filter), sort,
                         resultFetchHint);
             }
         }
         return hits;
     }
 
+    /**
+     * Applies a filter to the given query.
+     *
+     * @param query  a rewritten query.
+     * @param filter the filter or <code>null</code>.
+     * @return the filtered query.
+     */
+    private static Query filter(Query query, Filter filter) {
+        if (filter == null) {
+            return query;
+        }
+        return new FilteredQuery(query, filter);
+    }
+
     //---------------------------< IndexSearcher >------------------------------
 
     @Override
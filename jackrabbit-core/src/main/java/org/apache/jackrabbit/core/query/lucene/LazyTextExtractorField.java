@@ -21,6 +21,7 @@ import java.io.Reader;
 import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.core.LowPriorityTask;
+import org.apache.jackrabbit.core.data.DataIdentifier;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.AbstractField;
@@ -74,15 +75,56 @@ public class LazyTextExtractorField extends AbstractField {
             Parser parser, InternalValue value, Metadata metadata,
             Executor executor, boolean highlighting, int maxFieldLength,
             boolean withNorms) {
+        this(parser, value, metadata, executor, null, highlighting,
+                maxFieldLength, withNorms);
+    }
+
+    /**
+     * Creates a new <code>LazyTextExtractorField</code> that looks up the
+     * text of binaries in the data store in the given cache before it
+     * extracts the text, and adds newly extracted text to the cache.
+     *
+     * @param parser
+     * @param value
+     * @param metadata
+     * @param executor
+     * @param cache
+     *            the extracted text cache or <code>null</code>
+     * @param highlighting
+     *            set to <code>true</code> to enable result highlighting support
+     * @param maxFieldLength
+     * @param withNorms
+     */
+    LazyTextExtractorField(
+            Parser parser, InternalValue value, Metadata metadata,
+            Executor executor, final ExtractedTextCache cache,
+            boolean highlighting, final int maxFieldLength,
+            boolean withNorms) {
         super(FieldNames.FULLTEXT,
                 highlighting ? Store.YES : Store.NO,
                 withNorms ? Field.Index.ANALYZED : Field.Index.ANALYZED_NO_NORMS,
                 highlighting ? TermVector.WITH_OFFSETS : TermVector.NO);
+        final DataIdentifier identifier =
+            cache != null ? value.getDataIdentifier() : null;
+        final String type = ExtractedTextCache.getType(metadata);
+        if (identifier != null) {
+            String text = cache.get(identifier, type, maxFieldLength);
+            if (text != null) {
+                value.discard();
+                setExtractedText(text);
+                return;
+            }
+        }
         executor.execute(new ParsingTask(parser, value, metadata,
                 maxFieldLength) {
             public void setExtractedText(String value) {
                 LazyTextExtractorField.this.setExtractedText(value);
             }
+            protected void extracted(String text) {
+                if (identifier != null) {
+                    cache.put(identifier, type, maxFieldLength, text);
+                }
+            }
         });
     }
 
@@ -209,9 +251,20 @@ public class LazyTextExtractorField extends AbstractField {
             } finally {
                 value.discard();
             }
-            setExtractedText(writeOutContentHandler.toString());
+            String text = writeOutContentHandler.toString();
+            extracted(text);
+            setExtractedText(text);
         }
 
         protected abstract void setExtractedText(String value);
+
+        /**
+         * Called with the text of a successful extraction, before it is set.
+         * The default implementation does nothing.
+         *
+         * @param text the extracted text.
+         */
+        protected void extracted(String text) {
+        }
     }
 }
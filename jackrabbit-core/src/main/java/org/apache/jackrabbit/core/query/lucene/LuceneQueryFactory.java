@@ -104,10 +104,12 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
 
 /**
  * Factory that creates Lucene queries from QOM elements.
@@ -187,15 +189,69 @@ public class LuceneQueryFactory {
             Selector selector, Constraint constraint, Sort sort,
             boolean externalSort, long offsetIn, long limitIn)
             throws RepositoryException, IOException {
-        final IndexReader reader = index.getIndexReader(true);
         final int offset = offsetIn < 0 ? 0 : (int) offsetIn;
         final int limit = limitIn < 0 ? Integer.MAX_VALUE : (int) limitIn;
+        final List<Row> rows = new ArrayList<Row>();
+        long fetchHint = (long) offset + limit;
+        if (externalSort) {
+            // return everything and not worry about sort
+            execute(columns, selector, constraint, sort, fetchHint,
+                    new RowHandler() {
+                        public boolean handle(Row row) {
+                            rows.add(row);
+                            return true;
+                        }
+                    });
+        } else {
+            // apply limit and offset rules locally
+            // TODO depending on the filters, we could push the offset info
+            // into the searcher
+            execute(columns, selector, constraint, sort, fetchHint,
+                    new RowHandler() {
+                        private int currentNode = 0;
+                        public boolean handle(Row row) {
+                            if (currentNode >= offset
+                                    && currentNode - offset < limit) {
+                                rows.add(row);
+                            }
+                            currentNode++;
+                            // end the loop when going over the limit
+                            return rows.size() < limit;
+                        }
+                    });
+        }
+        return rows;
+    }
 
+    /**
+     * Executes the given selector and constraint and passes the matching
+     * rows one by one to the given handler, until the handler does not
+     * accept any more rows. Nodes are only loaded for rows that are passed
+     * to the handler, so a caller that only needs the first few rows does
+     * not pay for the others.
+     *
+     * @param columns the columns of the rows
+     * @param selector the selector
+     * @param constraint the constraint, or <code>null</code>
+     * @param sort the sort order of the rows
+     * @param resultFetchHint the expected number of rows, used as a hint
+     *                        when sorting the hits
+     * @param handler the row handler
+     * @throws RepositoryException if the query can not be executed
+     * @throws IOException if the query index can not be accessed
+     */
+    public void execute(Map<String, PropertyValue> columns,
+            Selector selector, Constraint constraint, Sort sort,
+            long resultFetchHint, RowHandler handler)
+            throws RepositoryException, IOException {
+        final IndexReader reader = index.getIndexReader(true);
         QueryHits hits = null;
         try {
             JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                     session, reader, index.getContext().getItemStateManager());
             searcher.setSimilarity(index.getSimilarity());
+            searcher.setSearchPool(index.getSearchPool());
+            searcher.setIndexAncestors(index.isIndexAncestors());
 
             Predicate filter = Predicate.TRUE;
             BooleanQuery query = new BooleanQuery();
@@ -212,14 +268,7 @@ public class LuceneQueryFactory {
                         searcher, reader);
             }
 
-            List<Row> rows = new ArrayList<Row>();
-
-            // TODO depending on the filters, we could push the offset info
-            // into the searcher
-            hits = searcher.evaluate(qp.mainQuery, sort, offset + limit);
-            int currentNode = 0;
-            int addedNodes = 0;
-
+            hits = searcher.evaluate(qp.mainQuery, sort, resultFetchHint);
             ScoreNode node = hits.nextScoreNode();
             while (node != null) {
                 Row row = null;
@@ -231,27 +280,12 @@ public class LuceneQueryFactory {
                 } catch (ItemNotFoundException e) {
                     // skip the node
                 }
-                if (row != null && filter.evaluate(row)) {
-                    if (externalSort) {
-                        // return everything and not worry about sort
-                        rows.add(row);
-                    } else {
-                        // apply limit and offset rules locally
-                        if (currentNode >= offset
-                                && currentNode - offset < limit) {
-                            rows.add(row);
-                            addedNodes++;
-                        }
-                        currentNode++;
-                        // end the loop when going over the limit
-                        if (addedNodes == limit) {
-                            break;
-                        }
-                    }
+                if (row != null && filter.evaluate(row)
+                        && !handler.handle(row)) {
+                    break;
                 }
                 node = hits.nextScoreNode();
             }
-            return rows;
         } finally {
             if (hits != null) {
                 hits.close();
@@ -260,6 +294,95 @@ public class LuceneQueryFactory {
         }
     }
 
+    /**
+     * Estimates the number of rows of the given selector and constraint.
+     * The estimate is based on the document frequencies of the terms that
+     * the rows must match, so it is cheap to compute, but may be much
+     * higher than the actual number of rows. Constraints that can not be
+     * estimated this way are ignored.
+     *
+     * @param selector the selector
+     * @param constraint the constraint, or <code>null</code>
+     * @return the estimated number of rows
+     * @throws RepositoryException if the estimate can not be computed
+     */
+    public long estimate(Selector selector, Constraint constraint)
+            throws RepositoryException {
+        try {
+            IndexReader reader = index.getIndexReader(true);
+            try {
+                long estimate = estimate(create(selector), reader);
+                if (constraint != null) {
+                    JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                            session, reader, index.getContext().getItemStateManager());
+                    NodeType type =
+                        ntManager.getNodeType(selector.getNodeTypeName());
+                    estimate = Math.min(estimate, estimate(constraint,
+                            Collections.singletonMap(selector.getSelectorName(), type),
+                            searcher, reader));
+                }
+                return estimate;
+            } finally {
+                Util.closeOrRelease(reader);
+            }
+        } catch (IOException e) {
+            throw new RepositoryException("Failed to access the query index", e);
+        }
+    }
+
+    private long estimate(
+            Constraint constraint, Map<String, NodeType> selectorMap,
+            JackrabbitIndexSearcher searcher, IndexReader reader)
+            throws RepositoryException, IOException {
+        if (constraint instanceof And) {
+            And and = (And) constraint;
+            return Math.min(
+                    estimate(and.getConstraint1(), selectorMap, searcher, reader),
+                    estimate(and.getConstraint2(), selectorMap, searcher, reader));
+        } else if (constraint instanceof Or) {
+            Or or = (Or) constraint;
+            long estimate =
+                estimate(or.getConstraint1(), selectorMap, searcher, reader)
+                + estimate(or.getConstraint2(), selectorMap, searcher, reader);
+            return Math.min(estimate, reader.maxDoc());
+        } else if (constraint instanceof Comparison) {
+            Comparison c = (Comparison) constraint;
+            if (c.getOperand1() instanceof PropertyValue
+                    && JCR_OPERATOR_EQUAL_TO.equals(c.getOperator())) {
+                return estimate(create(constraint, selectorMap, searcher), reader);
+            }
+        } else if (constraint instanceof SameNode
+                || constraint instanceof ChildNode
+                || constraint instanceof FullTextSearch) {
+            return estimate(create(constraint, selectorMap, searcher), reader);
+        }
+        // descendant node constraints would have to traverse the
+        // subtree, other constraints are not selective enough
+        return reader.maxDoc();
+    }
+
+    private long estimate(Query query, IndexReader reader) throws IOException {
+        if (query instanceof TermQuery) {
+            return reader.docFreq(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            long must = Long.MAX_VALUE;
+            long should = 0;
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (clause.getOccur() == MUST) {
+                    must = Math.min(must, estimate(clause.getQuery(), reader));
+                } else if (clause.getOccur() == SHOULD) {
+                    should += estimate(clause.getQuery(), reader);
+                }
+            }
+            if (must != Long.MAX_VALUE) {
+                return must;
+            } else if (should > 0) {
+                return Math.min(should, reader.maxDoc());
+            }
+        }
+        return reader.maxDoc();
+    }
+
     /**
      * Creates a lucene query for the given QOM selector.
      *
@@ -768,6 +891,24 @@ public class LuceneQueryFactory {
         }
     }
 
+    /**
+     * Receives the rows of a query, see
+     * {@link LuceneQueryFactory#execute(Map, Selector, Constraint, Sort, long, RowHandler)}.
+     */
+    public interface RowHandler {
+
+        /**
+         * Handles the next row.
+         *
+         * @param row the row
+         * @return <code>true</code> if more rows should be passed,
+         *         <code>false</code> otherwise
+         * @throws RepositoryException if the row can not be handled
+         */
+        boolean handle(Row row) throws RepositoryException;
+
+    }
+
     protected static class QueryPair {
         Query mainQuery;
         BooleanQuery subQuery;
@@ -158,6 +158,12 @@ public class MultiIndex {
      */
     private CachingMultiIndexReader multiReader;
 
+    /**
+     * Incremented whenever {@link #multiReader} is released, that is,
+     * whenever the content or the document numbers of the index may change.
+     */
+    private volatile long readerGeneration = 0;
+
     /**
      * Shared document number cache across all persistent indexes.
      */
@@ -920,9 +926,11 @@ public class MultiIndex {
      * Flushes this <code>MultiIndex</code>. Persists all pending changes and
      * resets the redo log.
      *
+     * @return <code>true</code> if there were pending changes.
      * @throws IOException if the flush fails.
      */
-    private void flush() throws IOException {
+    private boolean flush() throws IOException {
+        boolean modified;
         synchronized (this) {
 
             // only start transaction when there is something to commit
@@ -966,7 +974,8 @@ public class MultiIndex {
                 executeAndLog(new Commit(getTransactionId()));
             }
 
-            if (transactionStarted || indexesModified || redoLog.hasEntries()) {
+            modified = transactionStarted || indexesModified;
+            if (modified || redoLog.hasEntries()) {
                 indexNames.write();
 
                 indexHistory.addIndexInfos(indexNames);
@@ -984,6 +993,7 @@ public class MultiIndex {
 
         // delete obsolete indexes
         attemptDelete();
+        return modified;
     }
 
     /**
@@ -1006,6 +1016,19 @@ public class MultiIndex {
                 multiReader = null;
             }
         }
+        readerGeneration++;
+    }
+
+    /**
+     * Returns the generation of the readers returned by
+     * {@link #getIndexReader()}. Readers of the same generation see the same
+     * documents with the same document numbers. The generation must be read
+     * before the reader is acquired.
+     *
+     * @return the current reader generation.
+     */
+    long getReaderGeneration() {
+        return readerGeneration;
     }
 
     //-------------------------< testing only >---------------------------------
@@ -1318,13 +1341,17 @@ public class MultiIndex {
         synchronized (updateMonitor) {
             updateInProgress = true;
         }
+        boolean modified = true;
         try {
-            flush();
+            modified = flush();
         } finally {
             synchronized (updateMonitor) {
                 updateInProgress = false;
                 updateMonitor.notifyAll();
-                releaseMultiReader();
+                // keep the current reader if nothing changed
+                if (modified) {
+                    releaseMultiReader();
+                }
             }
         }
     }
@@ -20,6 +20,8 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -116,6 +118,12 @@ public class NodeIndexer {
      */
     protected boolean supportHighlighting = false;
 
+    /**
+     * If set to <code>true</code> the ids of all ancestors of the node are
+     * added to the {@link FieldNames#ANCESTORS} field.
+     */
+    protected boolean indexAncestors = false;
+
     /**
      * Indicates index format for this node indexer.
      */
@@ -132,6 +140,11 @@ public class NodeIndexer {
      */
     private int maxExtractLength = Integer.MAX_VALUE;
 
+    /**
+     * The cache of the text extracted from binaries, or <code>null</code>.
+     */
+    private ExtractedTextCache extractedTextCache;
+
     /**
      * Creates a new node indexer.
      *
@@ -170,6 +183,17 @@ public class NodeIndexer {
         supportHighlighting = b;
     }
 
+    /**
+     * If set to <code>true</code> the ids of all ancestors of the node are
+     * indexed, which allows to evaluate descendant axis queries without
+     * walking up the hierarchy.
+     *
+     * @param b <code>true</code> to index the ancestors.
+     */
+    public void setIndexAncestors(boolean b) {
+        indexAncestors = b;
+    }
+
     /**
      * Sets the index format version
      *
@@ -206,6 +230,15 @@ public class NodeIndexer {
         this.maxExtractLength = length;
     }
 
+    /**
+     * Sets the cache of the text extracted from binaries.
+     *
+     * @param cache the cache or <code>null</code> to always extract the text.
+     */
+    void setExtractedTextCache(ExtractedTextCache cache) {
+        this.extractedTextCache = cache;
+    }
+
     /**
      * Creates a lucene Document.
      *
@@ -244,6 +277,9 @@ public class NodeIndexer {
                         Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS,
                         Field.TermVector.NO));
             }
+            if (indexAncestors) {
+                addAncestors(doc, node);
+            }
         } catch (NoSuchItemStateException e) {
             throwRepositoryException(e);
         } catch (ItemStateException e) {
@@ -871,7 +907,8 @@ public class NodeIndexer {
     protected Fieldable createFulltextField(
             InternalValue value, Metadata metadata, boolean withNorms) {
         return new LazyTextExtractorField(parser, value, metadata, executor,
-                supportHighlighting, getMaxExtractLength(), withNorms);
+                extractedTextCache, supportHighlighting, getMaxExtractLength(),
+                withNorms);
     }
 
     /**
@@ -1036,4 +1073,39 @@ public class NodeIndexer {
         Name name = child.getName();
         addNodeName(doc, name.getNamespaceURI(), name.getLocalName());
     }
+
+    /**
+     * Adds the ids of all ancestors of <code>node</code> to the
+     * {@link FieldNames#ANCESTORS} field of <code>doc</code>. The ancestors
+     * of a shareable node are the ancestors of all nodes in its shared set.
+     *
+     * @param doc  the document.
+     * @param node the node state.
+     * @throws ItemStateException if an ancestor cannot be read.
+     */
+    protected void addAncestors(Document doc, NodeState node)
+            throws ItemStateException {
+        Set<NodeId> ancestors = new HashSet<NodeId>();
+        LinkedList<NodeId> pending = new LinkedList<NodeId>();
+        addParents(node, pending);
+        while (!pending.isEmpty()) {
+            NodeId id = pending.removeFirst();
+            if (ancestors.add(id)) {
+                Field ancestor = new Field(FieldNames.ANCESTORS, false,
+                        id.toString(), Field.Store.NO,
+                        Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO);
+                ancestor.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+                doc.add(ancestor);
+                addParents((NodeState) stateProvider.getItemState(id), pending);
+            }
+        }
+    }
+
+    private static void addParents(NodeState state, List<NodeId> parents) {
+        if (!state.getSharedSet().isEmpty()) {
+            parents.addAll(state.getSharedSet());
+        } else if (state.getParentId() != null) {
+            parents.add(state.getParentId());
+        }
+    }
 }
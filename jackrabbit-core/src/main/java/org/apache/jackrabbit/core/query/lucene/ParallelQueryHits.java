@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiTermQueryWrapperFilter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * <code>ParallelQueryHits</code> implements {@link QueryHits} by scoring the
+ * index segments of a {@link MultiIndexReader} in parallel, one task per
+ * segment. The hits are returned in document order, just like the hits of
+ * {@link LuceneQueryHits}. The tasks are started when this instance is
+ * created, and the hits of a segment are available as soon as its task is
+ * done.
+ * <p>
+ * Queries that only access the terms of the reader they are scored with
+ * are scored on each segment separately. A {@link DescendantSelfAxisQuery}
+ * needs the hierarchy of the whole index: its context hits are collected
+ * once, and each task then scores the query on the whole index, restricted
+ * to the document range of its segment.
+ */
+public class ParallelQueryHits extends AbstractQueryHits {
+
+    /**
+     * The pending hits of the segments, in document order.
+     */
+    private final List<Future<List<ScoreNode>>> segments =
+        new ArrayList<Future<List<ScoreNode>>>();
+
+    /**
+     * The index of the next segment to return hits from.
+     */
+    private int next;
+
+    /**
+     * The hits of the current segment.
+     */
+    private Iterator<ScoreNode> hits = Collections.<ScoreNode>emptyList().iterator();
+
+    /**
+     * Set to <code>true</code> when these hits are closed. Running tasks
+     * stop as soon as possible.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Starts scoring the segments of <code>reader</code>.
+     *
+     * @param reader   the index reader, must be supported according to
+     *                 {@link #isSupported(IndexReader, Query)}.
+     * @param searcher the searcher.
+     * @param query    the query, must be supported according to
+     *                 {@link #isSupported(IndexReader, Query)}.
+     * @param pool     the pool that runs the tasks.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    public ParallelQueryHits(final IndexReader reader,
+                             final IndexSearcher searcher,
+                             Query query,
+                             ForkJoinPool pool) throws IOException {
+        final boolean local = isSegmentLocal(query);
+        if (!local) {
+            query = resolveContext((DescendantSelfAxisQuery) query, reader, searcher);
+        }
+        final Query q = query;
+        int start = 0;
+        for (final IndexReader segment : getSegments(reader)) {
+            final int offset = start;
+            final int end = start + segment.maxDoc();
+            segments.add(pool.submit(new Callable<List<ScoreNode>>() {
+                public List<ScoreNode> call() throws IOException {
+                    if (local) {
+                        return score(segment, searcher, q, offset, 0, segment.maxDoc());
+                    } else {
+                        return score(reader, searcher, q, 0, offset, end);
+                    }
+                }
+            }));
+            start = end;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the given query can be scored in parallel
+     * on the segments of the given reader.
+     *
+     * @param reader the index reader.
+     * @param query  the rewritten query.
+     * @return whether the query can be scored in parallel.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    public static boolean isSupported(IndexReader reader, Query query)
+            throws IOException {
+        if (!isSegmentLocal(query) && !(query instanceof DescendantSelfAxisQuery
+                && isThreadSafe(((DescendantSelfAxisQuery) query).getSubQuery(), false))) {
+            return false;
+        }
+        List<IndexReader> segments = getSegments(reader);
+        int maxDoc = 0;
+        for (IndexReader segment : segments) {
+            maxDoc += segment.maxDoc();
+        }
+        return segments.size() > 1 && maxDoc == reader.maxDoc();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ScoreNode nextScoreNode() throws IOException {
+        while (!hits.hasNext()) {
+            if (next == segments.size()) {
+                return null;
+            }
+            try {
+                hits = segments.get(next++).get().iterator();
+            } catch (InterruptedException e) {
+                close();
+                throw new InterruptedIOException("Query interrupted");
+            } catch (ExecutionException e) {
+                close();
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw Util.createIOException(e.getCause());
+            }
+        }
+        return hits.next();
+    }
+
+    /**
+     * Stops the tasks that are still running.
+     */
+    public void close() throws IOException {
+        closed = true;
+        for (Future<List<ScoreNode>> segment : segments) {
+            segment.cancel(false);
+        }
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Scores the given query on <code>reader</code> and returns the hits
+     * with document numbers from <code>start</code> (inclusive) to
+     * <code>end</code> (exclusive).
+     *
+     * @param reader   the reader to score on.
+     * @param searcher the searcher.
+     * @param query    the query.
+     * @param offset   the offset of the document numbers of
+     *                 <code>reader</code> in the index.
+     * @param start    the first document number.
+     * @param end      the document number after the last one.
+     * @return the hits.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private List<ScoreNode> score(IndexReader reader,
+                                  IndexSearcher searcher,
+                                  Query query,
+                                  int offset,
+                                  int start,
+                                  int end) throws IOException {
+        List<ScoreNode> nodes = new ArrayList<ScoreNode>();
+        if (closed) {
+            return nodes;
+        }
+        Scorer scorer = query.createWeight(searcher).scorer(reader, true, false);
+        if (scorer == null) {
+            return nodes;
+        }
+        try {
+            int doc = scorer.advance(start);
+            while (doc < end && !closed) {
+                NodeId id = new NodeId(reader.document(
+                        doc, FieldSelectors.UUID).get(FieldNames.UUID));
+                nodes.add(new ScoreNode(id, scorer.score(), doc + offset));
+                doc = scorer.nextDoc();
+            }
+        } finally {
+            // make sure scorer frees resources
+            scorer.advance(Integer.MAX_VALUE);
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns a copy of the given query with the context hits collected
+     * from the whole index, so that the context query is not evaluated by
+     * every task.
+     */
+    private static Query resolveContext(DescendantSelfAxisQuery query,
+                                        IndexReader reader,
+                                        IndexSearcher searcher)
+            throws IOException {
+        final OpenBitSet contextHits = new OpenBitSet(reader.maxDoc());
+        Scorer scorer = searcher.createNormalizedWeight(
+                query.getContextQuery()).scorer(reader, true, false);
+        if (scorer != null) {
+            scorer.score(new AbstractHitCollector() {
+                protected void collect(int doc, float score) {
+                    contextHits.set(doc);
+                }
+            });
+        }
+        Query context = new ConstantScoreQuery(new Filter() {
+            public DocIdSet getDocIdSet(IndexReader r) {
+                return contextHits;
+            }
+        });
+        return new DescendantSelfAxisQuery(
+                context, query.getSubQuery(), query.getMinLevels());
+    }
+
+    /**
+     * Returns <code>true</code> if the given query does not keep any state
+     * in the query itself, so that it can be scored by several threads at
+     * once.
+     *
+     * @param query    the query.
+     * @param segments if <code>true</code>, the query must also be
+     *                 scored correctly on each segment separately.
+     */
+    private static boolean isThreadSafe(Query query, boolean segments) {
+        if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (!isThreadSafe(clause.getQuery(), segments)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof ConstantScoreQuery) {
+            ConstantScoreQuery csq = (ConstantScoreQuery) query;
+            if (csq.getQuery() != null) {
+                // the term queries of a rewritten multi term query only
+                // match on the reader that was used to rewrite the query
+                return !segments && isThreadSafe(csq.getQuery(), false);
+            } else {
+                return csq.getFilter() instanceof MultiTermQueryWrapperFilter;
+            }
+        } else {
+            return query instanceof TermQuery
+                    || query instanceof WildcardQuery
+                    || query instanceof RangeQuery
+                    || query instanceof MatchAllQuery
+                    || query instanceof org.apache.lucene.search.MatchAllDocsQuery;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> if the scorers of the given query only
+     * access the terms of the reader they are created for.
+     */
+    private static boolean isSegmentLocal(Query query) {
+        return isThreadSafe(query, true);
+    }
+
+    /**
+     * Returns the segment readers of the given reader, in document order.
+     */
+    private static List<IndexReader> getSegments(IndexReader reader) {
+        List<IndexReader> segments = new ArrayList<IndexReader>();
+        addSegments(reader, segments);
+        return segments;
+    }
+
+    private static void addSegments(IndexReader reader,
+                                    List<IndexReader> segments) {
+        if (reader instanceof MultiIndexReader) {
+            for (IndexReader r : ((MultiIndexReader) reader).getIndexReaders()) {
+                addSegments(r, segments);
+            }
+        } else {
+            segments.add(reader);
+        }
+    }
+
+}
@@ -21,7 +21,8 @@ import java.util.Map;
 
 /**
  * A cache of arbitrarily typed values used during the execution of a
- * single query.
+ * single query. The cache is thread-safe, as the segments of the index may
+ * be searched in parallel.
  */
 class PerQueryCache {
 
@@ -39,7 +40,7 @@ class PerQueryCache {
      * @return the value assigned to <code>type</code> and <code>key</code> or
      *         <code>null</code> if it does not exist in the cache.
      */
-    Object get(Class<?> type, Object key) {
+    synchronized Object get(Class<?> type, Object key) {
         return map.get(new Key(type, key));
     }
 
@@ -53,7 +54,7 @@ class PerQueryCache {
      * @return the existing value in the cache assigned to <code>type</code> and
      *         <code>key</code> or <code>null</code> if there was none.
      */
-    Object put(Class<?> type, Object key, Object value) {
+    synchronized Object put(Class<?> type, Object key, Object value) {
         return map.put(new Key(type, key), value);
     }
 
@@ -39,12 +39,15 @@ import org.apache.lucene.search.Query;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.NamespaceException;
+import javax.jcr.NamespaceRegistry;
 import javax.jcr.RepositoryException;
 import javax.jcr.Workspace;
 import javax.jcr.nodetype.PropertyDefinition;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.qom.QueryObjectModelFactory;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -69,6 +72,22 @@ public class QueryImpl extends AbstractQueryImpl {
      */
     protected final QueryRootNode root;
 
+    /**
+     * The query statement.
+     */
+    private final String statement;
+
+    /**
+     * The syntax of the query statement.
+     */
+    private final String language;
+
+    /**
+     * The namespace mappings of the session when the statement was parsed,
+     * as returned by {@link #getNamespaceKey()}.
+     */
+    private final String namespaceKey;
+
     /**
      * Creates a new query instance from a query string.
      *
@@ -90,6 +109,13 @@ public class QueryImpl extends AbstractQueryImpl {
         // build query tree using the passed factory
         this.root = QueryParser.parse(
                 statement, language, sessionContext, factory);
+        this.statement = statement;
+        this.language = language;
+        try {
+            this.namespaceKey = getNamespaceKey();
+        } catch (RepositoryException e) {
+            throw new InvalidQueryException(e.getMessage(), e);
+        }
     }
 
     /**
@@ -139,6 +165,55 @@ public class QueryImpl extends AbstractQueryImpl {
                 offset, limit);
     }
 
+    /**
+     * Returns the language and statement of this query, followed by the
+     * namespace mappings of the session that differ from the namespace
+     * registry. The key is <code>null</code> if the session changed its
+     * mappings after the statement was parsed.
+     *
+     * @return the key of this query in the query result cache.
+     * @throws RepositoryException if an error occurs.
+     */
+    @Override
+    public String getResultCacheKey() throws RepositoryException {
+        String key = getNamespaceKey();
+        if (!key.equals(namespaceKey)) {
+            return null;
+        }
+        return language + '\n' + statement + key;
+    }
+
+    /**
+     * Returns the namespace mappings of the session that are different from
+     * the namespace registry. Prefixes in the statement are resolved with
+     * these mappings.
+     *
+     * @return the differing mappings.
+     * @throws RepositoryException if an error occurs.
+     */
+    private String getNamespaceKey() throws RepositoryException {
+        if (index.getQueryResultCacheSize() == 0) {
+            return "";
+        }
+        SessionImpl session = sessionContext.getSessionImpl();
+        NamespaceRegistry registry = index.getContext().getNamespaceRegistry();
+        String[] prefixes = session.getNamespacePrefixes();
+        Arrays.sort(prefixes);
+        StringBuilder key = new StringBuilder();
+        for (String prefix : prefixes) {
+            String uri = session.getNamespaceURI(prefix);
+            try {
+                if (uri.equals(registry.getURI(prefix))) {
+                    continue;
+                }
+            } catch (NamespaceException e) {
+                // prefix is only known to the session
+            }
+            key.append('\n').append(prefix).append('=').append(uri);
+        }
+        return key.toString();
+    }
+
     /**
      * Returns the columns for this query.
      *
@@ -0,0 +1,237 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.jackrabbit.core.nodetype.NodeTypeRegistryListener;
+import org.apache.jackrabbit.spi.Name;
+
+/**
+ * Caches the score nodes of query statements with a fixed size and a LRU
+ * strategy. The score nodes are cached before access control is applied,
+ * the query result of each session checks access on its own. Every entry is
+ * tagged with the reader generation of the index it was read from and is
+ * only returned while the index still has this generation. The cache is
+ * cleared whenever the node types change, because the statements may
+ * depend on the node type hierarchy.
+ */
+final class QueryResultCache implements NodeTypeRegistryListener {
+
+    /**
+     * The maximum number of score nodes of a cached statement. Statements
+     * with more hits are not cached.
+     */
+    static final int MAX_HITS = 1000;
+
+    /**
+     * LRU map where key=statement value=entry
+     */
+    private final LRUMap entries;
+
+    /**
+     * Creates a new <code>QueryResultCache</code>.
+     *
+     * @param size the maximum number of cached statements.
+     */
+    QueryResultCache(int size) {
+        entries = new LRUMap(size);
+    }
+
+    /**
+     * Returns the cached hits of a statement.
+     *
+     * @param key        the statement key.
+     * @param generation the current generation of the index.
+     * @return the hits or <code>null</code> if the statement is not cached
+     *         for <code>generation</code>.
+     */
+    MultiColumnQueryHits get(String key, long generation) {
+        Entry entry;
+        synchronized (entries) {
+            entry = (Entry) entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (entry.generation != generation) {
+                entries.remove(key);
+                return null;
+            }
+        }
+        return new CachedHits(entry, null);
+    }
+
+    /**
+     * Reads the hits of a statement ahead and caches them, if there are at
+     * most {@link #MAX_HITS} and they do not depend on the session of the
+     * searcher. The returned hits replay the hits read ahead, followed by the
+     * remaining <code>hits</code>, if any.
+     *
+     * @param key        the statement key.
+     * @param generation the generation of the index the hits are read from.
+     * @param hits       the hits of the statement.
+     * @param searcher   the searcher that executed the statement.
+     * @return hits that return the same score nodes as <code>hits</code>.
+     * @throws IOException if an error occurs while reading from the hits.
+     */
+    MultiColumnQueryHits cache(String key, long generation,
+                               MultiColumnQueryHits hits,
+                               JackrabbitIndexSearcher searcher)
+            throws IOException {
+        List<ScoreNode[]> nodes = new ArrayList<ScoreNode[]>();
+        boolean complete = false;
+        while (nodes.size() <= MAX_HITS) {
+            ScoreNode[] sn = hits.nextScoreNodes();
+            if (sn == null) {
+                complete = true;
+                break;
+            }
+            nodes.add(sn);
+        }
+        Entry entry = new Entry(generation,
+                nodes.toArray(new ScoreNode[nodes.size()][]),
+                hits.getSelectorNames());
+        if (complete) {
+            hits.close();
+            if (!searcher.isSessionDependent()) {
+                synchronized (entries) {
+                    entries.put(key, entry);
+                }
+            }
+            return new CachedHits(entry, null);
+        } else {
+            return new CachedHits(entry, hits);
+        }
+    }
+
+    /**
+     * Removes all cached statements.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached statements.
+     */
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    //--------------------------< NodeTypeRegistryListener >--------------------
+
+    public void nodeTypeRegistered(Name ntName) {
+        clear();
+    }
+
+    public void nodeTypeReRegistered(Name ntName) {
+        clear();
+    }
+
+    public void nodeTypesUnregistered(Collection<Name> names) {
+        clear();
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * The cached hits of a statement.
+     */
+    private static final class Entry {
+
+        private final long generation;
+
+        private final ScoreNode[][] nodes;
+
+        private final Name[] selectorNames;
+
+        Entry(long generation, ScoreNode[][] nodes, Name[] selectorNames) {
+            this.generation = generation;
+            this.nodes = nodes;
+            this.selectorNames = selectorNames;
+        }
+    }
+
+    /**
+     * Returns copies of the score nodes of an entry, followed by the score
+     * nodes of the remaining hits that were not read ahead. The cached score
+     * nodes are shared by all queries of the statement and must not be
+     * modified by a consumer of the hits.
+     */
+    private static final class CachedHits implements MultiColumnQueryHits {
+
+        private final Entry entry;
+
+        private final MultiColumnQueryHits remaining;
+
+        private int position = 0;
+
+        CachedHits(Entry entry, MultiColumnQueryHits remaining) {
+            this.entry = entry;
+            this.remaining = remaining;
+        }
+
+        public ScoreNode[] nextScoreNodes() throws IOException {
+            if (position < entry.nodes.length) {
+                ScoreNode[] nodes = entry.nodes[position++].clone();
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i] != null) {
+                        nodes[i] = nodes[i].copy();
+                    }
+                }
+                return nodes;
+            } else if (remaining != null) {
+                return remaining.nextScoreNodes();
+            } else {
+                return null;
+            }
+        }
+
+        public Name[] getSelectorNames() {
+            return entry.selectorNames;
+        }
+
+        public int getSize() {
+            if (remaining != null) {
+                return remaining.getSize();
+            } else {
+                return entry.nodes.length;
+            }
+        }
+
+        public void skip(int n) throws IOException {
+            int cached = Math.min(n, entry.nodes.length - position);
+            position += cached;
+            if (n > cached && remaining != null) {
+                remaining.skip(n - cached);
+            }
+        }
+
+        public void close() throws IOException {
+            if (remaining != null) {
+                remaining.close();
+            }
+        }
+    }
+}
@@ -122,6 +122,12 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
     
     private final boolean sizeEstimate;
 
+    /**
+     * Caches the access checks on the query hits or <code>null</code> if
+     * each hit is checked with the access manager.
+     */
+    final AccessFilter accessFilter;
+
     /**
      * Creates a new query result. The concrete sub class is responsible for
      * calling {@link #getResults(long)} after this constructor had been called.
@@ -155,6 +161,8 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
         this.docOrder = documentOrder;
         this.offset = offset;
         this.limit = limit;
+        this.accessFilter = index.createAccessFilter(
+                sessionContext.getSessionImpl());
         for (ColumnImpl column : columns) {
             String cn = column.getColumnName();
             if (cn == null) {
@@ -286,7 +294,8 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
         try {
             long time = System.currentTimeMillis();
             long r1 = IOCounters.getReads();
-            result = executeQuery(maxResultSize);
+            // sorted hits only need to be collected up to the last result
+            result = executeQuery(offset + invalid + maxResultSize);
             long r2 = IOCounters.getReads();
             log.debug("query executed in {} ms ({})",
                     System.currentTimeMillis() - time, r2 - r1);
@@ -389,6 +398,10 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
      */
     protected boolean isAccessGranted(ScoreNode[] nodes)
             throws RepositoryException {
+        if (accessFilter != null) {
+            return accessFilter.isAccessGranted(
+                    nodes, sessionContext.getAccessManager());
+        }
         for (ScoreNode node : nodes) {
             try {
                 if (node != null && !sessionContext.getAccessManager().canRead(
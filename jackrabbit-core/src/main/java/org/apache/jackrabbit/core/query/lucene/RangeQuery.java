@@ -35,10 +35,10 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements a variant of the lucene class {@code org.apache.lucene.search.RangeQuery}.
@@ -348,7 +348,7 @@ public class RangeQuery extends Query implements Transformable {
             // check cache
             Map<String, BitSet> m = (Map<String, BitSet>) cache.get(RangeQueryScorer.class, reader);
             if (m == null) {
-                m = new HashMap<String, BitSet>();
+                m = new ConcurrentHashMap<String, BitSet>();
                 cache.put(RangeQueryScorer.class, reader, m);
             }
             resultMap = m;
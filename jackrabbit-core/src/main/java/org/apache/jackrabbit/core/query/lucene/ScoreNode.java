@@ -90,6 +90,14 @@ public final class ScoreNode {
         this.score = score;
     }
 
+    /**
+     * @return a new <code>ScoreNode</code> with the same node id, score and
+     *         document number as this score node.
+     */
+    ScoreNode copy() {
+        return new ScoreNode(id, score, doc);
+    }
+
     /**
      * Returns the document number for this score node.
      *
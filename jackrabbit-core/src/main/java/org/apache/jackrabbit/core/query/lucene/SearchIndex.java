@@ -32,6 +32,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -68,6 +78,8 @@ import org.apache.jackrabbit.core.query.QueryHandlerContext;
 import org.apache.jackrabbit.core.query.lucene.directory.DirectoryManager;
 import org.apache.jackrabbit.core.query.lucene.directory.FSDirectoryManager;
 import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
+import org.apache.jackrabbit.core.security.authorization.AccessControlListener;
+import org.apache.jackrabbit.core.security.authorization.AccessControlModifications;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
@@ -75,6 +87,7 @@ import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.core.state.NoSuchItemStateException;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.core.state.PropertyState;
+import org.apache.jackrabbit.core.stats.QueryCacheStat;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.PathFactory;
@@ -101,6 +114,7 @@ import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
 import org.apache.tika.config.TikaConfig;
 import org.apache.tika.fork.ForkParser;
@@ -115,7 +129,8 @@ import org.xml.sax.SAXException;
  * Implements a {@link org.apache.jackrabbit.core.query.QueryHandler} using
  * Lucene.
  */
-public class SearchIndex extends AbstractQueryHandler {
+public class SearchIndex extends AbstractQueryHandler
+        implements AccessControlListener {
 
     /**
      * Valid node type names under /jcr:system. Used to determine if a
@@ -152,6 +167,18 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private static final String NS_MAPPING_FILE = "ns_mappings.properties";
 
+    /**
+     * Name of the marker file that indicates that the index was created
+     * with the ancestors of all nodes indexed.
+     */
+    private static final String ANCESTORS_MARKER_FILE = "ancestors.indexed";
+
+    /**
+     * The delay in milliseconds between two runs of the task that re-indexes
+     * the descendants of moved nodes.
+     */
+    private static final long DESCENDANT_INDEXING_DELAY = 1000;
+
     /**
      * The default value for property {@link #minMergeDocs}.
      */
@@ -173,9 +200,8 @@ public class SearchIndex extends AbstractQueryHandler {
     public static final int DEFAULT_MAX_FIELD_LENGTH = 10000;
 
     /**
-     * The default value for property {@link #extractorPoolSize}.
-     * @deprecated this value is not used anymore. Instead the default value
-     * is calculated as follows: 2 * Runtime.getRuntime().availableProcessors().
+     * The default value for property {@link #extractorPoolSize}. Text is
+     * extracted in the thread pool of the repository by default.
      */
     public static final int DEFAULT_EXTRACTOR_POOL_SIZE = 0;
 
@@ -308,7 +334,7 @@ public class SearchIndex extends AbstractQueryHandler {
     /**
      * extractorPoolSize config parameter
      */
-    private int extractorPoolSize = 2 * Runtime.getRuntime().availableProcessors();
+    private int extractorPoolSize = DEFAULT_EXTRACTOR_POOL_SIZE;
 
     /**
      * extractorBackLog config parameter
@@ -386,6 +412,16 @@ public class SearchIndex extends AbstractQueryHandler {
      * Default value is: <code>false</code>.
      */
     private boolean supportHighlighting = false;
+
+    /**
+     * If set to <code>true</code> the ids of all ancestors of a node are
+     * indexed and descendant axis queries are evaluated with term lookups
+     * instead of walking up the hierarchy. Changing this value requires a
+     * re-index of the workspace.
+     * <p>
+     * Default value is: <code>false</code>.
+     */
+    private boolean indexAncestors = false;
     
     /**
      * If enabled, NodeIterator.getSize() may report a larger value than the
@@ -395,6 +431,94 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private boolean sizeEstimate = false;
 
+    /**
+     * The number of threads that score the index segments of a single query
+     * in parallel. The default value <code>1</code> scores the segments
+     * sequentially on the thread that executes the query.
+     */
+    private int searchParallelism = 1;
+
+    /**
+     * The pool that scores the index segments in parallel, or
+     * <code>null</code> if {@link #searchParallelism} is <code>1</code>.
+     */
+    private ForkJoinPool searchPool;
+
+    /**
+     * The maximum delay in milliseconds until changes are visible in the
+     * index. The default value <code>0</code> updates the index while
+     * changes are saved.
+     */
+    private long indexingLag = 0;
+
+    /**
+     * Applies the changes in the background, or <code>null</code> if
+     * {@link #indexingLag} is <code>0</code>.
+     */
+    private AsyncIndexer asyncIndexer;
+
+    /**
+     * Re-indexes the descendants of moved nodes if the ancestors of nodes
+     * are indexed, otherwise <code>null</code>.
+     */
+    private DescendantIndexer descendantIndexer;
+
+    /**
+     * Whether the index contains the ancestors of all nodes, that is,
+     * whether it was created with {@link #indexAncestors} enabled.
+     */
+    private boolean ancestorsIndexed;
+
+    /**
+     * Shared by index updates and exclusively held while the descendants of
+     * moved nodes are re-indexed, so that a re-indexed descendant never
+     * replaces the document of a newer state.
+     */
+    private final ReadWriteLock updateLock = new ReentrantReadWriteLock();
+
+    /**
+     * The maximum number of query statements whose hits are cached. The
+     * default value <code>0</code> disables the query result cache.
+     */
+    private int queryResultCacheSize = 0;
+
+    /**
+     * The query result cache or <code>null</code> if
+     * {@link #queryResultCacheSize} is <code>0</code>.
+     */
+    private QueryResultCache queryResultCache;
+
+    /**
+     * The maximum number of principal sets whose access checks on query hits
+     * are cached. The default value <code>0</code> disables the cache.
+     */
+    private int accessFilterCacheSize = 0;
+
+    /**
+     * The access filter cache or <code>null</code> if
+     * {@link #accessFilterCacheSize} is <code>0</code>.
+     */
+    private AccessFilterCache accessFilterCache;
+
+    /**
+     * The directory where the text extracted from binaries in the data store
+     * is cached, or <code>null</code> if the text is not cached.
+     */
+    private String extractedTextCachePath;
+
+    /**
+     * The extracted text cache or <code>null</code> if
+     * {@link #extractedTextCachePath} is not set.
+     */
+    private ExtractedTextCache extractedTextCache;
+
+    /**
+     * The pool that extracts the text of binaries, or <code>null</code> if
+     * {@link #extractorPoolSize} is <code>0</code> and the repository thread
+     * pool is used.
+     */
+    private ThreadPoolExecutor extractorPool;
+
     /**
      * The excerpt provider class. Implements {@link ExcerptProvider}.
      */
@@ -569,8 +693,20 @@ public class SearchIndex extends AbstractQueryHandler {
 
         // initialize the Tika parser
         parser = createParser();
+        if (extractedTextCachePath != null) {
+            extractedTextCache =
+                new ExtractedTextCache(new File(extractedTextCachePath));
+        }
+        if (extractorPoolSize > 0) {
+            extractorPool = createExtractorPool();
+        }
+
+        if (searchParallelism > 1) {
+            searchPool = new ForkJoinPool(searchParallelism);
+        }
 
         index = new MultiIndex(this, excludedIDs);
+        boolean created = false;
         if (index.numDocs() == 0) {
             Path rootPath;
             if (excludedIDs.isEmpty()) {
@@ -582,6 +718,23 @@ public class SearchIndex extends AbstractQueryHandler {
             index.createInitialIndex(context.getItemStateManager(),
                     context.getRootId(), rootPath);
             checkPendingJournalChanges(context);
+            created = true;
+        }
+        initAncestorsMarker(created);
+        if (queryResultCacheSize > 0) {
+            queryResultCache = new QueryResultCache(queryResultCacheSize);
+            context.getNodeTypeRegistry().addListener(queryResultCache);
+        }
+        if (accessFilterCacheSize > 0) {
+            accessFilterCache = new AccessFilterCache(accessFilterCacheSize);
+        }
+        if (indexAncestors) {
+            descendantIndexer = new DescendantIndexer(this,
+                    directoryManager.getDirectory("."), DESCENDANT_INDEXING_DELAY);
+        }
+        if (indexingLag > 0) {
+            asyncIndexer = new AsyncIndexer(
+                    this, directoryManager.getDirectory("."), indexingLag);
         }
         if (consistencyCheckEnabled
                 && (index.getRedoLogApplied() || forceConsistencyCheck)) {
@@ -616,6 +769,38 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Creates or removes the marker file that indicates whether the index
+     * contains the ancestors of all nodes. An existing index without the
+     * marker was created before {@link #indexAncestors} was enabled, so
+     * descendant axis queries keep walking the hierarchy until the index is
+     * re-created.
+     *
+     * @param created whether the index was just created.
+     * @throws IOException if the marker file cannot be read or written.
+     */
+    private void initAncestorsMarker(boolean created) throws IOException {
+        Directory dir = directoryManager.getDirectory(".");
+        try {
+            if (!indexAncestors) {
+                if (dir.fileExists(ANCESTORS_MARKER_FILE)) {
+                    dir.deleteFile(ANCESTORS_MARKER_FILE);
+                }
+            } else if (created) {
+                dir.createOutput(ANCESTORS_MARKER_FILE).close();
+                ancestorsIndexed = true;
+            } else if (dir.fileExists(ANCESTORS_MARKER_FILE)) {
+                ancestorsIndexed = true;
+            } else {
+                log.warn("The index at {} does not contain the ancestors of"
+                        + " nodes. Descendant axis queries walk the hierarchy"
+                        + " until the index is re-created.", path);
+            }
+        } finally {
+            dir.close();
+        }
+    }
+
     /**
      * Adds the <code>node</code> to the search index.
      * @param node the node to add.
@@ -639,7 +824,9 @@ public class SearchIndex extends AbstractQueryHandler {
     /**
      * This implementation forwards the call to
      * {@link MultiIndex#update(Collection, Collection)} and
-     * transforms the two iterators to the required types.
+     * transforms the two iterators to the required types. If the
+     * {@link #setIndexingLag(long) indexing lag} is set, the ids of the nodes
+     * are only queued and the index is updated in the background.
      *
      * @param remove ids of nodes to remove.
      * @param add    NodeStates to add. Calls to <code>next()</code> on this
@@ -652,6 +839,44 @@ public class SearchIndex extends AbstractQueryHandler {
             throws RepositoryException, IOException {
         checkOpen();
 
+        if (asyncIndexer != null) {
+            Set<NodeId> ids = new HashSet<NodeId>();
+            while (remove.hasNext()) {
+                ids.add(remove.next());
+            }
+            while (add.hasNext()) {
+                NodeState state = add.next();
+                if (state != null) {
+                    ids.add(state.getNodeId());
+                }
+            }
+            asyncIndexer.enqueue(ids);
+        } else {
+            applyUpdates(remove, add);
+        }
+    }
+
+    /**
+     * Updates the index with the given nodes.
+     *
+     * @param remove ids of nodes to remove.
+     * @param add    NodeStates to add. Calls to <code>next()</code> on this
+     *               iterator may return <code>null</code>.
+     * @throws RepositoryException if an error occurs while indexing a node.
+     * @throws IOException         if an error occurs while updating the index.
+     */
+    void applyUpdates(Iterator<NodeId> remove, Iterator<NodeState> add)
+            throws RepositoryException, IOException {
+        updateLock.readLock().lock();
+        try {
+            doApplyUpdates(remove, add);
+        } finally {
+            updateLock.readLock().unlock();
+        }
+    }
+
+    private void doApplyUpdates(Iterator<NodeId> remove, Iterator<NodeState> add)
+            throws RepositoryException, IOException {
         Map<NodeId, NodeState> aggregateRoots = new HashMap<NodeId, NodeState>();
         Set<NodeId> removedIds = new HashSet<NodeId>();
         Set<NodeId> addedIds = new HashSet<NodeId>();
@@ -665,6 +890,8 @@ public class SearchIndex extends AbstractQueryHandler {
         }
         
         Collection<Document> addCollection = new ArrayList<Document>();
+        // parents of re-indexed nodes with children, to detect moves
+        Map<NodeId, String[]> parents = new HashMap<NodeId, String[]>();
         while (add.hasNext()) {
             NodeState state = add.next();
             if (state != null) {
@@ -673,9 +900,14 @@ public class SearchIndex extends AbstractQueryHandler {
                 retrieveAggregateRoot(state, aggregateRoots);
 
                 try {
-                    addCollection.add(createDocument(
+                    Document doc = createDocument(
                             state, getNamespaceMappings(),
-                            index.getIndexFormatVersion()));
+                            index.getIndexFormatVersion());
+                    addCollection.add(doc);
+                    if (indexAncestors && removedIds.contains(id)
+                            && state.hasChildNodeEntries()) {
+                        parents.put(id, doc.getValues(FieldNames.PARENT));
+                    }
                 } catch (RepositoryException e) {
                     log.warn("Exception while creating document for node: "
                             + state.getNodeId() + ": " + e.toString());
@@ -685,6 +917,12 @@ public class SearchIndex extends AbstractQueryHandler {
         time = System.currentTimeMillis() - time;
         log.debug("created the removeCollection {} and addCollection {} in {}ms", new Object[] {removeCollection.size(), addCollection.size(), time});
 
+        Set<NodeId> moved = getMovedNodes(parents);
+        if (!moved.isEmpty()) {
+            // the descendants still have the ancestors before the move
+            descendantIndexer.enqueue(moved);
+        }
+
         index.update(removeCollection, addCollection);
 
         // remove any aggregateRoot nodes that are new
@@ -714,6 +952,89 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Returns the nodes whose parents in the index differ from the given
+     * parents, that is, the nodes that have been moved.
+     *
+     * @param parents the new parents of re-indexed nodes.
+     * @return the moved nodes.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private Set<NodeId> getMovedNodes(Map<NodeId, String[]> parents)
+            throws IOException {
+        Set<NodeId> moved = new HashSet<NodeId>();
+        if (parents.isEmpty()) {
+            return moved;
+        }
+        CachingMultiIndexReader reader = index.getIndexReader();
+        try {
+            TermDocs tDocs = reader.termDocs();
+            try {
+                for (Map.Entry<NodeId, String[]> entry : parents.entrySet()) {
+                    tDocs.seek(TermFactory.createUUIDTerm(
+                            entry.getKey().toString()));
+                    if (tDocs.next()) {
+                        Document doc = reader.document(
+                                tDocs.doc(), FieldSelectors.UUID_AND_PARENT);
+                        Set<String> previous = new HashSet<String>(Arrays.asList(
+                                doc.getValues(FieldNames.PARENT)));
+                        Set<String> current = new HashSet<String>(Arrays.asList(
+                                entry.getValue()));
+                        if (!previous.equals(current)) {
+                            moved.add(entry.getKey());
+                        }
+                    }
+                }
+            } finally {
+                tDocs.close();
+            }
+        } finally {
+            reader.release();
+        }
+        return moved;
+    }
+
+    /**
+     * Re-indexes the given nodes. Used to update the indexed ancestors of
+     * the descendants of moved nodes.
+     *
+     * @param ids the ids of the nodes.
+     * @return the ids of the nodes that have child nodes.
+     * @throws IOException if an error occurs while updating the index.
+     */
+    List<NodeId> reindexNodes(Collection<NodeId> ids) throws IOException {
+        List<NodeId> parents = new ArrayList<NodeId>();
+        // exclude concurrent updates, which may index a newer state
+        updateLock.writeLock().lock();
+        try {
+            ItemStateManager ism = getContext().getItemStateManager();
+            Collection<NodeId> remove = new ArrayList<NodeId>(ids.size());
+            Collection<Document> add = new ArrayList<Document>(ids.size());
+            for (NodeId id : ids) {
+                try {
+                    if (ism.hasItemState(id)) {
+                        NodeState state = (NodeState) ism.getItemState(id);
+                        add.add(createDocument(state, getNamespaceMappings(),
+                                index.getIndexFormatVersion()));
+                        remove.add(id);
+                        if (state.hasChildNodeEntries()) {
+                            parents.add(id);
+                        }
+                    }
+                } catch (ItemStateException e) {
+                    log.debug("Node {} does not exist anymore", id);
+                } catch (RepositoryException e) {
+                    log.warn("Exception while creating document for node: "
+                            + id + ": " + e.toString());
+                }
+            }
+            index.update(remove, add);
+        } finally {
+            updateLock.writeLock().unlock();
+        }
+        return parents;
+    }
+
     /**
      * Creates a new query by specifying the query statement itself and the
      * language in which the query is stated.  If the query statement is
@@ -807,13 +1128,23 @@ public class SearchIndex extends AbstractQueryHandler {
     }
 
     /**
-     * Waits until all pending text extraction tasks have been processed
-     * and the updated index has been flushed to disk.
+     * Applies the changes pending with an {@link #setIndexingLag(long)
+     * indexing lag}, waits until all pending text extraction tasks have been
+     * processed and the updated index has been flushed to disk. Callers that
+     * need to query their own changes right after a save can call this
+     * method.
      *
      * @throws RepositoryException if the index update can not be written
      */
     public void flush() throws RepositoryException {
         try {
+            if (asyncIndexer != null) {
+                // make pending changes visible
+                asyncIndexer.apply();
+            }
+            if (descendantIndexer != null) {
+                descendantIndexer.apply();
+            }
             index.waitUntilIndexingQueueIsEmpty();
             index.safeFlush();
             // flush may have pushed nodes into the indexing queue
@@ -839,7 +1170,22 @@ public class SearchIndex extends AbstractQueryHandler {
         if (spellChecker != null) {
             spellChecker.close();
         }
+        if (asyncIndexer != null) {
+            asyncIndexer.close();
+        }
+        if (descendantIndexer != null) {
+            descendantIndexer.close();
+        }
+        if (queryResultCache != null) {
+            getContext().getNodeTypeRegistry().removeListener(queryResultCache);
+        }
         index.close();
+        if (searchPool != null) {
+            searchPool.shutdown();
+        }
+        if (extractorPool != null) {
+            extractorPool.shutdown();
+        }
         getContext().destroy();
         super.close();
         closed = true;
@@ -867,15 +1213,77 @@ public class SearchIndex extends AbstractQueryHandler {
                                              boolean[] orderSpecs,
                                              String[] orderFuncs, long resultFetchHint)
             throws IOException {
+        return executeQuery(session, queryImpl, query, orderProps, orderSpecs,
+                orderFuncs, resultFetchHint, null);
+    }
+
+    /**
+     * Executes the query on the search index and excludes the hits that are
+     * known to be not readable by the given <code>accessFilter</code>.
+     *
+     * @param session         the session that executes the query.
+     * @param queryImpl       the query impl.
+     * @param query           the lucene query.
+     * @param orderProps      name of the properties for sort order.
+     * @param orderSpecs      the order specs for the sort order properties.
+     *                        <code>true</code> indicates ascending order,
+     *                        <code>false</code> indicates descending.
+     * @param orderFuncs      functions for the properties for sort order.
+     * @param resultFetchHint a hint on how many results should be fetched.
+     * @param accessFilter    the access filter of the session or
+     *                        <code>null</code>.
+     * @return the query hits.
+     * @throws IOException if an error occurs while searching the index.
+     */
+    MultiColumnQueryHits executeQuery(SessionImpl session,
+                                      AbstractQueryImpl queryImpl,
+                                      Query query,
+                                      Path[] orderProps,
+                                      boolean[] orderSpecs,
+                                      String[] orderFuncs, long resultFetchHint,
+                                      AccessFilter accessFilter)
+            throws IOException {
         checkOpen();
 
+        String key = null;
+        long generation = 0;
+        if (queryResultCache != null) {
+            try {
+                key = queryImpl.getResultCacheKey();
+            } catch (RepositoryException e) {
+                throw Util.createIOException(e);
+            }
+        }
+        if (key != null) {
+            // cached hits are shared by all sessions and must not be filtered
+            if (accessFilter != null) {
+                accessFilter.setIndexReader(null);
+                accessFilter = null;
+            }
+            // read the generation before the reader is acquired
+            generation = getIndexGeneration(queryImpl.needsSystemTree());
+            MultiColumnQueryHits hits = queryResultCache.get(key, generation);
+            QueryCacheStat stat = getContext().getStatManager().getQueryCacheStat();
+            if (hits != null) {
+                stat.logHit();
+                return hits;
+            }
+            stat.logMiss();
+        }
+
         Sort sort = new Sort(createSortFields(orderProps, orderSpecs, orderFuncs));
 
         final IndexReader reader = getIndexReader(queryImpl.needsSystemTree());
         JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                 session, reader, getContext().getItemStateManager());
         searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
+        searcher.setSearchPool(searchPool);
+        searcher.setIndexAncestors(isAncestorsIndexed());
+        if (accessFilter != null) {
+            accessFilter.setIndexReader(reader);
+            searcher.setAccessFilter(accessFilter);
+        }
+        MultiColumnQueryHits hits = new FilterMultiColumnQueryHits(
                 searcher.execute(query, sort, resultFetchHint,
                         QueryImpl.DEFAULT_SELECTOR_NAME)) {
             public void close() throws IOException {
@@ -886,6 +1294,15 @@ public class SearchIndex extends AbstractQueryHandler {
                 }
             }
         };
+        if (key != null) {
+            try {
+                hits = queryResultCache.cache(key, generation, hits, searcher);
+            } catch (IOException e) {
+                hits.close();
+                throw e;
+            }
+        }
+        return hits;
     }
 
     /**
@@ -909,6 +1326,8 @@ public class SearchIndex extends AbstractQueryHandler {
         JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                 session, reader, getContext().getItemStateManager());
         searcher.setSimilarity(getSimilarity());
+        searcher.setSearchPool(searchPool);
+        searcher.setIndexAncestors(isAncestorsIndexed());
         return new FilterMultiColumnQueryHits(
                 query.execute(searcher, orderings, resultFetchHint)) {
             public void close() throws IOException {
@@ -1035,7 +1454,12 @@ public class SearchIndex extends AbstractQueryHandler {
                     SearchIndex.class.getClassLoader(),
                     new AutoDetectParser(config));
             forkParser.setJavaCommand(forkJavaCommand);
-            forkParser.setPoolSize(extractorPoolSize);
+            if (extractorPoolSize > 0) {
+                forkParser.setPoolSize(extractorPoolSize);
+            } else {
+                forkParser.setPoolSize(
+                        2 * Runtime.getRuntime().availableProcessors());
+            }
             return forkParser;
         } else {
             return new AutoDetectParser(config);
@@ -1091,6 +1515,25 @@ public class SearchIndex extends AbstractQueryHandler {
         return similarity;
     }
 
+    /**
+     * Returns the generation of the readers returned by
+     * {@link #getIndexReader(boolean)}. The generation changes whenever the
+     * content of the index changes.
+     *
+     * @param includeSystemIndex if <code>true</code> the generation of the
+     *                           index of the parent handler is included.
+     * @return the generation of the index.
+     */
+    long getIndexGeneration(boolean includeSystemIndex) {
+        long generation = index.getReaderGeneration();
+        QueryHandler parentHandler = getContext().getParentHandler();
+        if (parentHandler instanceof SearchIndex && includeSystemIndex) {
+            // both generations only increase
+            generation += ((SearchIndex) parentHandler).index.getReaderGeneration();
+        }
+        return generation;
+    }
+
     /**
      * Returns an index reader for this search index. The caller of this method
      * is responsible for closing the index reader when he is finished using
@@ -1247,10 +1690,16 @@ public class SearchIndex extends AbstractQueryHandler {
                                       NamespaceMappings nsMappings,
                                       IndexFormatVersion indexFormatVersion)
             throws RepositoryException {
+        Executor executor = extractorPool;
+        if (executor == null) {
+            executor = getContext().getExecutor();
+        }
         NodeIndexer indexer = new NodeIndexer(
                 node, getContext().getItemStateManager(), nsMappings,
-                getContext().getExecutor(), parser);
+                executor, parser);
+        indexer.setExtractedTextCache(extractedTextCache);
         indexer.setSupportHighlighting(supportHighlighting);
+        indexer.setIndexAncestors(indexAncestors);
         indexer.setIndexingConfiguration(indexingConfig);
         indexer.setIndexFormatVersion(indexFormatVersion);
         indexer.setMaxExtractLength(getMaxExtractLength());
@@ -1259,6 +1708,43 @@ public class SearchIndex extends AbstractQueryHandler {
         return doc;
     }
 
+    /**
+     * Creates the pool that extracts the text of binaries. It has
+     * {@link #extractorPoolSize} threads and queues up to
+     * {@link #extractorBackLog} extractions. Further extractions, and
+     * extractions after the pool was shut down, are run by the indexing
+     * thread.
+     *
+     * @return the extractor pool.
+     */
+    private ThreadPoolExecutor createExtractorPool() {
+        final ClassLoader loader = getClass().getClassLoader();
+        final AtomicInteger counter = new AtomicInteger(1);
+        ThreadFactory factory = new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable,
+                        "jackrabbit-text-extractor-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                thread.setContextClassLoader(loader);
+                return thread;
+            }
+        };
+        RejectedExecutionHandler handler = new RejectedExecutionHandler() {
+            public void rejectedExecution(
+                    Runnable runnable, ThreadPoolExecutor executor) {
+                // the extracted text of a field must always be set
+                runnable.run();
+            }
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                extractorPoolSize, extractorPoolSize, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(Math.max(1, extractorBackLog)),
+                factory, handler);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
     /**
      * Returns the actual index.
      *
@@ -2137,7 +2623,9 @@ public class SearchIndex extends AbstractQueryHandler {
     }
 
     /**
-     * The number of background threads for the extractor pool.
+     * The number of background threads for the extractor pool. With the
+     * default value <code>0</code> text is extracted in the thread pool of
+     * the repository.
      *
      * @param numThreads the number of threads.
      */
@@ -2189,6 +2677,154 @@ public class SearchIndex extends AbstractQueryHandler {
     public long getExtractorTimeout() {
         return extractorTimeout;
     }
+
+    /**
+     * Sets the directory where the text extracted from binaries in the data
+     * store is cached. The text is keyed by the content hash of a binary,
+     * the cache should therefore be located outside of the index directory
+     * to survive a re-index. By default the text is not cached.
+     *
+     * @param path the cache directory.
+     */
+    public void setExtractedTextCachePath(String path) {
+        extractedTextCachePath = path;
+    }
+
+    /**
+     * @return the directory of the extracted text cache or <code>null</code>
+     *         if the text is not cached.
+     */
+    public String getExtractedTextCachePath() {
+        return extractedTextCachePath;
+    }
+
+    /**
+     * Sets the number of threads that score the index segments of a single
+     * query in parallel. This applies to unsorted term, wildcard, range and
+     * descendant axis queries.
+     *
+     * @param parallelism the number of threads, <code>1</code> disables
+     *                    parallel scoring.
+     */
+    public void setSearchParallelism(int parallelism) {
+        searchParallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return the number of threads that score the index segments of a
+     *         single query in parallel.
+     */
+    public int getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    /**
+     * Sets the maximum delay in milliseconds until saved changes are visible
+     * in the index. If set, a save only queues the ids of the changed nodes
+     * in a persisted log, and the index is updated in batches by a background
+     * task. {@link #flush()} applies all pending changes immediately. The
+     * default value <code>0</code> updates the index while changes are saved.
+     *
+     * @param lag the indexing lag in milliseconds.
+     */
+    public void setIndexingLag(long lag) {
+        indexingLag = Math.max(0, lag);
+    }
+
+    /**
+     * @return the maximum delay in milliseconds until saved changes are
+     *         visible in the index.
+     */
+    public long getIndexingLag() {
+        return indexingLag;
+    }
+
+    /**
+     * Sets the maximum number of query statements whose hits are cached. The
+     * hits are cached before access control is applied and are shared by all
+     * sessions, until the index changes. The default value <code>0</code>
+     * disables the cache.
+     *
+     * @param size the maximum number of cached statements.
+     */
+    public void setQueryResultCacheSize(int size) {
+        queryResultCacheSize = Math.max(0, size);
+    }
+
+    /**
+     * @return the maximum number of query statements whose hits are cached.
+     */
+    public int getQueryResultCacheSize() {
+        return queryResultCacheSize;
+    }
+
+    /**
+     * @return the query result cache or <code>null</code> if it is disabled.
+     */
+    QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * Sets the maximum number of principal sets whose read access checks on
+     * query hits are cached. Query hits that are known to be not readable
+     * are then excluded before they are scored and sorted. The cache assumes
+     * that read access only depends on the principals of a session. The
+     * default value <code>0</code> disables the cache.
+     *
+     * @param size the maximum number of cached principal sets.
+     */
+    public void setAccessFilterCacheSize(int size) {
+        accessFilterCacheSize = Math.max(0, size);
+    }
+
+    /**
+     * @return the maximum number of principal sets whose access checks are
+     *         cached.
+     */
+    public int getAccessFilterCacheSize() {
+        return accessFilterCacheSize;
+    }
+
+    /**
+     * @return the access filter cache or <code>null</code> if it is disabled.
+     */
+    AccessFilterCache getAccessFilterCache() {
+        return accessFilterCache;
+    }
+
+    /**
+     * Creates a filter for the query hits of the given session.
+     *
+     * @param session the session that executes a query.
+     * @return the filter or <code>null</code> if the access filter cache is
+     *         disabled or the session is not access checked.
+     */
+    AccessFilter createAccessFilter(SessionImpl session) {
+        if (accessFilterCache == null) {
+            return null;
+        }
+        return accessFilterCache.createFilter(session);
+    }
+
+    /**
+     * Clears the access filter cache.
+     *
+     * @param modifications the access control modifications.
+     */
+    public void acModified(AccessControlModifications modifications) {
+        if (accessFilterCache != null) {
+            accessFilterCache.acModified(modifications);
+        }
+    }
+
+    /**
+     * @return the pool that scores the index segments in parallel, or
+     *         <code>null</code> if the segments are scored sequentially.
+     */
+    ForkJoinPool getSearchPool() {
+        return searchPool;
+    }
     
     /**
      * If enabled, NodeIterator.getSize() may report a larger value than the
@@ -2231,6 +2867,38 @@ public class SearchIndex extends AbstractQueryHandler {
         return supportHighlighting;
     }
 
+    /**
+     * If set to <code>true</code> the ids of all ancestors of a node are
+     * indexed, and descendant axis queries are evaluated with term lookups
+     * instead of walking up the hierarchy. When a node is moved, its
+     * descendants are re-indexed in the background, and queries walk the
+     * hierarchy until that is done. An existing index is only used with
+     * term lookups once it has been re-created with this value enabled.
+     *
+     * @param b <code>true</code> to index the ancestors of nodes.
+     */
+    public void setIndexAncestors(boolean b) {
+        indexAncestors = b;
+    }
+
+    /**
+     * @return <code>true</code> if the ancestors of nodes are indexed.
+     */
+    public boolean isIndexAncestors() {
+        return indexAncestors;
+    }
+
+    /**
+     * Returns <code>true</code> if the ancestors in the index are complete
+     * and up to date, that is, if the index was created with the ancestors
+     * of nodes indexed and no descendants of moved nodes are pending.
+     *
+     * @return whether queries can look up descendants by their ancestors.
+     */
+    boolean isAncestorsIndexed() {
+        return ancestorsIndexed && descendantIndexer.getNumPending() == 0;
+    }
+
     /**
      * Sets the class name for the {@link ExcerptProvider} that should be used
      * for the rep:excerpt pseudo property in a query.
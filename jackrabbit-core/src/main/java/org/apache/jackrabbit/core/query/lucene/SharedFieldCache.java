@@ -18,8 +18,11 @@ package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
 
 import javax.jcr.PropertyType;
@@ -40,6 +43,12 @@ public class SharedFieldCache {
 
     /**
      * Expert: Stores term text values and document ordering data.
+     * <p>
+     * Dense indexes where every document has a single value of the same
+     * type keep the values in a primitive column: a <code>long[]</code> for
+     * long and date values, a <code>double[]</code> for double values and
+     * ordinals into the sorted distinct terms for string values. Other
+     * indexes keep one <code>Comparable</code> per document.
      */
     public static class ValueIndex {
 
@@ -51,10 +60,38 @@ public class SharedFieldCache {
         private static final int SPARSE_FACTOR = 100;
 
         /**
-         * Values indexed by document id.
+         * Values indexed by document id, or <code>null</code> if the values
+         * are kept in a primitive column.
          */
         private final Comparable<?>[] values;
 
+        /**
+         * Long values indexed by document id, or <code>null</code>.
+         */
+        private final long[] longs;
+
+        /**
+         * Double values indexed by document id, or <code>null</code>.
+         */
+        private final double[] doubles;
+
+        /**
+         * The documents that have a value in {@link #longs} or
+         * {@link #doubles}.
+         */
+        private final BitSet present;
+
+        /**
+         * Ordinals into {@link #terms} indexed by document id, -1 if a
+         * document has no value. <code>null</code> if not a string column.
+         */
+        private final int[] ords;
+
+        /**
+         * The sorted distinct string values referenced by {@link #ords}.
+         */
+        private final String[] terms;
+
         /**
          * Values (Comparable) map indexed by document id.
          */
@@ -69,9 +106,9 @@ public class SharedFieldCache {
          * Creates one of these objects
          */
         public ValueIndex(Comparable<?>[] values, int setValues) {
+            Class<?> type = null;
             if (isSparse(values, setValues)) {
                 this.sparse = true;
-                this.values = null;
                 if (setValues == 0) {
                     this.valuesMap = null;
                 } else {
@@ -79,19 +116,133 @@ public class SharedFieldCache {
                 }
             } else {
                 this.sparse = false;
-                this.values = values;
                 this.valuesMap = null;
+                type = getColumnType(values);
+            }
+            this.values = sparse || type != null ? null : values;
+            this.present = type == Long.class || type == Double.class
+                    ? new BitSet(values.length) : null;
+            this.longs = type == Long.class ? new long[values.length] : null;
+            this.doubles = type == Double.class ? new double[values.length] : null;
+            if (type == String.class) {
+                this.terms = getTerms(values);
+                this.ords = new int[values.length];
+            } else {
+                this.terms = null;
+                this.ords = null;
+            }
+            if (type != null) {
+                fillColumn(values);
             }
         }
 
         public Comparable<?> getValue(int i) {
             if (sparse) {
                 return valuesMap == null ? null : valuesMap.get(i);
+            } else if (longs != null) {
+                return present.get(i) ? Long.valueOf(longs[i]) : null;
+            } else if (doubles != null) {
+                return present.get(i) ? Double.valueOf(doubles[i]) : null;
+            } else if (ords != null) {
+                return ords[i] < 0 ? null : terms[ords[i]];
             } else {
                 return values[i];
             }
         }
 
+        /**
+         * Compares <code>value</code> with the value of document
+         * <code>i</code> in the same way as {@link Util#compare(Comparable, Comparable)},
+         * but does not create an object for values kept in a primitive
+         * column.
+         *
+         * @param value a value, may be <code>null</code>.
+         * @param i     the document id.
+         * @return a negative integer, zero or a positive integer if
+         *         <code>value</code> is less than, equal to, or greater than
+         *         the value of the document.
+         */
+        public int compare(Comparable<?> value, int i) {
+            if (longs != null || doubles != null) {
+                if (!present.get(i)) {
+                    return value == null ? 0 : 1;
+                } else if (value == null) {
+                    return -1;
+                } else if (longs != null && value instanceof Long) {
+                    long l = (Long) value;
+                    return l < longs[i] ? -1 : (l == longs[i] ? 0 : 1);
+                } else if (doubles != null && value instanceof Double) {
+                    return Double.compare((Double) value, doubles[i]);
+                }
+            } else if (ords != null) {
+                if (ords[i] < 0) {
+                    return value == null ? 0 : 1;
+                } else if (value == null) {
+                    return -1;
+                } else if (value instanceof String) {
+                    return ((String) value).compareTo(terms[ords[i]]);
+                }
+            }
+            return Util.compare(value, getValue(i));
+        }
+
+        /**
+         * Fills the primitive column from <code>values</code>.
+         */
+        private void fillColumn(Comparable<?>[] values) {
+            for (int i = 0; i < values.length; i++) {
+                Comparable<?> v = values[i];
+                if (ords != null) {
+                    ords[i] = v == null ? -1 : Arrays.binarySearch(terms, v);
+                } else if (v != null) {
+                    present.set(i);
+                    if (longs != null) {
+                        longs[i] = (Long) v;
+                    } else {
+                        doubles[i] = (Double) v;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the type of the primitive column for <code>values</code>:
+         * <code>Long</code>, <code>Double</code> or <code>String</code> if
+         * all values are of that type, <code>null</code> otherwise.
+         */
+        private static Class<?> getColumnType(Comparable<?>[] values) {
+            Class<?> type = null;
+            for (Comparable<?> v : values) {
+                if (v == null) {
+                    continue;
+                } else if (type == null) {
+                    type = v.getClass();
+                    if (type != Long.class && type != Double.class
+                            && type != String.class) {
+                        return null;
+                    }
+                } else if (v.getClass() != type) {
+                    return null;
+                }
+            }
+            return type;
+        }
+
+        /**
+         * Returns the sorted distinct strings in <code>values</code>.
+         */
+        private static String[] getTerms(Comparable<?>[] values) {
+            Set<String> terms = new HashSet<String>();
+            for (Comparable<?> v : values) {
+                if (v != null) {
+                    terms.add((String) v);
+                }
+            }
+            String[] sorted = terms.toArray(new String[terms.size()]);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
         private static Map<Integer, Comparable<?>> getValuesMap(Comparable<?>[] values, int setValues) {
             Map<Integer, Comparable<?>> map = new HashMap<Integer, Comparable<?>>(setValues);
             for (int i = 0; i < values.length && setValues > 0; i++) {
@@ -116,7 +116,8 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
     static final class SimpleFieldComparator extends AbstractFieldComparator {
 
         /**
-         * The term look ups of the index segments.
+         * The term look ups of the index segments. The look up of a segment
+         * is only loaded when a document of the segment is compared.
          */
         protected SharedFieldCache.ValueIndex[] indexes;
 
@@ -130,6 +131,11 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
          */
         private final String fieldName;
 
+        /**
+         * The bottom value.
+         */
+        private Comparable<?> bottom;
+
         /**
          * Create a new instance of the <code>FieldComparator</code>.
          *
@@ -147,20 +153,53 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
         public void setNextReader(IndexReader reader, int docBase) throws IOException {
             super.setNextReader(reader, docBase);
 
+            SharedFieldCache.ValueIndex[] loaded = indexes;
             indexes = new SharedFieldCache.ValueIndex[readers.size()];
-
-            String namedValue = FieldNames.createNamedValue(propertyName, "");
-            for (int i = 0; i < readers.size(); i++) {
-                IndexReader r = readers.get(i);
-                indexes[i] = SharedFieldCache.INSTANCE.getValueIndex(r,
-                        fieldName, namedValue);
+            if (loaded != null) {
+                System.arraycopy(loaded, 0, indexes, 0,
+                        Math.min(loaded.length, indexes.length));
             }
         }
 
+        @Override
+        public void setBottom(int slot) {
+            super.setBottom(slot);
+            bottom = getValue(slot);
+        }
+
+        @Override
+        public int compareBottom(int doc) throws IOException {
+            int idx = readerIndex(doc);
+            return getValueIndex(idx).compare(bottom, doc - starts[idx]);
+        }
+
         @Override
         protected Comparable<?> sortValue(int doc) {
             int idx = readerIndex(doc);
-            return indexes[idx].getValue(doc - starts[idx]);
+            try {
+                return getValueIndex(idx).getValue(doc - starts[idx]);
+            } catch (IOException e) {
+                throw new RuntimeException(
+                        "Unable to read sort values of " + propertyName, e);
+            }
+        }
+
+        /**
+         * Returns the term look up of an index segment and loads it on first
+         * access.
+         *
+         * @param idx the index of the segment in {@link #readers}.
+         * @return the term look up.
+         * @throws IOException if an error occurs while reading from the index.
+         */
+        private SharedFieldCache.ValueIndex getValueIndex(int idx)
+                throws IOException {
+            if (indexes[idx] == null) {
+                indexes[idx] = SharedFieldCache.INSTANCE.getValueIndex(
+                        readers.get(idx), fieldName,
+                        FieldNames.createNamedValue(propertyName, ""));
+            }
+            return indexes[idx];
         }
 
     }
@@ -73,7 +73,8 @@ public class SingleColumnQueryResult extends QueryResultImpl {
             throws IOException {
         return index.executeQuery(
                 sessionContext.getSessionImpl(), queryImpl, query,
-                orderProps, orderSpecs, orderFuncs, resultFetchHint);
+                orderProps, orderSpecs, orderFuncs, resultFetchHint,
+                accessFilter);
     }
 
     /**
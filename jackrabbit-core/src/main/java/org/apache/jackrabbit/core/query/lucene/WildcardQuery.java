@@ -37,8 +37,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.BitSet;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Implements a wildcard query on a lucene field with an embedded property name
@@ -328,7 +328,7 @@ public class WildcardQuery extends Query implements Transformable {
             // check cache
             Map<String, BitSet> m = (Map<String, BitSet>) cache.get(WildcardQueryScorer.class, reader);
             if (m == null) {
-                m = new HashMap<String, BitSet>();
+                m = new ConcurrentHashMap<String, BitSet>();
                 cache.put(WildcardQueryScorer.class, reader, m);
             }
             resultMap = m;
@@ -132,6 +132,25 @@ public class FSDirectoryManager implements DirectoryManager {
     public void dispose() {
     }
 
+    /**
+     * Returns the file with the given name in <code>directory</code>, if the
+     * directory is stored in the file system.
+     *
+     * @param directory a directory.
+     * @param name      the name of a file in the directory.
+     * @return the file or <code>null</code> if <code>directory</code> is not
+     *         stored in the file system.
+     */
+    public static File getFile(Directory directory, String name) {
+        if (directory instanceof FSDir) {
+            directory = ((FSDir) directory).directory;
+        }
+        if (directory instanceof FSDirectory) {
+            return new File(((FSDirectory) directory).getDirectory(), name);
+        }
+        return null;
+    }
+
     //-----------------------< internal >---------------------------------------
 
     private static final class FSDir extends Directory {
@@ -68,10 +68,25 @@ class ChildNodeJoinMerger extends JoinMerger {
         for (Row row : leftRows) {
             paths.addAll(getLeftValues(row));
         }
+        return getJoinConstraints(paths, rightSelectors);
+    }
+
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+        return getJoinConstraints(paths, leftSelectors);
+    }
 
+    private List<Constraint> getJoinConstraints(
+            Set<String> paths, Set<String> selectors)
+            throws RepositoryException {
         List<Constraint> constraints = new ArrayList<Constraint>();
         for (String path: paths) {
-            if (rightSelectors.contains(childSelector)) {
+            if (selectors.contains(childSelector)) {
                 constraints.add(factory.childNode(childSelector, path));
             } else {
                 constraints.add(factory.sameNode(parentSelector, path));
@@ -68,10 +68,25 @@ class DescendantNodeJoinMerger extends JoinMerger {
         for (Row row : leftRows) {
             paths.addAll(getLeftValues(row));
         }
+        return getJoinConstraints(paths, rightSelectors);
+    }
+
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+        return getJoinConstraints(paths, leftSelectors);
+    }
 
+    private List<Constraint> getJoinConstraints(
+            Set<String> paths, Set<String> selectors)
+            throws RepositoryException {
         List<Constraint> constraints = new ArrayList<Constraint>();
         for (String path : paths) {
-            if (rightSelectors.contains(descendantSelector)) {
+            if (selectors.contains(descendantSelector)) {
                 constraints.add(
                         factory.descendantNode(descendantSelector, path));
             } else {
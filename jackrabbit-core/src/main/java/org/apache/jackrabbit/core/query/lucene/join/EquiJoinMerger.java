@@ -81,9 +81,21 @@ class EquiJoinMerger extends JoinMerger {
     @Override
     public List<Constraint> getRightJoinConstraints(Collection<Row> leftRows)
             throws RepositoryException {
+        return getJoinConstraints(leftRows, leftProperty, rightProperty);
+    }
+
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        return getJoinConstraints(rightRows, rightProperty, leftProperty);
+    }
+
+    private List<Constraint> getJoinConstraints(
+            Collection<Row> rows, PropertyValue from, PropertyValue to)
+            throws RepositoryException {
         Map<String, Literal> literals = new HashMap<String, Literal>();
-        for (Row leftRow : leftRows) {
-            for (Value value : evaluator.getValues(leftProperty, leftRow)) {
+        for (Row row : rows) {
+            for (Value value : evaluator.getValues(from, row)) {
                 literals.put(value.getString(), factory.literal(value));
             }
         }
@@ -92,7 +104,7 @@ class EquiJoinMerger extends JoinMerger {
             new ArrayList<Constraint>(literals.size());
         for (Literal literal : literals.values()) {
             constraints.add(factory.comparison(
-                    rightProperty, JCR_OPERATOR_EQUAL_TO, literal));
+                    to, JCR_OPERATOR_EQUAL_TO, literal));
         }
         return constraints;
     }
@@ -282,20 +282,65 @@ abstract class JoinMerger {
 
     private Map<String, List<Row>> buildRightRowValues(RowIterator rightRows)
             throws RepositoryException {
+        return getRowValues(rightRows, false);
+    }
+
+    /**
+     * Builds a hash table of the given rows of one side of the join, keyed
+     * by their join values.
+     *
+     * @param rows rows of one side of the join
+     * @param left <code>true</code> for rows of the left side,
+     *             <code>false</code> for rows of the right side
+     * @return the rows by join value
+     * @throws RepositoryException if the join values can not be evaluated
+     */
+    public Map<String, List<Row>> getRowValues(RowIterator rows, boolean left)
+            throws RepositoryException {
         Map<String, List<Row>> map = new HashMap<String, List<Row>>();
-        for (Row row : new RowIterable(rightRows)) {
-            for (String value : getRightValues(row)) {
-                List<Row> rows = map.get(value);
-                if (rows == null) {
-                    rows = new ArrayList<Row>();
-                    map.put(value, rows);
+        for (Row row : new RowIterable(rows)) {
+            Set<String> values = left ? getLeftValues(row) : getRightValues(row);
+            for (String value : values) {
+                List<Row> list = map.get(value);
+                if (list == null) {
+                    list = new ArrayList<Row>();
+                    map.put(value, list);
                 }
-                rows.add(row);
+                list.add(row);
             }
         }
         return map;
     }
 
+    /**
+     * Adds the inner joins of the given row with the matching rows of the
+     * other side of the join to the given collection.
+     *
+     * @param row row of one side of the join
+     * @param left <code>true</code> if the row is of the left side,
+     *             <code>false</code> if it is of the right side
+     * @param others rows of the other side by join value, see
+     *               {@link #getRowValues(RowIterator, boolean)}
+     * @param joined the collection to add the joined rows to
+     * @throws RepositoryException if the join values can not be evaluated
+     */
+    public void join(Row row, boolean left, Map<String, List<Row>> others,
+            Collection<Row> joined) throws RepositoryException {
+        Set<String> values = left ? getLeftValues(row) : getRightValues(row);
+        for (String value : values) {
+            List<Row> matchingRows = others.get(value);
+            if (matchingRows != null) {
+                for (Row other : matchingRows) {
+                    if (left) {
+                        joined.add(mergeRow(row, other));
+                    } else {
+                        joined.add(mergeRow(other, row));
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Merges the given left and right rows to a single joined row.
      *
@@ -318,4 +363,7 @@ abstract class JoinMerger {
     public abstract List<Constraint> getRightJoinConstraints(Collection<Row> leftRows)
             throws RepositoryException;
 
+    public abstract List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException;
+
 }
@@ -63,6 +63,7 @@ import org.apache.jackrabbit.commons.query.qom.OperandEvaluator;
 import org.apache.jackrabbit.core.query.lucene.LuceneQueryFactory;
 import org.apache.jackrabbit.core.query.lucene.sort.DynamicOperandFieldComparatorSource;
 import org.apache.jackrabbit.core.query.lucene.sort.RowComparator;
+import org.apache.jackrabbit.core.query.lucene.sort.TopRowCollector;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.slf4j.Logger;
@@ -83,6 +84,28 @@ public class QueryEngine {
             .getProperty(NATIVE_SORT_SYSTEM_PROPERTY, "false"));
 
     private static final int printIndentStep = 4;
+
+    /**
+     * The maximum number of rows of one side of a join that are used to
+     * constrain a query of the other side.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * The initial number of rows of one side of an inner join that are used
+     * to constrain a query of the other side. The batch size is doubled for
+     * every further batch up to {@link #BATCH_SIZE}, so that queries with a
+     * small limit only fetch a few rows.
+     */
+    private static final int MIN_BATCH_SIZE = 16;
+
+    /**
+     * If the other side of an inner join is estimated to have at most this
+     * many rows, it is fetched at once and joined in memory (hash join).
+     * Otherwise it is queried for each batch of rows of the driving side
+     * (index nested loop join).
+     */
+    private static final long HASH_JOIN_THRESHOLD = 1000;
     
     private final Session session;
 
@@ -159,8 +182,20 @@ public class QueryEngine {
 
         boolean isOuterJoin = JCR_JOIN_TYPE_LEFT_OUTER.equalsIgnoreCase(join
                 .getJoinType());
-        QueryResult result = execute(merger, csInfo, isOuterJoin,
-                printIndentation);
+        QueryResult result;
+        if (!isOuterJoin && !csInfo.isMultiple()
+                && csInfo.getSource().getLeft() instanceof Selector
+                && csInfo.getSource().getRight() instanceof Selector) {
+            // unsorted rows are only needed up to the limit
+            long maxRows = -1;
+            if ((orderings == null || orderings.length == 0) && limit >= 0) {
+                maxRows = offset + limit;
+            }
+            result = executeInnerJoin(merger, csInfo, maxRows,
+                    printIndentation);
+        } else {
+            result = execute(merger, csInfo, isOuterJoin, printIndentation);
+        }
 
         long sort = System.currentTimeMillis();
         QueryResult sortedResult = sort(result, orderings, evaluator, offset,
@@ -274,6 +309,187 @@ public class QueryEngine {
 
     }
 
+    /**
+     * Executes an inner join of two selectors. The side with the lower
+     * estimated number of rows drives the join: its rows are streamed from
+     * the index and joined with the rows of the other side, either by a
+     * hash join or by an index nested loop join, see
+     * {@link #HASH_JOIN_THRESHOLD}. The join stops as soon as the given
+     * number of rows have been found.
+     *
+     * @param merger the join merger
+     * @param csInfo the constraints of the join
+     * @param maxRows the number of rows after which to stop the join, or
+     *                a negative number to return all rows
+     * @param printIndentation used in logging
+     * @return the joined rows
+     * @throws RepositoryException if the join can not be executed
+     */
+    protected QueryResult executeInnerJoin(JoinMerger merger,
+            ConstraintSplitInfo csInfo, long maxRows, int printIndentation)
+            throws RepositoryException {
+        Selector left = (Selector) csInfo.getSource().getLeft();
+        Selector right = (Selector) csInfo.getSource().getRight();
+        long leftEstimate = lqf.estimate(left, csInfo.getLeftConstraint());
+        long rightEstimate = lqf.estimate(right, csInfo.getRightConstraint());
+
+        boolean drivingLeft = leftEstimate <= rightEstimate;
+        Selector driving = drivingLeft ? left : right;
+        Constraint drivingConstraint = drivingLeft
+                ? csInfo.getLeftConstraint() : csInfo.getRightConstraint();
+        Selector other = drivingLeft ? right : left;
+        Constraint otherConstraint = drivingLeft
+                ? csInfo.getRightConstraint() : csInfo.getLeftConstraint();
+        boolean hashJoin =
+            (drivingLeft ? rightEstimate : leftEstimate) <= HASH_JOIN_THRESHOLD;
+        log.debug(
+                "{}SQL2 JOIN driven by {} (estimated {} rows, other side {} rows), {} join.",
+                new Object[] { genString(printIndentation),
+                        driving.getSelectorName(),
+                        drivingLeft ? leftEstimate : rightEstimate,
+                        drivingLeft ? rightEstimate : leftEstimate,
+                        hashJoin ? "hash" : "index nested loop" });
+
+        long time = System.currentTimeMillis();
+        List<Row> rows = new ArrayList<Row>();
+        InnerJoin handler;
+        if (hashJoin) {
+            QueryResult result = execute(null, other, otherConstraint, null,
+                    0, -1, printIndentation + printIndentStep);
+            Map<String, List<Row>> others =
+                merger.getRowValues(result.getRows(), !drivingLeft);
+            handler = new InnerJoin(merger, drivingLeft, others, rows, maxRows);
+        } else {
+            handler = new InnerJoin(merger, drivingLeft, other,
+                    otherConstraint, rows, maxRows,
+                    printIndentation + printIndentStep);
+        }
+        if (handler.needsMore()) {
+            try {
+                lqf.execute(getColumnMap(null, getSelectorNames(driving)),
+                        driving, drivingConstraint, new Sort(),
+                        Integer.MAX_VALUE, handler);
+            } catch (IOException e) {
+                throw new RepositoryException(
+                        "Failed to access the query index", e);
+            }
+            handler.flush();
+        }
+        log.debug("{}SQL2 JOIN took {} ms. joined {} rows.", new Object[] {
+                genString(printIndentation),
+                System.currentTimeMillis() - time, rows.size() });
+
+        return new SimpleQueryResult(merger.getColumnNames(),
+                merger.getSelectorNames(), new RowIteratorAdapter(rows));
+    }
+
+    /**
+     * Joins the streamed rows of the driving side of an inner join with
+     * the rows of the other side.
+     */
+    private class InnerJoin implements LuceneQueryFactory.RowHandler {
+
+        private final JoinMerger merger;
+
+        private final boolean drivingLeft;
+
+        private final List<Row> rows;
+
+        private final long maxRows;
+
+        /**
+         * The rows of the other side by join value (hash join), or
+         * <code>null</code> if the other side is queried for each batch.
+         */
+        private final Map<String, List<Row>> others;
+
+        private final Selector other;
+
+        private final Constraint otherConstraint;
+
+        private final int printIndentation;
+
+        private final List<Row> batch = new ArrayList<Row>();
+
+        private int batchSize;
+
+        InnerJoin(JoinMerger merger, boolean drivingLeft,
+                Map<String, List<Row>> others, List<Row> rows, long maxRows) {
+            this.merger = merger;
+            this.drivingLeft = drivingLeft;
+            this.others = others;
+            this.other = null;
+            this.otherConstraint = null;
+            this.rows = rows;
+            this.maxRows = maxRows;
+            this.printIndentation = 0;
+        }
+
+        InnerJoin(JoinMerger merger, boolean drivingLeft, Selector other,
+                Constraint otherConstraint, List<Row> rows, long maxRows,
+                int printIndentation) {
+            this.merger = merger;
+            this.drivingLeft = drivingLeft;
+            this.others = null;
+            this.other = other;
+            this.otherConstraint = otherConstraint;
+            this.rows = rows;
+            this.maxRows = maxRows;
+            this.printIndentation = printIndentation;
+            if (maxRows >= 0) {
+                batchSize = (int) Math.max(
+                        MIN_BATCH_SIZE, Math.min(maxRows, BATCH_SIZE));
+            } else {
+                batchSize = BATCH_SIZE;
+            }
+        }
+
+        boolean needsMore() {
+            return (others == null || !others.isEmpty())
+                    && (maxRows < 0 || rows.size() < maxRows);
+        }
+
+        public boolean handle(Row row) throws RepositoryException {
+            if (others != null) {
+                merger.join(row, drivingLeft, others, rows);
+            } else {
+                batch.add(row);
+                if (batch.size() >= batchSize) {
+                    flush();
+                    batchSize = Math.min(2 * batchSize, BATCH_SIZE);
+                }
+            }
+            return needsMore();
+        }
+
+        /**
+         * Queries the other side for the rows that match the current batch
+         * of driving rows, and joins them.
+         */
+        void flush() throws RepositoryException {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Constraint> constraints = drivingLeft
+                    ? merger.getRightJoinConstraints(batch)
+                    : merger.getLeftJoinConstraints(batch);
+            if (!constraints.isEmpty()) {
+                Constraint constraint = Constraints.and(qomFactory,
+                        Constraints.or(qomFactory, constraints),
+                        otherConstraint);
+                QueryResult result = execute(null, other, constraint, null,
+                        0, -1, printIndentation);
+                Map<String, List<Row>> matches =
+                    merger.getRowValues(result.getRows(), !drivingLeft);
+                for (Row row : batch) {
+                    merger.join(row, drivingLeft, matches, rows);
+                }
+            }
+            batch.clear();
+        }
+
+    }
+
     private Set<Row> buildLeftRowsJoin(ConstraintSplitInfo csi,
             Comparator<Row> comparator, int printIndentation)
             throws RepositoryException {
@@ -333,7 +549,7 @@ public class QueryEngine {
             return rightRows;
         }
 
-        if (rightConstraints.size() < 500) {
+        if (rightConstraints.size() < BATCH_SIZE) {
             Set<Row> rightRows = new TreeSet<Row>(comparator);
             List<Constraint> localRightContraints = rightConstraints;
             Constraint rightConstraint = Constraints.and(qomFactory,
@@ -353,13 +569,13 @@ public class QueryEngine {
 
         // the 'batch by 500' approach
         Set<Row> rightRows = new TreeSet<Row>(comparator);
-        for (int i = 0; i < rightConstraints.size(); i += 500) {
+        for (int i = 0; i < rightConstraints.size(); i += BATCH_SIZE) {
             if (log.isDebugEnabled()) {
                 log.debug(genString(printIndentation)
                         + "SQL2 JOIN RIGHT SIDE executing batch # " + i + ".");
             }
             List<Constraint> localRightContraints = rightConstraints.subList(i,
-                    Math.min(i + 500, rightConstraints.size()));
+                    Math.min(i + BATCH_SIZE, rightConstraints.size()));
             Constraint rightConstraint = Constraints.and(qomFactory,
                     Constraints.or(qomFactory, localRightContraints),
                     csi.getRightConstraint());
@@ -460,10 +676,31 @@ public class QueryEngine {
         // QueryEngine take care of sorting and applying offset and limit
         // constraints
         boolean externalSort = !NATIVE_SORT;
+        boolean topRows = externalSort && orderings != null
+                && orderings.length > 0 && limit >= 0
+                && offset + limit <= Integer.MAX_VALUE;
         RowIterator rows = null;
         try {
-            rows = new RowIteratorAdapter(lqf.execute(columnMap, selector,
-                    constraint, sort, externalSort, offset, limit));
+            if (topRows) {
+                // sort the rows while they are read and only keep the rows
+                // up to the limit
+                final TopRowCollector collector = new TopRowCollector(
+                        new RowComparator(orderings, evaluator),
+                        (int) (offset + limit));
+                lqf.execute(columnMap, selector, constraint, sort,
+                        offset + limit, new LuceneQueryFactory.RowHandler() {
+                            public boolean handle(Row row) {
+                                collector.collect(row);
+                                return true;
+                            }
+                        });
+                List<Row> top = collector.getRows();
+                rows = new RowIteratorAdapter(top.subList(
+                        (int) Math.min(offset, top.size()), top.size()));
+            } else {
+                rows = new RowIteratorAdapter(lqf.execute(columnMap, selector,
+                        constraint, sort, externalSort, offset, limit));
+            }
         } catch (IOException e) {
             throw new RepositoryException("Failed to access the query index", e);
         } finally {
@@ -476,7 +713,7 @@ public class QueryEngine {
         }
         QueryResult result = new SimpleQueryResult(columnNames, selectorNames,
                 rows);
-        if (NATIVE_SORT) {
+        if (NATIVE_SORT || topRows) {
             return result;
         }
 
@@ -595,7 +832,8 @@ public class QueryEngine {
      * Sorts the given query results according to the given QOM orderings. If
      * one or more orderings have been specified, this method will iterate
      * through the entire original result set, order the collected rows, and
-     * return a new result set based on the sorted collection of rows.
+     * return a new result set based on the sorted collection of rows. With a
+     * limit only the first <code>offset + limit</code> rows are kept.
      * 
      * @param result
      *            original query results
@@ -617,12 +855,23 @@ public class QueryEngine {
             List<Row> rows = new ArrayList<Row>();
 
             RowIterator iterator = result.getRows();
-            while (iterator.hasNext()) {
-                rows.add(iterator.nextRow());
-            }
-
-            if (orderings != null && orderings.length > 0) {
-                Collections.sort(rows, new RowComparator(orderings, evaluator));
+            if (orderings != null && orderings.length > 0
+                    && limit >= 0 && offset + limit <= Integer.MAX_VALUE) {
+                // only keep the rows up to the limit
+                TopRowCollector collector = new TopRowCollector(
+                        new RowComparator(orderings, evaluator),
+                        (int) (offset + limit));
+                while (iterator.hasNext()) {
+                    collector.collect(iterator.nextRow());
+                }
+                rows = collector.getRows();
+            } else {
+                while (iterator.hasNext()) {
+                    rows.add(iterator.nextRow());
+                }
+                if (orderings != null && orderings.length > 0) {
+                    Collections.sort(rows, new RowComparator(orderings, evaluator));
+                }
             }
 
             if (offset > 0) {
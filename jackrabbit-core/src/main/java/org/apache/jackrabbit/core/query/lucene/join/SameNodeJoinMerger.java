@@ -71,18 +71,54 @@ class SameNodeJoinMerger extends JoinMerger {
         for (Row row : leftRows) {
             paths.addAll(getLeftValues(row));
         }
+        return getJoinConstraints(paths, rightSelectors);
+    }
+
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+        return getJoinConstraints(paths, leftSelectors);
+    }
 
+    private List<Constraint> getJoinConstraints(
+            Set<String> paths, Set<String> selectors)
+            throws RepositoryException {
         List<Constraint> constraints = new ArrayList<Constraint>();
         for (String path : paths) {
-            if (rightSelectors.contains(selector1)) {
+            if (selectors.contains(selector1)) {
                 constraints.add(factory.sameNode(selector1, path));
             } else {
-                constraints.add(factory.sameNode(selector2, path));
+                String p = getSelector2Path(path);
+                if (p != null) {
+                    constraints.add(factory.sameNode(selector2, p));
+                }
             }
         }
         return constraints;
     }
 
+    /**
+     * Returns the path of the selector 2 node of the given selector 1
+     * path, by removing the relative selector 2 path from it.
+     *
+     * @param p the path of a selector 1 node
+     * @return the selector 2 path, or <code>null</code> if there is none
+     */
+    private String getSelector2Path(String p) {
+        if (path == null || ".".equals(path)) {
+            return p;
+        } else if (p.endsWith("/" + path)) {
+            p = p.substring(0, p.length() - path.length() - 1);
+            return p.length() > 0 ? p : "/";
+        } else {
+            return null;
+        }
+    }
+
     private Set<String> getValues(Set<String> selectors, Row row)
             throws RepositoryException {
         if (selectors.contains(selector1)) {
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene.sort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import javax.jcr.query.Row;
+
+/**
+ * Collects the first rows of a sort order. Only the given number of rows is
+ * kept in a bounded heap, so a sorted result with a limit does not have to
+ * hold and sort all rows. Rows that compare equal keep the order in which
+ * they were collected, like with a stable sort of all rows.
+ */
+public class TopRowCollector {
+
+    /**
+     * The row comparator.
+     */
+    private final Comparator<Row> comparator;
+
+    /**
+     * Compares collected rows with the row comparator and then by the order
+     * in which they were collected.
+     */
+    private final Comparator<CollectedRow> order = new Comparator<CollectedRow>() {
+        public int compare(CollectedRow a, CollectedRow b) {
+            int d = comparator.compare(a.row, b.row);
+            if (d == 0) {
+                d = a.index < b.index ? -1 : (a.index == b.index ? 0 : 1);
+            }
+            return d;
+        }
+    };
+
+    /**
+     * The maximum number of rows to keep.
+     */
+    private final int size;
+
+    /**
+     * The collected rows, with the last row in sort order at the head.
+     */
+    private final PriorityQueue<CollectedRow> heap;
+
+    /**
+     * The number of rows collected so far.
+     */
+    private int count = 0;
+
+    /**
+     * Creates a new collector.
+     *
+     * @param comparator the row comparator.
+     * @param size       the maximum number of rows to keep.
+     */
+    public TopRowCollector(Comparator<Row> comparator, int size) {
+        this.comparator = comparator;
+        this.size = size;
+        this.heap = new PriorityQueue<CollectedRow>(
+                Math.max(1, Math.min(size, 1024)),
+                Collections.reverseOrder(order));
+    }
+
+    /**
+     * Collects a row. The row is dropped if <code>size</code> rows that
+     * sort before it were collected already.
+     *
+     * @param row the row.
+     */
+    public void collect(Row row) {
+        if (size == 0) {
+            return;
+        }
+        CollectedRow r = new CollectedRow(row, count++);
+        if (heap.size() < size) {
+            heap.add(r);
+        } else if (order.compare(r, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(r);
+        }
+    }
+
+    /**
+     * @return the collected rows in sort order.
+     */
+    public List<Row> getRows() {
+        List<CollectedRow> sorted = new ArrayList<CollectedRow>(heap);
+        Collections.sort(sorted, order);
+        List<Row> rows = new ArrayList<Row>(sorted.size());
+        for (CollectedRow r : sorted) {
+            rows.add(r.row);
+        }
+        return rows;
+    }
+
+    /**
+     * A row and the position in which it was collected.
+     */
+    private static final class CollectedRow {
+
+        private final Row row;
+
+        private final int index;
+
+        CollectedRow(Row row, int index) {
+            this.row = row;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization;
+
+import java.util.Collections;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+import javax.jcr.observation.ObservationManager;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.observation.SynchronousEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>AccessControlChangeObserver</code> informs its listeners about any
+ * modification of access control content and about moves in a workspace.
+ * Unlike the observers of the access control providers it does not sift the
+ * events to find the modified access controlled nodes. The modifications
+ * passed to the listeners only contain the root node. It is intended for
+ * listeners that clear their state upon any access control modification.
+ * <p>
+ * The listeners are informed twice about every modification: synchronously
+ * while the modification is dispatched, and asynchronously once all
+ * synchronous listeners were called. Only the second notification happens
+ * after the entry collectors of the access control providers have been
+ * invalidated, which are synchronous listeners as well.
+ */
+public class AccessControlChangeObserver extends AccessControlObserver
+        implements AccessControlConstants {
+
+    /**
+     * logger instance
+     */
+    private static final Logger log = LoggerFactory.getLogger(AccessControlChangeObserver.class);
+
+    /**
+     * The system session this observer is registered with.
+     */
+    private final SessionImpl systemSession;
+
+    /**
+     * Listens to move events. A listener can only be registered once per
+     * observation manager.
+     */
+    private final EventListener moveListener = new SynchronousEventListener() {
+        public void onEvent(EventIterator events) {
+            notifyListeners(MOVE);
+        }
+    };
+
+    /**
+     * Listens to access control events after the synchronous listeners.
+     */
+    private final EventListener asyncListener = new EventListener() {
+        public void onEvent(EventIterator events) {
+            notifyListeners(POLICY_MODIFIED);
+        }
+    };
+
+    /**
+     * Listens to move events after the synchronous listeners.
+     */
+    private final EventListener asyncMoveListener = new EventListener() {
+        public void onEvent(EventIterator events) {
+            notifyListeners(MOVE);
+        }
+    };
+
+    /**
+     * Creates a new observer and registers it with the observation manager
+     * of the given session.
+     *
+     * @param systemSession a system session of the workspace.
+     * @throws RepositoryException if the observer cannot be registered.
+     */
+    public AccessControlChangeObserver(SessionImpl systemSession)
+            throws RepositoryException {
+        this.systemSession = systemSession;
+        ObservationManager observationMgr = systemSession.getWorkspace().getObservationManager();
+        // same access control events as observed by the entry collector
+        int events = Event.PROPERTY_CHANGED | Event.NODE_ADDED | Event.NODE_REMOVED;
+        String[] ntNames = new String[] {
+                systemSession.getJCRName(NT_REP_ACCESS_CONTROLLABLE),
+                systemSession.getJCRName(NT_REP_REPO_ACCESS_CONTROLLABLE),
+                systemSession.getJCRName(NT_REP_ACL),
+                systemSession.getJCRName(NT_REP_ACE),
+                systemSession.getJCRName(NT_REP_ACCESS_CONTROL),
+                systemSession.getJCRName(NT_REP_PRINCIPAL_ACCESS_CONTROL)
+        };
+        String rootPath = systemSession.getRootNode().getPath();
+        observationMgr.addEventListener(this, events, rootPath, true, null, ntNames, false);
+        observationMgr.addEventListener(asyncListener, events, rootPath, true, null, ntNames, false);
+        // moves change the inherited access control of the moved nodes
+        observationMgr.addEventListener(moveListener, Event.NODE_MOVED, rootPath, true, null, null, false);
+        observationMgr.addEventListener(asyncMoveListener, Event.NODE_MOVED, rootPath, true, null, null, false);
+    }
+
+    /**
+     * Stops listening to events and removes all listeners.
+     */
+    @Override
+    public void close() {
+        super.close();
+        try {
+            ObservationManager observationMgr = systemSession.getWorkspace().getObservationManager();
+            observationMgr.removeEventListener(this);
+            observationMgr.removeEventListener(asyncListener);
+            observationMgr.removeEventListener(moveListener);
+            observationMgr.removeEventListener(asyncMoveListener);
+        } catch (RepositoryException e) {
+            log.warn("Unable to remove access control observer", e);
+        }
+    }
+
+    //------------------------------------------------------< EventListener >---
+    /**
+     * Notifies the listeners once per event bundle.
+     *
+     * @param events the events.
+     */
+    public void onEvent(EventIterator events) {
+        notifyListeners(POLICY_MODIFIED);
+    }
+
+    /**
+     * Notifies the listeners about a modification of the given type.
+     *
+     * @param type the modification type.
+     */
+    private void notifyListeners(int type) {
+        try {
+            String rootId = systemSession.getRootNode().getIdentifier();
+            notifyListeners(new AccessControlModifications<String>(
+                    Collections.singletonMap(rootId, type)));
+        } catch (RepositoryException e) {
+            log.error("Failed to process access control modifications", e);
+        }
+    }
+}
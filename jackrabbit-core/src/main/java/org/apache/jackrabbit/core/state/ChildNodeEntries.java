@@ -16,126 +16,206 @@
  */
 package org.apache.jackrabbit.core.state;
 
-import org.apache.commons.collections.map.LinkedMap;
 import org.apache.jackrabbit.core.id.NodeId;
-import org.apache.jackrabbit.core.util.EmptyLinkedMap;
 import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 
+import java.lang.ref.SoftReference;
+import java.util.Collection;
 import java.util.List;
-import java.util.HashMap;
 import java.util.Collections;
 import java.util.ArrayList;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * <code>ChildNodeEntries</code> represents an insertion-ordered
  * collection of <code>ChildNodeEntry</code>s that also maintains
  * the index values of same-name siblings on insertion and removal.
+ * <p>
+ * To keep nodes with many child nodes small, the entries are not stored as
+ * objects but in columns of primitive arrays. The columns are indexed by a
+ * slot number that follows the order of the entries, and hold the node ids
+ * as pairs of longs, the names, the same-name sibling indexes and a link to
+ * the next same-name sibling. A removed entry leaves an empty slot until the
+ * columns are compacted. Lookups by id and by name go through open
+ * addressing hash tables that map to slot numbers. The
+ * <code>ChildNodeEntry</code> instances are created on demand and kept in
+ * a softly referenced cache until an entry is removed or renamed.
+ * <p>
+ * The columns and hash tables are split into chunks that are shared with
+ * clones and copied on write, so modifying a single entry of a cloned
+ * instance only copies the few chunks that are affected.
  */
 class ChildNodeEntries implements Cloneable {
 
+    /** the number of bits of a position within a chunk */
+    private static final int CHUNK_BITS = 10;
+
+    /** the maximum number of elements of a chunk */
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** the minimum number of positions of the hash tables */
+    private static final int MIN_TABLE_SIZE = 8;
+
+    /** the node ids of the entries, two longs per slot */
+    private LongColumn ids;
+
+    /** the names of the entries, <code>null</code> for removed entries */
+    private NameColumn names;
+
     /**
-     * Insertion-ordered map of entries
-     * (key=NodeId, value=entry)
+     * the same-name sibling index and the slot + 1 of the next same-name
+     * sibling (0 if none), two ints per slot
      */
-    private LinkedMap entries;
+    private IntColumn links;
+
+    /** hash table from node id to slot + 1 (0 if empty) */
+    private IntColumn idTable;
 
     /**
-     * Map used for lookup by name
-     * (key=name, value=either a single entry or a list of sns entries)
+     * hash table from name to the slot + 1 of the first and the last
+     * same-name sibling (0 if empty), two ints per position
      */
-    private Map<Name, Object> nameMap;
+    private IntColumn nameTable;
+
+    /** the number of positions of the hash tables, a power of two */
+    private int tableSize;
+
+    /** the number of used slots, including removed entries */
+    private int slots;
+
+    /** the number of entries */
+    private int size;
+
+    /**
+     * The owner token of this instance. Only chunks owned by this token
+     * may be modified in place, all others are copied first.
+     */
+    private Object owner;
 
     /**
-     * Indicates whether the entries and nameMap are shared with another
+     * Indicates whether the columns are shared with another
      * ChildNodeEntries instance.
      */
     private boolean shared;
 
+    /**
+     * Softly referenced cache of the entry instances by slot, or
+     * <code>null</code>. Dropped when the indexes or slots of existing
+     * entries change and when the columns stop being shared.
+     */
+    private SoftReference<ChildNodeEntry[]> cache;
+
     ChildNodeEntries() {
         init();
     }
 
     ChildNodeEntry get(NodeId id) {
-        return (ChildNodeEntry) entries.get(id);
+        int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return slot >= 0 ? getEntry(slot) : null;
     }
 
-    @SuppressWarnings("unchecked")
     List<ChildNodeEntry> get(Name nodeName) {
-        Object obj = nameMap.get(nodeName);
-        if (obj == null) {
+        int p = findName(nodeName);
+        if (p < 0) {
             return Collections.emptyList();
         }
-        if (obj instanceof List<?>) {
-            // map entry is a list of siblings
-            return Collections.unmodifiableList((List<ChildNodeEntry>) obj);
-        } else {
-            // map entry is a single child node entry
-            return Collections.singletonList((ChildNodeEntry) obj);
+        int slot = getFirst(p);
+        if (getNext(slot) < 0) {
+            // single child node entry
+            return Collections.singletonList(getEntry(slot));
         }
+        // list of siblings
+        List<ChildNodeEntry> siblings = new ArrayList<ChildNodeEntry>();
+        for (; slot >= 0; slot = getNext(slot)) {
+            siblings.add(getEntry(slot));
+        }
+        return Collections.unmodifiableList(siblings);
     }
 
-    @SuppressWarnings("unchecked")
     ChildNodeEntry get(Name nodeName, int index) {
         if (index < 1) {
             throw new IllegalArgumentException("index is 1-based");
         }
 
-        Object obj = nameMap.get(nodeName);
-        if (obj == null) {
-            return null;
-        }
-        if (obj instanceof List<?>) {
-            // map entry is a list of siblings
-            List<ChildNodeEntry> siblings = (List<ChildNodeEntry>) obj;
-            if (index <= siblings.size()) {
-                return siblings.get(index - 1);
-            }
-        } else {
-            // map entry is a single child node entry
-            if (index == 1) {
-                return (ChildNodeEntry) obj;
+        int slot = findSibling(nodeName, index);
+        return slot >= 0 ? getEntry(slot) : null;
+    }
+
+    /**
+     * Returns the entries with the given ids, in the order of this list.
+     * Ids without an entry are ignored.
+     *
+     * @param nodeIds node ids
+     * @return list of entries
+     */
+    List<ChildNodeEntry> get(Collection<NodeId> nodeIds) {
+        int[] found = new int[nodeIds.size()];
+        int n = 0;
+        for (NodeId id : nodeIds) {
+            int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot >= 0) {
+                found[n++] = slot;
             }
         }
-        return null;
+        if (n == 0) {
+            return Collections.emptyList();
+        }
+        // slots follow the order of the entries
+        Arrays.sort(found, 0, n);
+        List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(getEntry(found[i]));
+        }
+        return result;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Appends an entry. An existing entry for the same id keeps its
+     * position and is renamed if the name differs.
+     *
+     * @param nodeName name of the entry
+     * @param id id of the node
+     * @return the added or updated entry
+     */
     ChildNodeEntry add(Name nodeName, NodeId id) {
-        ensureModifiable();
-        List<ChildNodeEntry> siblings = null;
-        int index = 0;
-        Object obj = nameMap.get(nodeName);
-        if (obj != null) {
-            if (obj instanceof List<?>) {
-                // map entry is a list of siblings
-                siblings = (List<ChildNodeEntry>) obj;
-                if (siblings.size() > 0) {
-                    // reuse immutable Name instance from 1st same name sibling
-                    // in order to help gc conserving memory
-                    nodeName = siblings.get(0).getName();
-                }
-            } else {
-                // map entry is a single child node entry,
-                // convert to siblings list
-                siblings = new ArrayList<ChildNodeEntry>();
-                siblings.add((ChildNodeEntry) obj);
-                nameMap.put(nodeName, siblings);
-            }
-            index = siblings.size();
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        int existing = findSlot(msb, lsb);
+        if (existing >= 0) {
+            return rename(existing, nodeName);
         }
 
-        index++;
-
-        ChildNodeEntry entry = new ChildNodeEntry(nodeName, id, index);
-        if (siblings != null) {
-            siblings.add(entry);
+        ensureModifiable();
+        ensureCapacity();
+
+        int slot = slots++;
+        int index = 1;
+        int p = probeName(nodeName);
+        if (nameTable.get(2 * p) != 0) {
+            int last = getLast(p);
+            // reuse immutable Name instance from same name sibling
+            // in order to help gc conserving memory
+            nodeName = names.get(last);
+            index = getIndex(last) + 1;
+            setNext(last, slot);
         } else {
-            nameMap.put(nodeName, entry);
+            nodeName = intern(nodeName);
+            setFirst(p, slot);
         }
-        entries.put(id, entry);
+        setLast(p, slot);
 
-        return entry;
+        ids.set(2 * slot, msb, owner);
+        ids.set(2 * slot + 1, lsb, owner);
+        names.set(slot, nodeName, owner);
+        setIndex(slot, index);
+        setNext(slot, -1);
+        idTable.set(probeId(msb, lsb), slot + 1, owner);
+        size++;
+
+        return getEntry(slot);
     }
 
     void addAll(List<ChildNodeEntry> entriesList) {
@@ -146,65 +226,15 @@ class ChildNodeEntries implements Cloneable {
     }
 
     // The index may have changed because of changes by another session. Use remove(NodeId id)
-    // instead    
+    // instead
     @Deprecated
-    @SuppressWarnings("unchecked")
     public ChildNodeEntry remove(Name nodeName, int index) {
         if (index < 1) {
             throw new IllegalArgumentException("index is 1-based");
         }
 
-        ensureModifiable();
-        Object obj = nameMap.get(nodeName);
-        if (obj == null) {
-            return null;
-        }
-
-        if (obj instanceof ChildNodeEntry) {
-            // map entry is a single child node entry
-            if (index != 1) {
-                return null;
-            }
-            ChildNodeEntry removedEntry = (ChildNodeEntry) obj;
-            nameMap.remove(nodeName);
-            entries.remove(removedEntry.getId());
-            return removedEntry;
-        }
-
-        // map entry is a list of siblings
-        List<ChildNodeEntry> siblings = (List<ChildNodeEntry>) obj;
-        if (index > siblings.size()) {
-            return null;
-        }
-
-        // remove from siblings list
-        ChildNodeEntry removedEntry = siblings.remove(index - 1);
-        // remove from ordered entries map
-        entries.remove(removedEntry.getId());
-
-        // update indices of subsequent same-name siblings
-        for (int i = index - 1; i < siblings.size(); i++) {
-            ChildNodeEntry oldEntry = siblings.get(i);
-            ChildNodeEntry newEntry = new ChildNodeEntry(nodeName, oldEntry.getId(), oldEntry.getIndex() - 1);
-            // overwrite old entry with updated entry in siblings list
-            siblings.set(i, newEntry);
-            // overwrite old entry with updated entry in ordered entries map
-            entries.put(newEntry.getId(), newEntry);
-        }
-
-        // clean up name lookup map if necessary
-        if (siblings.size() == 0) {
-            // no more entries with that name left:
-            // remove from name lookup map as well
-            nameMap.remove(nodeName);
-        } else if (siblings.size() == 1) {
-            // just one entry with that name left:
-            // discard siblings list and update name lookup map accordingly
-            nameMap.put(nodeName, siblings.get(0));
-        }
-
-        // we're done
-        return removedEntry;
+        int slot = findSibling(nodeName, index);
+        return slot >= 0 ? removeSlot(slot) : null;
     }
 
     /**
@@ -214,11 +244,8 @@ class ChildNodeEntries implements Cloneable {
      * @return the removed entry or <code>null</code> if there is no such entry.
      */
     ChildNodeEntry remove(NodeId id) {
-        ChildNodeEntry entry = (ChildNodeEntry) entries.get(id);
-        if (entry != null) {
-            return remove(entry.getName(), entry.getIndex());
-        }
-        return entry;
+        int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return slot >= 0 ? removeSlot(slot) : null;
     }
 
     /**
@@ -252,7 +279,7 @@ class ChildNodeEntries implements Cloneable {
      *         <code>this</code> but not in <code>other</code>
      */
     List<ChildNodeEntry> removeAll(ChildNodeEntries other) {
-        if (entries.isEmpty()) {
+        if (isEmpty()) {
             return Collections.emptyList();
         }
         if (other.isEmpty()) {
@@ -260,15 +287,10 @@ class ChildNodeEntries implements Cloneable {
         }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry otherEntry = other.get(entry.getId());
-            if (entry == otherEntry) {
-                continue;
-            }
-            if (otherEntry == null
-                    || !entry.getName().equals(otherEntry.getName())) {
-                result.add(entry);
+        for (int slot = 0; slot < slots; slot++) {
+            Name name = names.get(slot);
+            if (name != null && !name.equals(other.getName(this, slot))) {
+                result.add(getEntry(slot));
             }
         }
         return result;
@@ -288,20 +310,15 @@ class ChildNodeEntries implements Cloneable {
      *         <code>this</code> <i>and</i> in <code>other</code>
      */
     List<ChildNodeEntry> retainAll(ChildNodeEntries other) {
-        if (entries.isEmpty()
-                || other.isEmpty()) {
+        if (isEmpty() || other.isEmpty()) {
             return Collections.emptyList();
         }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry otherEntry = other.get(entry.getId());
-            if (entry == otherEntry) {
-                result.add(entry);
-            } else if (otherEntry != null
-                    && entry.getName().equals(otherEntry.getName())) {
-                result.add(entry);
+        for (int slot = 0; slot < slots; slot++) {
+            Name name = names.get(slot);
+            if (name != null && name.equals(other.getName(this, slot))) {
+                result.add(getEntry(slot));
             }
         }
         return result;
@@ -310,33 +327,41 @@ class ChildNodeEntries implements Cloneable {
     //-----------------------------------------------< unmodifiable List view >
 
     public boolean isEmpty() {
-        return entries.isEmpty();
+        return size == 0;
     }
 
-    @SuppressWarnings("unchecked")
     public List<ChildNodeEntry> list() {
-        return new ArrayList<ChildNodeEntry>(entries.values());
+        List<ChildNodeEntry> list = new ArrayList<ChildNodeEntry>(size);
+        for (int slot = 0; slot < slots; slot++) {
+            if (names.get(slot) != null) {
+                list.add(getEntry(slot));
+            }
+        }
+        return list;
     }
 
     public List<ChildNodeEntry> getRenamedEntries(ChildNodeEntries that) {
         List<ChildNodeEntry> renamed = Collections.emptyList();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry other = that.get(entry.getId());
-            if (other != null && !entry.getName().equals(other.getName())) {
+        for (int slot = 0; slot < slots; slot++) {
+            Name name = names.get(slot);
+            if (name == null) {
+                continue;
+            }
+            Name other = that.getName(this, slot);
+            if (other != null && !name.equals(other)) {
                 // child node entry with same id but different name exists in
                 // overlaid and this state => renamed entry detected
                 if (renamed.isEmpty()) {
                     renamed = new ArrayList<ChildNodeEntry>();
                 }
-                renamed.add(entry);
+                renamed.add(getEntry(slot));
             }
         }
         return renamed;
     }
 
     public int size() {
-        return entries.size();
+        return size;
     }
 
     //-------------------------------------------< java.lang.Object overrides >
@@ -346,9 +371,27 @@ class ChildNodeEntries implements Cloneable {
         }
         if (obj instanceof ChildNodeEntries) {
             ChildNodeEntries other = (ChildNodeEntries) obj;
-            return (nameMap.equals(other.nameMap)
-                    && entries.equals(other.entries)
-                    && shared == other.shared);
+            if (size != other.size) {
+                return false;
+            }
+            int otherSlot = 0;
+            for (int slot = 0; slot < slots; slot++) {
+                Name name = names.get(slot);
+                if (name == null) {
+                    continue;
+                }
+                while (other.names.get(otherSlot) == null) {
+                    otherSlot++;
+                }
+                if (!name.equals(other.names.get(otherSlot))
+                        || ids.get(2 * slot) != other.ids.get(2 * otherSlot)
+                        || ids.get(2 * slot + 1) != other.ids.get(2 * otherSlot + 1)
+                        || getIndex(slot) != other.getIndex(otherSlot)) {
+                    return false;
+                }
+                otherSlot++;
+            }
+            return true;
         }
         return false;
     }
@@ -367,15 +410,16 @@ class ChildNodeEntries implements Cloneable {
     //----------------------------------------------------< Cloneable support >
 
     /**
-     * Returns a shallow copy of this <code>ChildNodeEntries</code> instance;
-     * the entries themselves are not cloned.
+     * Returns a shallow copy of this <code>ChildNodeEntries</code> instance.
+     * The columns are shared until either instance is modified, and then
+     * copied chunk by chunk as the chunks are modified.
      *
      * @return a shallow copy of this instance.
      */
     protected Object clone() {
         try {
             ChildNodeEntries clone = (ChildNodeEntries) super.clone();
-            if (nameMap != Collections.EMPTY_MAP) {
+            if (ids != null) {
                 clone.shared = true;
                 shared = true;
             }
@@ -389,35 +433,574 @@ class ChildNodeEntries implements Cloneable {
     //-------------------------------------------------------------< internal >
 
     /**
-     * Initializes the name and entries map with unmodifiable empty instances.
+     * Removes all entries and releases the columns.
      */
     private void init() {
-        nameMap = Collections.emptyMap();
-        entries = EmptyLinkedMap.INSTANCE;
+        ids = null;
+        names = null;
+        links = null;
+        idTable = null;
+        nameTable = null;
+        tableSize = 0;
+        slots = 0;
+        size = 0;
+        owner = null;
         shared = false;
+        cache = null;
     }
 
     /**
-     * Ensures that the {@link #nameMap} and {@link #entries} map are
-     * modifiable.
+     * Ensures that the columns can be modified by this instance.
      */
-    @SuppressWarnings("unchecked")
     private void ensureModifiable() {
-        if (nameMap == Collections.EMPTY_MAP) {
-            nameMap = new HashMap<Name, Object>();
-            entries = new LinkedMap();
+        if (ids == null) {
+            ids = new LongColumn();
+            names = new NameColumn();
+            links = new IntColumn();
+            owner = new Object();
         } else if (shared) {
-            entries = (LinkedMap) entries.clone();
-            nameMap = new HashMap<Name, Object>(nameMap);
-            for (Map.Entry<Name, Object> entry : nameMap.entrySet()) {
-                Object value = entry.getValue();
-                if (value instanceof List<?>) {
-                    entry.setValue(new ArrayList<ChildNodeEntry>(
-                            (List<ChildNodeEntry>) value));
+            ids = (LongColumn) ids.copy();
+            names = (NameColumn) names.copy();
+            links = (IntColumn) links.copy();
+            idTable = (IntColumn) idTable.copy();
+            nameTable = (IntColumn) nameTable.copy();
+            // the chunks are owned by the other instance as well
+            owner = new Object();
+            shared = false;
+            // the other instance may still fill the cached slots
+            cache = null;
+        }
+    }
+
+    /**
+     * Ensures that there is room for one more entry.
+     */
+    private void ensureCapacity() {
+        if ((size + 1) * 2 > tableSize) {
+            rebuild(Math.max(MIN_TABLE_SIZE, tableSize * 2));
+        }
+        ids.ensureCapacity(2 * (slots + 1), owner);
+        names.ensureCapacity(slots + 1, owner);
+        links.ensureCapacity(2 * (slots + 1), owner);
+    }
+
+    /**
+     * Removes the entry in the given slot and updates the indexes of the
+     * subsequent same-name siblings.
+     *
+     * @param slot the slot
+     * @return the removed entry
+     */
+    private ChildNodeEntry removeSlot(int slot) {
+        ChildNodeEntry removed = getEntry(slot);
+        ensureModifiable();
+        cache = null;
+
+        unlinkSibling(slot, removed.getName());
+
+        deleteId(probeId(ids.get(2 * slot), ids.get(2 * slot + 1)));
+        names.set(slot, null, owner);
+        size--;
+
+        if (size == 0) {
+            init();
+        } else if (slots - size > size && slots - size > MIN_TABLE_SIZE) {
+            compact();
+        }
+        return removed;
+    }
+
+    /**
+     * Renames the entry in the given slot without moving it, and updates the
+     * indexes of the same-name siblings of the old and the new name.
+     *
+     * @param slot the slot
+     * @param nodeName the new name
+     * @return the renamed entry
+     */
+    private ChildNodeEntry rename(int slot, Name nodeName) {
+        Name oldName = names.get(slot);
+        if (oldName.equals(nodeName)) {
+            return getEntry(slot);
+        }
+        ensureModifiable();
+        cache = null;
+
+        unlinkSibling(slot, oldName);
+
+        // link into the new same-name siblings in slot order
+        int index = 1;
+        int previous = -1;
+        int p = probeName(nodeName);
+        if (nameTable.get(2 * p) != 0) {
+            int next = getFirst(p);
+            // reuse immutable Name instance from same name sibling
+            nodeName = names.get(next);
+            while (next >= 0 && next < slot) {
+                previous = next;
+                next = getNext(next);
+            }
+            setNext(slot, next);
+            if (next < 0) {
+                setLast(p, slot);
+            }
+            if (previous >= 0) {
+                index = getIndex(previous) + 1;
+                setNext(previous, slot);
+            } else {
+                setFirst(p, slot);
+            }
+            // update indices of subsequent same-name siblings
+            for (int s = next; s >= 0; s = getNext(s)) {
+                setIndex(s, getIndex(s) + 1);
+            }
+        } else {
+            nodeName = intern(nodeName);
+            setFirst(p, slot);
+            setLast(p, slot);
+            setNext(slot, -1);
+        }
+        setIndex(slot, index);
+        names.set(slot, nodeName, owner);
+
+        return getEntry(slot);
+    }
+
+    /**
+     * Unlinks the entry in the given slot from its same-name siblings and
+     * updates the indexes of the subsequent siblings.
+     *
+     * @param slot the slot
+     * @param name the name of the entry
+     */
+    private void unlinkSibling(int slot, Name name) {
+        int p = findName(name);
+        int next = getNext(slot);
+        int first = getFirst(p);
+        if (first == slot) {
+            if (next < 0) {
+                // no more entries with that name left
+                deleteName(p);
+            } else {
+                setFirst(p, next);
+            }
+        } else {
+            int previous = first;
+            while (getNext(previous) != slot) {
+                previous = getNext(previous);
+            }
+            setNext(previous, next);
+            if (getLast(p) == slot) {
+                setLast(p, previous);
+            }
+        }
+
+        // update indices of subsequent same-name siblings
+        for (int s = next; s >= 0; s = getNext(s)) {
+            setIndex(s, getIndex(s) - 1);
+        }
+    }
+
+    /**
+     * Moves the entries to new columns without empty slots.
+     */
+    private void compact() {
+        LongColumn newIds = new LongColumn();
+        NameColumn newNames = new NameColumn();
+        IntColumn newLinks = new IntColumn();
+        newIds.ensureCapacity(2 * size, owner);
+        newNames.ensureCapacity(size, owner);
+        newLinks.ensureCapacity(2 * size, owner);
+        int n = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            Name name = names.get(slot);
+            if (name != null) {
+                newIds.set(2 * n, ids.get(2 * slot), owner);
+                newIds.set(2 * n + 1, ids.get(2 * slot + 1), owner);
+                newNames.set(n, name, owner);
+                newLinks.set(2 * n, getIndex(slot), owner);
+                n++;
+            }
+        }
+        ids = newIds;
+        names = newNames;
+        links = newLinks;
+        slots = n;
+
+        int newTableSize = MIN_TABLE_SIZE;
+        while (newTableSize < 2 * size) {
+            newTableSize *= 2;
+        }
+        rebuild(newTableSize);
+    }
+
+    /**
+     * Recreates the hash tables with the given size and relinks the
+     * same-name siblings.
+     *
+     * @param newTableSize the new number of positions, a power of two
+     */
+    private void rebuild(int newTableSize) {
+        tableSize = newTableSize;
+        idTable = new IntColumn();
+        idTable.ensureCapacity(tableSize, owner);
+        nameTable = new IntColumn();
+        nameTable.ensureCapacity(2 * tableSize, owner);
+        for (int slot = 0; slot < slots; slot++) {
+            Name name = names.get(slot);
+            if (name != null) {
+                idTable.set(probeId(ids.get(2 * slot), ids.get(2 * slot + 1)), slot + 1, owner);
+                setNext(slot, -1);
+                int p = probeName(name);
+                if (nameTable.get(2 * p) == 0) {
+                    setFirst(p, slot);
+                } else {
+                    setNext(getLast(p), slot);
                 }
+                setLast(p, slot);
             }
-            shared = false;
         }
     }
 
+    /**
+     * Returns the name of the entry in this instance that has the same id
+     * as the entry in the given slot of the given instance.
+     *
+     * @param that the other instance
+     * @param slot the slot in the other instance
+     * @return the name, or <code>null</code> if there is no such entry
+     */
+    private Name getName(ChildNodeEntries that, int slot) {
+        int s = findSlot(that.ids.get(2 * slot), that.ids.get(2 * slot + 1));
+        return s >= 0 ? names.get(s) : null;
+    }
+
+    /**
+     * Returns the entry in the given slot, from the cache if possible.
+     *
+     * @param slot the slot
+     * @return the entry
+     */
+    private ChildNodeEntry getEntry(int slot) {
+        ChildNodeEntry[] entries = cache != null ? cache.get() : null;
+        if (entries == null || slot >= entries.length) {
+            int length = entries != null ? 2 * entries.length : 0;
+            ChildNodeEntry[] grown = new ChildNodeEntry[Math.max(slots, length)];
+            if (entries != null) {
+                System.arraycopy(entries, 0, grown, 0, entries.length);
+            }
+            entries = grown;
+            cache = new SoftReference<ChildNodeEntry[]>(entries);
+        }
+        ChildNodeEntry entry = entries[slot];
+        if (entry == null) {
+            NodeId id = new NodeId(ids.get(2 * slot), ids.get(2 * slot + 1));
+            entry = new ChildNodeEntry(names.get(slot), id, getIndex(slot));
+            entries[slot] = entry;
+        }
+        return entry;
+    }
+
+    private int findSibling(Name nodeName, int index) {
+        int p = findName(nodeName);
+        if (p < 0) {
+            return -1;
+        }
+        int slot = getFirst(p);
+        for (int i = 1; i < index && slot >= 0; i++) {
+            slot = getNext(slot);
+        }
+        return slot;
+    }
+
+    private int getIndex(int slot) {
+        return links.get(2 * slot);
+    }
+
+    private void setIndex(int slot, int index) {
+        links.set(2 * slot, index, owner);
+    }
+
+    private int getNext(int slot) {
+        return links.get(2 * slot + 1) - 1;
+    }
+
+    private void setNext(int slot, int next) {
+        links.set(2 * slot + 1, next + 1, owner);
+    }
+
+    private int getFirst(int p) {
+        return nameTable.get(2 * p) - 1;
+    }
+
+    private void setFirst(int p, int slot) {
+        nameTable.set(2 * p, slot + 1, owner);
+    }
+
+    private int getLast(int p) {
+        return nameTable.get(2 * p + 1) - 1;
+    }
+
+    private void setLast(int p, int slot) {
+        nameTable.set(2 * p + 1, slot + 1, owner);
+    }
+
+    /**
+     * Returns the slot of the entry with the given id.
+     *
+     * @return the slot, or -1 if there is no such entry
+     */
+    private int findSlot(long msb, long lsb) {
+        if (tableSize == 0) {
+            return -1;
+        }
+        return idTable.get(probeId(msb, lsb)) - 1;
+    }
+
+    /**
+     * Returns the position of the given id in the id table, or the empty
+     * position where it would be inserted.
+     */
+    private int probeId(long msb, long lsb) {
+        int mask = tableSize - 1;
+        int p = hash(msb, lsb) & mask;
+        while (true) {
+            int v = idTable.get(p);
+            if (v == 0 || (ids.get(2 * v - 2) == msb && ids.get(2 * v - 1) == lsb)) {
+                return p;
+            }
+            p = (p + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the position of the given name in the name table.
+     *
+     * @return the position, or -1 if there is no entry with that name
+     */
+    private int findName(Name name) {
+        if (tableSize == 0) {
+            return -1;
+        }
+        int p = probeName(name);
+        return nameTable.get(2 * p) != 0 ? p : -1;
+    }
+
+    /**
+     * Returns the position of the given name in the name table, or the
+     * empty position where it would be inserted.
+     */
+    private int probeName(Name name) {
+        int mask = tableSize - 1;
+        int p = hash(name.hashCode()) & mask;
+        while (true) {
+            int v = nameTable.get(2 * p);
+            if (v == 0) {
+                return p;
+            }
+            Name n = names.get(v - 1);
+            if (n == name || n.equals(name)) {
+                return p;
+            }
+            p = (p + 1) & mask;
+        }
+    }
+
+    /**
+     * Removes the given position from the id table, moving back subsequent
+     * entries of the same probe sequence.
+     */
+    private void deleteId(int p) {
+        int mask = tableSize - 1;
+        int hole = p;
+        for (int q = (p + 1) & mask; ; q = (q + 1) & mask) {
+            int v = idTable.get(q);
+            if (v == 0) {
+                break;
+            }
+            int home = hash(ids.get(2 * v - 2), ids.get(2 * v - 1)) & mask;
+            if (((q - home) & mask) >= ((q - hole) & mask)) {
+                idTable.set(hole, v, owner);
+                hole = q;
+            }
+        }
+        idTable.set(hole, 0, owner);
+    }
+
+    /**
+     * Removes the given position from the name table, moving back subsequent
+     * entries of the same probe sequence.
+     */
+    private void deleteName(int p) {
+        int mask = tableSize - 1;
+        int hole = p;
+        for (int q = (p + 1) & mask; ; q = (q + 1) & mask) {
+            int v = nameTable.get(2 * q);
+            if (v == 0) {
+                break;
+            }
+            int home = hash(names.get(v - 1).hashCode()) & mask;
+            if (((q - home) & mask) >= ((q - hole) & mask)) {
+                nameTable.set(2 * hole, v, owner);
+                nameTable.set(2 * hole + 1, nameTable.get(2 * q + 1), owner);
+                hole = q;
+            }
+        }
+        nameTable.set(2 * hole, 0, owner);
+        nameTable.set(2 * hole + 1, 0, owner);
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ lsb;
+        return hash((int) (h ^ (h >>> 32)));
+    }
+
+    private static int hash(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the flyweight instance of the given name, so that all nodes
+     * share the same name instances.
+     */
+    private static Name intern(Name name) {
+        return NameFactoryImpl.getInstance().create(
+                name.getNamespaceURI(), name.getLocalName());
+    }
+
+    /**
+     * An array that is split into chunks. The chunks are shared with copies
+     * of the column and copied before they are modified, unless they are
+     * owned by the modifying instance. The first chunk grows up to the
+     * chunk size, so that small columns do not waste memory.
+     */
+    private abstract static class Column implements Cloneable {
+
+        private Object[] chunks = new Object[1];
+
+        /** the owner token of each chunk */
+        private Object[] owners = new Object[1];
+
+        private int capacity;
+
+        protected abstract Object newChunk(int length);
+
+        protected final Object chunk(int i) {
+            return chunks[i >>> CHUNK_BITS];
+        }
+
+        protected final Object writableChunk(int i, Object owner) {
+            int c = i >>> CHUNK_BITS;
+            Object chunk = chunks[c];
+            if (owners[c] != owner) {
+                int length = Math.min(capacity, CHUNK_SIZE);
+                Object copy = newChunk(length);
+                System.arraycopy(chunk, 0, copy, 0, length);
+                chunks[c] = copy;
+                owners[c] = owner;
+                chunk = copy;
+            }
+            return chunk;
+        }
+
+        final void ensureCapacity(int n, Object owner) {
+            if (n <= capacity) {
+                return;
+            }
+            if (n <= CHUNK_SIZE) {
+                resizeFirstChunk(Math.min(CHUNK_SIZE, Math.max(n, capacity * 2)), owner);
+                return;
+            }
+            if (capacity < CHUNK_SIZE) {
+                resizeFirstChunk(CHUNK_SIZE, owner);
+            }
+            int count = (n + CHUNK_MASK) >>> CHUNK_BITS;
+            if (count > chunks.length) {
+                int length = Math.max(count, chunks.length * 2);
+                chunks = Arrays.copyOf(chunks, length);
+                owners = Arrays.copyOf(owners, length);
+            }
+            for (int c = capacity >>> CHUNK_BITS; c < count; c++) {
+                chunks[c] = newChunk(CHUNK_SIZE);
+                owners[c] = owner;
+            }
+            capacity = count << CHUNK_BITS;
+        }
+
+        private void resizeFirstChunk(int length, Object owner) {
+            Object chunk = newChunk(length);
+            if (chunks[0] != null) {
+                System.arraycopy(chunks[0], 0, chunk, 0, capacity);
+            }
+            chunks[0] = chunk;
+            owners[0] = owner;
+            capacity = length;
+        }
+
+        /**
+         * Returns a copy of this column that shares the chunks.
+         */
+        final Column copy() {
+            try {
+                Column copy = (Column) super.clone();
+                copy.chunks = chunks.clone();
+                copy.owners = owners.clone();
+                return copy;
+            } catch (CloneNotSupportedException e) {
+                // never happens, this class is cloneable
+                throw new InternalError();
+            }
+        }
+
+    }
+
+    private static final class IntColumn extends Column {
+
+        protected Object newChunk(int length) {
+            return new int[length];
+        }
+
+        int get(int i) {
+            return ((int[]) chunk(i))[i & CHUNK_MASK];
+        }
+
+        void set(int i, int value, Object owner) {
+            ((int[]) writableChunk(i, owner))[i & CHUNK_MASK] = value;
+        }
+
+    }
+
+    private static final class LongColumn extends Column {
+
+        protected Object newChunk(int length) {
+            return new long[length];
+        }
+
+        long get(int i) {
+            return ((long[]) chunk(i))[i & CHUNK_MASK];
+        }
+
+        void set(int i, long value, Object owner) {
+            ((long[]) writableChunk(i, owner))[i & CHUNK_MASK] = value;
+        }
+
+    }
+
+    private static final class NameColumn extends Column {
+
+        protected Object newChunk(int length) {
+            return new Name[length];
+        }
+
+        Name get(int i) {
+            return ((Name[]) chunk(i))[i & CHUNK_MASK];
+        }
+
+        void set(int i, Name value, Object owner) {
+            ((Name[]) writableChunk(i, owner))[i & CHUNK_MASK] = value;
+        }
+
+    }
+
 }
@@ -0,0 +1,194 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+
+/**
+ * The sequence of operations that turns the child node entries of a base
+ * node state into the child node entries of a modified node state. An
+ * operation either appends an entry or removes the entry with a given id.
+ * Reorder operations are not represented, a node state that has been
+ * reordered does not have a delta.
+ * <p>
+ * The delta allows to determine the added and removed child node entries
+ * of a node with many child nodes without comparing the complete lists,
+ * and allows persistence managers to update a stored child node list
+ * in place.
+ *
+ * @see NodeState#getChildNodeEntriesDelta()
+ */
+public class ChildNodeEntriesDelta {
+
+    /**
+     * The stamp of the child node entries of the base state.
+     */
+    private final long baseStamp;
+
+    /**
+     * The number of child node entries of the base state.
+     */
+    private final int baseSize;
+
+    /**
+     * The node ids of the operations.
+     */
+    private final List<NodeId> ids;
+
+    /**
+     * The names of appended entries, <code>null</code> for removals.
+     */
+    private final List<Name> names;
+
+    ChildNodeEntriesDelta(long baseStamp, int baseSize) {
+        this.baseStamp = baseStamp;
+        this.baseSize = baseSize;
+        this.ids = new ArrayList<NodeId>();
+        this.names = new ArrayList<Name>();
+    }
+
+    private ChildNodeEntriesDelta(ChildNodeEntriesDelta delta) {
+        this.baseStamp = delta.baseStamp;
+        this.baseSize = delta.baseSize;
+        this.ids = new ArrayList<NodeId>(delta.ids);
+        this.names = new ArrayList<Name>(delta.names);
+    }
+
+    /**
+     * Returns the number of child node entries of the base state.
+     *
+     * @return the number of entries the operations apply to
+     */
+    public int getBaseSize() {
+        return baseSize;
+    }
+
+    /**
+     * Returns the number of operations.
+     *
+     * @return the number of operations
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Returns the node id of the given operation.
+     *
+     * @param i the index of the operation
+     * @return the id of the appended or removed entry
+     */
+    public NodeId getId(int i) {
+        return ids.get(i);
+    }
+
+    /**
+     * Returns the name of the entry appended by the given operation.
+     *
+     * @param i the index of the operation
+     * @return the name, or <code>null</code> if the operation removes
+     *         an entry
+     */
+    public Name getName(int i) {
+        return names.get(i);
+    }
+
+    /**
+     * Returns whether the given operation removes an entry.
+     *
+     * @param i the index of the operation
+     * @return <code>true</code> for a removal, <code>false</code> if the
+     *         operation appends an entry
+     */
+    public boolean isRemoval(int i) {
+        return names.get(i) == null;
+    }
+
+    long getBaseStamp() {
+        return baseStamp;
+    }
+
+    void added(Name name, NodeId id) {
+        ids.add(id);
+        names.add(name);
+    }
+
+    void removed(NodeId id) {
+        ids.add(id);
+        names.add(null);
+    }
+
+    /**
+     * Returns the ids of the appended entries.
+     *
+     * @return node ids
+     */
+    Set<NodeId> getAddedIds() {
+        Set<NodeId> set = new LinkedHashSet<NodeId>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (names.get(i) != null) {
+                set.add(ids.get(i));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Returns the ids of the removed entries.
+     *
+     * @return node ids
+     */
+    Set<NodeId> getRemovedIds() {
+        Set<NodeId> set = new LinkedHashSet<NodeId>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (names.get(i) == null) {
+                set.add(ids.get(i));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Returns a copy of this delta.
+     *
+     * @return a copy
+     */
+    ChildNodeEntriesDelta copy() {
+        return new ChildNodeEntriesDelta(this);
+    }
+
+    /**
+     * Returns a new delta with the operations of this delta followed by
+     * the given operations.
+     *
+     * @param delta operations applied after the operations of this delta
+     * @return a new delta that has the same base as this delta
+     */
+    ChildNodeEntriesDelta append(ChildNodeEntriesDelta delta) {
+        ChildNodeEntriesDelta result = new ChildNodeEntriesDelta(this);
+        result.ids.addAll(delta.ids);
+        result.names.addAll(delta.names);
+        return result;
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.jackrabbit.core.persistence.PersistenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the change logs of concurrent updates in a single call to the
+ * persistence manager. A change log that arrives while another store is in
+ * progress is queued. When that store completes, one of the waiting threads
+ * stores all queued change logs together, so that they share a single
+ * database transaction.
+ * <p>
+ * If storing a group fails, all updates of the group fail. They are not
+ * stored again one by one, as a persistence manager that is not
+ * transactional may already have stored parts of the group.
+ * <p>
+ * Concurrent stores only occur if the item state locking strategy allows
+ * concurrent writers, see {@link StripedISMLocking}. Such writers never
+ * modify the same items, so their change logs can be merged. Change logs
+ * with modified node references are always stored on their own, as the
+ * node references of a target are replaced as a whole when change logs
+ * are merged.
+ */
+class GroupCommit {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger log = LoggerFactory.getLogger(GroupCommit.class);
+
+    /**
+     * The persistence manager.
+     */
+    private final PersistenceManager persistMgr;
+
+    /**
+     * The change logs waiting to be stored.
+     */
+    private final List<Request> queue = new ArrayList<Request>();
+
+    /**
+     * Whether a store is currently in progress.
+     */
+    private boolean storing;
+
+    GroupCommit(PersistenceManager persistMgr) {
+        this.persistMgr = persistMgr;
+    }
+
+    /**
+     * Stores the given change log, possibly together with the change logs
+     * of concurrent updates.
+     *
+     * @param changeLog the change log to store
+     * @throws ItemStateException if the change log could not be stored
+     */
+    void store(ChangeLog changeLog) throws ItemStateException {
+        Request request = new Request(changeLog);
+        boolean interrupted = false;
+        synchronized (this) {
+            queue.add(request);
+        }
+        while (!request.done) {
+            List<Request> group;
+            synchronized (this) {
+                while (storing && !request.done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // the update must complete once it has been queued
+                        interrupted = true;
+                    }
+                }
+                if (request.done) {
+                    // stored by another thread
+                    break;
+                }
+                storing = true;
+                group = takeGroup();
+            }
+
+            try {
+                store(group);
+            } finally {
+                for (Request r : group) {
+                    if (!r.done) {
+                        r.failure = new ItemStateException("Group commit failed");
+                        r.done = true;
+                    }
+                }
+                synchronized (this) {
+                    storing = false;
+                    notifyAll();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        request.check();
+    }
+
+    /**
+     * Removes the next group from the queue: the first queued change log,
+     * and unless it modifies node references, all other queued change logs
+     * that do not modify node references either.
+     *
+     * @return the change logs to store together
+     */
+    private List<Request> takeGroup() {
+        List<Request> group = new ArrayList<Request>();
+        Request first = queue.remove(0);
+        group.add(first);
+        if (!first.hasReferences()) {
+            Iterator<Request> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                Request request = iterator.next();
+                if (!request.hasReferences()) {
+                    group.add(request);
+                    iterator.remove();
+                }
+            }
+        }
+        return group;
+    }
+
+    private void store(List<Request> group) {
+        ChangeLog changeLog;
+        if (group.size() > 1) {
+            changeLog = new ChangeLog();
+            for (Request request : group) {
+                changeLog.merge(request.changeLog);
+            }
+        } else {
+            changeLog = group.get(0).changeLog;
+        }
+
+        Exception failure = null;
+        try {
+            persistMgr.store(changeLog);
+        } catch (ItemStateException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        if (group.size() > 1) {
+            if (failure == null) {
+                long size = changeLog.getUpdateSize() / group.size();
+                for (Request request : group) {
+                    request.changeLog.setUpdateSize(size);
+                }
+                log.debug("Stored {} change logs together", group.size());
+            } else {
+                log.debug("Unable to store {} change logs together", group.size());
+            }
+        }
+        for (Request request : group) {
+            request.failure = failure;
+            request.done = true;
+        }
+    }
+
+    /**
+     * A change log waiting to be stored.
+     */
+    private static class Request {
+
+        private final ChangeLog changeLog;
+
+        private boolean done;
+
+        private Exception failure;
+
+        Request(ChangeLog changeLog) {
+            this.changeLog = changeLog;
+        }
+
+        boolean hasReferences() {
+            return changeLog.modifiedRefs().iterator().hasNext();
+        }
+
+        void check() throws ItemStateException {
+            if (failure instanceof ItemStateException) {
+                throw (ItemStateException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+        }
+
+    }
+
+}
@@ -16,6 +16,10 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
@@ -230,6 +234,24 @@ public class LocalItemStateManager
         return sharedStateMgr.hasNodeReferences(id);
     }
 
+    /**
+     * Hints that the node states with the given ids are likely to be
+     * requested soon. States that are neither part of the change log nor
+     * cached locally are prefetched by the shared item state manager.
+     *
+     * @param ids the ids of the node states to prefetch
+     * @see SharedItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        List<NodeId> missing = new ArrayList<NodeId>(ids.size());
+        for (NodeId id : ids) {
+            if (!changeLog.has(id) && !cache.isCached(id)) {
+                missing.add(id);
+            }
+        }
+        sharedStateMgr.prefetch(missing);
+    }
+
 
     //--------------------------------------------< UpdatableItemStateManager >
     /**
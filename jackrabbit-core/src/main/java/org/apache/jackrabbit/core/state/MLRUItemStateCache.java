@@ -20,7 +20,8 @@ import java.util.List;
 
 import org.apache.commons.collections.map.LinkedMap;
 import org.apache.jackrabbit.core.cache.CacheManager;
-import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.EvictionPolicy;
+import org.apache.jackrabbit.core.cache.MapCache;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,15 @@ import org.slf4j.LoggerFactory;
  * states for calculating the maximum number of entries. The oldest entries
  * are flushed once the cache size has exceeded a certain limit.
  * <p>
+ * The eviction policy of the underlying cache can be selected with the
+ * <code>org.apache.jackrabbit.core.state.MLRUItemStateCache.evictionPolicy</code>
+ * system property, see {@link EvictionPolicy}.
+ * <p>
+ * The time between a cache miss and the caching of the loaded item state
+ * in the same thread is reported to the underlying cache as the duration of
+ * the miss, so that the {@link CacheManager} can take the cost of loading
+ * item states into account.
+ * <p>
  * TODO rename class to something more appropriate, e.g. FIFOItemSateCache since
  * it doesn't use a LRU eviction policy anymore.
  */
@@ -43,18 +53,51 @@ public class MLRUItemStateCache implements ItemStateCache {
     /** default maximum memory to use */
     public static final int DEFAULT_MAX_MEM = 4 * 1024 * 1024;
 
+    /** name of the system property that selects the eviction policy */
+    private static final String EVICTION_POLICY_PROPERTY =
+            "org.apache.jackrabbit.core.state.MLRUItemStateCache.evictionPolicy";
+
+    /** default eviction policy, configurable through a system property */
+    private static final EvictionPolicy DEFAULT_EVICTION_POLICY = getDefaultEvictionPolicy();
+
     /** the number of writes */
     private volatile long numWrites = 0;
 
-    private final ConcurrentCache<ItemId, ItemState> cache =
-        new ConcurrentCache<ItemId, ItemState>(MLRUItemStateCache.class.getSimpleName());
+    private final MapCache<ItemId, ItemState> cache;
+
+    /** the id and start time of the last cache miss of the current thread */
+    private final ThreadLocal<Miss> lastMiss = new ThreadLocal<Miss>();
 
     public MLRUItemStateCache(CacheManager cacheMgr) {
+        this(cacheMgr, DEFAULT_EVICTION_POLICY);
+    }
+
+    public MLRUItemStateCache(CacheManager cacheMgr, EvictionPolicy evictionPolicy) {
+        cache = evictionPolicy.createCache(MLRUItemStateCache.class.getSimpleName());
         cache.setMaxMemorySize(DEFAULT_MAX_MEM);
         cache.setAccessListener(cacheMgr);
         cacheMgr.add(cache);
     }
 
+    /**
+     * Returns the eviction policy selected by the system property. An invalid
+     * value is logged and the LRU policy is used.
+     *
+     * @return the default eviction policy
+     */
+    private static EvictionPolicy getDefaultEvictionPolicy() {
+        String name = System.getProperty(EVICTION_POLICY_PROPERTY);
+        if (name != null) {
+            try {
+                return EvictionPolicy.fromString(name);
+            } catch (IllegalArgumentException e) {
+                log.warn("Invalid eviction policy {}={}, using {}",
+                        new Object[] { EVICTION_POLICY_PROPERTY, name, EvictionPolicy.LRU });
+            }
+        }
+        return EvictionPolicy.LRU;
+    }
+
     //-------------------------------------------------------< ItemStateCache >
 
     /**
@@ -68,7 +111,11 @@ public class MLRUItemStateCache implements ItemStateCache {
      * {@inheritDoc}
      */
     public ItemState retrieve(ItemId id) {
-        return cache.get(id);
+        ItemState state = cache.get(id);
+        if (state == null) {
+            lastMiss.set(new Miss(id));
+        }
+        return state;
     }
 
     /**
@@ -83,6 +130,11 @@ public class MLRUItemStateCache implements ItemStateCache {
      * {@inheritDoc}
      */
     public void cache(ItemState state) {
+        Miss miss = lastMiss.get();
+        if (miss != null && miss.id.equals(state.getId())) {
+            cache.recordMissDuration(System.nanoTime() - miss.start);
+            lastMiss.remove();
+        }
         cache.put(state.getId(), state, state.calculateMemoryFootprint());
 
         if (numWrites++ % 10000 == 0 && log.isDebugEnabled()) {
@@ -120,4 +172,19 @@ public class MLRUItemStateCache implements ItemStateCache {
         cache.dispose();
     }
 
+    /**
+     * A cache miss that may be followed by caching the loaded item state.
+     */
+    private static class Miss {
+
+        private final ItemId id;
+
+        private final long start = System.nanoTime();
+
+        Miss(ItemId id) {
+            this.id = id;
+        }
+
+    }
+
 }
@@ -22,6 +22,7 @@ import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -32,6 +33,18 @@ import org.apache.jackrabbit.spi.Name;
  */
 public class NodeState extends ItemState {
 
+    /**
+     * Source of the stamps that identify versions of child node entries.
+     */
+    private static final AtomicLong CHILD_NODE_ENTRIES_STAMPS = new AtomicLong();
+
+    /**
+     * The minimum number of operations kept in a child node entries delta.
+     * Above that the delta is dropped when it gets larger than twice the
+     * number of child node entries, as comparing the lists is cheaper then.
+     */
+    private static final int MIN_DELTA_SIZE = 64;
+
     /**
      * the name of this node's primary type
      */
@@ -58,6 +71,19 @@ public class NodeState extends ItemState {
      */
     private ChildNodeEntries childNodeEntries = new ChildNodeEntries();
 
+    /**
+     * Stamp that changes whenever the child node entries are modified.
+     */
+    private long childNodeEntriesStamp =
+        CHILD_NODE_ENTRIES_STAMPS.incrementAndGet();
+
+    /**
+     * The changes to the child node entries relative to the overlayed state,
+     * or to the previous child node entries if this state does not have an
+     * overlayed state. <code>null</code> if the changes are not known.
+     */
+    private ChildNodeEntriesDelta childNodeEntriesDelta;
+
     /**
      * set of property names (Name objects)
      */
@@ -123,7 +149,7 @@ public class NodeState extends ItemState {
             nodeTypeName = nodeState.nodeTypeName;
             mixinTypeNames = (NameSet) nodeState.mixinTypeNames.clone();
             propertyNames = (NameSet) nodeState.propertyNames.clone();
-            childNodeEntries = (ChildNodeEntries) nodeState.childNodeEntries.clone();
+            copyChildNodeEntries(nodeState);
             if (syncModCount) {
                 setModCount(state.getModCount());
             }
@@ -132,6 +158,49 @@ public class NodeState extends ItemState {
         }
     }
 
+    /**
+     * Copies the child node entries of the given state and keeps track of
+     * the changes to the child node entries, if they are known:
+     * <ul>
+     * <li>when pulling from the overlayed state, this state starts with
+     * an empty delta</li>
+     * <li>when a state that overlays this state pushes its changes, its
+     * delta is appended to the delta of this state. If this state does
+     * not have an overlayed state, the pushed delta replaces the delta of
+     * this state, so that it describes the last update</li>
+     * </ul>
+     *
+     * @param nodeState the state to copy from
+     */
+    private void copyChildNodeEntries(NodeState nodeState) {
+        ChildNodeEntriesDelta delta = null;
+        boolean push = nodeState.getOverlayedState() == this;
+        if (nodeState == getOverlayedState()) {
+            delta = new ChildNodeEntriesDelta(
+                    nodeState.childNodeEntriesStamp,
+                    nodeState.childNodeEntries.size());
+        } else if (push) {
+            ChildNodeEntriesDelta pushed = nodeState.childNodeEntriesDelta;
+            if (pushed != null
+                    && pushed.getBaseStamp() == childNodeEntriesStamp) {
+                if (!hasOverlayedState()) {
+                    delta = pushed.copy();
+                } else if (getValidChildNodeEntriesDelta() != null) {
+                    delta = childNodeEntriesDelta.append(pushed);
+                }
+            }
+        }
+
+        childNodeEntries = (ChildNodeEntries) nodeState.childNodeEntries.clone();
+        childNodeEntriesDelta = delta;
+        childNodeEntriesStamp = CHILD_NODE_ENTRIES_STAMPS.incrementAndGet();
+        if (push) {
+            // the pushing state is now based on these child node entries
+            nodeState.childNodeEntriesDelta = new ChildNodeEntriesDelta(
+                    childNodeEntriesStamp, childNodeEntries.size());
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -216,6 +285,15 @@ public class NodeState extends ItemState {
         return !childNodeEntries.isEmpty();
     }
 
+    /**
+     * Returns the number of child node entries.
+     *
+     * @return the number of child node entries
+     */
+    public synchronized int getChildNodeEntryCount() {
+        return childNodeEntries.size();
+    }
+
     /**
      * Determines if there is a <code>ChildNodeEntry</code> with the
      * specified <code>name</code>.
@@ -327,7 +405,15 @@ public class NodeState extends ItemState {
                                                          NodeId id) {
         ChildNodeEntry entry = null;
         synchronized (this) {
+            boolean existed = childNodeEntries.get(id) != null;
             entry = childNodeEntries.add(nodeName, id);
+            if (existed) {
+                // the entry was renamed in place, which may change the
+                // indexes of its old and new same-name siblings
+                childNodeEntriesReplaced();
+            } else {
+                childNodeEntryAdded(entry);
+            }
         }
         notifyNodeAdded(entry);
         return entry;
@@ -369,6 +455,8 @@ public class NodeState extends ItemState {
             if (oldEntry != null) {
                 newEntry =
                     childNodeEntries.add(newName, oldEntry.getId());
+                childNodeEntryRemoved(oldEntry);
+                childNodeEntryAdded(newEntry);
             }
         }
         if (oldEntry != null) {
@@ -403,13 +491,14 @@ public class NodeState extends ItemState {
 
             ChildNodeEntries entries = new ChildNodeEntries();
             for (ChildNodeEntry entry : childNodeEntries.list()) {
-                if (entry.getId() == oldId) {
+                if (entry.getId().equals(oldId)) {
                     entries.add(newName, newId);
                 } else {
                     entries.add(entry.getName(), entry.getId());
                 }
             }
             childNodeEntries = entries;
+            childNodeEntriesReplaced();
         }
 
         notifyNodesReplaced();
@@ -428,6 +517,9 @@ public class NodeState extends ItemState {
         ChildNodeEntry entry = null;
         synchronized (this) {
             entry = childNodeEntries.remove(nodeName, index);
+            if (entry != null) {
+                childNodeEntryRemoved(entry);
+            }
         }
         if (entry != null) {
             notifyNodeRemoved(entry);
@@ -445,7 +537,10 @@ public class NodeState extends ItemState {
     public boolean removeChildNodeEntry(NodeId id) {
         ChildNodeEntry entry = null;
         synchronized (this) {
-            entry = childNodeEntries.remove(id);    
+            entry = childNodeEntries.remove(id);
+            if (entry != null) {
+                childNodeEntryRemoved(entry);
+            }
         }
         if (entry != null) {
             notifyNodeRemoved(entry);
@@ -459,6 +554,7 @@ public class NodeState extends ItemState {
     public void removeAllChildNodeEntries() {
         synchronized (this) {
             childNodeEntries.removeAll();
+            childNodeEntriesReplaced();
         }
         notifyNodesReplaced();
     }
@@ -472,6 +568,7 @@ public class NodeState extends ItemState {
         synchronized (this) {
             childNodeEntries.removeAll();
             childNodeEntries.addAll(nodeEntries);
+            childNodeEntriesReplaced();
         }
         notifyNodesReplaced();
     }
@@ -661,6 +758,19 @@ public class NodeState extends ItemState {
         }
 
         NodeState other = (NodeState) getOverlayedState();
+        ChildNodeEntriesDelta delta = getValidChildNodeEntriesDelta();
+        if (delta != null) {
+            // only the appended entries can be new
+            List<ChildNodeEntry> added = new ArrayList<ChildNodeEntry>();
+            for (ChildNodeEntry entry : childNodeEntries.get(delta.getAddedIds())) {
+                ChildNodeEntry otherEntry = other.childNodeEntries.get(entry.getId());
+                if (otherEntry == null
+                        || !otherEntry.getName().equals(entry.getName())) {
+                    added.add(entry);
+                }
+            }
+            return added;
+        }
         return childNodeEntries.removeAll(other.childNodeEntries);
     }
 
@@ -695,6 +805,20 @@ public class NodeState extends ItemState {
         }
 
         NodeState other = (NodeState) getOverlayedState();
+        ChildNodeEntriesDelta delta = getValidChildNodeEntriesDelta();
+        if (delta != null) {
+            // only the removed entries can be missing
+            List<ChildNodeEntry> removed = new ArrayList<ChildNodeEntry>();
+            for (ChildNodeEntry otherEntry
+                    : other.childNodeEntries.get(delta.getRemovedIds())) {
+                ChildNodeEntry entry = childNodeEntries.get(otherEntry.getId());
+                if (entry == null
+                        || !entry.getName().equals(otherEntry.getName())) {
+                    removed.add(otherEntry);
+                }
+            }
+            return removed;
+        }
         return other.childNodeEntries.removeAll(childNodeEntries);
     }
 
@@ -754,6 +878,10 @@ public class NodeState extends ItemState {
             return Collections.emptyList();
         }
 
+        if (isAppendOnly(otherChildNodeEntries)) {
+            return Collections.emptyList();
+        }
+
         // build intersections of both collections,
         // each preserving their relative order
         List<ChildNodeEntry> ours = childNodeEntries.retainAll(otherChildNodeEntries);
@@ -819,6 +947,106 @@ public class NodeState extends ItemState {
         }
     }
 
+    /**
+     * Returns the changes to the child node entries of this state. If this
+     * state has an overlayed state, the changes are relative to the child
+     * node entries of the overlayed state. Otherwise they describe the last
+     * update pushed into this state by an overlaying state.
+     * <p>
+     * The returned delta must not be modified and is only valid as long as
+     * this state is not modified.
+     *
+     * @return the changes, or <code>null</code> if they are not known,
+     *         for example because the child node entries have been reordered
+     */
+    public synchronized ChildNodeEntriesDelta getChildNodeEntriesDelta() {
+        if (hasOverlayedState()) {
+            return getValidChildNodeEntriesDelta();
+        } else {
+            return childNodeEntriesDelta;
+        }
+    }
+
+    /**
+     * Returns the delta of the child node entries if it is based on the
+     * current child node entries of the overlayed state.
+     *
+     * @return the delta, or <code>null</code>
+     */
+    private ChildNodeEntriesDelta getValidChildNodeEntriesDelta() {
+        ChildNodeEntriesDelta delta = childNodeEntriesDelta;
+        NodeState other = (NodeState) getOverlayedState();
+        if (delta != null && other != null
+                && delta.getBaseStamp() == other.childNodeEntriesStamp) {
+            return delta;
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether the relative order of the entries common to this state
+     * and the overlayed state is known to be unchanged. That is the case if
+     * entries have only been removed or newly appended.
+     *
+     * @param other the child node entries of the overlayed state
+     * @return <code>true</code> if no entry has been reordered
+     */
+    private boolean isAppendOnly(ChildNodeEntries other) {
+        ChildNodeEntriesDelta delta = getValidChildNodeEntriesDelta();
+        if (delta == null) {
+            return false;
+        }
+        for (NodeId id : delta.getAddedIds()) {
+            ChildNodeEntry otherEntry = other.get(id);
+            if (otherEntry != null) {
+                ChildNodeEntry entry = childNodeEntries.get(id);
+                if (entry != null && entry.getName().equals(otherEntry.getName())) {
+                    // an existing entry was moved to the end
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void childNodeEntryAdded(ChildNodeEntry entry) {
+        childNodeEntriesStamp = CHILD_NODE_ENTRIES_STAMPS.incrementAndGet();
+        if (isChildNodeEntriesDeltaTracked()) {
+            childNodeEntriesDelta.added(entry.getName(), entry.getId());
+        }
+    }
+
+    private void childNodeEntryRemoved(ChildNodeEntry entry) {
+        childNodeEntriesStamp = CHILD_NODE_ENTRIES_STAMPS.incrementAndGet();
+        if (isChildNodeEntriesDeltaTracked()) {
+            childNodeEntriesDelta.removed(entry.getId());
+        }
+    }
+
+    private void childNodeEntriesReplaced() {
+        childNodeEntriesStamp = CHILD_NODE_ENTRIES_STAMPS.incrementAndGet();
+        childNodeEntriesDelta = null;
+    }
+
+    /**
+     * Checks whether a change to the child node entries should be added to
+     * the delta. Changes are only tracked relative to an overlayed state,
+     * and only as long as the delta is smaller than the child node entries.
+     *
+     * @return <code>true</code> if the change should be recorded
+     */
+    private boolean isChildNodeEntriesDeltaTracked() {
+        if (childNodeEntriesDelta == null) {
+            return false;
+        }
+        if (!hasOverlayedState() || childNodeEntriesDelta.size()
+                >= Math.max(MIN_DELTA_SIZE, 2 * childNodeEntries.size())) {
+            childNodeEntriesDelta = null;
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Returns a set of shares that were added.
      *
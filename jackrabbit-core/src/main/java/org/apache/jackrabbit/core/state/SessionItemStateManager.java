@@ -198,6 +198,24 @@ public class SessionItemStateManager
         return stateMgr.hasNodeReferences(id);
     }
 
+    /**
+     * Hints that the node states with the given ids are likely to be
+     * requested soon. Transient and removed states are skipped, the
+     * remaining ids are passed on to the underlying item state manager.
+     *
+     * @param ids the ids of the node states to prefetch
+     * @see LocalItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        List<NodeId> persistent = new ArrayList<NodeId>(ids.size());
+        for (NodeId id : ids) {
+            if (!transientStore.containsKey(id) && !atticStore.containsKey(id)) {
+                persistent.add(id);
+            }
+        }
+        stateMgr.prefetch(persistent);
+    }
+
     //--------------------------------------------< UpdatableItemStateManager >
 
     /**
@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -126,6 +128,14 @@ public class SharedItemStateManager
     private static final boolean VALIDATE_HIERARCHY =
         Boolean.getBoolean("org.apache.jackrabbit.core.state.validatehierarchy");
 
+    /**
+     * Flag for storing the change logs of concurrent updates together.
+     * Only has an effect if the locking strategy allows concurrent writers.
+     * @see #setGroupCommit(boolean)
+     */
+    private static final boolean GROUP_COMMIT =
+        Boolean.getBoolean("org.apache.jackrabbit.core.state.groupcommit");
+
     /**
      * cache of weak references to ItemState objects issued by this
      * ItemStateManager
@@ -179,6 +189,11 @@ public class SharedItemStateManager
      */
     private ISMLocking ismLocking;
 
+    /**
+     * Stores concurrent updates together, <code>null</code> if disabled.
+     */
+    private volatile GroupCommit groupCommit;
+
     /**
      * Update event channel. By default this is a dummy channel that simply
      * ignores all events (so we don't need to check for null all the time),
@@ -212,6 +227,7 @@ public class SharedItemStateManager
         this.rootNodeId = rootNodeId;
         this.ismLocking = locking;
         this.nodeIdFactory = nodeIdFactory;
+        setGroupCommit(GROUP_COMMIT);
         // create root node state if it doesn't yet exist
         if (!hasNonVirtualItemState(rootNodeId)) {
             createRootNodeState(rootNodeId, ntReg);
@@ -219,6 +235,19 @@ public class SharedItemStateManager
         ensureActivitiesNode();
     }
 
+    /**
+     * Enables or disables group commit. If enabled, the change logs of
+     * updates that are stored concurrently are passed to the persistence
+     * manager together, and fail together if the store fails. Requires a
+     * locking strategy that allows concurrent writers, such as
+     * {@link StripedISMLocking}.
+     *
+     * @param enabled whether to store concurrent updates together
+     */
+    public void setGroupCommit(boolean enabled) {
+        groupCommit = enabled ? new GroupCommit(persistMgr) : null;
+    }
+
     /**
      * Enables or disables the referential integrity checking, this
      * should be used very carefully by experienced developers only.
@@ -394,6 +423,35 @@ public class SharedItemStateManager
         return false;
     }
 
+    /**
+     * Hints that the node states with the given ids are likely to be
+     * requested soon. The ids of states that are not yet cached are passed
+     * on to the persistence manager if it is a
+     * {@link CachingPersistenceManager}, so that it can load them in as few
+     * round trips as possible. Errors are logged and otherwise ignored, as
+     * the states will be loaded individually when they are requested.
+     *
+     * @param ids the ids of the node states to prefetch
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        if (!(persistMgr instanceof CachingPersistenceManager)) {
+            return;
+        }
+        List<NodeId> missing = new ArrayList<NodeId>(ids.size());
+        for (NodeId id : ids) {
+            if (!cache.isCached(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.size() > 1) {
+            try {
+                ((CachingPersistenceManager) persistMgr).prefetch(missing);
+            } catch (ItemStateException e) {
+                log.warn("Failed to prefetch " + missing.size() + " node states", e);
+            }
+        }
+    }
+
     //----------------------------------------------------< ItemStateListener >
 
     /**
@@ -540,6 +598,12 @@ public class SharedItemStateManager
          */
         private ISMLocking.WriteLock writeLock;
 
+        /**
+         * The targets of the modified REFERENCE properties as read before
+         * acquiring the write lock, which covers their node references.
+         */
+        private Set<NodeId> lockedTargets = new HashSet<NodeId>();
+
         /**
          * Map of attributes stored for this update operation.
          */
@@ -580,7 +644,7 @@ public class SharedItemStateManager
             }
 
             try {
-                writeLock = acquireWriteLock(local);
+                writeLock = acquireWriteLock(getLockChangeLog());
             } finally {
                 if (writeLock == null) {
                     eventChannel.updateCancelled(this);
@@ -793,7 +857,11 @@ public class SharedItemStateManager
             try {
                 /* Store items in the underlying persistence manager */
                 long t0 = System.currentTimeMillis();
-                persistMgr.store(shared);
+                if (groupCommit != null) {
+                    groupCommit.store(shared);
+                } else {
+                    persistMgr.store(shared);
+                }
                 setAttribute(ATTRIBUTE_UPDATE_SIZE, shared.getUpdateSize());
                 succeeded = true;
                 if (log.isDebugEnabled()) {
@@ -975,8 +1043,17 @@ public class SharedItemStateManager
             // process modified REFERENCE properties
             for (ItemState state : local.modifiedStates()) {
                 if (!state.isNode()) {
+                    ItemState old = getItemState(state.getId());
+                    for (NodeId target : getReferenceTargets(old)) {
+                        if (!lockedTargets.contains(target)) {
+                            // modified since the lock was requested
+                            String msg = state.getId() + " has been modified externally";
+                            log.debug(msg);
+                            throw new StaleItemStateException(msg);
+                        }
+                    }
                     // remove old references from the target
-                    removeReferences(getItemState(state.getId()));
+                    removeReferences(old);
                     // add new references to the target
                     addReferences((PropertyState) state);
                 }
@@ -988,6 +1065,55 @@ public class SharedItemStateManager
             }
         }
 
+        /**
+         * Returns the change log to acquire the write lock for. The node
+         * references are only updated once the lock is held, so the change
+         * log is extended with the targets of the REFERENCE properties that
+         * are modified, which are not part of the local change log.
+         *
+         * @return the change log to lock
+         */
+        private ChangeLog getLockChangeLog() {
+            if (!usesReferences) {
+                return local;
+            }
+            for (ItemState state : local.modifiedStates()) {
+                if (!state.isNode()) {
+                    try {
+                        lockedTargets.addAll(
+                                getReferenceTargets(getItemState(state.getId())));
+                    } catch (ItemStateException e) {
+                        // removed externally, fails once the lock is held
+                    }
+                }
+            }
+            if (lockedTargets.isEmpty()) {
+                return local;
+            }
+            ChangeLog changeLog = new ChangeLog();
+            changeLog.merge(local);
+            for (NodeId target : lockedTargets) {
+                if (changeLog.getReferencesTo(target) == null) {
+                    changeLog.modified(new NodeReferences(target));
+                }
+            }
+            return changeLog;
+        }
+
+        private List<NodeId> getReferenceTargets(ItemState state) {
+            List<NodeId> targets = new ArrayList<NodeId>();
+            if (!state.isNode()) {
+                PropertyState property = (PropertyState) state;
+                if (property.getType() == PropertyType.REFERENCE) {
+                    InternalValue[] values = property.getValues();
+                    for (int i = 0; values != null && i < values.length; i++) {
+                        targets.add(values[i].getNodeId());
+                    }
+                }
+            }
+            return targets;
+        }
+
         private void addReferences(PropertyState property) throws ItemStateException {
             if (property.getType() == PropertyType.REFERENCE) {
                 InternalValue[] values = property.getValues();
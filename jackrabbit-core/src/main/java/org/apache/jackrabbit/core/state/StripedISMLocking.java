@@ -0,0 +1,347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import static org.apache.jackrabbit.data.core.TransactionContext.getCurrentThreadId;
+import static org.apache.jackrabbit.data.core.TransactionContext.isSameThreadId;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.value.InternalValue;
+
+/**
+ * Item state locking strategy that allows concurrent writers as long as
+ * their change logs do not overlap. The item ids are mapped to a fixed
+ * number of stripes. A write lock covers the stripes of all items in the
+ * change log, of their parent nodes, of the targets of the REFERENCE
+ * properties in the change log and of the targets of the node references
+ * in the change log. The node references are only updated once the lock
+ * is held, so the caller adds the references to the targets that are
+ * about to lose a reference to the change log before locking it. A read
+ * lock covers the stripe of the item being read.
+ * <p>
+ * A writer acquires all its stripes at once, or waits until all of them
+ * are available, so writers never hold some stripes while waiting for
+ * others and can not deadlock each other. While a writer is waiting for a
+ * stripe, new readers of that stripe are blocked so that writers are not
+ * starved.
+ * <p>
+ * As with the other strategies, a thread (or transaction) that holds a
+ * write lock, or a read lock downgraded from a write lock, can acquire
+ * further read and write locks without being blocked. Such a thread may
+ * therefore read items that are currently being written by a concurrent
+ * writer of another subtree. Item states are updated atomically, so it
+ * sees either the old or the new state of each such item.
+ * <p>
+ * The number of stripes can be configured in the workspace configuration:
+ * <pre>
+ * &lt;ISMLocking class="org.apache.jackrabbit.core.state.StripedISMLocking"&gt;
+ *   &lt;param name="stripes" value="1024"/&gt;
+ * &lt;/ISMLocking&gt;
+ * </pre>
+ */
+public class StripedISMLocking implements ISMLocking {
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 1024;
+
+    /**
+     * Number of read locks per stripe, including downgraded write locks.
+     */
+    private int[] readerCounts;
+
+    /**
+     * Number of write locks per stripe. All write locks of a stripe share
+     * the same thread identifier (see {@link #writerIds}).
+     */
+    private int[] writerCounts;
+
+    /**
+     * The thread identifier of the writer of each stripe.
+     */
+    private Object[] writerIds;
+
+    /**
+     * Number of writers waiting for each stripe.
+     */
+    private int[] writersWaiting;
+
+    /**
+     * The thread identifiers of all write locks and downgraded write locks,
+     * one element per lock.
+     */
+    private final List<Object> writerThreads = new ArrayList<Object>();
+
+    public StripedISMLocking() {
+        setStripes(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Returns the number of stripes.
+     *
+     * @return the number of stripes
+     */
+    public synchronized int getStripes() {
+        return readerCounts.length;
+    }
+
+    /**
+     * Sets the number of stripes. Must be called before any lock is
+     * acquired.
+     *
+     * @param stripes the number of stripes
+     */
+    public synchronized void setStripes(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        readerCounts = new int[stripes];
+        writerCounts = new int[stripes];
+        writerIds = new Object[stripes];
+        writersWaiting = new int[stripes];
+    }
+
+    /**
+     * Acquires a read lock for the stripe of the given item once there is
+     * no other writer of that stripe.
+     */
+    public synchronized ReadLock acquireReadLock(ItemId id)
+            throws InterruptedException {
+        int stripe = getStripe(id);
+        Object currentId = getCurrentThreadId();
+        if (!isWriter(currentId)) {
+            while ((writerCounts[stripe] > 0
+                    && !isSameThreadId(writerIds[stripe], currentId))
+                    || writersWaiting[stripe] > 0) {
+                wait();
+            }
+        }
+
+        readerCounts[stripe]++;
+        return new ReadLockImpl(new int[] { stripe }, null);
+    }
+
+    /**
+     * Acquires a write lock for the stripes of the given change log once
+     * none of them is read or written by another thread.
+     */
+    public WriteLock acquireWriteLock(ChangeLog changeLog)
+            throws InterruptedException {
+        // collect the stripes before synchronizing, as this accesses the
+        // item states in the change log
+        int[] stripes = getStripes(changeLog);
+        Object currentId = getCurrentThreadId();
+        return acquireWriteLock(stripes, currentId);
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    private synchronized WriteLock acquireWriteLock(
+            int[] stripes, Object currentId) throws InterruptedException {
+        for (int stripe : stripes) {
+            writersWaiting[stripe]++;
+        }
+        try {
+            while (!isAvailable(stripes, currentId)) {
+                wait();
+            }
+        } finally {
+            for (int stripe : stripes) {
+                writersWaiting[stripe]--;
+            }
+            // readers may be waiting for the stripes we did wait for
+            notifyAll();
+        }
+
+        for (int stripe : stripes) {
+            if (writerCounts[stripe]++ == 0) {
+                writerIds[stripe] = currentId;
+            }
+        }
+        writerThreads.add(currentId);
+        return new WriteLockImpl(stripes, currentId);
+    }
+
+    private boolean isAvailable(int[] stripes, Object currentId) {
+        boolean writer = isWriter(currentId);
+        for (int stripe : stripes) {
+            if (writerCounts[stripe] > 0) {
+                if (!isSameThreadId(writerIds[stripe], currentId)) {
+                    return false;
+                }
+            } else if (readerCounts[stripe] > 0 && !writer) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isWriter(Object currentId) {
+        for (Object id : writerThreads) {
+            if (isSameThreadId(id, currentId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getStripe(ItemId id) {
+        return getStripe(id, readerCounts.length);
+    }
+
+    private static int getStripe(ItemId id, int count) {
+        if (id == null) {
+            return 0;
+        }
+        return (id.hashCode() & Integer.MAX_VALUE) % count;
+    }
+
+    /**
+     * Returns the sorted stripes of the items in the given change log, of
+     * their parent nodes and of the targets of their references.
+     */
+    private int[] getStripes(ChangeLog changeLog) {
+        if (changeLog == null) {
+            return new int[0];
+        }
+        boolean[] selected = new boolean[getStripes()];
+        for (ItemState state : changeLog.addedStates()) {
+            select(selected, state);
+        }
+        for (ItemState state : changeLog.modifiedStates()) {
+            select(selected, state);
+        }
+        for (ItemState state : changeLog.deletedStates()) {
+            select(selected, state);
+        }
+        for (NodeReferences refs : changeLog.modifiedRefs()) {
+            selected[getStripe(refs.getTargetId(), selected.length)] = true;
+        }
+
+        int[] stripes = new int[selected.length];
+        int n = 0;
+        for (int i = 0; i < selected.length; i++) {
+            if (selected[i]) {
+                stripes[n++] = i;
+            }
+        }
+        return Arrays.copyOf(stripes, n);
+    }
+
+    private void select(boolean[] selected, ItemState state) {
+        selected[getStripe(state.getId(), selected.length)] = true;
+        NodeId parentId = state.getParentId();
+        if (parentId != null) {
+            selected[getStripe(parentId, selected.length)] = true;
+        }
+        if (state.isNode()) {
+            for (NodeId id : ((NodeState) state).getSharedSet()) {
+                selected[getStripe(id, selected.length)] = true;
+            }
+        } else {
+            selectTargets(selected, (PropertyState) state);
+        }
+    }
+
+    private void selectTargets(boolean[] selected, PropertyState state) {
+        if (state.getType() == PropertyType.REFERENCE) {
+            InternalValue[] values = state.getValues();
+            for (int i = 0; values != null && i < values.length; i++) {
+                selected[getStripe(values[i].getNodeId(), selected.length)] = true;
+            }
+        }
+    }
+
+    private synchronized void releaseReadLock(int[] stripes, Object writerId) {
+        for (int stripe : stripes) {
+            readerCounts[stripe]--;
+        }
+        if (writerId != null) {
+            // read lock downgraded from a write lock
+            writerThreads.remove(writerId);
+        }
+        notifyAll();
+    }
+
+    private synchronized void releaseWriteLock(
+            int[] stripes, Object writerId, boolean downgrade) {
+        for (int stripe : stripes) {
+            if (--writerCounts[stripe] == 0) {
+                writerIds[stripe] = null;
+            }
+            if (downgrade) {
+                readerCounts[stripe]++;
+            }
+        }
+        if (!downgrade) {
+            writerThreads.remove(writerId);
+        }
+        notifyAll();
+    }
+
+    private final class ReadLockImpl implements ReadLock {
+
+        private final int[] stripes;
+
+        /**
+         * The thread identifier of the write lock this lock was downgraded
+         * from, or <code>null</code>.
+         */
+        private final Object writerId;
+
+        ReadLockImpl(int[] stripes, Object writerId) {
+            this.stripes = stripes;
+            this.writerId = writerId;
+        }
+
+        public void release() {
+            releaseReadLock(stripes, writerId);
+        }
+
+    }
+
+    private final class WriteLockImpl implements WriteLock {
+
+        private final int[] stripes;
+
+        private final Object writerId;
+
+        WriteLockImpl(int[] stripes, Object writerId) {
+            this.stripes = stripes;
+            this.writerId = writerId;
+        }
+
+        public void release() {
+            releaseWriteLock(stripes, writerId, false);
+        }
+
+        public ReadLock downgrade() {
+            releaseWriteLock(stripes, writerId, true);
+            return new ReadLockImpl(stripes, writerId);
+        }
+
+    }
+
+}
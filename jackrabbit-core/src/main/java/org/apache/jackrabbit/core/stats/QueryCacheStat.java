@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the lookups in the query result caches of the search indexes of a
+ * repository.
+ */
+public class QueryCacheStat {
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Logs a query that was answered from a result cache.
+     */
+    public void logHit() {
+        hits.incrementAndGet();
+    }
+
+    /**
+     * Logs a query that was not found in a result cache.
+     */
+    public void logMiss() {
+        misses.incrementAndGet();
+    }
+
+    /**
+     * @return the number of queries answered from a result cache.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of queries not found in a result cache.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the ratio of queries answered from a result cache, or
+     *         <code>0</code> if no query was looked up yet.
+     */
+    public double getHitRatio() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Resets the counters.
+     */
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+    }
+
+}
@@ -39,6 +39,8 @@ public class StatManager {
     /* STAT OBJECTS */
     private final QueryStatCore queryStat = new QueryStatImpl();
 
+    private final QueryCacheStat queryCacheStat = new QueryCacheStat();
+
     public StatManager() {
         init();
     }
@@ -56,4 +58,8 @@ public class StatManager {
         return queryStat;
     }
 
+    public QueryCacheStat getQueryCacheStat() {
+        return queryCacheStat;
+    }
+
 }
@@ -18,12 +18,16 @@ package org.apache.jackrabbit.core.value;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 import javax.jcr.RepositoryException;
-import javax.jcr.Binary;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.jackrabbit.core.data.DataIdentifier;
 import org.apache.jackrabbit.core.data.DataStore;
+import org.apache.jackrabbit.value.ChannelBinary;
 
 /**
  * Represents binary data which is backed by a resource or byte[].
@@ -36,7 +40,7 @@ import org.apache.jackrabbit.core.data.DataStore;
  * This interface is for Jackrabbit-internal use only. Applications should
  * use <code>javax.jcr.ValueFactory</code> to create binary values.
  */
-abstract class BLOBFileValue implements Binary {
+abstract class BLOBFileValue implements ChannelBinary {
 
     /**
      * Deletes the persistent resource backing this <code>BLOBFileValue</code>.
@@ -78,17 +82,61 @@ abstract class BLOBFileValue implements Binary {
     //-----------------------------------------------------< javax.jcr.Binary >
 
     public int read(byte[] b, long position) throws IOException, RepositoryException {
+        InputStream in = getStream(position, b.length);
+        try {
+            return in.read(b);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a stream over a range of this value. The default implementation
+     * skips over the leading bytes of the complete stream, values that can
+     * seek to the position override this method.
+     *
+     * @param position the position of the first byte.
+     * @param length the maximum number of bytes.
+     * @return the stream, which ends early if the value is shorter.
+     * @throws RepositoryException if the stream cannot be opened.
+     */
+    InputStream getStream(long position, long length) throws RepositoryException {
         InputStream in = getStream();
         try {
-            long skip = position;
-            while (skip > 0) {
-                long skipped = in.skip(skip);
-                if (skipped <= 0) {
-                    return -1;
-                }
-                skip -= skipped;
+            if (IOUtils.skip(in, position) < position) {
+                length = 0;
             }
-            return in.read(b);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(in);
+            throw new RepositoryException("Unable to skip to position " + position, e);
+        }
+        return new BoundedInputStream(in, length);
+    }
+
+    //------------------------------------------------------< ChannelBinary >
+
+    /**
+     * Copies the stream of this value to the channel. Values that are
+     * backed by a file override this method.
+     */
+    public long transferTo(WritableByteChannel target)
+            throws IOException, RepositoryException {
+        InputStream in = getStream();
+        try {
+            return IOUtils.copyLarge(in, Channels.newOutputStream(target));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Copies a range of the stream of this value to the channel.
+     */
+    public long transferTo(WritableByteChannel target, long position, long count)
+            throws IOException, RepositoryException {
+        InputStream in = getStream(position, count);
+        try {
+            return IOUtils.copyLarge(in, Channels.newOutputStream(target));
         } finally {
             in.close();
         }
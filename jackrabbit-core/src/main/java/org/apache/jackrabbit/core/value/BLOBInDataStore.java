@@ -21,10 +21,15 @@ import org.apache.jackrabbit.core.data.DataIdentifier;
 import org.apache.jackrabbit.core.data.DataRecord;
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.data.DataStoreException;
+import org.apache.jackrabbit.core.data.FileDataRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
 
 import javax.jcr.RepositoryException;
 
@@ -104,6 +109,47 @@ class BLOBInDataStore extends BLOBFileValue implements ReferenceBinary {
         return getDataRecord().getStream();
     }
 
+    /**
+     * Reads the range from the data record, which lets file and remote
+     * backends seek to the position instead of skipping over the content.
+     */
+    @Override
+    InputStream getStream(long position, long length) throws RepositoryException {
+        return getDataRecord().getStream(position, length);
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target)
+            throws IOException, RepositoryException {
+        return transferTo(target, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Transfers records of a file data store with a file channel, which
+     * does not copy the content through the heap.
+     */
+    @Override
+    public long transferTo(WritableByteChannel target, long position, long count)
+            throws IOException, RepositoryException {
+        DataRecord record = getDataRecord();
+        if (!(record instanceof FileDataRecord)) {
+            return super.transferTo(target, position, count);
+        }
+        FileChannel channel = FileChannel.open(
+                ((FileDataRecord) record).getPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            long end = count < size - position ? position + count : size;
+            long current = position;
+            while (current < end) {
+                current += channel.transferTo(current, end - current, target);
+            }
+            return Math.max(0, current - position);
+        } finally {
+            channel.close();
+        }
+    }
+
     @Override
     public String getReference() {
         try {
@@ -641,6 +641,20 @@ public class InternalValue extends AbstractQValue {
         return val instanceof BLOBInDataStore;
     }
 
+    /**
+     * Returns the identifier of a binary value in the data store. The
+     * identifier is derived from the content of the binary.
+     *
+     * @return the data identifier, or <code>null</code> if this is not a
+     *         binary value in the data store.
+     */
+    public DataIdentifier getDataIdentifier() {
+        if (isInDataStore()) {
+            return ((BLOBInDataStore) val).getDataIdentifier();
+        }
+        return null;
+    }
+
     //-------------------------------------------------------------< QValue >---
     /**
      * @see org.apache.jackrabbit.spi.QValue#getLength()
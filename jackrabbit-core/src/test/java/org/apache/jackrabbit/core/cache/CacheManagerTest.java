@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link CacheManager} class.
+ */
+public class CacheManagerTest extends TestCase {
+
+    /**
+     * Checks that a cache with expensive misses gets more memory than an
+     * equally accessed cache with cheap misses.
+     */
+    public void testMissCost() throws Exception {
+        CacheManager manager = new CacheManager();
+        manager.setMaxMemory(1024 * 1024);
+        manager.setMinMemoryPerCache(1024);
+        manager.setMaxMemoryPerCache(1024 * 1024);
+        manager.setMinResizeInterval(0);
+
+        ConcurrentCache<Integer, Integer> cheap = createCache(manager, "cheap");
+        ConcurrentCache<Integer, Integer> expensive = createCache(manager, "expensive");
+        assertEquals(2, manager.getCacheCount());
+
+        for (int i = 0; i < 1000; i++) {
+            assertNull(cheap.get(-i));
+            cheap.recordMissDuration(1000);
+            assertNull(expensive.get(-i));
+            expensive.recordMissDuration(1000 * 1000);
+        }
+
+        // the first resize happens after the default resize interval
+        Thread.sleep(1100);
+        manager.cacheAccessed(0);
+
+        assertTrue(expensive.getMaxMemorySize() > 2 * cheap.getMaxMemorySize());
+        assertEquals(2, manager.getCacheAllocation().length);
+    }
+
+    private ConcurrentCache<Integer, Integer> createCache(CacheManager manager, String name) {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<Integer, Integer>(name);
+        cache.setMaxMemorySize(100 * 1024);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, i, 10 * 1024);
+        }
+        manager.add(cache);
+        return cache;
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link ClockCache} class.
+ */
+public class ClockCacheTest extends TestCase {
+
+    /**
+     * Tests a clock cache by adding lots of random items to it
+     * and checking that the excess items have automatically been evicted
+     * while frequently accessed items are still present.
+     */
+    public void testClockCache() {
+        NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+        }
+
+        ClockCache<NodeId, NodeId> cache =
+            new ClockCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(ids.length / 2);
+
+        for (int i = 0; i < ids.length; i++) {
+            for (int j = 0; j < i; j += 3) {
+                cache.get(ids[j]);
+            }
+            cache.put(ids[i], ids[i], 1);
+        }
+
+        assertTrue(cache.getMemoryUsed() <= ids.length / 2);
+        assertEquals(cache.getMemoryUsed(), cache.getElementCount());
+
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (cache.containsKey(ids[i])) {
+                n++;
+            }
+        }
+        assertTrue(n <= ids.length / 2);
+
+        n = 0;
+        for (int i = 0; i < ids.length; i += 3) {
+            if (cache.containsKey(ids[i])) {
+                n++;
+            }
+        }
+        assertTrue(n > ids.length / 6);
+    }
+
+    /**
+     * Checks that the memory used is tracked correctly when entries are
+     * replaced, removed and cleared.
+     */
+    public void testMemoryUsed() {
+        ClockCache<String, String> cache = new ClockCache<String, String>("test", 2);
+        cache.setMaxMemorySize(1000);
+
+        assertNull(cache.put("a", "1", 10));
+        assertEquals("1", cache.put("a", "2", 20));
+        assertNull(cache.put("b", "3", 30));
+        assertEquals(50, cache.getMemoryUsed());
+        assertEquals("2", cache.get("a"));
+
+        assertEquals("3", cache.remove("b"));
+        assertNull(cache.remove("b"));
+        assertEquals(20, cache.getMemoryUsed());
+
+        cache.clear();
+        assertTrue(cache.isEmpty());
+        assertEquals(0, cache.getElementCount());
+
+        cache.put("c", "4", 2000);
+        assertTrue(cache.isEmpty());
+    }
+
+    /**
+     * Checks that the policies create the expected cache implementations.
+     */
+    public void testEvictionPolicy() {
+        assertTrue(EvictionPolicy.fromString("lru").createCache("test") instanceof ConcurrentCache);
+        assertTrue(EvictionPolicy.fromString(" Clock ").createCache("test") instanceof ClockCache);
+        try {
+            EvictionPolicy.fromString("fifo");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Checks that evicted entries, and only those, are reported to the
+     * eviction listener.
+     */
+    public void testEvictionListener() {
+        ClockCache<NodeId, NodeId> cache = new ClockCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(100);
+        final Map<NodeId, NodeId> evicted = new HashMap<NodeId, NodeId>();
+        cache.setEvictionListener(new CacheEvictionListener<NodeId, NodeId>() {
+            public void entryEvicted(NodeId key, NodeId value) {
+                synchronized (evicted) {
+                    assertEquals(key, value);
+                    assertNull(evicted.put(key, value));
+                }
+            }
+        });
+        NodeId removed = NodeId.randomId();
+        cache.put(removed, removed, 1);
+        cache.remove(removed);
+        NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], ids[i], 1);
+        }
+        assertFalse(evicted.containsKey(removed));
+        for (NodeId id : ids) {
+            assertTrue(cache.containsKey(id) != evicted.containsKey(id));
+        }
+    }
+
+}
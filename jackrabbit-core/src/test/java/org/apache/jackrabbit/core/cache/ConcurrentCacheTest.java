@@ -16,6 +16,9 @@
  */
 package org.apache.jackrabbit.core.cache;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.jackrabbit.core.id.NodeId;
 
 import junit.framework.TestCase;
@@ -68,4 +71,34 @@ public class ConcurrentCacheTest extends TestCase {
         assertTrue(cache.getMemoryUsed() > ids.length / 4);
     }
 
+    /**
+     * Checks that evicted entries, and only those, are reported to the
+     * eviction listener.
+     */
+    public void testEvictionListener() {
+        ConcurrentCache<NodeId, NodeId> cache = new ConcurrentCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(100);
+        final Map<NodeId, NodeId> evicted = new HashMap<NodeId, NodeId>();
+        cache.setEvictionListener(new CacheEvictionListener<NodeId, NodeId>() {
+            public void entryEvicted(NodeId key, NodeId value) {
+                synchronized (evicted) {
+                    assertEquals(key, value);
+                    assertNull(evicted.put(key, value));
+                }
+            }
+        });
+        NodeId removed = NodeId.randomId();
+        cache.put(removed, removed, 1);
+        cache.remove(removed);
+        NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], ids[i], 1);
+        }
+        assertFalse(evicted.containsKey(removed));
+        for (NodeId id : ids) {
+            assertTrue(cache.containsKey(id) != evicted.containsKey(id));
+        }
+    }
+
 }
@@ -83,6 +83,20 @@ public class PersistenceManagerTest extends TestCase {
         assertPersistenceManager(new InMemBundlePersistenceManager());
     }
 
+    public void testInMemBundlePersistenceManagerWithClockCache() throws Exception {
+        InMemBundlePersistenceManager manager = new InMemBundlePersistenceManager();
+        manager.setBundleCacheEvictionPolicy("clock");
+        assertPersistenceManager(manager);
+    }
+
+    public void testInMemBundlePersistenceManagerWithOffHeapCache() throws Exception {
+        InMemBundlePersistenceManager manager = new InMemBundlePersistenceManager();
+        // no room in the bundle cache, so all hits are served off-heap
+        manager.setBundleCacheSize("0");
+        manager.setOffHeapBundleCacheSize("1");
+        assertPersistenceManager(manager);
+    }
+
     public void testXMLPersistenceManager() throws Exception {
         assertPersistenceManager(new XMLPersistenceManager());
     }
@@ -230,6 +244,8 @@ public class PersistenceManagerTest extends TestCase {
         assertEquals(property, manager.load(PROPERTY_ID));
         assertEquals(references, manager.loadReferencesTo(CHILD_ID));
 
+        assertPrefetch(manager, create);
+
         references.removeReference(PROPERTY_ID);
         node.setStatus(ItemState.STATUS_EXISTING);
         ChangeLog update = new ChangeLog();
@@ -258,6 +274,27 @@ public class PersistenceManagerTest extends TestCase {
         assertFalse(manager.existsReferencesTo(CHILD_ID));
     }
 
+    private void assertPrefetch(PersistenceManager manager, ChangeLog changes)
+            throws Exception {
+        if (manager instanceof CachingPersistenceManager) {
+            CachingPersistenceManager caching = (CachingPersistenceManager) manager;
+            // evict the cached bundles so that they need to be loaded again
+            caching.onExternalUpdate(changes);
+
+            NodeId missing = NodeId.randomId();
+            caching.prefetch(Arrays.asList(NODE_ID, CHILD_ID, missing));
+
+            assertTrue(manager.exists(NODE_ID));
+            assertTrue(manager.exists(CHILD_ID));
+            assertFalse(manager.exists(missing));
+            for (ItemState state : changes.addedStates()) {
+                if (state.isNode()) {
+                    assertEquals((NodeState) state, manager.load((NodeId) state.getId()));
+                }
+            }
+        }
+    }
+
     private void assertEquals(NodeState expected, NodeState actual) {
         assertEquals(expected.getId(), actual.getId());
         assertEquals(expected.getNodeId(), actual.getNodeId());
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.NamespaceRegistryImpl;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.fs.FileSystem;
+import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.persistence.PMContext;
+import org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * Test cases for the {@link BundleCacheSnapshot} class.
+ */
+public class BundleCacheSnapshotTest extends TestCase {
+
+    private static final long TIMEOUT = 10000;
+
+    private File directory;
+
+    private FileSystem fs;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("jackrabbit-snapshot-", "-test");
+        directory.delete();
+        directory.mkdirs();
+        fs = new MemoryFileSystem();
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtils.deleteQuietly(directory);
+    }
+
+    /**
+     * Checks that the bundles cached before a restart are loaded into the
+     * bundle cache after the restart.
+     */
+    public void testWarmUp() throws Exception {
+        NodeId id = NodeId.randomId();
+        File file = new File(directory, "bundlecache.snapshot");
+
+        AbstractBundlePersistenceManager manager = createManager();
+        try {
+            NodeState node = new NodeState(
+                    id, NameConstants.NT_UNSTRUCTURED, RepositoryImpl.ROOT_NODE_ID,
+                    ItemState.STATUS_NEW, true);
+            ChangeLog changes = new ChangeLog();
+            changes.added(node);
+            manager.store(changes);
+            // load the bundle into the cache, this also starts the snapshots
+            assertTrue(manager.exists(id));
+
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (!file.exists() && System.currentTimeMillis() < end) {
+                Thread.sleep(100);
+            }
+            assertTrue(file.exists());
+        } finally {
+            manager.close();
+        }
+
+        manager = createManager();
+        try {
+            assertFalse(manager.getCachedBundleIds().contains(id));
+            assertFalse(manager.exists(NodeId.randomId()));
+
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while (!manager.getCachedBundleIds().contains(id)
+                    && System.currentTimeMillis() < end) {
+                Thread.sleep(100);
+            }
+            assertTrue(manager.getCachedBundleIds().contains(id));
+        } finally {
+            manager.close();
+        }
+    }
+
+    private AbstractBundlePersistenceManager createManager() throws Exception {
+        InMemBundlePersistenceManager manager = new InMemBundlePersistenceManager();
+        manager.setPersistent(true);
+        manager.setBundleCacheSnapshotInterval("1");
+        manager.init(new PMContext(
+                directory,
+                fs,
+                RepositoryImpl.ROOT_NODE_ID,
+                new NamespaceRegistryImpl(new MemoryFileSystem()),
+                null,
+                null,
+                new RepositoryStatisticsImpl()));
+        return manager;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.util.Arrays;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link OffHeapBundleCache} class.
+ */
+public class OffHeapBundleCacheTest extends TestCase {
+
+    /**
+     * Checks that records can be read back, replaced and removed.
+     */
+    public void testPutGetRemove() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 4096);
+        NodeId id = NodeId.randomId();
+        assertNull(cache.get(id));
+
+        cache.put(id, new byte[] { 1, 2, 3 });
+        assertTrue(cache.containsKey(id));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, cache.get(id)));
+
+        cache.put(id, new byte[] { 4 });
+        assertTrue(Arrays.equals(new byte[] { 4 }, cache.get(id)));
+        assertEquals(1, cache.getElementCount());
+
+        cache.remove(id);
+        assertFalse(cache.containsKey(id));
+        assertNull(cache.get(id));
+
+        cache.put(id, new byte[4096]);
+        assertFalse(cache.containsKey(id));
+    }
+
+    /**
+     * Fills the cache with more records than fit and checks that the oldest
+     * records have been evicted while the newest ones are still readable.
+     */
+    public void testEviction() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 4096);
+        NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], new byte[] { (byte) i });
+        }
+
+        assertTrue(cache.getElementCount() < ids.length);
+        assertFalse(cache.containsKey(ids[0]));
+        for (int i = ids.length - 10; i < ids.length; i++) {
+            assertTrue(Arrays.equals(new byte[] { (byte) i }, cache.get(ids[i])));
+        }
+
+        cache.clear();
+        assertEquals(0, cache.getElementCount());
+        cache.put(ids[0], new byte[] { 0 });
+        assertTrue(Arrays.equals(new byte[] { 0 }, cache.get(ids[0])));
+
+        cache.close();
+        assertNull(cache.get(ids[0]));
+    }
+
+}
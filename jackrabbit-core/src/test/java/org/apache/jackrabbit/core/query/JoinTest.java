@@ -167,4 +167,23 @@ public class JoinTest extends AbstractQueryTest {
         checkResult(qm.createQuery(join.toString(), Query.JCR_SQL2).execute(),
                 2);
     }
+
+    public void testJoinWithLimit() throws Exception {
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.[jcr:uuid] = b.testref";
+        Query q = qm.createQuery(join, Query.JCR_SQL2);
+        q.setLimit(2);
+        checkResult(q.execute(), 2);
+        q.setOffset(2);
+        checkResult(q.execute(), 1);
+    }
+
+    public void testJoinWithSelectiveRight() throws Exception {
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON ISCHILDNODE(b, a)"
+                + " WHERE b.[testJoinWithOR4] = 'testJoinWithOR4'";
+        checkResult(qm.createQuery(join, Query.JCR_SQL2).execute(), 2);
+    }
 }
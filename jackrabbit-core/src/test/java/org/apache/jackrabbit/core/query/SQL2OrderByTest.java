@@ -19,6 +19,7 @@ package org.apache.jackrabbit.core.query;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
@@ -245,6 +246,28 @@ public class SQL2OrderByTest extends AbstractQueryTest {
         checkSeq(qr, new Node[] { n1, n3, n2 });
     }
 
+    public void testOrderByValOffsetLimit() throws RepositoryException {
+
+        Node[] nodes = new Node[10];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = testRootNode.addNode("node" + i);
+            nodes[i].setProperty("value", (i * 7) % 10);
+        }
+
+        testRootNode.getSession().save();
+
+        Query q = qm.createQuery("SELECT * FROM [nt:base] WHERE ISCHILDNODE(["
+                + testRoot + "]) ORDER BY [value] desc", Query.JCR_SQL2);
+        q.setOffset(2);
+        q.setLimit(3);
+        assertEquals(3, q.execute().getNodes().getSize());
+        checkSeq(q.execute(), new Node[] { nodes[1], nodes[8], nodes[5] });
+
+        q.setOffset(0);
+        q.setLimit(0);
+        assertEquals(0, q.execute().getNodes().getSize());
+    }
+
     private void checkSeq(QueryResult qr, Node[] nodes)
             throws RepositoryException {
         NodeIterator ni = qr.getNodes();
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.core.NodeImpl;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.TestHelper;
+import org.apache.jackrabbit.core.security.principal.EveryonePrincipal;
+import org.apache.jackrabbit.test.NotExecutableException;
+import org.apache.jackrabbit.test.api.security.AbstractAccessControlTest;
+
+/**
+ * <code>AccessFilterTest</code> checks the cached access checks on query
+ * hits. See the workspace.xml file of the default workspace.
+ */
+public class AccessFilterTest extends AbstractAccessControlTest {
+
+    private Session anonymous;
+
+    private Node n1;
+
+    private Node n2;
+
+    private AccessFilterCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        cache = getSearchIndex().getAccessFilterCache();
+        if (cache == null) {
+            throw new NotExecutableException("access filter cache disabled");
+        }
+        anonymous = getHelper().getReadOnlySession();
+        n1 = testRootNode.addNode(nodeName1);
+        n1.setProperty(propertyName1, "a");
+        n2 = testRootNode.addNode(nodeName2);
+        n2.setProperty(propertyName1, "b");
+        superuser.save();
+
+        JackrabbitAccessControlList acl = getACL(n2.getPath());
+        acl.addEntry(EveryonePrincipal.getInstance(),
+                privilegesFromName(Privilege.JCR_READ), false);
+        acMgr.setPolicy(n2.getPath(), acl);
+        superuser.save();
+    }
+
+    protected void tearDown() throws Exception {
+        if (anonymous != null) {
+            anonymous.logout();
+            anonymous = null;
+        }
+        n1 = null;
+        n2 = null;
+        cache = null;
+        super.tearDown();
+    }
+
+    public void testDenied() throws Exception {
+        assertEquals(0, cache.size());
+        checkResult(n1);
+        assertEquals(1, cache.size());
+        // denied hit is excluded by the filter
+        checkResult(n1);
+        assertEquals(1, cache.size());
+        // admin sessions are not access checked
+        assertNull(getSearchIndex().createAccessFilter((SessionImpl) superuser));
+    }
+
+    public void testPolicyRemoved() throws Exception {
+        checkResult(n1);
+        long generation = cache.getGeneration();
+        acMgr.removePolicy(n2.getPath(), getACL(n2.getPath(), true));
+        superuser.save();
+        assertEquals(0, cache.size());
+        assertTrue(cache.getGeneration() > generation);
+        checkResult(n1, n2);
+    }
+
+    public void testGeneration() throws Exception {
+        // filter of a query result that lives across the modification
+        AccessFilter filter = getSearchIndex().createAccessFilter(
+                (SessionImpl) anonymous);
+        checkResult(n1);
+        assertEquals(1, cache.size());
+        cache.acModified(null);
+        assertEquals(0, cache.size());
+        // the filter switches to the current generation
+        ScoreNode[] nodes = {new ScoreNode(((NodeImpl) n1).getNodeId(), 1.0f)};
+        assertTrue(filter.isAccessGranted(
+                nodes, ((SessionImpl) anonymous).getAccessManager()));
+        assertEquals(1, cache.size());
+    }
+
+    public void testMove() throws Exception {
+        checkResult(n1);
+        // n1 inherits the denied read access of n2
+        superuser.move(n1.getPath(), n2.getPath() + "/" + nodeName1);
+        superuser.save();
+        assertEquals(0, cache.size());
+        checkResult();
+    }
+
+    private void checkResult(Node... expected) throws RepositoryException {
+        String stmt = testPath + "//*[@" + propertyName1 + "] order by @"
+                + propertyName1;
+        NodeIterator nodes = anonymous.getWorkspace().getQueryManager()
+                .createQuery(stmt, Query.XPATH).execute().getNodes();
+        for (Node n : expected) {
+            assertTrue("No more nodes, expected: " + n.getPath(), nodes.hasNext());
+            assertEquals(n.getPath(), nodes.nextNode().getPath());
+        }
+        assertFalse("No more nodes expected", nodes.hasNext());
+    }
+
+    private SearchIndex getSearchIndex() throws Exception {
+        return (SearchIndex) TestHelper.getSearchManager(superuser).getQueryHandler();
+    }
+
+    private JackrabbitAccessControlList getACL(String path)
+            throws RepositoryException, NotExecutableException {
+        return getACL(path, false);
+    }
+
+    private JackrabbitAccessControlList getACL(String path, boolean existing)
+            throws RepositoryException, NotExecutableException {
+        if (existing) {
+            for (AccessControlPolicy acp : acMgr.getPolicies(path)) {
+                if (acp instanceof JackrabbitAccessControlList) {
+                    return (JackrabbitAccessControlList) acp;
+                }
+            }
+        } else {
+            AccessControlPolicyIterator it = acMgr.getApplicablePolicies(path);
+            while (it.hasNext()) {
+                AccessControlPolicy acp = it.nextAccessControlPolicy();
+                if (acp instanceof JackrabbitAccessControlList) {
+                    return (JackrabbitAccessControlList) acp;
+                }
+            }
+        }
+        throw new NotExecutableException("No JackrabbitAccessControlList found at " + path + " .");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+
+/**
+ * <code>AncestorIndexingTest</code> checks descendant axis queries on a
+ * workspace that indexes the ancestors of nodes. See the workspace.xml file
+ * for the indexing-test workspace.
+ */
+public class AncestorIndexingTest extends AbstractIndexingTest {
+
+    private Node a;
+
+    private Node b;
+
+    private Node c;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        assertTrue(getSearchIndex().isIndexAncestors());
+        assertTrue(getSearchIndex().isAncestorsIndexed());
+        a = testRootNode.addNode("a");
+        b = a.addNode("b");
+        c = b.addNode("c");
+        b.setProperty("type", "x");
+        c.setProperty("type", "x");
+        testRootNode.addNode("d").setProperty("type", "x");
+        session.save();
+    }
+
+    protected void tearDown() throws Exception {
+        a = null;
+        b = null;
+        c = null;
+        super.tearDown();
+    }
+
+    public void testAncestorTerms() throws Exception {
+        flushSearchIndex();
+        IndexReader reader = getSearchIndex().getIndexReader();
+        try {
+            assertEquals(2, reader.docFreq(new Term(FieldNames.ANCESTORS,
+                    a.getIdentifier())));
+            assertEquals(1, reader.docFreq(new Term(FieldNames.ANCESTORS,
+                    b.getIdentifier())));
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    public void testDescendant() throws Exception {
+        executeXPathQuery(testPath + "/a//*[@type = 'x']", new Node[] { b, c });
+        executeXPathQuery(testPath + "/a/b//*[@type = 'x']", new Node[] { c });
+        executeXPathQuery(testPath + "//*[@type = 'x']",
+                new Node[] { b, c, testRootNode.getNode("d") });
+    }
+
+    public void testDescendantOrSelf() throws Exception {
+        // first child of a descendant-or-self node of a
+        executeXPathQuery(testPath + "/a//*[1]", new Node[] { b, c });
+    }
+
+    public void testDescendantLevels() throws Exception {
+        executeXPathQuery(testPath + "/a//*//*[@type = 'x']", new Node[] { c });
+        executeSQLQuery("select * from nt:base where jcr:path like '"
+                + testRootNode.getPath() + "/a/b/%' and type = 'x'",
+                new Node[] { c });
+    }
+
+    public void testMove() throws Exception {
+        session.move(b.getPath(), testRootNode.getPath() + "/d/b");
+        session.save();
+        // the descendants of the moved node are re-indexed in the
+        // background, queries walk the hierarchy until then
+        executeXPathQuery(testPath + "/d//*[@type = 'x']", new Node[] { b, c });
+        getSearchIndex().flush();
+        assertTrue(getSearchIndex().isAncestorsIndexed());
+
+        executeXPathQuery(testPath + "/a//*[@type = 'x']", new Node[0]);
+        executeXPathQuery(testPath + "/d//*[@type = 'x']", new Node[] { b, c });
+    }
+}
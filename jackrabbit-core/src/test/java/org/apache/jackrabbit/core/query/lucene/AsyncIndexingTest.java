@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * <code>AsyncIndexingTest</code> checks the asynchronous indexing mode on
+ * the indexing-test-2 workspace, which sets an indexing lag that is longer
+ * than the tests run. See the workspace.xml file for the workspace.
+ */
+public class AsyncIndexingTest extends AbstractIndexingTest {
+
+    protected String getWorkspaceName() {
+        return "indexing-test-2";
+    }
+
+    public void testPendingUntilFlush() throws Exception {
+        assertTrue(getSearchIndex().getIndexingLag() > 0);
+        Node n = testRootNode.addNode("async");
+        n.setProperty("type", "async");
+        session.save();
+
+        // not visible until the background task ran
+        assertEquals(0, countAsyncNodes());
+        flushSearchIndex();
+        assertEquals(1, countAsyncNodes());
+
+        // query results skip removed nodes, check the index instead
+        String id = n.getIdentifier();
+        n.remove();
+        session.save();
+        assertEquals(1, getDocFreq(id));
+        flushSearchIndex();
+        assertEquals(0, getDocFreq(id));
+    }
+
+    public void testPersistedQueue() throws Exception {
+        Directory dir = new RAMDirectory();
+        IndexingQueueStore store = new IndexingQueueStore(dir, "queue");
+        store.addUUIDs(Arrays.asList("a", "b", "c"));
+        store.removeUUIDs(Collections.singleton("b"));
+        // not closed, as after a crash
+        store = new IndexingQueueStore(dir, "queue");
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")),
+                new HashSet<String>(Arrays.asList(store.getPending())));
+        // the logs were rewritten to a single generation
+        assertEquals(1, dir.listAll().length);
+
+        store.removeUUIDs(Arrays.asList("a", "c"));
+        store.close();
+        assertEquals(0, dir.listAll().length);
+        assertEquals(0, new IndexingQueueStore(dir, "queue").size());
+    }
+
+    public void testCompaction() throws Exception {
+        Directory dir = new RAMDirectory();
+        IndexingQueueStore store = new IndexingQueueStore(dir, "queue");
+        long length = dir.fileLength(dir.listAll()[0]);
+        for (int i = 0; i < 10000; i++) {
+            Set<String> uuid = Collections.singleton(String.valueOf(i));
+            store.addUUIDs(uuid);
+            store.removeUUIDs(uuid);
+        }
+        String[] files = dir.listAll();
+        assertEquals(1, files.length);
+        assertTrue(dir.fileLength(files[0]) < 10000 + length);
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    private int getDocFreq(String id) throws Exception {
+        IndexReader reader = getSearchIndex().getIndexReader();
+        try {
+            return reader.docFreq(new Term(FieldNames.UUID, id));
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    private long countAsyncNodes() throws RepositoryException {
+        // do not flush the index before the query
+        String stmt = testPath + "//*[@type = 'async']";
+        NodeIterator nodes = qm.createQuery(stmt, Query.XPATH).execute().getNodes();
+        long count = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            count++;
+        }
+        return count;
+    }
+}
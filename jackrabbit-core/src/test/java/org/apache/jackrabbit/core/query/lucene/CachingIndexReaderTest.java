@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.SimpleFSDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * <code>CachingIndexReaderTest</code> checks the persisted hierarchy cache
+ * of {@link CachingIndexReader}.
+ */
+public class CachingIndexReaderTest extends TestCase {
+
+    private static final String CACHE_FILE = "cache.inSegmentParents";
+
+    private File path;
+
+    private Directory directory;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        path = new File("target", "caching-index-reader");
+        FileUtils.deleteDirectory(path);
+        directory = new SimpleFSDirectory(path);
+        IndexWriter writer = new IndexWriter(directory, new IndexWriterConfig(
+                Version.LUCENE_36, new StandardAnalyzer(Version.LUCENE_36)));
+        try {
+            NodeId root = NodeId.randomId();
+            NodeId a = NodeId.randomId();
+            writer.addDocument(createDocument(root, null));
+            writer.addDocument(createDocument(a, root));
+            writer.addDocument(createDocument(NodeId.randomId(), a));
+            // parent in another index segment
+            writer.addDocument(createDocument(NodeId.randomId(), NodeId.randomId()));
+        } finally {
+            writer.close();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        directory.close();
+        FileUtils.deleteDirectory(path);
+        super.tearDown();
+    }
+
+    public void testPersistedCache() throws Exception {
+        String[] parents = getParents(true);
+        assertEquals("PlainDocId(0)", parents[1]);
+        assertEquals("PlainDocId(1)", parents[2]);
+        assertTrue(directory.fileExists(CACHE_FILE));
+        assertEquals(16, directory.fileLength(CACHE_FILE));
+
+        // reopen uses the persisted cache
+        for (int i = 0; i < 2; i++) {
+            String[] persisted = getParents(false);
+            for (int j = 0; j < parents.length; j++) {
+                assertEquals(parents[j], persisted[j]);
+            }
+            // resolved parents are not written to the file
+            assertEquals(16, directory.fileLength(CACHE_FILE));
+        }
+    }
+
+    public void testStaleCache() throws Exception {
+        IndexOutput out = directory.createOutput(CACHE_FILE);
+        try {
+            out.writeInt(-1);
+        } finally {
+            out.close();
+        }
+        String[] parents = getParents(false);
+        assertFalse(directory.fileExists(CACHE_FILE));
+        assertEquals("PlainDocId(0)", parents[1]);
+        assertEquals("PlainDocId(1)", parents[2]);
+    }
+
+    private String[] getParents(boolean initCache) throws Exception {
+        CachingIndexReader reader = new CachingIndexReader(
+                IndexReader.open(directory), null, initCache);
+        try {
+            String[] parents = new String[reader.maxDoc()];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = reader.getParent(i, new BitSet()).toString();
+            }
+            return parents;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Document createDocument(NodeId id, NodeId parent) {
+        Document doc = new Document();
+        doc.add(new IDField(id));
+        doc.add(new Field(FieldNames.PARENT, false,
+                parent != null ? parent.toString() : "", Field.Store.YES,
+                Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+        return doc;
+    }
+}
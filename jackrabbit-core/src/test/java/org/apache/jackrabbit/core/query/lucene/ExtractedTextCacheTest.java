@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Calendar;
+
+import javax.jcr.Node;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.JackrabbitValue;
+import org.apache.jackrabbit.core.data.DataIdentifier;
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+
+/**
+ * <code>ExtractedTextCacheTest</code> checks the cache of the text extracted
+ * from binaries. See the workspace.xml file of the indexing-test workspace
+ * for the cache configuration.
+ */
+public class ExtractedTextCacheTest extends AbstractIndexingTest {
+
+    private static final DataIdentifier ID =
+        new DataIdentifier("0123456789abcdef0123456789abcdef01234567");
+
+    private File path;
+
+    private ExtractedTextCache cache;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        path = new File("target", "extracted-text-cache");
+        FileUtils.deleteDirectory(path);
+        cache = new ExtractedTextCache(path);
+    }
+
+    protected void tearDown() throws Exception {
+        cache = null;
+        FileUtils.deleteDirectory(path);
+        super.tearDown();
+    }
+
+    public void testGetPut() {
+        assertNull(cache.get(ID, "text/plain", 100));
+        cache.put(ID, "text/plain", 100, "some text");
+        assertEquals("some text", cache.get(ID, "text/plain", 100));
+        // the text was not truncated
+        assertEquals("some text", cache.get(ID, "text/plain", 1000));
+        assertEquals("some", cache.get(ID, "text/plain", 4));
+        // extracted differently
+        assertNull(cache.get(ID, "text/html", 100));
+        assertTrue(new File(path, "01/23/45/" + ID + ".txt.gz").exists());
+    }
+
+    public void testTruncated() {
+        cache.put(ID, "text/plain", 4, "some");
+        assertEquals("some", cache.get(ID, "text/plain", 4));
+        assertEquals("so", cache.get(ID, "text/plain", 2));
+        // may have more text than extracted
+        assertNull(cache.get(ID, "text/plain", 5));
+        cache.put(ID, "text/plain", 100, "some text");
+        assertEquals("some ", cache.get(ID, "text/plain", 5));
+    }
+
+    public void testIndexing() throws Exception {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 1000) {
+            text.append("extracted text cache ");
+        }
+        text.append("cachedtextword");
+        Node resource = testRootNode.addNode("file", "nt:file")
+                .addNode("jcr:content", "nt:resource");
+        resource.setProperty("jcr:mimeType", "text/plain");
+        resource.setProperty("jcr:encoding", "UTF-8");
+        resource.setProperty("jcr:lastModified", Calendar.getInstance());
+        resource.setProperty("jcr:data", session.getValueFactory().createBinary(
+                new ByteArrayInputStream(text.toString().getBytes("UTF-8"))));
+        session.save();
+        getSearchIndex().getIndex().waitUntilIndexingQueueIsEmpty();
+        // the text of the resource is aggregated to the file
+        executeXPathQuery(testPath + "//*[jcr:contains(., 'cachedtextword')]",
+                new Node[] { resource.getParent(), resource });
+
+        String identity = ((JackrabbitValue) resource.getProperty(
+                "jcr:data").getValue()).getContentIdentity();
+        assertNotNull(identity);
+        ExtractedTextCache indexCache = new ExtractedTextCache(
+                new File(getSearchIndex().getExtractedTextCachePath()));
+        String cached = indexCache.get(new DataIdentifier(identity),
+                "text/plain;UTF-8", getSearchIndex().getMaxExtractLength());
+        assertNotNull(cached);
+        assertTrue(cached.contains("cachedtextword"));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+
+/**
+ * <code>ParallelSearchTest</code> checks the results of queries that are
+ * scored in parallel on the segments of the index.
+ */
+public class ParallelSearchTest extends AbstractIndexingTest {
+
+    private final List<Node> typeB = new ArrayList<Node>();
+
+    private final List<Node> title1 = new ArrayList<Node>();
+
+    private final List<Node> large = new ArrayList<Node>();
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        assertTrue(getSearchIndex().getSearchParallelism() > 1);
+        int num = 0;
+        // every save and flush creates a new index segment
+        for (int i = 0; i < 3; i++) {
+            Node parent = testRootNode.addNode("folder" + i);
+            for (int j = 0; j < 20; j++) {
+                Node n = parent.addNode("node" + num);
+                n.setProperty("type", j % 2 == 0 ? "a" : "b");
+                n.setProperty("title", "node" + num);
+                n.setProperty("num", num);
+                if (j % 2 != 0) {
+                    typeB.add(n);
+                }
+                if (("node" + num).startsWith("node1")) {
+                    title1.add(n);
+                }
+                if (num >= 45) {
+                    large.add(n);
+                }
+                num++;
+            }
+            session.save();
+            flushSearchIndex();
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        typeB.clear();
+        title1.clear();
+        large.clear();
+        super.tearDown();
+    }
+
+    public void testDescendantTerm() throws Exception {
+        executeXPathQuery(testPath + "//*[@type = 'b']", toArray(typeB));
+    }
+
+    public void testDescendantWildcard() throws Exception {
+        executeXPathQuery(testPath + "//*[jcr:like(@title, 'node1%')]",
+                toArray(title1));
+    }
+
+    public void testDescendantRange() throws Exception {
+        executeXPathQuery(testPath + "//*[@num >= 45]", toArray(large));
+    }
+
+    public void testTerms() throws Exception {
+        executeXPathQuery("//*[@title = 'node5' or @title = 'node25']",
+                new Node[] { testRootNode.getNode("folder0/node5"),
+                        testRootNode.getNode("folder1/node25") });
+    }
+
+    /*
+     * use default ws
+     */
+    protected String getWorkspaceName() {
+        return null;
+    }
+
+    private static Node[] toArray(List<Node> nodes) {
+        return nodes.toArray(new Node[nodes.size()]);
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.nodetype.NodeTypeManager;
+import javax.jcr.nodetype.NodeTypeTemplate;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.core.stats.QueryCacheStat;
+
+/**
+ * <code>QueryResultCacheTest</code> checks the query result cache of the
+ * indexing-test workspace. See the workspace.xml file for the workspace.
+ */
+public class QueryResultCacheTest extends AbstractIndexingTest {
+
+    private QueryCacheStat stat;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        assertNotNull(getSearchIndex().getQueryResultCache());
+        stat = getSearchIndex().getContext().getStatManager().getQueryCacheStat();
+    }
+
+    protected void tearDown() throws Exception {
+        stat = null;
+        super.tearDown();
+    }
+
+    public void testHit() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("cached", "a");
+        Node n2 = testRootNode.addNode("node2");
+        n2.setProperty("cached", "a");
+        session.save();
+
+        String xpath = testPath + "/*[@cached = 'a'] order by @jcr:primaryType";
+        executeXPathQuery(xpath, new Node[] { n1, n2 });
+        long hits = stat.getHits();
+        executeXPathQuery(xpath, new Node[] { n1, n2 });
+        assertEquals(hits + 1, stat.getHits());
+        assertTrue(stat.getHitRatio() > 0);
+    }
+
+    public void testIndexChange() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("cached", "b");
+        session.save();
+
+        String xpath = testPath + "/*[@cached = 'b']";
+        executeXPathQuery(xpath, new Node[] { n1 });
+        Node n2 = testRootNode.addNode("node2");
+        n2.setProperty("cached", "b");
+        session.save();
+        executeXPathQuery(xpath, new Node[] { n1, n2 });
+        n1.remove();
+        session.save();
+        executeXPathQuery(xpath, new Node[] { n2 });
+    }
+
+    public void testNamespaceMapping() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("mix:cached", "c");
+        Node n2 = testRootNode.addNode("node2");
+        n2.setProperty("jcr:cached", "c");
+        session.save();
+
+        // same statement, different namespaces
+        String xpath = testPath + "/*[@foo:cached = 'c']";
+        session.setNamespacePrefix("foo", "http://www.jcp.org/jcr/mix/1.0");
+        executeXPathQuery(xpath, new Node[] { n1 });
+        session.setNamespacePrefix("foo", "http://www.jcp.org/jcr/1.0");
+        executeXPathQuery(xpath, new Node[] { n2 });
+    }
+
+    public void testNodeTypeRegistration() throws Exception {
+        Node n1 = testRootNode.addNode("node1");
+        n1.setProperty("cached", "d");
+        session.save();
+
+        String xpath = testPath + "/*[@cached = 'd']";
+        executeXPathQuery(xpath, new Node[] { n1 });
+        assertTrue(getSearchIndex().getQueryResultCache().size() > 0);
+
+        // registers the node type or changes it if it already exists
+        NodeTypeManager ntMgr = session.getWorkspace().getNodeTypeManager();
+        NodeTypeTemplate ntt;
+        if (ntMgr.hasNodeType("cachedType")) {
+            ntt = ntMgr.createNodeTypeTemplate(ntMgr.getNodeType("cachedType"));
+            ntt.setOrderableChildNodes(!ntt.hasOrderableChildNodes());
+        } else {
+            ntt = ntMgr.createNodeTypeTemplate();
+            ntt.setName("cachedType");
+            ntt.setMixin(true);
+        }
+        ntMgr.registerNodeType(ntt, true);
+        assertEquals(0, getSearchIndex().getQueryResultCache().size());
+        executeXPathQuery(xpath, new Node[] { n1 });
+    }
+}
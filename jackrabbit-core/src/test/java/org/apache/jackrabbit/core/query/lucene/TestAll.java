@@ -53,6 +53,14 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ArrayHitsTest.class);
         suite.addTestSuite(IndexFormatVersionTest.class);
         suite.addTestSuite(SynonymProviderTest.class);
+        suite.addTestSuite(ParallelSearchTest.class);
+        suite.addTestSuite(CachingIndexReaderTest.class);
+        suite.addTestSuite(AncestorIndexingTest.class);
+        suite.addTestSuite(AsyncIndexingTest.class);
+        suite.addTestSuite(QueryResultCacheTest.class);
+        suite.addTestSuite(ValueIndexTest.class);
+        suite.addTestSuite(AccessFilterTest.class);
+        suite.addTestSuite(ExtractedTextCacheTest.class);
 
         return suite;
     }
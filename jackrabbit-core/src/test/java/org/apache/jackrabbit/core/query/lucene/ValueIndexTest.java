@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.query.lucene.SharedFieldCache.ValueIndex;
+
+/**
+ * <code>ValueIndexTest</code> checks that the primitive columns of a
+ * {@link ValueIndex} return and compare values like an array of
+ * <code>Comparable</code>s.
+ */
+public class ValueIndexTest extends TestCase {
+
+    public void testLongColumn() {
+        checkValues(new Comparable<?>[] { 3L, null, -1L, 3L });
+    }
+
+    public void testDoubleColumn() {
+        checkValues(new Comparable<?>[] { null, 1.5d, Double.NaN, -0.0d });
+    }
+
+    public void testStringColumn() {
+        checkValues(new Comparable<?>[] { "b", "a", null, "b" });
+    }
+
+    public void testMixedValues() {
+        checkValues(new Comparable<?>[] { "b", 1L, null, 2.0d, Boolean.TRUE });
+    }
+
+    private static void checkValues(Comparable<?>[] values) {
+        ValueIndex index = new ValueIndex(values.clone(), values.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], index.getValue(i));
+            for (Comparable<?> v : values) {
+                assertEquals(Integer.signum(Util.compare(v, values[i])),
+                        Integer.signum(index.compare(v, i)));
+            }
+            assertEquals(Integer.signum(Util.compare("x", values[i])),
+                    Integer.signum(index.compare("x", i)));
+        }
+    }
+}
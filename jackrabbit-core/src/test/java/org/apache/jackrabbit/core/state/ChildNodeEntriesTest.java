@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link ChildNodeEntries} class.
+ */
+public class ChildNodeEntriesTest extends TestCase {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    private static final Name FOO = FACTORY.create("", "foo");
+
+    private static final Name BAR = FACTORY.create("", "bar");
+
+    public void testSameNameSiblings() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        NodeId c = NodeId.randomId();
+        NodeId d = NodeId.randomId();
+        entries.add(FOO, a);
+        entries.add(BAR, b);
+        assertEquals(2, entries.add(FACTORY.create("", "foo"), c).getIndex());
+        assertEquals(3, entries.add(FOO, d).getIndex());
+        assertEquals(4, entries.size());
+
+        assertEquals(new ChildNodeEntry(FOO, c, 2), entries.get(c));
+        assertEquals(new ChildNodeEntry(FOO, d, 3), entries.get(FOO, 3));
+        assertNull(entries.get(FOO, 4));
+        assertEquals(3, entries.get(FOO).size());
+        assertEquals(1, entries.get(BAR).size());
+
+        assertEquals(new ChildNodeEntry(FOO, a, 1), entries.remove(a));
+        assertNull(entries.remove(a));
+        assertEquals(new ChildNodeEntry(FOO, c, 1), entries.get(c));
+        assertEquals(new ChildNodeEntry(FOO, d, 2), entries.get(FOO, 2));
+
+        List<ChildNodeEntry> list = entries.list();
+        assertEquals(3, list.size());
+        assertEquals(b, list.get(0).getId());
+        assertEquals(c, list.get(1).getId());
+        assertEquals(d, list.get(2).getId());
+
+        entries.removeAll();
+        assertTrue(entries.isEmpty());
+        assertNull(entries.get(b));
+        assertTrue(entries.get(FOO).isEmpty());
+    }
+
+    public void testAddExisting() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        NodeId c = NodeId.randomId();
+        NodeId d = NodeId.randomId();
+        entries.add(FOO, a);
+        entries.add(BAR, b);
+        entries.add(FOO, c);
+        entries.add(BAR, d);
+
+        // same name, nothing changes
+        assertSame(entries.get(c), entries.add(FOO, c));
+
+        // renamed entries keep their position
+        assertEquals(new ChildNodeEntry(BAR, a, 1), entries.add(BAR, a));
+        assertEquals(new ChildNodeEntry(BAR, b, 2), entries.get(b));
+        assertEquals(new ChildNodeEntry(FOO, c, 1), entries.get(c));
+        assertEquals(new ChildNodeEntry(BAR, d, 3), entries.get(d));
+        assertEquals(new ChildNodeEntry(FOO, d, 2), entries.add(FOO, d));
+        assertEquals(2, entries.get(BAR).size());
+        assertEquals(b, entries.get(BAR, 2).getId());
+
+        List<ChildNodeEntry> list = entries.list();
+        assertEquals(4, list.size());
+        assertEquals(a, list.get(0).getId());
+        assertEquals(b, list.get(1).getId());
+        assertEquals(c, list.get(2).getId());
+        assertEquals(d, list.get(3).getId());
+
+        // unmodified entries are not created again
+        assertSame(list.get(1), entries.list().get(1));
+        assertSame(list.get(3), entries.get(d));
+    }
+
+    public void testClone() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 3000; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            entries.add(FACTORY.create("", "n" + i), id);
+        }
+
+        ChildNodeEntries clone = (ChildNodeEntries) entries.clone();
+        assertEquals(entries, clone);
+
+        NodeId id = NodeId.randomId();
+        clone.add(FOO, id);
+        clone.remove(ids.get(1500));
+        assertEquals(3000, entries.size());
+        assertEquals(3000, clone.size());
+        assertNull(entries.get(id));
+        assertNotNull(entries.get(ids.get(1500)));
+        assertNull(clone.get(ids.get(1500)));
+        assertFalse(entries.equals(clone));
+
+        List<ChildNodeEntry> removed = entries.removeAll(clone);
+        assertEquals(1, removed.size());
+        assertEquals(ids.get(1500), removed.get(0).getId());
+        assertEquals(2999, entries.retainAll(clone).size());
+
+        entries.add(BAR, id);
+        List<ChildNodeEntry> renamed = entries.getRenamedEntries(clone);
+        assertEquals(1, renamed.size());
+        assertEquals(BAR, renamed.get(0).getName());
+    }
+
+    public void testManyEntries() {
+        ChildNodeEntries entries = new ChildNodeEntries();
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 10000; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            entries.add(i % 2 == 0 ? FOO : FACTORY.create("", "n" + i), id);
+        }
+        assertEquals(5000, entries.get(FOO).size());
+
+        // remove most entries, which compacts the columns
+        for (int i = 0; i < 9000; i++) {
+            assertNotNull(entries.remove(ids.get(i)));
+        }
+        assertEquals(1000, entries.size());
+        assertEquals(500, entries.get(FOO).size());
+        for (int i = 9000; i < 10000; i++) {
+            ChildNodeEntry entry = entries.get(ids.get(i));
+            assertNotNull(entry);
+            if (i % 2 == 0) {
+                assertEquals(FOO, entry.getName());
+                assertEquals((i - 9000) / 2 + 1, entry.getIndex());
+            } else {
+                assertEquals(1, entry.getIndex());
+            }
+        }
+
+        List<ChildNodeEntry> list = entries.list();
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(ids.get(9000 + i), list.get(i).getId());
+        }
+    }
+
+    public void testEquals() {
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        ChildNodeEntries entries1 = new ChildNodeEntries();
+        ChildNodeEntries entries2 = new ChildNodeEntries();
+        assertEquals(entries1, entries2);
+
+        entries1.add(FOO, a);
+        entries1.add(BAR, b);
+        entries2.add(BAR, NodeId.randomId());
+        entries2.remove(entries2.list().get(0));
+        entries2.add(FOO, a);
+        entries2.add(BAR, b);
+        assertEquals(entries1, entries2);
+
+        entries2.remove(a);
+        entries2.add(FOO, a);
+        assertFalse(entries1.equals(entries2));
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.persistence.PersistenceManager;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+
+/**
+ * Test cases for the {@link GroupCommit} class.
+ */
+public class GroupCommitTest extends TestCase {
+
+    /**
+     * The number of added states of each stored change log.
+     */
+    private final List<Integer> stores =
+        Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Released to let the first store complete.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Change logs containing this node fail to be stored.
+     */
+    private NodeState failing;
+
+    private GroupCommit groupCommit;
+
+    protected void setUp() throws Exception {
+        InvocationHandler handler = new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args)
+                    throws Throwable {
+                if (!method.getName().equals("store")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                ChangeLog changeLog = (ChangeLog) args[0];
+                int count = 0;
+                for (ItemState state : changeLog.addedStates()) {
+                    count++;
+                }
+                stores.add(count);
+                if (stores.size() == 1) {
+                    release.await();
+                }
+                if (failing != null && changeLog.has(failing.getId())) {
+                    throw new ItemStateException("failed");
+                }
+                return null;
+            }
+        };
+        PersistenceManager pm = (PersistenceManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { PersistenceManager.class }, handler);
+        groupCommit = new GroupCommit(pm);
+    }
+
+    public void testGroup() throws Exception {
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Exception> failures = new ArrayList<Exception>();
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        threads.add(startStore(createChangeLog(), failures));
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.size());
+        assertEquals(2, stores.size());
+        assertEquals(1, stores.get(0).intValue());
+        assertEquals(2, stores.get(1).intValue());
+    }
+
+    public void testFailure() throws Exception {
+        ChangeLog changeLog = createChangeLog();
+        failing = (NodeState) changeLog.addedStates().iterator().next();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Exception> failures = new ArrayList<Exception>();
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        threads.add(startStore(changeLog, failures));
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the whole group fails, and is not stored again
+        assertEquals(2, failures.size());
+        assertEquals(2, stores.size());
+        assertEquals(2, stores.get(1).intValue());
+    }
+
+    public void testReferences() throws Exception {
+        ChangeLog changeLog = createChangeLog();
+        changeLog.modified(new NodeReferences(NodeId.randomId()));
+
+        List<Thread> threads = new ArrayList<Thread>();
+        List<Exception> failures = new ArrayList<Exception>();
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        threads.add(startStore(changeLog, failures));
+        threads.add(startStore(createChangeLog(), failures));
+        threads.add(startStore(createChangeLog(), failures));
+        Thread.sleep(100);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // the change log with node references is stored on its own
+        assertEquals(0, failures.size());
+        assertEquals(3, stores.size());
+        assertEquals(3, stores.get(1).intValue() + stores.get(2).intValue());
+        assertTrue(stores.get(1).intValue() == 2 || stores.get(2).intValue() == 2);
+    }
+
+    private Thread startStore(final ChangeLog changeLog, final List<Exception> failures) {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    groupCommit.store(changeLog);
+                } catch (ItemStateException e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private ChangeLog createChangeLog() {
+        ChangeLog changeLog = new ChangeLog();
+        changeLog.added(new NodeState(
+                NodeId.randomId(), NameConstants.NT_BASE, null,
+                ItemState.STATUS_NEW, false));
+        return changeLog;
+    }
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for tracking the changes to the child node entries of
+ * {@link NodeState}s.
+ */
+public class NodeStateTest extends TestCase {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    private NodeState shared;
+
+    private List<NodeId> children;
+
+    protected void setUp() throws Exception {
+        shared = new NodeState(
+                NodeId.randomId(), NameConstants.NT_UNSTRUCTURED, null,
+                ItemState.STATUS_EXISTING, false);
+        children = new ArrayList<NodeId>();
+        for (int i = 0; i < 100; i++) {
+            NodeId id = NodeId.randomId();
+            children.add(id);
+            shared.addChildNodeEntry(FACTORY.create("", "n" + i), id);
+        }
+        assertNull(shared.getChildNodeEntriesDelta());
+    }
+
+    public void testAddedAndRemoved() {
+        NodeState local = new NodeState(shared, ItemState.STATUS_EXISTING, false);
+        NodeState state = new NodeState(local, ItemState.STATUS_EXISTING, true);
+        NodeId added = NodeId.randomId();
+        state.addChildNodeEntry(FACTORY.create("", "n5"), added);
+        state.removeChildNodeEntry(children.get(7));
+        state.renameChildNodeEntry(children.get(9), FACTORY.create("", "x"));
+
+        ChildNodeEntriesDelta delta = state.getChildNodeEntriesDelta();
+        assertNotNull(delta);
+        assertEquals(100, delta.getBaseSize());
+        assertEquals(4, delta.size());
+
+        List<ChildNodeEntry> entries = state.getAddedChildNodeEntries();
+        assertEquals(2, entries.size());
+        assertEquals(new ChildNodeEntry(FACTORY.create("", "n5"), added, 2), entries.get(0));
+        assertEquals(children.get(9), entries.get(1).getId());
+
+        entries = state.getRemovedChildNodeEntries();
+        assertEquals(2, entries.size());
+        assertEquals(children.get(7), entries.get(0).getId());
+        assertEquals(children.get(9), entries.get(1).getId());
+
+        assertTrue(state.getReorderedChildNodeEntries().isEmpty());
+    }
+
+    public void testReordered() {
+        NodeState state = new NodeState(shared, ItemState.STATUS_EXISTING, true);
+        state.removeChildNodeEntry(children.get(0));
+        state.addChildNodeEntry(FACTORY.create("", "n0"), children.get(0));
+        assertNotNull(state.getChildNodeEntriesDelta());
+        assertTrue(state.getAddedChildNodeEntries().isEmpty());
+        assertEquals(1, state.getReorderedChildNodeEntries().size());
+
+        List<ChildNodeEntry> entries = state.getChildNodeEntries();
+        entries.add(0, entries.remove(50));
+        state.setChildNodeEntries(entries);
+        assertNull(state.getChildNodeEntriesDelta());
+        assertFalse(state.getReorderedChildNodeEntries().isEmpty());
+    }
+
+    public void testPush() {
+        NodePropBundle bundle = new NodePropBundle(shared);
+        NodeState local = new NodeState(shared, ItemState.STATUS_EXISTING, false);
+        NodeState state = new NodeState(local, ItemState.STATUS_EXISTING, true);
+
+        state.removeChildNodeEntry(children.get(3));
+        state.push();
+        assertEquals(0, state.getChildNodeEntriesDelta().size());
+        assertEquals(1, local.getRemovedChildNodeEntries().size());
+
+        NodeId added = NodeId.randomId();
+        Name name = FACTORY.create("", "new");
+        state.addChildNodeEntry(name, added);
+        state.push();
+        assertEquals(2, local.getChildNodeEntriesDelta().size());
+        assertEquals(1, local.getAddedChildNodeEntries().size());
+
+        local.push();
+        ChildNodeEntriesDelta delta = shared.getChildNodeEntriesDelta();
+        assertNotNull(delta);
+        assertEquals(100, delta.getBaseSize());
+        assertEquals(2, delta.size());
+        assertTrue(local.getAddedChildNodeEntries().isEmpty());
+
+        bundle.update(shared);
+        assertEquals(new NodePropBundle(shared).getChildNodeEntries(), bundle.getChildNodeEntries());
+
+        // external modifications are not tracked
+        shared.addChildNodeEntry(name, NodeId.randomId());
+        assertNull(shared.getChildNodeEntriesDelta());
+        assertNull(local.getChildNodeEntriesDelta());
+        assertEquals(1, local.getRemovedChildNodeEntries().size());
+    }
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.state.ISMLocking.ReadLock;
+import org.apache.jackrabbit.core.state.ISMLocking.WriteLock;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+
+/**
+ * <code>StripedISMLockingTest</code> executes the test cases implemented in
+ * {@link AbstractISMLockingTest} and checks that writers of disjoint
+ * change logs do not block each other.
+ */
+public class StripedISMLockingTest extends AbstractISMLockingTest {
+
+    public ISMLocking createISMLocking() {
+        return new StripedISMLocking();
+    }
+
+    public void testDisjointWrites() throws InterruptedException {
+        StripedISMLocking striped = new StripedISMLocking();
+        striped.setStripes(1024);
+        ChangeLog log1 = createChangeLog(striped, null);
+        ChangeLog log2 = createChangeLog(striped, log1);
+
+        WriteLock wLock = striped.acquireWriteLock(log1);
+        verifyNotBlocked(startWriterThread(striped, log2));
+        // the parent of the modified node is locked as well
+        NodeId parentId = log1.modifiedStates().iterator().next().getParentId();
+        verifyBlocked(startReaderThread(striped, parentId));
+        ReadLock rLock = wLock.downgrade();
+        verifyBlocked(startWriterThread(striped, log1));
+        verifyNotBlocked(startWriterThread(striped, log2));
+        rLock.release();
+        verifyNotBlocked(startWriterThread(striped, log1));
+    }
+
+    /**
+     * Two writers of otherwise disjoint change logs that add and remove
+     * a reference to the same target must not update the node references
+     * of the target concurrently.
+     */
+    public void testSharedReferenceTarget() throws Exception {
+        final StripedISMLocking striped = new StripedISMLocking();
+        striped.setStripes(1024);
+        NodeId target = NodeId.randomId();
+        PropertyState added = createReference(striped, null, target);
+        PropertyState deleted = createReference(striped, added, target);
+        final ChangeLog log1 = new ChangeLog();
+        log1.added(added);
+        final ChangeLog log2 = new ChangeLog();
+        log2.deleted(deleted);
+
+        WriteLock wLock = striped.acquireWriteLock(log1);
+        verifyBlocked(startWriterThread(striped, log2));
+        verifyBlocked(startReaderThread(striped, target));
+        wLock.release();
+
+        // a modified reference only lists its old target in the node
+        // references added by the shared item state manager
+        PropertyState modified = createReference(striped, added, NodeId.randomId());
+        ChangeLog log3 = new ChangeLog();
+        log3.modified(modified);
+        log3.modified(new NodeReferences(target));
+        wLock = striped.acquireWriteLock(log3);
+        verifyBlocked(startWriterThread(striped, log1));
+        wLock.release();
+
+        // both writers update the references of the target in turn
+        final int[] references = new int[1];
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Thread[] writers = new Thread[2];
+        for (int i = 0; i < writers.length; i++) {
+            final ChangeLog log = i == 0 ? log1 : log2;
+            writers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 1000; j++) {
+                            WriteLock lock = striped.acquireWriteLock(log);
+                            try {
+                                int count = references[0];
+                                Thread.yield();
+                                references[0] = count + 1;
+                            } finally {
+                                lock.release();
+                            }
+                        }
+                    } catch (Throwable t) {
+                        error.set(t);
+                    }
+                }
+            });
+            writers[i].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertNull(error.get());
+        assertEquals(2000, references[0]);
+    }
+
+    /**
+     * Creates a REFERENCE property to the given target, whose item and
+     * parent do not share any stripes with each other, with the target or
+     * with the given property.
+     */
+    private PropertyState createReference(
+            StripedISMLocking striped, PropertyState other, NodeId target) {
+        for (;;) {
+            PropertyState property = new PropertyState(
+                    new PropertyId(NodeId.randomId(), NameConstants.JCR_UUID),
+                    ItemState.STATUS_EXISTING, true);
+            property.setType(PropertyType.REFERENCE);
+            property.setValues(new InternalValue[] { InternalValue.create(target) });
+            ItemId[] ids = other == null
+                    ? new ItemId[] { property.getId(), property.getParentId(), target }
+                    : new ItemId[] { property.getId(), property.getParentId(), target,
+                            other.getId(), other.getParentId() };
+            int[] stripes = new int[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                stripes[i] = (ids[i].hashCode() & Integer.MAX_VALUE) % striped.getStripes();
+            }
+            if (!intersects(stripes)) {
+                return property;
+            }
+        }
+    }
+
+    /**
+     * Creates a change log with a modified node, which does not share any
+     * stripes with the given change log.
+     */
+    private ChangeLog createChangeLog(StripedISMLocking striped, ChangeLog other) {
+        for (;;) {
+            NodeState node = new NodeState(
+                    NodeId.randomId(), NameConstants.NT_BASE, NodeId.randomId(),
+                    ItemState.STATUS_EXISTING, true);
+            ChangeLog log = new ChangeLog();
+            log.modified(node);
+            if (other == null || !intersects(
+                    getStripes(striped, log), getStripes(striped, other))) {
+                return log;
+            }
+        }
+    }
+
+    private int[] getStripes(StripedISMLocking striped, ChangeLog log) {
+        ItemState state = log.modifiedStates().iterator().next();
+        int stripes = striped.getStripes();
+        return new int[] {
+                (state.getId().hashCode() & Integer.MAX_VALUE) % stripes,
+                (state.getParentId().hashCode() & Integer.MAX_VALUE) % stripes };
+    }
+
+    private boolean intersects(int[] a) {
+        for (int i = 0; i < a.length; i++) {
+            for (int j = i + 1; j < a.length; j++) {
+                if (a[i] == a[j]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean intersects(int[] a, int[] b) {
+        for (int x : a) {
+            for (int y : b) {
+                if (x == y) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+}
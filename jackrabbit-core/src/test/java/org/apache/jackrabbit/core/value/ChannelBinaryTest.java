@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.value;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+
+import javax.jcr.Binary;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.core.data.RandomInputStream;
+import org.apache.jackrabbit.test.AbstractJCRTest;
+import org.apache.jackrabbit.value.ChannelBinary;
+
+/**
+ * <code>ChannelBinaryTest</code> checks the transfer of binaries to channels.
+ */
+public class ChannelBinaryTest extends AbstractJCRTest {
+
+    private static final int STREAM_LENGTH = 256 * 1024;
+
+    public void testTransferToFile() throws Exception {
+        Binary binary = vf.createBinary(new RandomInputStream(1, STREAM_LENGTH));
+        File file = File.createTempFile("channel", null, new File("target"));
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                assertEquals(STREAM_LENGTH,
+                        ((ChannelBinary) binary).transferTo(out.getChannel()));
+            } finally {
+                out.close();
+            }
+            InputStream in = binary.getStream();
+            InputStream copy = FileUtils.openInputStream(file);
+            try {
+                assertTrue(IOUtils.contentEquals(in, copy));
+            } finally {
+                in.close();
+                copy.close();
+            }
+        } finally {
+            file.delete();
+            binary.dispose();
+        }
+    }
+
+    public void testTransferRange() throws Exception {
+        byte[] data = IOUtils.toByteArray(new RandomInputStream(2, STREAM_LENGTH));
+        Binary binary = vf.createBinary(new ByteArrayInputStream(data));
+        try {
+            assertRange(data, (ChannelBinary) binary, 0, 10);
+            assertRange(data, (ChannelBinary) binary, 1000, 5000);
+            assertRange(data, (ChannelBinary) binary, STREAM_LENGTH - 100, 1000);
+            assertRange(data, (ChannelBinary) binary, STREAM_LENGTH + 100, 1000);
+
+            byte[] buffer = new byte[100];
+            assertEquals(100, binary.read(buffer, 2000));
+            for (int i = 0; i < buffer.length; i++) {
+                assertEquals(data[2000 + i], buffer[i]);
+            }
+            assertEquals(-1, binary.read(buffer, STREAM_LENGTH));
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    public void testTransferToStream() throws Exception {
+        // small binaries are kept in memory
+        byte[] data = "channel binary".getBytes("UTF-8");
+        Binary binary = vf.createBinary(new ByteArrayInputStream(data));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(data.length, ((ChannelBinary) binary).transferTo(
+                    Channels.newChannel(out)));
+            assertEquals("channel binary", out.toString("UTF-8"));
+        } finally {
+            binary.dispose();
+        }
+    }
+
+    private static void assertRange(byte[] data, ChannelBinary binary,
+            long position, long count) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long expected = Math.max(0, Math.min(count, data.length - position));
+        assertEquals(expected, binary.transferTo(
+                Channels.newChannel(out), position, count));
+        byte[] range = out.toByteArray();
+        assertEquals(expected, range.length);
+        for (int i = 0; i < range.length; i++) {
+            assertEquals(data[(int) position + i], range[i]);
+        }
+    }
+}
@@ -33,6 +33,7 @@ public class TestAll extends TestCase {
         TestSuite suite = new TestSuite("org.apache.jackrabbit.core.value tests");
 
         suite.addTestSuite(BinaryValueTest.class);
+        suite.addTestSuite(ChannelBinaryTest.class);
         suite.addTestSuite(InternalValueFactoryTest.class);
         suite.addTestSuite(InternalValueTest.class);
         suite.addTestSuite(PathTest.class);
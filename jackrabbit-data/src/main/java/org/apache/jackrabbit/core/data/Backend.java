@@ -18,6 +18,7 @@
 package org.apache.jackrabbit.core.data;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.Iterator;
 import java.util.Set;
@@ -53,6 +54,33 @@ public interface Backend {
      */
     InputStream read(DataIdentifier identifier) throws DataStoreException;
 
+    /**
+     * Return inputstream of a part of the record identified by identifier.
+     * The stream ends early if the record is shorter than
+     * <code>offset + length</code>. The default implementation skips the
+     * first bytes of the complete record; backends that support ranged
+     * reads override it.
+     * 
+     * @param identifier
+     *            identifier of record.
+     * @param offset
+     *            the position of the first byte.
+     * @param length
+     *            the maximum number of bytes.
+     * @return inputstream of the range of the record.
+     * @throws DataStoreException
+     *             if record not found or any error.
+     */
+    default InputStream read(DataIdentifier identifier, long offset,
+            long length) throws DataStoreException {
+        try {
+            return RangedStreams.range(read(identifier), offset, length);
+        } catch (IOException e) {
+            throw new DataStoreException("Could not read " + identifier
+                + " at " + offset, e);
+        }
+    }
+
     /**
      * Return length of record identified by identifier.
      * 
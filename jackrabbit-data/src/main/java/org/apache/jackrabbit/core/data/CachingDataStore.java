@@ -624,6 +624,25 @@ public abstract class CachingDataStore extends AbstractDataStore implements
         }
     }
 
+    /**
+     * Returns a part of a record. The part is read from the local cache if
+     * the record is cached, otherwise from the backend. Unlike
+     * {@link #getStream(DataIdentifier)} the record is not added to the
+     * cache, which would download it completely.
+     */
+    InputStream getStream(DataIdentifier identifier, long offset, long length)
+            throws DataStoreException {
+        try {
+            InputStream cached = cache.getIfStored(getFileName(identifier));
+            if (cached != null) {
+                return RangedStreams.range(cached, offset, length);
+            }
+            return backend.read(identifier, offset, length);
+        } catch (IOException e) {
+            throw new DataStoreException("IO Exception: " + identifier, e);
+        }
+    }
+
     /**
      * Return lastModified of record from {@link Backend} assuming
      * {@link Backend} as a single source of truth.
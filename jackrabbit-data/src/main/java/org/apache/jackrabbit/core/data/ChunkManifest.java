@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The list of chunks of a record in a {@link ChunkingDataStore}. A manifest
+ * is stored as a record of its own and contains the identifiers and lengths
+ * of the chunks in stream order.
+ */
+class ChunkManifest {
+
+    /**
+     * "JRCM", marks a chunk manifest.
+     */
+    private static final int MAGIC = 0x4a52434d;
+
+    private static final int VERSION = 1;
+
+    private final List<String> identifiers = new ArrayList<String>();
+
+    private final List<Integer> lengths = new ArrayList<Integer>();
+
+    private long length;
+
+    /**
+     * Appends a chunk.
+     *
+     * @param identifier the identifier of the chunk record
+     * @param chunkLength the length of the chunk
+     */
+    void add(DataIdentifier identifier, int chunkLength) {
+        identifiers.add(identifier.toString());
+        lengths.add(chunkLength);
+        length += chunkLength;
+    }
+
+    int size() {
+        return identifiers.size();
+    }
+
+    DataIdentifier getIdentifier(int index) {
+        return new DataIdentifier(identifiers.get(index));
+    }
+
+    int getLength(int index) {
+        return lengths.get(index);
+    }
+
+    /**
+     * @return the length of the complete record
+     */
+    long getLength() {
+        return length;
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeInt(identifiers.size());
+            for (int i = 0; i < identifiers.size(); i++) {
+                out.writeUTF(identifiers.get(i));
+                out.writeInt(lengths.get(i));
+            }
+            out.close();
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Reads the length of the record from the manifest header.
+     *
+     * @param record the manifest record
+     * @return the length of the chunked record
+     * @throws DataStoreException if the manifest cannot be read
+     */
+    static long readLength(DataRecord record) throws DataStoreException {
+        try {
+            DataInputStream in = new DataInputStream(record.getStream());
+            try {
+                return readHeader(in, record);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Unable to read chunk manifest " + record.getIdentifier(), e);
+        }
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @param record the manifest record
+     * @return the manifest
+     * @throws DataStoreException if the manifest cannot be read
+     */
+    static ChunkManifest read(DataRecord record) throws DataStoreException {
+        try {
+            InputStream stream = record.getStream();
+            try {
+                DataInputStream in =
+                    new DataInputStream(new BufferedInputStream(stream));
+                readHeader(in, record);
+                ChunkManifest manifest = new ChunkManifest();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    manifest.identifiers.add(in.readUTF());
+                    int chunkLength = in.readInt();
+                    manifest.lengths.add(chunkLength);
+                    manifest.length += chunkLength;
+                }
+                return manifest;
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Unable to read chunk manifest " + record.getIdentifier(), e);
+        }
+    }
+
+    private static long readHeader(DataInputStream in, DataRecord record)
+            throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException(
+                    "Record " + record.getIdentifier() + " is not a chunk manifest");
+        }
+        return in.readLong();
+    }
+}
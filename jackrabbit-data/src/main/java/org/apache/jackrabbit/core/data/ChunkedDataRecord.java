@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.InputStream;
+import java.util.List;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * A record of a {@link ChunkingDataStore}. The record is identified by its
+ * manifest, and its content is streamed from the chunks.
+ */
+class ChunkedDataRecord extends AbstractDataRecord {
+
+    private final ChunkingDataStore store;
+
+    private final DataRecord manifestRecord;
+
+    /**
+     * The chunk records of a newly added record. They are kept so that the
+     * chunk store considers them in use until the record is referenced.
+     */
+    @SuppressWarnings("unused")
+    private final List<DataRecord> chunkRecords;
+
+    private volatile long length = -1;
+
+    /**
+     * Creates a record.
+     *
+     * @param store the data store
+     * @param manifestRecord the record of the manifest
+     * @param chunkRecords the chunk records to keep in use, or null
+     * @param length the length of the record, or -1 if it has to be read
+     *        from the manifest
+     */
+    ChunkedDataRecord(ChunkingDataStore store, DataRecord manifestRecord,
+            List<DataRecord> chunkRecords, long length) {
+        super(store, manifestRecord.getIdentifier());
+        this.store = store;
+        this.manifestRecord = manifestRecord;
+        this.chunkRecords = chunkRecords;
+        this.length = length;
+    }
+
+    public long getLength() throws DataStoreException {
+        if (length < 0) {
+            length = ChunkManifest.readLength(manifestRecord);
+        }
+        return length;
+    }
+
+    public InputStream getStream() throws DataStoreException {
+        return new ChunkedInputStream(
+                store, ChunkManifest.read(manifestRecord), 0);
+    }
+
+    /**
+     * Starts reading at the chunk that contains the offset, the chunks
+     * before it are not read.
+     */
+    @Override
+    public InputStream getStream(long offset, long length)
+            throws DataStoreException {
+        return new BoundedInputStream(new ChunkedInputStream(
+                store, ChunkManifest.read(manifestRecord), offset), length);
+    }
+
+    public long getLastModified() {
+        return manifestRecord.getLastModified();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Streams the chunks of a record of a {@link ChunkingDataStore}. The next
+ * chunks are read in parallel while the current one is consumed.
+ */
+class ChunkedInputStream extends InputStream {
+
+    private final ChunkingDataStore store;
+
+    private final ChunkManifest manifest;
+
+    /**
+     * The chunks that are being read, in stream order.
+     */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+    /**
+     * The index of the next chunk to read.
+     */
+    private int next;
+
+    /**
+     * The number of bytes to skip in the first chunk.
+     */
+    private int skip;
+
+    private byte[] current = new byte[0];
+
+    private int position;
+
+    private boolean closed;
+
+    /**
+     * Creates a stream that starts at the given offset of the record.
+     *
+     * @param store the data store
+     * @param manifest the chunks of the record
+     * @param offset the offset of the first byte
+     */
+    ChunkedInputStream(ChunkingDataStore store, ChunkManifest manifest, long offset) {
+        this.store = store;
+        this.manifest = manifest;
+        while (next < manifest.size() && offset >= manifest.getLength(next)) {
+            offset -= manifest.getLength(next);
+            next++;
+        }
+        this.skip = next < manifest.size() ? (int) offset : 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && fill()) {
+            int step = (int) Math.min(n - skipped, current.length - position);
+            position += step;
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Makes sure the current chunk has unread bytes.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (position == current.length) {
+            schedule();
+            Future<byte[]> future = pending.poll();
+            if (future == null) {
+                return false;
+            }
+            current = get(future);
+            position = skip;
+            skip = 0;
+            schedule();
+        }
+        return true;
+    }
+
+    /**
+     * Starts reading the next chunks up to the read ahead limit.
+     */
+    private void schedule() {
+        while (next < manifest.size() && pending.size() < store.getReadAhead()) {
+            pending.add(store.readChunk(
+                    manifest.getIdentifier(next), manifest.getLength(next)));
+            next++;
+        }
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading a chunk", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Unable to read a chunk", cause);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.core.data.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A data store that splits binaries into content-defined chunks and stores
+ * each distinct chunk only once. Binaries that differ in a few places, like
+ * versions or renditions of the same document, share most of their chunks.
+ * <p>
+ * The chunks are stored as records of the chunk data store, which
+ * deduplicates them by their content digest. The list of chunks of a binary
+ * is stored as a manifest record in the manifest data store, and the
+ * identifier of the manifest is the identifier of the binary. Any data store
+ * can be used for both, e.g. a {@link FileDataStore} or a
+ * {@link CachingDataStore} with a remote backend. While a binary is read,
+ * the following chunks are fetched in parallel.
+ * <p>
+ * The Configuration:
+ *
+ * <pre>
+ * &lt;DataStore class="org.apache.jackrabbit.core.data.ChunkingDataStore"&gt;
+ *     &lt;param name="{@link #setAverageChunkSize(int) averageChunkSize}" value="65536"/&gt;
+ *     &lt;param name="{@link #setReadThreads(int) readThreads}" value="8"/&gt;
+ *     &lt;param name="{@link #setReadAhead(int) readAhead}" value="4"/&gt;
+ *     &lt;param name="manifests" value="org.apache.jackrabbit.core.data.FileDataStore"&gt;
+ *        &lt;param name="path" value="${rep.home}/repository/manifests"/&gt;
+ *     &lt;/param&gt;
+ *     &lt;param name="chunks" value="org.apache.jackrabbit.core.data.FileDataStore"&gt;
+ *        &lt;param name="path" value="${rep.home}/repository/chunks"/&gt;
+ *     &lt;/param&gt;
+ * &lt;/DataStore&gt;
+ * </pre>
+ *
+ * <ul>
+ * <li><code>averageChunkSize</code>: the average size of a chunk in bytes,
+ * rounded up to a power of two. Chunks are between a quarter and four times
+ * this size. Must not be changed once binaries were stored, otherwise new
+ * binaries do not share chunks with existing ones. (default =
+ * <code>65536</code>)</li>
+ * <li><code>readThreads</code>: the number of threads that read chunks
+ * (default = <code>8</code>)</li>
+ * <li><code>readAhead</code>: the number of chunks of a stream that are read
+ * in advance (default = <code>4</code>)</li>
+ * </ul>
+ * <p>
+ * The garbage collector deletes unused manifests first and then the chunks
+ * that are not referenced by any remaining manifest.
+ */
+public class ChunkingDataStore extends AbstractDataStore
+        implements MultiDataStoreAware {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(ChunkingDataStore.class);
+
+    private DataStore manifestDataStore;
+
+    private DataStore chunkDataStore;
+
+    private int averageChunkSize = 64 * 1024;
+
+    private int readThreads = 8;
+
+    private int readAhead = 4;
+
+    /**
+     * The time set by {@link #updateModifiedDateOnAccess(long)}.
+     */
+    private volatile long minModifiedDate;
+
+    /**
+     * Reads the chunks of streams in the background.
+     */
+    private ExecutorService readExecutor;
+
+    /**
+     * Setter for the data store of the manifests.
+     *
+     * @param dataStore
+     */
+    public void setManifestDataStore(DataStore dataStore) {
+        this.manifestDataStore = dataStore;
+    }
+
+    /**
+     * Setter for the data store of the chunks.
+     *
+     * @param dataStore
+     */
+    public void setChunkDataStore(DataStore dataStore) {
+        this.chunkDataStore = dataStore;
+    }
+
+    public int getAverageChunkSize() {
+        return averageChunkSize;
+    }
+
+    public void setAverageChunkSize(int averageChunkSize) {
+        this.averageChunkSize = averageChunkSize;
+    }
+
+    public int getReadThreads() {
+        return readThreads;
+    }
+
+    public void setReadThreads(int readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    public void setReadAhead(int readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    //---------------------------------------------------------< DataStore >--
+
+    public void init(String homeDir) throws RepositoryException {
+        if (manifestDataStore == null || chunkDataStore == null) {
+            throw new DataStoreException(
+                    "A ChunkingDataStore must have a manifest and a chunk data store");
+        }
+        if (averageChunkSize < 256) {
+            throw new DataStoreException(
+                    "Average chunk size too small: " + averageChunkSize);
+        }
+        // round up to a power of two
+        averageChunkSize = Integer.highestOneBit(averageChunkSize - 1) << 1;
+        readAhead = Math.max(1, readAhead);
+        readExecutor = Executors.newFixedThreadPool(Math.max(1, readThreads),
+                new NamedThreadFactory("jackrabbit-chunk-reader"));
+    }
+
+    public DataRecord getRecordIfStored(DataIdentifier identifier)
+            throws DataStoreException {
+        DataRecord manifestRecord =
+            manifestDataStore.getRecordIfStored(identifier);
+        if (manifestRecord == null) {
+            return null;
+        }
+        if (minModifiedDate != 0) {
+            touchChunks(manifestRecord);
+        }
+        return new ChunkedDataRecord(this, manifestRecord, null, -1);
+    }
+
+    /**
+     * Splits the stream into chunks and adds the chunks that are not stored
+     * yet to the chunk data store. Then the manifest is added to the
+     * manifest data store.
+     */
+    public DataRecord addRecord(InputStream stream) throws DataStoreException {
+        try {
+            RollingHashChunker chunker =
+                new RollingHashChunker(stream, averageChunkSize);
+            ChunkManifest manifest = new ChunkManifest();
+            List<DataRecord> chunkRecords = new ArrayList<DataRecord>();
+            for (int n = chunker.next(); n > 0; n = chunker.next()) {
+                DataRecord chunk = chunkDataStore.addRecord(
+                        new ByteArrayInputStream(chunker.getBuffer(), 0, n));
+                chunkRecords.add(chunk);
+                manifest.add(chunk.getIdentifier(), n);
+            }
+            DataRecord manifestRecord = manifestDataStore.addRecord(
+                    new ByteArrayInputStream(manifest.toByteArray()));
+            return new ChunkedDataRecord(
+                    this, manifestRecord, chunkRecords, manifest.getLength());
+        } catch (IOException e) {
+            throw new DataStoreException("Unable to split the stream into chunks", e);
+        }
+    }
+
+    public void updateModifiedDateOnAccess(long before) {
+        minModifiedDate = before;
+        manifestDataStore.updateModifiedDateOnAccess(before);
+        chunkDataStore.updateModifiedDateOnAccess(before);
+    }
+
+    /**
+     * Deletes the manifests older than the given time, and then the chunks
+     * that were not touched through a remaining manifest.
+     *
+     * @return the number of deleted manifests
+     */
+    public int deleteAllOlderThan(long min) throws DataStoreException {
+        int count = manifestDataStore.deleteAllOlderThan(min);
+        int chunks = chunkDataStore.deleteAllOlderThan(min);
+        LOG.debug("Deleted {} manifests and {} chunks", count, chunks);
+        return count;
+    }
+
+    public Iterator<DataIdentifier> getAllIdentifiers() throws DataStoreException {
+        return manifestDataStore.getAllIdentifiers();
+    }
+
+    public int getMinRecordLength() {
+        return chunkDataStore.getMinRecordLength();
+    }
+
+    public void close() throws DataStoreException {
+        if (readExecutor != null) {
+            readExecutor.shutdownNow();
+        }
+        DataStoreException exception = null;
+        try {
+            manifestDataStore.close();
+        } catch (DataStoreException e) {
+            exception = e;
+        }
+        try {
+            chunkDataStore.close();
+        } catch (DataStoreException e) {
+            if (exception == null) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    public void clearInUse() {
+        manifestDataStore.clearInUse();
+        chunkDataStore.clearInUse();
+    }
+
+    //-----------------------------------------------< MultiDataStoreAware >--
+
+    /**
+     * Deletes the manifest of the record. The chunks are deleted by the next
+     * garbage collection unless other records use them.
+     */
+    public void deleteRecord(DataIdentifier identifier) throws DataStoreException {
+        if (!(manifestDataStore instanceof MultiDataStoreAware)) {
+            throw new DataStoreException(
+                    "The manifest data store does not support deleting records");
+        }
+        ((MultiDataStoreAware) manifestDataStore).deleteRecord(identifier);
+    }
+
+    //----------------------------------------------------------< internal >--
+
+    /**
+     * Starts reading a chunk in the background.
+     *
+     * @param identifier the identifier of the chunk
+     * @param length the expected length of the chunk
+     * @return the content of the chunk
+     */
+    Future<byte[]> readChunk(final DataIdentifier identifier, final int length) {
+        return readExecutor.submit(new Callable<byte[]>() {
+            public byte[] call() throws Exception {
+                InputStream in = chunkDataStore.getRecord(identifier).getStream();
+                try {
+                    byte[] data = IOUtils.toByteArray(in, length);
+                    if (in.read() != -1) {
+                        throw new IOException("Chunk " + identifier
+                                + " is longer than " + length + " bytes");
+                    }
+                    return data;
+                } finally {
+                    in.close();
+                }
+            }
+        });
+    }
+
+    //---------------------------------------------------------< protected >--
+
+    /**
+     * Uses the reference key of the manifest data store, if available, so
+     * that references stay valid after a restart.
+     */
+    @Override
+    protected byte[] getOrCreateReferenceKey() throws DataStoreException {
+        if (manifestDataStore instanceof AbstractDataStore) {
+            return ((AbstractDataStore) manifestDataStore).getOrCreateReferenceKey();
+        }
+        return super.getOrCreateReferenceKey();
+    }
+
+    //-----------------------------------------------------------< private >--
+
+    /**
+     * Touches the chunks of a manifest, so that the garbage collector does
+     * not delete chunks that are still in use.
+     */
+    private void touchChunks(DataRecord manifestRecord) throws DataStoreException {
+        ChunkManifest manifest = ChunkManifest.read(manifestRecord);
+        Set<DataIdentifier> touched = new HashSet<DataIdentifier>();
+        for (int i = 0; i < manifest.size(); i++) {
+            DataIdentifier chunk = manifest.getIdentifier(i);
+            if (touched.add(chunk)
+                    && chunkDataStore.getRecordIfStored(chunk) == null) {
+                LOG.warn("Chunk {} of record {} is missing",
+                        chunk, manifestRecord.getIdentifier());
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.jackrabbit.core.data;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -54,6 +55,27 @@ public interface DataRecord {
      */
     InputStream getStream() throws DataStoreException;
 
+    /**
+     * Returns a part of the binary stream in this record. The stream ends
+     * early if the record is shorter than <code>offset + length</code>.
+     * The default implementation skips the first bytes of the complete
+     * stream; records that can seek override it.
+     *
+     * @param offset the position of the first byte
+     * @param length the maximum number of bytes
+     * @return binary stream of the given range
+     * @throws DataStoreException if the record could not be accessed
+     */
+    default InputStream getStream(long offset, long length)
+            throws DataStoreException {
+        try {
+            return RangedStreams.range(getStream(), offset, length);
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Could not read " + getIdentifier() + " at " + offset, e);
+        }
+    }
+
     /**
      * Returns the last modified of the record.
      * 
@@ -25,6 +25,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -58,6 +63,28 @@ public class FSBackend extends AbstractBackend {
      */
     private static final int ACCESS_TIME_RESOLUTION = 2000;
 
+    /**
+     * The prefix of the temporary files the records are copied to.
+     */
+    private static final String TMP = "tmp";
+
+    /**
+     * The number of locks that serialize the changes of records.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The number of times a record is moved in place if its parent
+     * directory is removed concurrently.
+     */
+    private static final int MOVE_RETRIES = 10;
+
+    /**
+     * The locks that serialize the changes of records, by the hash code of
+     * the data identifier.
+     */
+    private final Object[] locks = createLocks();
+
     @Override
     public void init(CachingDataStore store, String homeDir, String config)
                     throws DataStoreException {
@@ -120,6 +147,12 @@ public class FSBackend extends AbstractBackend {
         }
     }
 
+    @Override
+    public InputStream read(DataIdentifier identifier, long offset,
+                    long length) throws DataStoreException {
+        return FileDataRecord.openRange(getFile(identifier), offset, length);
+    }
+
     @Override
     public long getLength(DataIdentifier identifier) throws DataStoreException {
         File file = getFile(identifier);
@@ -148,24 +181,52 @@ public class FSBackend extends AbstractBackend {
     public void write(DataIdentifier identifier, File src)
                     throws DataStoreException {
         File dest = getFile(identifier);
-        synchronized (this) {
-            if (dest.exists()) {
-                long now = System.currentTimeMillis();
-                if (getLastModified(dest) < now + ACCESS_TIME_RESOLUTION) {
-                    setLastModified(dest, now + ACCESS_TIME_RESOLUTION);
-                }
-            } else {
-                try {
-                    FileUtils.copyFile(src, dest);
-                } catch (IOException ioe) {
-                    LOG.error("failed to copy [{}] to [{}]",
-                        src.getAbsolutePath(), dest.getAbsolutePath());
-                    throw new DataStoreException("Not able to write file ["
-                        + identifier + "]", ioe);
+        if (touchIfExists(identifier, dest)) {
+            return;
+        }
+        // copy outside of the lock, other records are written concurrently
+        File temporary = null;
+        try {
+            temporary = File.createTempFile(TMP, null, fsPathDir);
+            FileUtils.copyFile(src, temporary);
+            synchronized (getLock(identifier)) {
+                if (!touchIfExists(identifier, dest)) {
+                    moveInPlace(temporary, dest);
+                    temporary = null;
                 }
             }
+        } catch (IOException ioe) {
+            LOG.error("failed to copy [{}] to [{}]",
+                src.getAbsolutePath(), dest.getAbsolutePath());
+            throw new DataStoreException("Not able to write file ["
+                + identifier + "]", ioe);
+        } finally {
+            if (temporary != null) {
+                temporary.delete();
+            }
         }
+    }
 
+    /**
+     * Updates the last modified date of a record if it exists.
+     *
+     * @param identifier data identifier
+     * @param file the record file
+     * @return <code>true</code> if the record exists
+     * @throws DataStoreException if modifying the date fails
+     */
+    private boolean touchIfExists(DataIdentifier identifier, File file)
+                    throws DataStoreException {
+        synchronized (getLock(identifier)) {
+            if (!file.exists()) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (getLastModified(file) < now + ACCESS_TIME_RESOLUTION) {
+                setLastModified(file, now + ACCESS_TIME_RESOLUTION);
+            }
+            return true;
+        }
     }
 
     @Override
@@ -294,7 +355,7 @@ public class FSBackend extends AbstractBackend {
     public void deleteRecord(DataIdentifier identifier)
                     throws DataStoreException {
         File file = getFile(identifier);
-        synchronized (this) {
+        synchronized (getLock(identifier)) {
             if (file.exists()) {
                 if (file.delete()) {
                     deleteEmptyParentDirs(file);
@@ -331,6 +392,56 @@ public class FSBackend extends AbstractBackend {
         return new File(file, string);
     }
 
+    /**
+     * Returns the lock that serializes the changes of the given record.
+     * @param identifier data identifier
+     * @return the lock
+     */
+    private Object getLock(DataIdentifier identifier) {
+        return locks[(identifier.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Creates the locks that serialize the changes of records.
+     * @return the locks
+     */
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Atomically moves a temporary file in place. The parent directories are
+     * created again if the garbage collector removes them concurrently.
+     * @param temporary the temporary file
+     * @param file the record file
+     * @throws IOException if the file can not be moved
+     */
+    private static void moveInPlace(File temporary, File file)
+                    throws IOException {
+        Path source = temporary.toPath();
+        Path target = file.toPath();
+        for (int i = 0;; i++) {
+            try {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(source, target,
+                        StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(source, target);
+                }
+                return;
+            } catch (NoSuchFileException e) {
+                if (i >= MOVE_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     /**
      * Set the last modified date of a file, if the file is writable.
      * @param file the file
@@ -426,7 +537,8 @@ public class FSBackend extends AbstractBackend {
     private void deleteOlderRecursive(File file, long min,
                     Set<DataIdentifier> deleteIdSet) throws DataStoreException {
         if (file.isFile() && file.exists() && file.canWrite()) {
-            synchronized (this) {
+            DataIdentifier id = new DataIdentifier(file.getName());
+            synchronized (getLock(id)) {
                 long lastModified;
                 try {
                     lastModified = getLastModified(file);
@@ -438,7 +550,6 @@ public class FSBackend extends AbstractBackend {
                     lastModified = min;
                 }
                 if (lastModified < min) {
-                    DataIdentifier id = new DataIdentifier(file.getName());
                     if (getDataStore().confirmDelete(id)) {
                         getDataStore().deleteFromCache(id);
                         if (LOG.isInfoEnabled()) {
@@ -466,11 +577,11 @@ public class FSBackend extends AbstractBackend {
 
             // JCR-1396: FileDataStore Garbage Collector and empty directories
             // Automatic removal of empty directories (but not the root!)
-            synchronized (this) {
-                list = file.listFiles();
-                if (list != null && list.length == 0) {
-                    file.delete();
-                }
+            // Only empty directories can be deleted, and concurrent writes
+            // create them again, see moveInPlace
+            list = file.listFiles();
+            if (list != null && list.length == 0) {
+                file.delete();
             }
         }
     }
@@ -19,6 +19,12 @@ package org.apache.jackrabbit.core.data;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.input.BoundedInputStream;
 
 
 /**
@@ -62,10 +68,53 @@ public class FileDataRecord extends AbstractDataRecord {
         }
     }
 
+    /**
+     * Seeks to the offset in the file.
+     */
+    @Override
+    public InputStream getStream(long offset, long length)
+            throws DataStoreException {
+        return openRange(file, offset, length);
+    }
+
+    /**
+     * Opens a part of a file.
+     *
+     * @param file the file
+     * @param offset the position of the first byte
+     * @param length the maximum number of bytes
+     * @return the stream of the range
+     * @throws DataStoreException if the file can not be opened
+     */
+    static InputStream openRange(File file, long offset, long length)
+            throws DataStoreException {
+        try {
+            FileChannel channel =
+                FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            channel.position(offset);
+            return new BoundedInputStream(
+                    Channels.newInputStream(channel), length);
+        } catch (IOException e) {
+            throw new DataStoreException("Error opening input stream of "
+                    + file.getAbsolutePath() + " at " + offset, e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     public long getLastModified() {
         return file.lastModified();
     }
+
+    /**
+     * Returns the path of the file that contains the binary stream. It
+     * allows to transfer the stream with a
+     * {@link java.nio.channels.FileChannel}. The file must not be modified.
+     *
+     * @return the path of the record file
+     */
+    public Path getPath() {
+        return file.toPath();
+    }
 }
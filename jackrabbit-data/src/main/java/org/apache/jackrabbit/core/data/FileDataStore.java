@@ -16,23 +16,29 @@
  */
 package org.apache.jackrabbit.core.data;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
 import java.lang.ref.WeakReference;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -48,17 +54,26 @@ import org.slf4j.LoggerFactory;
  * &lt;DataStore class="org.apache.jackrabbit.core.data.FileDataStore"&gt;
  *     &lt;param name="{@link #setPath(String) path}" value="/data/datastore"/&gt;
  *     &lt;param name="{@link #setMinRecordLength(int) minRecordLength}" value="1024"/&gt;
+ *     &lt;param name="{@link #setMaxPackedRecordLength(int) maxPackedRecordLength}" value="16384"/&gt;
  * &lt;/DataStore&gt;
  * </pre>
  * <p>
  * If the directory is not set, the directory &lt;repository home&gt;/repository/datastore is used.
  * <p>
+ * If maxPackedRecordLength is set, records up to this length are not stored
+ * as individual files but appended to segment files in the top-level
+ * directory, see {@link PackedRecordStore}. This saves a file per small
+ * record and reads such records with a single positioned read. Packing is
+ * disabled by default.
+ * <p>
  * A three level directory structure is used to avoid placing too many
  * files in a single directory. The chosen structure is designed to scale
  * up to billions of distinct records.
  * <p>
  * This implementation relies on the underlying file system to support
- * atomic O(1) move operations with {@link File#renameTo(File)}.
+ * atomic O(1) move operations with {@link Files#move}. Records with
+ * different identifiers are added, touched and deleted concurrently; only
+ * changes of records that share a lock stripe are serialized.
  */
 public class FileDataStore extends AbstractDataStore
         implements MultiDataStoreAware {
@@ -84,6 +99,22 @@ public class FileDataStore extends AbstractDataStore
      */
     private static final String TMP = "tmp";
 
+    /**
+     * The number of locks that serialize the changes of records.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The number of times a record is moved in place if its parent
+     * directory is removed concurrently.
+     */
+    private static final int MOVE_RETRIES = 10;
+
+    /**
+     * The size after which a new segment of packed records is started.
+     */
+    private static final long PACKED_SEGMENT_SIZE = 16 * 1024 * 1024;
+
     /**
      * The minimum modified date. If a file is accessed (read or write) with a modified date
      * older than this value, the modified date is updated to the current time.
@@ -107,11 +138,28 @@ public class FileDataStore extends AbstractDataStore
      */
     private int minRecordLength = DEFAULT_MIN_RECORD_LENGTH;
 
+    /**
+     * The maximum length of records that are packed into segment files,
+     * or 0 if records are not packed.
+     */
+    private int maxPackedRecordLength;
+
+    /**
+     * The packed records, or null if records are not packed.
+     */
+    private PackedRecordStore packed;
+
     /**
      * All data identifiers that are currently in use are in this set until they are garbage collected.
      */
     protected Map<DataIdentifier, WeakReference<DataIdentifier>> inUse =
-        Collections.synchronizedMap(new WeakHashMap<DataIdentifier, WeakReference<DataIdentifier>>());
+        new WeakIdentifierMap();
+
+    /**
+     * The locks that serialize the changes of records, by the hash code of
+     * the data identifier.
+     */
+    private final Object[] locks = createLocks();
 
     /**
      * Initialized the data store.
@@ -119,13 +167,23 @@ public class FileDataStore extends AbstractDataStore
      * This directory is automatically created if it does not yet exist.
      *
      * @param homeDir
+     * @throws DataStoreException if the packed records can not be read
      */
-    public void init(String homeDir) {
+    public void init(String homeDir) throws DataStoreException {
         if (path == null) {
             path = homeDir + "/repository/datastore";
         }
         directory = new File(path);
         directory.mkdirs();
+        if (maxPackedRecordLength > 0) {
+            packed = new PackedRecordStore(directory, PACKED_SEGMENT_SIZE);
+            try {
+                packed.open();
+            } catch (IOException e) {
+                throw new DataStoreException(
+                        "Unable to read packed records in " + path, e);
+            }
+        }
     }
 
     /**
@@ -135,13 +193,22 @@ public class FileDataStore extends AbstractDataStore
      * @return the data record or null
      */
     public DataRecord getRecordIfStored(DataIdentifier identifier) throws DataStoreException {
+        if (packed != null && packed.getLength(identifier) >= 0) {
+            if (minModifiedDate != 0) {
+                synchronized (getLock(identifier)) {
+                    touchPacked(identifier, minModifiedDate);
+                }
+            }
+            usesIdentifier(identifier);
+            return new PackedDataRecord(this, identifier, packed);
+        }
         File file = getFile(identifier);
         if (!file.exists()) {
             return null;
         }
         if (minModifiedDate != 0) {
             // only check when running garbage collection
-            synchronized (this) {
+            synchronized (getLock(identifier)) {
                 if (getLastModified(file) < minModifiedDate) {
                     setLastModified(file, System.currentTimeMillis() + ACCESS_TIME_RESOLUTION);
                 }
@@ -162,12 +229,78 @@ public class FileDataStore extends AbstractDataStore
      * record with the same {@link #DIGEST} digest (and length) is found then it is
      * returned. Otherwise the temporary file is moved in place to become
      * the new data record that gets returned.
+     * <p>
+     * If records are packed, streams up to the maximum packed record length
+     * are read into memory and packed instead.
      *
      * @param input binary stream
      * @return data record that contains the given stream
      * @throws DataStoreException if the record could not be created
      */
     public DataRecord addRecord(InputStream input) throws DataStoreException {
+        if (packed != null) {
+            byte[] buffer = new byte[maxPackedRecordLength + 1];
+            int length;
+            try {
+                length = IOUtils.read(input, buffer);
+            } catch (IOException e) {
+                throw new DataStoreException("Could not add record", e);
+            }
+            if (length <= maxPackedRecordLength) {
+                return addPackedRecord(Arrays.copyOf(buffer, length));
+            }
+            input = new SequenceInputStream(
+                    new ByteArrayInputStream(buffer), input);
+        }
+        return addFileRecord(input);
+    }
+
+    /**
+     * Packs a record, unless it is already stored as a file.
+     *
+     * @param data the binary
+     * @return data record that contains the given binary
+     * @throws DataStoreException if the record could not be created
+     */
+    private DataRecord addPackedRecord(byte[] data) throws DataStoreException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST);
+            DataIdentifier identifier =
+                    new DataIdentifier(encodeHexString(digest.digest(data)));
+            synchronized (getLock(identifier)) {
+                usesIdentifier(identifier);
+                long now = System.currentTimeMillis();
+                File file = getFile(identifier);
+                if (file.exists()) {
+                    // added before records were packed
+                    if (getLastModified(file) < now + ACCESS_TIME_RESOLUTION) {
+                        setLastModified(file, now + ACCESS_TIME_RESOLUTION);
+                    }
+                    if (file.length() != data.length) {
+                        throw new IOException(DIGEST + " collision: " + file);
+                    }
+                    return new FileDataRecord(this, identifier, file);
+                }
+                if (packed.add(identifier, data, now) != data.length) {
+                    throw new IOException(DIGEST + " collision: " + identifier);
+                }
+            }
+            return new PackedDataRecord(this, identifier, packed);
+        } catch (NoSuchAlgorithmException e) {
+            throw new DataStoreException(DIGEST + " not available", e);
+        } catch (IOException e) {
+            throw new DataStoreException("Could not add record", e);
+        }
+    }
+
+    /**
+     * Stores a record as a file.
+     *
+     * @param input binary stream
+     * @return data record that contains the given stream
+     * @throws DataStoreException if the record could not be created
+     */
+    private DataRecord addFileRecord(InputStream input) throws DataStoreException {
         File temporary = null;
         try {
             temporary = newTemporaryFile();
@@ -188,22 +321,21 @@ public class FileDataStore extends AbstractDataStore
                     new DataIdentifier(encodeHexString(digest.digest()));
             File file;
 
-            synchronized (this) {
+            synchronized (getLock(identifier)) {
                 // Check if the same record already exists, or
                 // move the temporary file in place if needed
                 usesIdentifier(identifier);
                 file = getFile(identifier);
                 if (!file.exists()) {
-                    File parent = file.getParentFile();
-                    parent.mkdirs();
-                    if (temporary.renameTo(file)) {
+                    try {
+                        moveInPlace(temporary, file);
                         // no longer need to delete the temporary file
                         temporary = null;
-                    } else {
+                    } catch (IOException e) {
                         throw new IOException(
                                 "Can not rename " + temporary.getAbsolutePath()
                                 + " to " + file.getAbsolutePath()
-                                + " (media read only?)");
+                                + " (media read only?)", e);
                     }
                 } else {
                     long now = System.currentTimeMillis();
@@ -254,6 +386,58 @@ public class FileDataStore extends AbstractDataStore
         return new File(file, string);
     }
 
+    /**
+     * Returns the lock that serializes the changes of the given record.
+     *
+     * @param identifier data identifier
+     * @return the lock
+     */
+    private Object getLock(DataIdentifier identifier) {
+        return locks[(identifier.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Creates the locks that serialize the changes of records.
+     *
+     * @return the locks
+     */
+    private static Object[] createLocks() {
+        Object[] locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * Atomically moves a temporary file in place. The parent directories are
+     * created again if the garbage collector removes them concurrently.
+     *
+     * @param temporary the temporary file
+     * @param file the record file
+     * @throws IOException if the file can not be moved
+     */
+    private static void moveInPlace(File temporary, File file)
+            throws IOException {
+        Path source = temporary.toPath();
+        Path target = file.toPath();
+        for (int i = 0;; i++) {
+            try {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(source, target);
+                }
+                return;
+            } catch (NoSuchFileException e) {
+                if (i >= MOVE_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
     /**
      * Returns a unique temporary file to be used for creating a new
      * data record.
@@ -273,7 +457,10 @@ public class FileDataStore extends AbstractDataStore
     public void deleteRecord(DataIdentifier identifier)
 			throws DataStoreException {
         File file = getFile(identifier);
-        synchronized (this) {
+        synchronized (getLock(identifier)) {
+            if (packed != null && packed.remove(identifier)) {
+                compactPacked();
+            }
             if (file.exists()) {
                 if (file.delete()) {
                     deleteEmptyParentDirs(file);
@@ -308,20 +495,47 @@ public class FileDataStore extends AbstractDataStore
         }
     }
 
-    public int deleteAllOlderThan(long min) {
+    public int deleteAllOlderThan(long min) throws DataStoreException {
         int count = 0;
         for (File file : directory.listFiles()) {
             if (file.isDirectory()) { // skip top-level files
                 count += deleteOlderRecursive(file, min);
             }
         }
+        if (packed != null) {
+            count += deleteOlderPacked(min);
+        }
+        return count;
+    }
+
+    private int deleteOlderPacked(long min) throws DataStoreException {
+        int count = 0;
+        for (DataIdentifier id : packed.getIdentifiers()) {
+            synchronized (getLock(id)) {
+                long lastModified = packed.getLastModified(id);
+                if (lastModified != 0 && lastModified < min
+                        && !inUse.containsKey(id)) {
+                    if (log.isInfoEnabled()) {
+                        log.info("Deleting old packed record " + id +
+                                " modified: " + new Timestamp(lastModified).toString() +
+                                " length: " + packed.getLength(id));
+                    }
+                    packed.remove(id);
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            compactPacked();
+        }
         return count;
     }
 
     private int deleteOlderRecursive(File file, long min) {
         int count = 0;
         if (file.isFile() && file.exists() && file.canWrite()) {
-            synchronized (this) {
+            DataIdentifier id = new DataIdentifier(file.getName());
+            synchronized (getLock(id)) {
                 long lastModified;
                 try {
                     lastModified = getLastModified(file);
@@ -331,7 +545,6 @@ public class FileDataStore extends AbstractDataStore
                     lastModified = min;
                 }
                 if (lastModified < min) {
-                    DataIdentifier id = new DataIdentifier(file.getName());
                     if (!inUse.containsKey(id)) {
                         if (log.isInfoEnabled()) {
                             log.info("Deleting old file " + file.getAbsolutePath() +
@@ -355,11 +568,11 @@ public class FileDataStore extends AbstractDataStore
 
             // JCR-1396: FileDataStore Garbage Collector and empty directories
             // Automatic removal of empty directories (but not the root!)
-            synchronized (this) {
-                list = file.listFiles();
-                if (list != null && list.length == 0) {
-                    file.delete();
-                }
+            // Only empty directories can be deleted, and concurrent adds
+            // create them again, see moveInPlace
+            list = file.listFiles();
+            if (list != null && list.length == 0) {
+                file.delete();
             }
         }
         return count;
@@ -391,6 +604,9 @@ public class FileDataStore extends AbstractDataStore
             String name = f.getName();
             identifiers.add(new DataIdentifier(name));
         }
+        if (packed != null) {
+            identifiers.addAll(packed.getIdentifiers());
+        }
         log.debug("Found " + identifiers.size() + " identifiers.");
         return identifiers.iterator();
     }
@@ -430,8 +646,24 @@ public class FileDataStore extends AbstractDataStore
         this.minRecordLength = minRecordLength;
     }
 
+    public int getMaxPackedRecordLength() {
+        return maxPackedRecordLength;
+    }
+
+    /**
+     * Set the maximum length of records that are packed into segment
+     * files. Records are not packed if the length is 0.
+     *
+     * @param maxPackedRecordLength the length
+     */
+    public void setMaxPackedRecordLength(int maxPackedRecordLength) {
+        this.maxPackedRecordLength = maxPackedRecordLength;
+    }
+
     public void close() {
-        // nothing to do
+        if (packed != null) {
+            packed.close();
+        }
     }
 
     //---------------------------------------------------------< protected >--
@@ -455,6 +687,37 @@ public class FileDataStore extends AbstractDataStore
 
     //-----------------------------------------------------------< private >--
 
+    /**
+     * Updates the modification time of a packed record if it is older than
+     * the given time. The caller holds the lock of the record.
+     *
+     * @param identifier data identifier
+     * @param before the minimum modified date
+     * @throws DataStoreException if the record can not be touched
+     */
+    private void touchPacked(DataIdentifier identifier, long before)
+            throws DataStoreException {
+        try {
+            packed.touch(identifier, before, System.currentTimeMillis());
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Unable to update the modified date of " + identifier, e);
+        }
+    }
+
+    /**
+     * Deletes the segments of removed packed records.
+     *
+     * @throws DataStoreException if the segments can not be rewritten
+     */
+    private void compactPacked() throws DataStoreException {
+        try {
+            packed.compact();
+        } catch (IOException e) {
+            throw new DataStoreException("Unable to compact packed records", e);
+        }
+    }
+
     /**
      * Get the last modified date of a file.
      *
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Data record that is packed into the segment files of a
+ * {@link PackedRecordStore}.
+ */
+class PackedDataRecord extends AbstractDataRecord {
+
+    /**
+     * The store that contains the record.
+     */
+    private final PackedRecordStore packed;
+
+    /**
+     * Creates a data record based on the given identifier.
+     *
+     * @param store the data store
+     * @param identifier data identifier
+     * @param packed the store that contains the record
+     */
+    PackedDataRecord(AbstractDataStore store, DataIdentifier identifier,
+            PackedRecordStore packed) {
+        super(store, identifier);
+        this.packed = packed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLength() throws DataStoreException {
+        long length = packed.getLength(getIdentifier());
+        if (length < 0) {
+            throw new DataStoreException("Record not found: " + getIdentifier());
+        }
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public InputStream getStream() throws DataStoreException {
+        try {
+            byte[] data = packed.read(getIdentifier());
+            if (data == null) {
+                throw new DataStoreException("Record not found: " + getIdentifier());
+            }
+            return new ByteArrayInputStream(data);
+        } catch (IOException e) {
+            throw new DataStoreException(
+                    "Error reading packed record " + getIdentifier(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public long getLastModified() {
+        return packed.getLastModified(getIdentifier());
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packs small records into append-only segment files. Each record is an
+ * entry in the current segment, and an in-memory index maps the identifier
+ * to the segment and offset of the data, so that a record is read with a
+ * single positioned read on a segment file that is kept open. The index is
+ * rebuilt from the entry headers when the store is opened.
+ * <p>
+ * Touching a record appends a small touch entry with the new modification
+ * time. Removed records stay in their segment until {@link #compact()}
+ * copies the remaining records of the segment to the current segment and
+ * deletes it.
+ * <p>
+ * Changes of the same record must be serialized by the caller.
+ */
+class PackedRecordStore {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger log = LoggerFactory.getLogger(PackedRecordStore.class);
+
+    /**
+     * The file name prefix of segment files.
+     */
+    static final String PREFIX = "pack-";
+
+    /**
+     * The file name suffix of segment files.
+     */
+    static final String SUFFIX = ".dat";
+
+    /**
+     * Entry type of a record: type, identifier, time, length, data.
+     */
+    private static final byte DATA = 1;
+
+    /**
+     * Entry type of a touch: type, identifier, time.
+     */
+    private static final byte TOUCH = 2;
+
+    private final File directory;
+
+    private final long maxSegmentSize;
+
+    /**
+     * The location of each record.
+     */
+    private final Map<DataIdentifier, Entry> index =
+        new ConcurrentHashMap<DataIdentifier, Entry>();
+
+    /**
+     * The read channels of the segments.
+     */
+    private final Map<Integer, FileChannel> readers =
+        new ConcurrentHashMap<Integer, FileChannel>();
+
+    /**
+     * The segments that contain records which are no longer in use.
+     */
+    private final Set<Integer> dirty =
+        Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+    /**
+     * Reads, adds and touches share this lock, compactions and closing the
+     * store hold it exclusively.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Serializes the writes to the current segment.
+     */
+    private final Object appendLock = new Object();
+
+    private int activeSegment;
+
+    private long activeSize;
+
+    private FileChannel writer;
+
+    /**
+     * Creates a store.
+     *
+     * @param directory the directory of the segment files
+     * @param maxSegmentSize the size after which a new segment is started
+     */
+    PackedRecordStore(File directory, long maxSegmentSize) {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Reads the index from the existing segments and starts a new segment.
+     *
+     * @throws IOException if a segment cannot be read
+     */
+    void open() throws IOException {
+        List<Integer> segments = new ArrayList<Integer>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        segments.add(Integer.valueOf(name.substring(
+                                PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        log.warn("Ignoring unexpected file {} in {}", name, directory);
+                    }
+                }
+            }
+        }
+        Collections.sort(segments);
+        for (int segment : segments) {
+            load(segment);
+        }
+        activeSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        roll();
+        log.debug("Opened {} packed records in {} segments",
+                index.size(), segments.size());
+    }
+
+    /**
+     * @param identifier the identifier
+     * @return the length of the record, or -1 if it is not stored
+     */
+    long getLength(DataIdentifier identifier) {
+        Entry entry = index.get(identifier);
+        return entry != null ? entry.length : -1;
+    }
+
+    /**
+     * @param identifier the identifier
+     * @return the modification time of the record, or 0 if it is not stored
+     */
+    long getLastModified(DataIdentifier identifier) {
+        Entry entry = index.get(identifier);
+        return entry != null ? entry.lastModified : 0;
+    }
+
+    /**
+     * @return the identifiers of all records
+     */
+    List<DataIdentifier> getIdentifiers() {
+        return new ArrayList<DataIdentifier>(index.keySet());
+    }
+
+    /**
+     * Reads a record with a single positioned read.
+     *
+     * @param identifier the identifier
+     * @return the data, or null if the record is not stored
+     * @throws IOException if the segment cannot be read
+     */
+    byte[] read(DataIdentifier identifier) throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(identifier);
+            if (entry == null) {
+                return null;
+            }
+            FileChannel channel = getReader(entry.segment);
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                    throw new EOFException("Record " + identifier
+                            + " is truncated in " + getSegmentFile(entry.segment));
+                }
+            }
+            return buffer.array();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a record, or touches it if it is already stored.
+     *
+     * @param identifier the identifier
+     * @param data the data
+     * @param time the modification time
+     * @return the length of the stored record
+     * @throws IOException if the segment cannot be written
+     */
+    long add(DataIdentifier identifier, byte[] data, long time)
+            throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(identifier);
+            if (entry != null) {
+                touch(entry, identifier, time, time);
+                return entry.length;
+            }
+            index.put(identifier, append(DATA, identifier, time, data));
+            return data.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Updates the modification time of a record if it is older than the
+     * given time.
+     *
+     * @param identifier the identifier
+     * @param before touch the record if it was modified before this time
+     * @param time the new modification time
+     * @throws IOException if the segment cannot be written
+     */
+    void touch(DataIdentifier identifier, long before, long time)
+            throws IOException {
+        lock.readLock().lock();
+        try {
+            Entry entry = index.get(identifier);
+            if (entry != null) {
+                touch(entry, identifier, before, time);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a record. The data is only deleted by the next
+     * {@link #compact()}.
+     *
+     * @param identifier the identifier
+     * @return true if the record was stored
+     */
+    boolean remove(DataIdentifier identifier) {
+        Entry entry = index.remove(identifier);
+        if (entry != null) {
+            dirty.add(entry.segment);
+        }
+        return entry != null;
+    }
+
+    /**
+     * Copies the remaining records of the segments that contain removed
+     * records to the current segment, and deletes these segments.
+     *
+     * @throws IOException if a segment cannot be read or written
+     */
+    void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (Integer segment : new ArrayList<Integer>(dirty)) {
+                if (segment == activeSegment) {
+                    roll();
+                }
+                rewrite(segment);
+                dirty.remove(segment);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the segment files. An empty current segment is deleted.
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            closeQuietly(writer);
+            if (activeSize == 0) {
+                getSegmentFile(activeSegment).delete();
+            }
+            for (FileChannel channel : readers.values()) {
+                closeQuietly(channel);
+            }
+            readers.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //-----------------------------------------------------------< private >--
+
+    private void touch(Entry entry, DataIdentifier identifier, long before,
+            long time) throws IOException {
+        if (entry.lastModified < before) {
+            append(TOUCH, identifier, time, null);
+            entry.lastModified = time;
+        }
+    }
+
+    /**
+     * Appends an entry to the current segment.
+     *
+     * @return the location of the data, or null for a touch entry
+     */
+    private Entry append(byte type, DataIdentifier identifier, long time,
+            byte[] data) throws IOException {
+        byte[] id = identifier.toString().getBytes(StandardCharsets.UTF_8);
+        int header = 1 + 2 + id.length + 8 + (data != null ? 4 : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(
+                header + (data != null ? data.length : 0));
+        buffer.put(type).putShort((short) id.length).put(id).putLong(time);
+        if (data != null) {
+            buffer.putInt(data.length).put(data);
+        }
+        buffer.flip();
+        synchronized (appendLock) {
+            if (activeSize >= maxSegmentSize) {
+                roll();
+            }
+            long start = activeSize;
+            while (buffer.hasRemaining()) {
+                writer.write(buffer, start + buffer.position());
+            }
+            activeSize += buffer.limit();
+            if (data == null) {
+                return null;
+            }
+            return new Entry(activeSegment, start + header, data.length, time);
+        }
+    }
+
+    /**
+     * Starts a new segment.
+     */
+    private void roll() throws IOException {
+        synchronized (appendLock) {
+            closeQuietly(writer);
+            activeSegment++;
+            activeSize = 0;
+            writer = FileChannel.open(getSegmentFile(activeSegment).toPath(),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+    }
+
+    /**
+     * Adds the records and touches of a segment to the index. A truncated
+     * entry at the end of the segment, e.g. after a crash, is ignored.
+     */
+    private void load(final int segment) throws IOException {
+        scan(segment, new EntryHandler() {
+            public void data(DataIdentifier identifier, long time,
+                    long offset, int length, DataInputStream in)
+                    throws IOException {
+                IOUtils.skipFully(in, length);
+                Entry previous = index.put(
+                        identifier, new Entry(segment, offset, length, time));
+                if (previous != null) {
+                    // left behind by an interrupted compaction
+                    dirty.add(previous.segment);
+                }
+            }
+            public void touch(DataIdentifier identifier, long time) {
+                Entry entry = index.get(identifier);
+                if (entry != null && entry.lastModified < time) {
+                    entry.lastModified = time;
+                }
+            }
+        });
+    }
+
+    /**
+     * Copies the records of a segment that are still in the index to the
+     * current segment, and deletes the segment.
+     */
+    private void rewrite(final int segment) throws IOException {
+        final Set<DataIdentifier> touched = new HashSet<DataIdentifier>();
+        scan(segment, new EntryHandler() {
+            public void data(DataIdentifier identifier, long time,
+                    long offset, int length, DataInputStream in)
+                    throws IOException {
+                Entry entry = index.get(identifier);
+                if (entry != null && entry.segment == segment
+                        && entry.offset == offset) {
+                    byte[] data = new byte[length];
+                    in.readFully(data);
+                    index.put(identifier, append(
+                            DATA, identifier, entry.lastModified, data));
+                } else {
+                    IOUtils.skipFully(in, length);
+                }
+            }
+            public void touch(DataIdentifier identifier, long time)
+                    throws IOException {
+                // keep touches of records in other segments
+                Entry entry = index.get(identifier);
+                if (entry != null && entry.segment != segment
+                        && touched.add(identifier)) {
+                    append(TOUCH, identifier, entry.lastModified, null);
+                }
+            }
+        });
+        FileChannel channel = readers.remove(segment);
+        closeQuietly(channel);
+        File file = getSegmentFile(segment);
+        if (!file.delete()) {
+            log.warn("Failed to delete segment {}", file.getAbsolutePath());
+        }
+    }
+
+    private void scan(int segment, EntryHandler handler) throws IOException {
+        File file = getSegmentFile(segment);
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)));
+        try {
+            long position = 0;
+            while (true) {
+                int type = in.read();
+                if (type < 0) {
+                    break;
+                }
+                byte[] id = new byte[in.readUnsignedShort()];
+                in.readFully(id);
+                DataIdentifier identifier =
+                    new DataIdentifier(new String(id, StandardCharsets.UTF_8));
+                long time = in.readLong();
+                position += 1 + 2 + id.length + 8;
+                if (type == DATA) {
+                    int length = in.readInt();
+                    position += 4;
+                    handler.data(identifier, time, position, length, in);
+                    position += length;
+                } else if (type == TOUCH) {
+                    handler.touch(identifier, time);
+                } else {
+                    log.warn("Ignoring corrupt entry at {} in segment {}",
+                            position, file.getAbsolutePath());
+                    break;
+                }
+            }
+        } catch (EOFException e) {
+            log.warn("Ignoring truncated entry in segment {}", file.getAbsolutePath());
+        } finally {
+            in.close();
+        }
+    }
+
+    private FileChannel getReader(int segment) throws IOException {
+        FileChannel channel = readers.get(segment);
+        if (channel == null) {
+            synchronized (readers) {
+                channel = readers.get(segment);
+                if (channel == null) {
+                    channel = FileChannel.open(
+                            getSegmentFile(segment).toPath(), StandardOpenOption.READ);
+                    readers.put(segment, channel);
+                }
+            }
+        }
+        return channel;
+    }
+
+    private File getSegmentFile(int segment) {
+        return new File(directory, PREFIX + String.format("%08d", segment) + SUFFIX);
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close segment", e);
+            }
+        }
+    }
+
+    /**
+     * Receives the entries of a segment.
+     */
+    private interface EntryHandler {
+
+        /**
+         * Must consume the data of the record from the stream.
+         */
+        void data(DataIdentifier identifier, long time, long offset,
+                int length, DataInputStream in) throws IOException;
+
+        void touch(DataIdentifier identifier, long time) throws IOException;
+    }
+
+    /**
+     * The location of a record.
+     */
+    private static final class Entry {
+
+        final int segment;
+
+        final long offset;
+
+        final int length;
+
+        volatile long lastModified;
+
+        Entry(int segment, long offset, int length, long lastModified) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+}
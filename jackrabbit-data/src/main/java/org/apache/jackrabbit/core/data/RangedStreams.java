@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+/**
+ * Helper for the default ranged reads of {@link DataRecord} and
+ * {@link Backend}, which read the stream from the start.
+ */
+final class RangedStreams {
+
+    private RangedStreams() {
+    }
+
+    /**
+     * Returns a part of the given stream.
+     *
+     * @param in the stream, which is closed if an error occurs
+     * @param offset the number of bytes to skip
+     * @param length the maximum number of bytes to read
+     * @return the part of the stream
+     * @throws IOException if the bytes can not be skipped
+     */
+    static InputStream range(InputStream in, long offset, long length)
+            throws IOException {
+        try {
+            long skipped = IOUtils.skip(in, offset);
+            if (skipped < offset) {
+                // the offset is beyond the end of the stream
+                length = 0;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BoundedInputStream(in, length);
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Locks and file operations shared by the data stores that keep each record
+ * in a file of its own. A record is written to a temporary file first and
+ * then moved in place while holding the lock of its identifier.
+ */
+final class RecordFiles {
+
+    /**
+     * Logger instance.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger(RecordFiles.class);
+
+    /**
+     * The prefix of the temporary files the records are written to.
+     * Must be at least 3 characters.
+     */
+    static final String TMP = "tmp";
+
+    /**
+     * The number of locks that serialize the changes of records.
+     */
+    static final int LOCK_STRIPES = 64;
+
+    /**
+     * The number of times a record is moved in place if its parent
+     * directory is removed concurrently.
+     */
+    static final int MOVE_RETRIES = 10;
+
+    /**
+     * The time after which a temporary file that is not modified anymore
+     * is considered to be left over by a writer that failed.
+     */
+    static final long TMP_MAX_AGE = 60 * 60 * 1000;
+
+    /**
+     * The locks that serialize the changes of records, by the hash code of
+     * the data identifier.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    RecordFiles() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Returns the lock that serializes the changes of the given record.
+     *
+     * @param identifier data identifier
+     * @return the lock
+     */
+    Object getLock(DataIdentifier identifier) {
+        return locks[(identifier.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    /**
+     * Atomically moves a temporary file in place. The parent directories are
+     * created again if the garbage collector removes them concurrently.
+     *
+     * @param temporary the temporary file
+     * @param file the record file
+     * @throws IOException if the file can not be moved
+     */
+    static void moveInPlace(File temporary, File file) throws IOException {
+        Path source = temporary.toPath();
+        Path target = file.toPath();
+        for (int i = 0;; i++) {
+            try {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(source, target);
+                }
+                return;
+            } catch (NoSuchFileException e) {
+                if (i >= MOVE_RETRIES) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the temporary files in a directory that were not modified for
+     * {@link #TMP_MAX_AGE}. They are left over by writers that were
+     * interrupted. Newer files may still be written by another process that
+     * shares the directory.
+     *
+     * @param directory the directory the temporary files are created in
+     */
+    static void deleteStaleTemporaryFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long min = System.currentTimeMillis() - TMP_MAX_AGE;
+        for (File file : files) {
+            if (file.isFile() && file.getName().startsWith(TMP)
+                    && file.lastModified() < min) {
+                if (file.delete()) {
+                    LOG.info("Deleted stale temporary file {}", file);
+                } else {
+                    LOG.warn("Failed to delete stale temporary file {}", file);
+                }
+            }
+        }
+    }
+}
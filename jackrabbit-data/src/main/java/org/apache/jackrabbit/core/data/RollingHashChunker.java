@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream into content-defined chunks. A gear hash is rolled over
+ * the bytes of the current chunk, and a chunk ends where the top bits of
+ * the hash are all zero. Since the hash only depends on the last 64 bytes,
+ * an insertion or deletion moves the chunk boundaries around it but not the
+ * boundaries further away, so that near-identical streams share most of
+ * their chunks. Chunks are at least a quarter and at most four times the
+ * average chunk size long.
+ */
+class RollingHashChunker {
+
+    /**
+     * Random values for each byte value. The table must never change, since
+     * it defines where existing content is split.
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // SplitMix64 with a fixed seed
+        long seed = 0x6a09e667f3bcc908L;
+        for (int i = 0; i < GEAR.length; i++) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    private final InputStream in;
+
+    private final int minSize;
+
+    private final long mask;
+
+    /**
+     * Holds the current chunk followed by bytes read ahead of it.
+     */
+    private final byte[] buffer;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int filled;
+
+    /**
+     * The length of the chunk returned by the last call to {@link #next()}.
+     */
+    private int current;
+
+    private boolean eof;
+
+    /**
+     * Creates a chunker.
+     *
+     * @param in the stream to split, which is not closed
+     * @param averageSize the average chunk size, a power of two
+     */
+    RollingHashChunker(InputStream in, int averageSize) {
+        int bits = Integer.numberOfTrailingZeros(averageSize);
+        this.in = in;
+        this.minSize = averageSize / 4;
+        this.mask = -1L << (64 - bits);
+        this.buffer = new byte[averageSize * 4];
+    }
+
+    /**
+     * Reads the next chunk, which is then available at the start of
+     * {@link #getBuffer()}.
+     *
+     * @return the length of the chunk, or 0 at the end of the stream
+     * @throws IOException if the stream cannot be read
+     */
+    int next() throws IOException {
+        // drop the previous chunk
+        filled -= current;
+        System.arraycopy(buffer, current, buffer, 0, filled);
+        while (!eof && filled < buffer.length) {
+            int n = in.read(buffer, filled, buffer.length - filled);
+            if (n < 0) {
+                eof = true;
+            } else {
+                filled += n;
+            }
+        }
+        current = filled;
+        long hash = 0;
+        for (int i = 0; i < filled; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            if (i >= minSize && (hash & mask) == 0) {
+                current = i + 1;
+                break;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @return the buffer that starts with the current chunk
+     */
+    byte[] getBuffer() {
+        return buffer;
+    }
+}
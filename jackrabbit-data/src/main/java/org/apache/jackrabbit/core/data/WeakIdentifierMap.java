@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Map of the data identifiers that are in use, with the semantics of a
+ * {@link java.util.WeakHashMap}: an entry is removed once its key is garbage
+ * collected. Unlike a synchronized <code>WeakHashMap</code>, concurrent
+ * threads add, check and remove identifiers without locking.
+ * <p>
+ * The entry set is a snapshot of the entries that are alive.
+ */
+class WeakIdentifierMap
+        extends AbstractMap<DataIdentifier, WeakReference<DataIdentifier>> {
+
+    /**
+     * The entries by identifier string. The keys do not reference the
+     * data identifiers.
+     */
+    private final ConcurrentMap<String, WeakEntry> entries =
+        new ConcurrentHashMap<String, WeakEntry>();
+
+    /**
+     * The queue of the entries whose key was garbage collected.
+     */
+    private final ReferenceQueue<DataIdentifier> queue =
+        new ReferenceQueue<DataIdentifier>();
+
+    @Override
+    public WeakReference<DataIdentifier> put(
+            DataIdentifier key, WeakReference<DataIdentifier> value) {
+        expunge();
+        String string = key.toString();
+        while (true) {
+            WeakEntry entry = entries.get(string);
+            if (entry != null && entry.get() != null) {
+                // keep the existing key, like WeakHashMap
+                WeakReference<DataIdentifier> old = entry.value;
+                entry.value = value;
+                return old;
+            }
+            WeakEntry created = new WeakEntry(string, key, value, queue);
+            if (entry == null) {
+                if (entries.putIfAbsent(string, created) == null) {
+                    return null;
+                }
+            } else if (entries.replace(string, entry, created)) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public WeakReference<DataIdentifier> get(Object key) {
+        WeakEntry entry = getEntry(key);
+        return entry != null ? entry.value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public WeakReference<DataIdentifier> remove(Object key) {
+        if (!(key instanceof DataIdentifier)) {
+            return null;
+        }
+        WeakEntry entry = entries.remove(key.toString());
+        return entry != null && entry.get() != null ? entry.value : null;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public int size() {
+        expunge();
+        return entries.size();
+    }
+
+    @Override
+    public Set<Map.Entry<DataIdentifier, WeakReference<DataIdentifier>>> entrySet() {
+        expunge();
+        Set<Map.Entry<DataIdentifier, WeakReference<DataIdentifier>>> set =
+            new HashSet<Map.Entry<DataIdentifier, WeakReference<DataIdentifier>>>();
+        for (WeakEntry entry : entries.values()) {
+            DataIdentifier key = entry.get();
+            if (key != null) {
+                set.add(new SimpleImmutableEntry<DataIdentifier, WeakReference<DataIdentifier>>(
+                        key, entry.value));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Returns the entry of the given key if the key is alive.
+     */
+    private WeakEntry getEntry(Object key) {
+        if (!(key instanceof DataIdentifier)) {
+            return null;
+        }
+        WeakEntry entry = entries.get(key.toString());
+        return entry != null && entry.get() != null ? entry : null;
+    }
+
+    /**
+     * Removes the entries whose key was garbage collected.
+     */
+    private void expunge() {
+        Reference<? extends DataIdentifier> reference;
+        while ((reference = queue.poll()) != null) {
+            WeakEntry entry = (WeakEntry) reference;
+            entries.remove(entry.string, entry);
+        }
+    }
+
+    /**
+     * An entry that references its key weakly.
+     */
+    private static class WeakEntry extends WeakReference<DataIdentifier> {
+
+        private final String string;
+
+        private volatile WeakReference<DataIdentifier> value;
+
+        WeakEntry(String string, DataIdentifier key,
+                  WeakReference<DataIdentifier> value,
+                  ReferenceQueue<DataIdentifier> queue) {
+            super(key, queue);
+            this.string = string;
+            this.value = value;
+        }
+    }
+}
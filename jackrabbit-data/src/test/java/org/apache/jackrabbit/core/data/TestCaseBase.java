@@ -127,6 +127,24 @@ public abstract class TestCaseBase extends TestCase {
         }
     }
 
+    /**
+     * Testcase to validate {@link DataRecord#getStream(long, long)} API.
+     */
+    public void testGetStreamRange() {
+        try {
+            long start = System.currentTimeMillis();
+            LOG.info("Testcase: " + this.getClass().getName()
+                + "#testGetStreamRange, testDir=" + dataStoreDir);
+            doGetStreamRangeTest();
+            LOG.info("Testcase: " + this.getClass().getName()
+                + "#testGetStreamRange finished, time taken = ["
+                + (System.currentTimeMillis() - start) + "]ms");
+        } catch (Exception e) {
+            LOG.error("error:", e);
+            fail(e.getMessage());
+        }
+    }
+
     /**
      * Testcase to validate {@link DataStore#getRecord(DataIdentifier)} API.
      */
@@ -304,6 +322,23 @@ public abstract class TestCaseBase extends TestCase {
         ds.close();
     }
 
+    /**
+     * Test {@link DataRecord#getStream(long, long)} with ranges inside, at the
+     * end of and after the record.
+     */
+    protected void doGetStreamRangeTest() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[dataLength];
+        randomGen.nextBytes(data);
+        DataRecord rec = ds.addRecord(new ByteArrayInputStream(data));
+        rec = ds.getRecord(rec.getIdentifier());
+        assertRange(data, rec, 0, 100);
+        assertRange(data, rec, dataLength / 2, 1000);
+        assertRange(data, rec, dataLength - 10, 100);
+        assertRange(data, rec, dataLength + 10, 100);
+        ds.close();
+    }
+
     /**
      * Test {@link MultiDataStoreAware#deleteRecord(DataIdentifier)}.
      */
@@ -511,6 +546,23 @@ public abstract class TestCaseBase extends TestCase {
         }
     }
 
+    /**
+     * Assert that a range of the record matches the expected bytes.
+     */
+    protected void assertRange(byte[] expected, DataRecord record,
+            long offset, long length) throws DataStoreException, IOException {
+        InputStream stream = record.getStream(offset, length);
+        try {
+            long end = Math.min(offset + length, expected.length);
+            for (long i = offset; i < end; i++) {
+                assertEquals(expected[(int) i] & 0xff, stream.read());
+            }
+            assertEquals(-1, stream.read());
+        } finally {
+            stream.close();
+        }
+    }
+
     /**
      * Method to run {@link TestCaseBase#doTest(DataStore, int)} in multiple
      * concurrent threads.
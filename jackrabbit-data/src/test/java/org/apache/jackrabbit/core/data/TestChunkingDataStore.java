@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Test cases to test {@link ChunkingDataStore} on top of two
+ * {@link FileDataStore}s.
+ */
+public class TestChunkingDataStore extends TestCaseBase {
+
+    private DataStore chunks;
+
+    @Override
+    protected DataStore createDataStore() throws RepositoryException {
+        FileDataStore manifests = new FileDataStore();
+        manifests.setPath(dataStoreDir + "/repository/manifests");
+        manifests.init(dataStoreDir);
+        FileDataStore fds = new FileDataStore();
+        fds.setPath(dataStoreDir + "/repository/chunks");
+        fds.init(dataStoreDir);
+        chunks = fds;
+
+        ChunkingDataStore store = new ChunkingDataStore();
+        store.setManifestDataStore(manifests);
+        store.setChunkDataStore(chunks);
+        // many chunks per record
+        store.setAverageChunkSize(4096);
+        store.init(dataStoreDir);
+        return store;
+    }
+
+    /**
+     * Records that differ by an insertion share all chunks but the ones
+     * around the insertion.
+     */
+    public void testDeduplication() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[1024 * 1024];
+        randomGen.nextBytes(data);
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, data.length / 2);
+        System.arraycopy(data, data.length / 2, edited, data.length / 2 + 10,
+                data.length / 2);
+
+        DataRecord rec1 = ds.addRecord(new ByteArrayInputStream(data));
+        int count = countChunks();
+        assertTrue(count > 50);
+        DataRecord rec2 = ds.addRecord(new ByteArrayInputStream(edited));
+        count = countChunks() - count;
+        assertTrue("new chunks: " + count, count <= 3);
+        // same content, same record
+        count = countChunks();
+        assertEquals(rec1.getIdentifier(),
+                ds.addRecord(new ByteArrayInputStream(data)).getIdentifier());
+        assertEquals(count, countChunks());
+
+        assertRecord(data, ds.getRecord(rec1.getIdentifier()));
+        assertRecord(edited, ds.getRecord(rec2.getIdentifier()));
+        assertEquals(edited.length, ds.getRecord(rec2.getIdentifier()).getLength());
+        assertRange(edited, ds.getRecord(rec2.getIdentifier()),
+                data.length / 2 - 5000, 10000);
+        ds.close();
+    }
+
+    /**
+     * Deleting a record keeps the chunks that other records still use.
+     */
+    public void testDeleteSharedChunks() throws Exception {
+        ds = createDataStore();
+        byte[] data = new byte[100000];
+        randomGen.nextBytes(data);
+        byte[] edited = data.clone();
+        edited[0]++;
+        DataRecord rec1 = ds.addRecord(new ByteArrayInputStream(data));
+        DataRecord rec2 = ds.addRecord(new ByteArrayInputStream(edited));
+        // only the first chunk differs
+        int count = countChunks();
+
+        // records are added with a modification time in the future
+        sleep(5000);
+        long updateTime = System.currentTimeMillis();
+        ds.updateModifiedDateOnAccess(updateTime);
+        ds.getRecord(rec2.getIdentifier());
+        ds.updateModifiedDateOnAccess(0);
+        rec1 = null;
+        rec2 = null;
+        ds.clearInUse();
+        assertEquals(1, ds.deleteAllOlderThan(updateTime));
+
+        Iterator<DataIdentifier> it = ds.getAllIdentifiers();
+        DataIdentifier remaining = it.next();
+        assertFalse(it.hasNext());
+        assertEquals(count - 1, countChunks());
+        assertRecord(edited, ds.getRecord(remaining));
+        ds.close();
+    }
+
+    private int countChunks() throws DataStoreException {
+        int count = 0;
+        for (Iterator<DataIdentifier> it = chunks.getAllIdentifiers(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+}
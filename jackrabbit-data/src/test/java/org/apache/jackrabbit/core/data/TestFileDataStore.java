@@ -17,8 +17,13 @@
 
 package org.apache.jackrabbit.core.data;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.jcr.RepositoryException;
 
@@ -53,6 +58,78 @@ public class TestFileDataStore extends TestCaseBase {
         return fds;
     }
 
+    /**
+     * Adds records with shared and distinct content from several threads
+     * while the garbage collector removes unused records and directories.
+     */
+    public void testConcurrentAddRecord() throws Exception {
+        final DataStore store = createDataStore();
+        ds = store;
+        final byte[][] shared = new byte[4][];
+        for (int i = 0; i < shared.length; i++) {
+            shared[i] = new byte[1000];
+            randomGen.nextBytes(shared[i]);
+        }
+        final List<DataRecord> records = new ArrayList<DataRecord>();
+        final List<byte[]> contents = new ArrayList<byte[]>();
+        final List<Exception> errors =
+            Collections.synchronizedList(new ArrayList<Exception>());
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread gc = new Thread() {
+            public void run() {
+                while (!done.get()) {
+                    try {
+                        store.deleteAllOlderThan(
+                                System.currentTimeMillis() + 60000);
+                    } catch (DataStoreException e) {
+                        errors.add(e);
+                    }
+                }
+            }
+        };
+        gc.start();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            byte[] data;
+                            if (i % 2 == 0) {
+                                data = shared[i % shared.length];
+                            } else {
+                                data = (seed + "-" + i).getBytes("UTF-8");
+                            }
+                            DataRecord record = store.addRecord(
+                                    new ByteArrayInputStream(data));
+                            synchronized (records) {
+                                records.add(record);
+                                contents.add(data);
+                            }
+                        }
+                    } catch (Exception e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        done.set(true);
+        gc.join();
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(threads.length * 50, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            DataRecord record = records.get(i);
+            assertNotNull(store.getRecordIfStored(record.getIdentifier()));
+            assertEquals(contents.get(i).length, record.getLength());
+        }
+        ds.close();
+    }
+
     @Override
     protected void tearDown() {
         LOG.info("cleaning fsPath [{}]", fsPath);
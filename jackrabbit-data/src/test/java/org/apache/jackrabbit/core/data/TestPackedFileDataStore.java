@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Test cases to test {@link FileDataStore} with packed records. The test
+ * records are small enough to be packed.
+ */
+public class TestPackedFileDataStore extends TestFileDataStore {
+
+    private static final int MAX_PACKED_RECORD_LENGTH = 256 * 1024;
+
+    @Override
+    protected DataStore createDataStore() throws RepositoryException {
+        fsPath = dataStoreDir + "/repository/datastore";
+        FileDataStore fds = new FileDataStore();
+        fds.setPath(fsPath);
+        fds.setMaxPackedRecordLength(MAX_PACKED_RECORD_LENGTH);
+        fds.init(dataStoreDir);
+        return fds;
+    }
+
+    /**
+     * Small records are packed, large records are stored as files, and both
+     * are found again after a restart.
+     */
+    public void testReopen() throws Exception {
+        ds = createDataStore();
+        byte[] small = new byte[1000];
+        randomGen.nextBytes(small);
+        byte[] removed = new byte[2000];
+        randomGen.nextBytes(removed);
+        byte[] large = new byte[MAX_PACKED_RECORD_LENGTH + 1];
+        randomGen.nextBytes(large);
+        DataRecord rec1 = ds.addRecord(new ByteArrayInputStream(small));
+        DataRecord rec2 = ds.addRecord(new ByteArrayInputStream(removed));
+        DataRecord rec3 = ds.addRecord(new ByteArrayInputStream(large));
+        assertTrue(rec1 instanceof PackedDataRecord);
+        assertTrue(rec3 instanceof FileDataRecord);
+        assertRecord(large, rec3);
+        long lastModified = rec1.getLastModified();
+        ((MultiDataStoreAware) ds).deleteRecord(rec2.getIdentifier());
+        ds.close();
+        // the segment of the removed record was rewritten
+        assertEquals(1, countSegments());
+
+        ds = createDataStore();
+        Set<DataIdentifier> ids = new HashSet<DataIdentifier>();
+        for (Iterator<DataIdentifier> it = ds.getAllIdentifiers(); it.hasNext();) {
+            ids.add(it.next());
+        }
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains(rec1.getIdentifier()));
+        assertTrue(ids.contains(rec3.getIdentifier()));
+        assertNull(ds.getRecordIfStored(rec2.getIdentifier()));
+        DataRecord rec = ds.getRecord(rec1.getIdentifier());
+        assertRecord(small, rec);
+        assertEquals(small.length, rec.getLength());
+        assertEquals(lastModified, rec.getLastModified());
+        assertRange(small, rec, 100, 10);
+        assertRecord(large, ds.getRecord(rec3.getIdentifier()));
+        ds.close();
+    }
+
+    /**
+     * Compaction keeps the records and touches that are still in use, and
+     * deletes the segments of removed records.
+     */
+    public void testCompaction() throws Exception {
+        File directory = new File(dataStoreDir, "packed");
+        directory.mkdirs();
+        fsPath = directory.getPath();
+        PackedRecordStore store = new PackedRecordStore(directory, 1000);
+        store.open();
+        byte[][] data = new byte[20][];
+        DataIdentifier[] ids = new DataIdentifier[data.length];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = new byte[300];
+            randomGen.nextBytes(data[i]);
+            ids[i] = new DataIdentifier("id" + i);
+            store.add(ids[i], data[i], 1000 + i);
+        }
+        int segments = directory.list().length;
+        assertTrue(segments > 1);
+        store.touch(ids[0], 5000, 5000);
+        for (int i = 1; i < data.length; i += 2) {
+            assertTrue(store.remove(ids[i]));
+        }
+        assertFalse(store.remove(ids[1]));
+        store.compact();
+        assertTrue(directory.list().length < segments);
+        store.close();
+
+        store = new PackedRecordStore(directory, 1000);
+        store.open();
+        assertEquals(data.length / 2, store.getIdentifiers().size());
+        for (int i = 0; i < data.length; i++) {
+            if (i % 2 == 0) {
+                assertEquals(300, store.getLength(ids[i]));
+                assertEquals(i == 0 ? 5000 : 1000 + i,
+                        store.getLastModified(ids[i]));
+                assertTrue(Arrays.equals(data[i], store.read(ids[i])));
+            } else {
+                assertEquals(-1, store.getLength(ids[i]));
+                assertNull(store.read(ids[i]));
+            }
+        }
+        store.close();
+    }
+
+    private int countSegments() {
+        return new File(fsPath).listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.getName().startsWith(PackedRecordStore.PREFIX);
+            }
+        }).length;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.value;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+import javax.jcr.Binary;
+import javax.jcr.RepositoryException;
+
+/**
+ * <code>ChannelBinary</code> is a <code>Binary</code> that transfers its
+ * content to a channel. Binaries that are backed by a file use
+ * {@link java.nio.channels.FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which lets the operating system copy the content, e.g. to another file
+ * or a socket, without reading it into the heap.
+ */
+public interface ChannelBinary extends Binary {
+
+    /**
+     * Writes the content of this binary to the given channel. The channel is
+     * not closed.
+     *
+     * @param target the channel to write to.
+     * @return the number of bytes written.
+     * @throws IOException if an error occurs while writing the content.
+     * @throws RepositoryException if the content cannot be accessed.
+     * @throws IllegalStateException if {@link #dispose()} has already been
+     *         called on this binary.
+     */
+    long transferTo(WritableByteChannel target)
+            throws IOException, RepositoryException;
+
+    /**
+     * Writes a range of the content of this binary to the given channel. The
+     * channel is not closed.
+     *
+     * @param target the channel to write to.
+     * @param position the position of the first byte to write.
+     * @param count the maximum number of bytes to write.
+     * @return the number of bytes written, which is less than
+     *         <code>count</code> if the end of the content was reached.
+     * @throws IOException if an error occurs while writing the content.
+     * @throws RepositoryException if the content cannot be accessed.
+     * @throws IllegalStateException if {@link #dispose()} has already been
+     *         called on this binary.
+     */
+    long transferTo(WritableByteChannel target, long position, long count)
+            throws IOException, RepositoryException;
+
+}
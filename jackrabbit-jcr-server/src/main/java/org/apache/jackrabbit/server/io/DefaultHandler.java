@@ -23,6 +23,7 @@ import org.apache.jackrabbit.util.Text;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.DavResource;
 import org.apache.jackrabbit.webdav.DavServletResponse;
+import org.apache.jackrabbit.webdav.io.ByteRange;
 import org.apache.jackrabbit.webdav.jcr.JcrDavException;
 import org.apache.jackrabbit.webdav.xml.Namespace;
 import org.apache.jackrabbit.webdav.property.DavPropertyName;
@@ -32,6 +33,7 @@ import org.apache.tika.metadata.Metadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.Binary;
 import javax.jcr.Item;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
@@ -419,8 +421,21 @@ public class DefaultHandler implements IOHandler, PropertyHandler, CopyMoveHandl
      */
     protected void exportData(ExportContext context, boolean isCollection, Node contentNode) throws IOException, RepositoryException {
         if (contentNode.hasProperty(JcrConstants.JCR_DATA)) {
-            Property p = contentNode.getProperty(JcrConstants.JCR_DATA);
-            IOUtil.spool(p.getStream(), context.getOutputStream());
+            Binary binary = contentNode.getProperty(JcrConstants.JCR_DATA).getBinary();
+            try {
+                ByteRange range = context.getRange();
+                long length = binary.getSize();
+                if (range != null && range.isSatisfiable(length)) {
+                    long offset = range.getOffset(length);
+                    long count = range.getLength(length);
+                    context.setContentRange(offset, count, length);
+                    IOUtil.spool(binary, offset, count, context.getOutputStream());
+                } else {
+                    IOUtil.spool(binary, context.getOutputStream());
+                }
+            } finally {
+                binary.dispose();
+            }
         } // else: stream undefined -> content length was not set
     }
 
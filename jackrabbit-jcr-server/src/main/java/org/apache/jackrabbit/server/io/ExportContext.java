@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.server.io;
 
+import org.apache.jackrabbit.webdav.io.ByteRange;
+
 import javax.jcr.Item;
 
 import java.io.OutputStream;
@@ -81,4 +83,25 @@ public interface ExportContext extends IOContext {
      * Sets an arbitrary property to this export context.
      */
     public void setProperty(Object propertyName, Object propertyValue);
+
+    /**
+     * Returns the byte range requested by the client or <code>null</code> if
+     * the complete content should be exported.
+     *
+     * @return the requested range or <code>null</code>.
+     */
+    public default ByteRange getRange() {
+        return null;
+    }
+
+    /**
+     * Marks the export as a partial export that contains only
+     * <code>length</code> bytes starting at <code>offset</code>.
+     *
+     * @param offset the position of the first byte exported.
+     * @param length the number of bytes exported.
+     * @param totalLength the length of the complete content.
+     */
+    public default void setContentRange(long offset, long length, long totalLength) {
+    }
 }
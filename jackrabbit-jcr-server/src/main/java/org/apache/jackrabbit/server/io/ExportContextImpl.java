@@ -18,6 +18,7 @@ package org.apache.jackrabbit.server.io;
 
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavResource;
+import org.apache.jackrabbit.webdav.io.ByteRange;
 import org.apache.jackrabbit.webdav.io.OutputContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +53,8 @@ public class ExportContextImpl extends AbstractExportContext {
     private File outFile;
     private OutputStream outStream;
 
+    private long[] contentRange;
+
     public ExportContextImpl(Item exportRoot, OutputContext outputCtx)
             throws IOException {
         super(exportRoot, outputCtx != null && outputCtx.hasStream(), null);
@@ -146,6 +149,23 @@ public class ExportContextImpl extends AbstractExportContext {
         }
     }
 
+    /**
+     * @see ExportContext#getRange()
+     */
+    @Override
+    public ByteRange getRange() {
+        return outputCtx != null && outputCtx.hasStream() ? outputCtx.getRange() : null;
+    }
+
+    /**
+     * @see ExportContext#setContentRange(long, long, long)
+     */
+    @Override
+    public void setContentRange(long offset, long length, long totalLength) {
+        contentRange = new long[] { offset, length, totalLength };
+        setContentLength(length);
+    }
+
     /**
      * If success is true, the properties set before an the output stream are
      * written to the wrapped <code>OutputContext</code>.
@@ -178,6 +198,11 @@ public class ExportContextImpl extends AbstractExportContext {
                     }
                 }
 
+                if (contentRange != null) {
+                    outputCtx.setContentRange(
+                            contentRange[0], contentRange[1], contentRange[2]);
+                }
+
                 if (outputCtx.hasStream() && outFile != null) {
                     OutputStream out = outputCtx.getOutputStream();
                     try {
@@ -17,9 +17,11 @@
 package org.apache.jackrabbit.server.io;
 
 import org.apache.jackrabbit.util.Text;
+import org.apache.jackrabbit.value.ChannelBinary;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.util.HttpDateFormat;
 
+import javax.jcr.Binary;
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
 import java.io.File;
@@ -27,6 +29,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Date;
 
 /**
@@ -90,6 +94,69 @@ public final class IOUtil {
         }
     }
 
+    /**
+     * Spools the content of the binary to the output stream. The content of
+     * a {@link ChannelBinary} is transferred with a channel: file-backed
+     * binaries are copied by the operating system if the output stream
+     * writes to a file, without reading them into the heap.
+     *
+     * @param binary the binary to spool
+     * @param out the output stream, which is not closed
+     * @throws IOException if an I/O error occurs
+     * @throws RepositoryException if the binary cannot be accessed
+     */
+    public static void spool(Binary binary, OutputStream out)
+            throws IOException, RepositoryException {
+        if (binary instanceof ChannelBinary) {
+            WritableByteChannel target;
+            if (out instanceof FileOutputStream) {
+                target = ((FileOutputStream) out).getChannel();
+            } else {
+                target = Channels.newChannel(out);
+            }
+            ((ChannelBinary) binary).transferTo(target);
+        } else {
+            spool(binary.getStream(), out);
+        }
+    }
+
+    /**
+     * Spools a range of the binary to the output stream. Ranges of channel
+     * binaries are transferred like in {@link #spool(Binary, OutputStream)},
+     * other binaries are read with {@link Binary#read(byte[], long)}.
+     *
+     * @param binary the binary to spool
+     * @param offset the position of the first byte to spool
+     * @param length the number of bytes to spool
+     * @param out the output stream, which is not closed
+     * @throws IOException if an I/O error occurs
+     * @throws RepositoryException if the binary cannot be accessed
+     */
+    public static void spool(Binary binary, long offset, long length, OutputStream out)
+            throws IOException, RepositoryException {
+        if (binary instanceof ChannelBinary) {
+            WritableByteChannel target;
+            if (out instanceof FileOutputStream) {
+                target = ((FileOutputStream) out).getChannel();
+            } else {
+                target = Channels.newChannel(out);
+            }
+            ((ChannelBinary) binary).transferTo(target, offset, length);
+        } else {
+            byte[] buffer = new byte[8192];
+            long end = offset + length;
+            for (long position = offset; position < end; ) {
+                int read = binary.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                int count = (int) Math.min(read, end - position);
+                out.write(buffer, 0, count);
+                position += count;
+            }
+        }
+    }
+
     /**
      * Build a valid content type string from the given mimeType and encoding:
      * <pre>
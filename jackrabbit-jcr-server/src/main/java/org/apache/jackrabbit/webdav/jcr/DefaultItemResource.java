@@ -27,6 +27,7 @@ import org.apache.jackrabbit.webdav.DavResourceIteratorImpl;
 import org.apache.jackrabbit.webdav.DavResourceLocator;
 import org.apache.jackrabbit.webdav.DavServletResponse;
 import org.apache.jackrabbit.webdav.MultiStatusResponse;
+import org.apache.jackrabbit.webdav.io.ByteRange;
 import org.apache.jackrabbit.webdav.io.InputContext;
 import org.apache.jackrabbit.webdav.io.OutputContext;
 import org.apache.jackrabbit.webdav.jcr.property.JcrDavPropertyNameSet;
@@ -63,7 +64,6 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collections;
 import java.util.Date;
@@ -134,7 +134,7 @@ public class DefaultItemResource extends AbstractItemResource {
             if (isMultiple()) {
                 spoolMultiValued(out);
             } else {
-                spoolSingleValued(out);
+                spoolSingleValued(outputContext, out);
             }
         }
     }
@@ -162,15 +162,20 @@ public class DefaultItemResource extends AbstractItemResource {
         }
     }
 
-    private void spoolSingleValued(OutputStream out) throws IOException {
+    private void spoolSingleValued(OutputContext outputContext, OutputStream out)
+            throws IOException {
         try {
             Binary binary = ((Property) item).getBinary();
             try {
-                InputStream in = binary.getStream();
-                try {
-                    IOUtil.spool(in, out);
-                } finally {
-                    in.close();
+                ByteRange range = outputContext.getRange();
+                long length = binary.getSize();
+                if (range != null && range.isSatisfiable(length)) {
+                    long offset = range.getOffset(length);
+                    long count = range.getLength(length);
+                    outputContext.setContentRange(offset, count, length);
+                    IOUtil.spool(binary, offset, count, out);
+                } else {
+                    IOUtil.spool(binary, out);
                 }
             } finally {
                 binary.dispose();
@@ -31,9 +31,13 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.commons.vfs2.Capability;
 import org.apache.commons.vfs2.FileObject;
 import org.apache.commons.vfs2.FileSystemException;
 import org.apache.commons.vfs2.FileType;
+import org.apache.commons.vfs2.RandomAccessContent;
+import org.apache.commons.vfs2.util.RandomAccessMode;
 import org.apache.jackrabbit.core.data.AbstractBackend;
 import org.apache.jackrabbit.core.data.AsyncTouchCallback;
 import org.apache.jackrabbit.core.data.AsyncTouchResult;
@@ -121,6 +125,49 @@ public class VFSBackend extends AbstractBackend {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Seeks to the offset if the file system supports random access reads,
+     * and skips over the leading bytes otherwise.
+     */
+    @Override
+    public InputStream read(DataIdentifier identifier, long offset, long length)
+            throws DataStoreException {
+        FileObject fileObject = getExistingFileObject(identifier);
+
+        if (fileObject == null) {
+            throw new DataStoreException("Could not find file object for: " + identifier);
+        }
+
+        try {
+            if (!fileObject.getFileSystem().hasCapability(Capability.RANDOM_ACCESS_READ)) {
+                return super.read(identifier, offset, length);
+            }
+
+            final RandomAccessContent content =
+                    fileObject.getContent().getRandomAccessContent(RandomAccessMode.READ);
+            try {
+                content.seek(Math.min(offset, content.length()));
+                return new BoundedInputStream(content.getInputStream(), length) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            content.close();
+                        }
+                    }
+                };
+            } catch (IOException e) {
+                content.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new DataStoreException("Could not get input stream from object: " + identifier, e);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.webdav.io;
+
+/**
+ * <code>ByteRange</code> represents a single byte range of a <code>Range</code>
+ * request header (RFC 7233), e.g. <code>bytes=100-199</code>,
+ * <code>bytes=100-</code> or <code>bytes=-100</code>. Requests for multiple
+ * ranges are not supported and are answered with the complete content.
+ */
+public final class ByteRange {
+
+    public static final String HEADER_RANGE = "Range";
+    public static final String HEADER_IF_RANGE = "If-Range";
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    /**
+     * The first byte position, or -1 for a suffix range.
+     */
+    private final long first;
+
+    /**
+     * The last byte position, or -1 for an open range. For a suffix range
+     * this is the number of bytes at the end of the content.
+     */
+    private final long last;
+
+    private ByteRange(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Parses the value of a <code>Range</code> header.
+     *
+     * @param value the header value, may be <code>null</code>.
+     * @return the byte range or <code>null</code> if the value is missing,
+     * invalid or requests more than a single range.
+     */
+    public static ByteRange parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+        String spec = value.substring(BYTES_UNIT.length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0 || spec.indexOf(',') >= 0) {
+            return null;
+        }
+        try {
+            String from = spec.substring(0, dash).trim();
+            String to = spec.substring(dash + 1).trim();
+            if (from.length() == 0) {
+                long suffix = Long.parseLong(to);
+                return suffix > 0 ? new ByteRange(-1, suffix) : null;
+            }
+            long first = Long.parseLong(from);
+            if (to.length() == 0) {
+                return first >= 0 ? new ByteRange(first, -1) : null;
+            }
+            long last = Long.parseLong(to);
+            return first >= 0 && last >= first ? new ByteRange(first, last) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param length the length of the complete content.
+     * @return <code>true</code> if the range selects at least one byte of
+     * content with the given length.
+     */
+    public boolean isSatisfiable(long length) {
+        return length > 0 && (first < 0 || first < length);
+    }
+
+    /**
+     * @param length the length of the complete content.
+     * @return the position of the first selected byte.
+     */
+    public long getOffset(long length) {
+        if (first < 0) {
+            return Math.max(0, length - last);
+        }
+        return first;
+    }
+
+    /**
+     * @param length the length of the complete content.
+     * @return the number of selected bytes.
+     */
+    public long getLength(long length) {
+        long offset = getOffset(length);
+        if (first < 0 || last < 0 || last >= length) {
+            return length - offset;
+        }
+        return last - offset + 1;
+    }
+
+    /**
+     * Returns the value of the <code>Content-Range</code> header of a partial
+     * response.
+     *
+     * @param offset the position of the first byte sent.
+     * @param length the number of bytes sent.
+     * @param totalLength the length of the complete content.
+     * @return the header value.
+     */
+    public static String toContentRange(long offset, long length, long totalLength) {
+        return "bytes " + offset + "-" + (offset + length - 1) + "/" + totalLength;
+    }
+
+    @Override
+    public String toString() {
+        return BYTES_UNIT + (first < 0 ? "" : String.valueOf(first)) + "-"
+                + (last < 0 ? "" : String.valueOf(last));
+    }
+}
@@ -79,4 +79,26 @@ public interface OutputContext {
      * @param propertyValue
      */
     public void setProperty(String propertyName, String propertyValue);
+
+    /**
+     * Returns the byte range requested by the client or <code>null</code> if
+     * the complete content should be exported.
+     *
+     * @return the requested range or <code>null</code>.
+     */
+    public default ByteRange getRange() {
+        return null;
+    }
+
+    /**
+     * Marks the export as a partial content response that contains only
+     * <code>length</code> bytes starting at <code>offset</code>. Must be
+     * called before the content is written to the output stream.
+     *
+     * @param offset the position of the first byte exported.
+     * @param length the number of bytes exported.
+     * @param totalLength the length of the complete content.
+     */
+    public default void setContentRange(long offset, long length, long totalLength) {
+    }
 }
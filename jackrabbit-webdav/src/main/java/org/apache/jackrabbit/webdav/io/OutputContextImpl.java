@@ -33,6 +33,8 @@ public class OutputContextImpl implements OutputContext {
     private final HttpServletResponse response;
     private final OutputStream out;
 
+    private ByteRange range;
+
     public OutputContextImpl(HttpServletResponse response, OutputStream out) {
         if (response == null) {
             throw new IllegalArgumentException("Response must not be null.");
@@ -85,4 +87,26 @@ public class OutputContextImpl implements OutputContext {
             response.setHeader(propertyName, propertyValue);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Sets the byte range requested by the client.
+     *
+     * @param range the requested range or <code>null</code>.
+     */
+    public void setRange(ByteRange range) {
+        this.range = range;
+    }
+
+    @Override
+    public ByteRange getRange() {
+        return range;
+    }
+
+    @Override
+    public void setContentRange(long offset, long length, long totalLength) {
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(ByteRange.HEADER_CONTENT_RANGE,
+                ByteRange.toContentRange(offset, length, totalLength));
+        setContentLength(length);
+    }
+}
@@ -38,6 +38,7 @@ import org.apache.jackrabbit.webdav.bind.UnbindInfo;
 import org.apache.jackrabbit.webdav.bind.BindableResource;
 import org.apache.jackrabbit.webdav.bind.BindInfo;
 import org.apache.jackrabbit.webdav.header.CodedUrlHeader;
+import org.apache.jackrabbit.webdav.io.ByteRange;
 import org.apache.jackrabbit.webdav.io.InputContext;
 import org.apache.jackrabbit.webdav.io.InputContextImpl;
 import org.apache.jackrabbit.webdav.io.OutputContext;
@@ -604,10 +605,44 @@ abstract public class AbstractWebdavServlet extends HttpServlet implements DavCo
 
         // spool resource properties and eventually resource content.
         OutputStream out = (sendContent) ? response.getOutputStream() : null;
-        resource.spool(getOutputContext(response, out));
+        OutputContext context = getOutputContext(response, out);
+        if (sendContent && context instanceof OutputContextImpl) {
+            ((OutputContextImpl) context).setRange(getByteRange(request, resource));
+        }
+        resource.spool(context);
         response.flushBuffer();
     }
 
+    /**
+     * Returns the single byte range requested by a GET request or
+     * <code>null</code> if the complete content should be sent. The range is
+     * ignored if an <code>If-Range</code> header does not match the current
+     * ETag of the resource.
+     *
+     * @param request
+     * @param resource
+     * @return the requested range or <code>null</code>.
+     */
+    private ByteRange getByteRange(WebdavRequest request, DavResource resource) {
+        ByteRange range;
+        String ifRange;
+        try {
+            range = ByteRange.parse(getSingletonField(request, ByteRange.HEADER_RANGE));
+            ifRange = getSingletonField(request, ByteRange.HEADER_IF_RANGE);
+        } catch (IllegalArgumentException ex) {
+            log.debug("illegal range request ignored: " + ex.getMessage());
+            return null;
+        }
+        if (range != null && ifRange != null) {
+            DavProperty<?> etagProp = resource.getProperty(DavPropertyName.GETETAG);
+            if (etagProp == null || ifRange.startsWith("W/")
+                    || !ifRange.equals(String.valueOf(etagProp.getValue()))) {
+                return null;
+            }
+        }
+        return range;
+    }
+
     /**
      * The PROPFIND method
      *
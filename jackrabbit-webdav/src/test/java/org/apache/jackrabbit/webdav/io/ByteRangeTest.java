@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.webdav.io;
+
+import junit.framework.TestCase;
+
+/**
+ * <code>ByteRangeTest</code>...
+ */
+public class ByteRangeTest extends TestCase {
+
+    public void testRange() {
+        ByteRange range = ByteRange.parse("bytes=10-19");
+        assertTrue(range.isSatisfiable(100));
+        assertEquals(10, range.getOffset(100));
+        assertEquals(10, range.getLength(100));
+        // last position after the end of the content
+        assertEquals(5, range.getLength(15));
+        assertFalse(range.isSatisfiable(10));
+    }
+
+    public void testOpenRange() {
+        ByteRange range = ByteRange.parse("bytes=90-");
+        assertEquals(90, range.getOffset(100));
+        assertEquals(10, range.getLength(100));
+    }
+
+    public void testSuffixRange() {
+        ByteRange range = ByteRange.parse("bytes=-30");
+        assertTrue(range.isSatisfiable(100));
+        assertEquals(70, range.getOffset(100));
+        assertEquals(30, range.getLength(100));
+        // suffix longer than the content
+        assertEquals(0, range.getOffset(20));
+        assertEquals(20, range.getLength(20));
+    }
+
+    public void testUnsupported() {
+        assertNull(ByteRange.parse(null));
+        assertNull(ByteRange.parse("items=1-2"));
+        assertNull(ByteRange.parse("bytes=1-2,5-6"));
+        assertNull(ByteRange.parse("bytes=5-2"));
+        assertNull(ByteRange.parse("bytes=-0"));
+        assertNull(ByteRange.parse("bytes=a-b"));
+    }
+
+    public void testContentRange() {
+        assertEquals("bytes 10-19/100", ByteRange.toContentRange(10, 10, 100));
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.config.RepositoryConfig;
+
+/**
+ * A repository with the default configuration in a temporary directory,
+ * for benchmarks that need a complete repository.
+ */
+public class BenchmarkRepository {
+
+    private final File directory;
+
+    private final RepositoryImpl repository;
+
+    public BenchmarkRepository() throws IOException, RepositoryException {
+        directory = File.createTempFile("jackrabbit", "-benchmark");
+        directory.delete();
+        repository = RepositoryImpl.create(RepositoryConfig.install(directory));
+    }
+
+    public RepositoryImpl getRepository() {
+        return repository;
+    }
+
+    public SessionImpl login(String userId, String password)
+            throws RepositoryException {
+        return (SessionImpl) repository.login(
+                new SimpleCredentials(userId, password.toCharArray()));
+    }
+
+    public SessionImpl loginAdministrator() throws RepositoryException {
+        return login("admin", "admin");
+    }
+
+    public void shutdown() throws IOException {
+        try {
+            repository.shutdown();
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and insertions of the {@link ConcurrentCache} used for the bundle
+ * and item state caches. The cache holds half of the keys, so that about
+ * half of the lookups miss and every insertion evicts an entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentCacheBenchmark {
+
+    /**
+     * Number of distinct keys, a power of two.
+     */
+    @Param({"65536"})
+    public int keys;
+
+    private ConcurrentCache<NodeId, Object> cache;
+
+    private NodeId[] ids;
+
+    private final Object value = new Object();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next = (int) (Math.random() * Integer.MAX_VALUE);
+
+        int next(int count) {
+            next = (next + 1) & (count - 1);
+            return next;
+        }
+
+    }
+
+    @Setup
+    public void setUp() {
+        cache = new ConcurrentCache<NodeId, Object>("benchmark");
+        cache.setMaxMemorySize(keys / 2);
+        ids = new NodeId[keys];
+        for (int i = 0; i < keys; i++) {
+            ids[i] = NodeId.randomId();
+            cache.put(ids[i], value, 1);
+        }
+    }
+
+    @Benchmark
+    public Object get(Cursor cursor) {
+        return cache.get(ids[cursor.next(keys)]);
+    }
+
+    @Benchmark
+    public Object put(Cursor cursor) {
+        return cache.put(ids[cursor.next(keys)], value, 1);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object getConcurrently(Cursor cursor) {
+        return cache.get(ids[cursor.next(keys)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public Object mixedGet(Cursor cursor) {
+        return cache.get(ids[cursor.next(keys)]);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public Object mixedPut(Cursor cursor) {
+        return cache.put(ids[cursor.next(keys)], value, 1);
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.id;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing, formatting and hashing of {@link NodeId}s, as done for every
+ * item lookup and bundle access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeIdBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final NodeId[] ids = new NodeId[COUNT];
+
+    private final String[] strings = new String[COUNT];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < COUNT; i++) {
+            ids[i] = new NodeId(random.nextLong(), random.nextLong());
+            strings[i] = ids[i].toString();
+        }
+    }
+
+    private int next() {
+        next = (next + 1) & (COUNT - 1);
+        return next;
+    }
+
+    @Benchmark
+    public NodeId parse() {
+        return NodeId.valueOf(strings[next()]);
+    }
+
+    @Benchmark
+    public String format() {
+        return ids[next()].toString();
+    }
+
+    @Benchmark
+    public int hash() {
+        return ids[next()].hashCode();
+    }
+
+    @Benchmark
+    public boolean equal() {
+        int i = next();
+        return ids[i].equals(ids[(i + 1) & (COUNT - 1)]);
+    }
+
+    @Benchmark
+    public int compare() {
+        int i = next();
+        return ids[i].compareTo(ids[(i + 1) & (COUNT - 1)]);
+    }
+
+}
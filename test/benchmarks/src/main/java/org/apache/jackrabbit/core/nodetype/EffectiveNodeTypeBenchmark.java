@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.nodetype;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.NamespaceRegistryImpl;
+import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.QNodeDefinition;
+import org.apache.jackrabbit.spi.QPropertyDefinition;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Node type checks of the {@link EffectiveNodeType}s of the built-in node
+ * types, as done for every added node and set property.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EffectiveNodeTypeBenchmark {
+
+    private NodeTypeRegistry registry;
+
+    private final Set<Name> mixins = new HashSet<Name>();
+
+    private EffectiveNodeType file;
+
+    private EffectiveNodeType unstructured;
+
+    private final Name property = NameFactoryImpl.getInstance().create("", "title");
+
+    @Setup
+    public void setUp() throws Exception {
+        MemoryFileSystem fs = new MemoryFileSystem();
+        registry = new NodeTypeRegistry(new NamespaceRegistryImpl(fs), fs);
+        mixins.add(NameConstants.MIX_VERSIONABLE);
+        mixins.add(NameConstants.MIX_LOCKABLE);
+        file = registry.getEffectiveNodeType(NameConstants.NT_FILE);
+        unstructured = registry.getEffectiveNodeType(
+                NameConstants.NT_UNSTRUCTURED, mixins);
+    }
+
+    @Benchmark
+    public EffectiveNodeType getEffectiveNodeType() throws RepositoryException {
+        return registry.getEffectiveNodeType(NameConstants.NT_FILE);
+    }
+
+    @Benchmark
+    public EffectiveNodeType getMergedEffectiveNodeType() throws Exception {
+        return registry.getEffectiveNodeType(NameConstants.NT_UNSTRUCTURED, mixins);
+    }
+
+    @Benchmark
+    public boolean includesNodeType() {
+        return unstructured.includesNodeType(NameConstants.MIX_REFERENCEABLE);
+    }
+
+    @Benchmark
+    public QNodeDefinition getApplicableChildNodeDef() throws RepositoryException {
+        return file.getApplicableChildNodeDef(
+                NameConstants.JCR_CONTENT, NameConstants.NT_RESOURCE, registry);
+    }
+
+    @Benchmark
+    public void checkAddNodeConstraints() throws RepositoryException {
+        file.checkAddNodeConstraints(
+                NameConstants.JCR_CONTENT, NameConstants.NT_RESOURCE, registry);
+    }
+
+    @Benchmark
+    public QPropertyDefinition getApplicablePropertyDef() throws RepositoryException {
+        return unstructured.getApplicablePropertyDef(
+                property, PropertyType.STRING, false);
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.util.StringIndex;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization and deserialization of bundles by the {@link BundleWriter}
+ * and {@link BundleReader}, as done on every bundle cache miss and store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleBindingBenchmark {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    /**
+     * Number of child node entries of the bundle.
+     */
+    @Param({"10", "1000"})
+    public int children;
+
+    /**
+     * Number of string properties of the bundle, in addition to the
+     * created and last modified properties.
+     */
+    @Param({"10"})
+    public int properties;
+
+    private BundleBinding binding;
+
+    private NodePropBundle bundle;
+
+    private byte[] serialized;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup
+    public void setUp() throws IOException {
+        binding = new BundleBinding(null, null, new MemoryStringIndex(),
+                new MemoryStringIndex(), null);
+
+        NodeId id = NodeId.randomId();
+        bundle = new NodePropBundle(id);
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.singleton(NameConstants.MIX_CREATED));
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+
+        Calendar now = Calendar.getInstance();
+        addProperty(id, NameConstants.JCR_CREATED, PropertyType.DATE,
+                InternalValue.create(now));
+        addProperty(id, NameConstants.JCR_LASTMODIFIED, PropertyType.DATE,
+                InternalValue.create(now));
+        for (int i = 0; i < properties; i++) {
+            addProperty(id, FACTORY.create("", "property" + i),
+                    PropertyType.STRING, InternalValue.create("value " + i));
+        }
+        for (int i = 0; i < children; i++) {
+            bundle.addChildNodeEntry(
+                    FACTORY.create("", "child" + i), NodeId.randomId());
+        }
+
+        binding.writeBundle(buffer, bundle);
+        serialized = buffer.toByteArray();
+    }
+
+    private void addProperty(NodeId id, Name name, int type, InternalValue value) {
+        PropertyEntry property = new PropertyEntry(new PropertyId(id, name));
+        property.setType(type);
+        property.setMultiValued(false);
+        property.setValues(new InternalValue[] { value });
+        bundle.addProperty(property);
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        buffer.reset();
+        binding.writeBundle(buffer, bundle);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public NodePropBundle read() throws IOException {
+        return binding.readBundle(
+                new ByteArrayInputStream(serialized), bundle.getId());
+    }
+
+    /**
+     * In-memory replacement of the name and namespace indexes of a
+     * persistence manager.
+     */
+    private static class MemoryStringIndex implements StringIndex {
+
+        private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+        private final List<String> strings = new ArrayList<String>();
+
+        public synchronized int stringToIndex(String string) {
+            Integer index = indexes.get(string);
+            if (index == null) {
+                index = strings.size();
+                strings.add(string);
+                indexes.put(string, index);
+            }
+            return index;
+        }
+
+        public synchronized String indexToString(int idx) {
+            return strings.get(idx);
+        }
+
+    }
+
+}
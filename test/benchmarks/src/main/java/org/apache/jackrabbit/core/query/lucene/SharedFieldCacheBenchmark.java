@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.core.BenchmarkRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Queries that order their results by a property, which are sorted using
+ * the values of the {@link SharedFieldCache}. The unsorted query is the
+ * baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedFieldCacheBenchmark {
+
+    private static final String STATEMENT =
+        "SELECT * FROM [nt:unstructured] AS n"
+        + " WHERE ISCHILDNODE(n, '/sort') AND n.[rank] > 0";
+
+    /**
+     * Number of nodes that match the queries.
+     */
+    @Param({"10000"})
+    public int nodes;
+
+    private BenchmarkRepository repository;
+
+    private Session session;
+
+    private QueryManager manager;
+
+    @Setup
+    public void setUp() throws Exception {
+        repository = new BenchmarkRepository();
+        session = repository.loginAdministrator();
+        Random random = new Random(42);
+        Node root = session.getRootNode().addNode("sort");
+        for (int i = 0; i < nodes; i++) {
+            Node node = root.addNode("node" + i);
+            node.setProperty("rank", random.nextInt(Integer.MAX_VALUE) + 1L);
+            node.setProperty("title", "title " + random.nextInt());
+            if (i % 1000 == 0) {
+                session.save();
+            }
+        }
+        session.save();
+        manager = session.getWorkspace().getQueryManager();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.logout();
+        repository.shutdown();
+    }
+
+    private long execute(String statement, long limit) throws RepositoryException {
+        Query query = manager.createQuery(statement, Query.JCR_SQL2);
+        if (limit > 0) {
+            query.setLimit(limit);
+        }
+        NodeIterator iterator = query.execute().getNodes();
+        long count = 0;
+        while (iterator.hasNext()) {
+            iterator.nextNode();
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long unsorted() throws RepositoryException {
+        return execute(STATEMENT, 0);
+    }
+
+    @Benchmark
+    public long sortByLong() throws RepositoryException {
+        return execute(STATEMENT + " ORDER BY n.[rank]", 0);
+    }
+
+    @Benchmark
+    public long sortByString() throws RepositoryException {
+        return execute(STATEMENT + " ORDER BY n.[title] DESC", 0);
+    }
+
+    @Benchmark
+    public long sortByLongTop10() throws RepositoryException {
+        return execute(STATEMENT + " ORDER BY n.[rank]", 10);
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security.authorization.acl;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.security.user.User;
+import org.apache.jackrabbit.commons.jackrabbit.authorization.AccessControlUtils;
+import org.apache.jackrabbit.core.BenchmarkRepository;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.authorization.Permission;
+import org.apache.jackrabbit.spi.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Permission evaluation of a regular user by the
+ * {@link CompiledPermissionsImpl} of the default access control provider.
+ * The user has access control entries on several levels of a tree of 1000
+ * nodes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompiledPermissionsBenchmark {
+
+    private static final int FANOUT = 10;
+
+    private BenchmarkRepository repository;
+
+    private SessionImpl session;
+
+    private AccessManager accessManager;
+
+    private Path[] paths;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next(int count) {
+            next = (next + 1) % count;
+            return next;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        repository = new BenchmarkRepository();
+        SessionImpl admin = repository.loginAdministrator();
+        try {
+            User user = admin.getUserManager().createUser("bench", "bench");
+            Principal principal = user.getPrincipal();
+
+            Node root = admin.getRootNode().addNode("acl");
+            for (int a = 0; a < FANOUT; a++) {
+                Node na = root.addNode("a" + a);
+                for (int b = 0; b < FANOUT; b++) {
+                    Node nb = na.addNode("b" + b);
+                    for (int c = 0; c < FANOUT; c++) {
+                        nb.addNode("c" + c);
+                    }
+                }
+            }
+            admin.save();
+
+            AccessControlUtils.addAccessControlEntry(admin, "/acl", principal,
+                    new String[] { Privilege.JCR_READ }, true);
+            for (int a = 0; a < FANOUT; a++) {
+                String path = "/acl/a" + a;
+                AccessControlUtils.addAccessControlEntry(admin, path, principal,
+                        new String[] { Privilege.JCR_READ }, a % 2 == 0);
+                AccessControlUtils.addAccessControlEntry(admin, path + "/b0", principal,
+                        new String[] { Privilege.JCR_READ, Privilege.JCR_WRITE }, true);
+            }
+            admin.save();
+        } finally {
+            admin.logout();
+        }
+
+        session = repository.login("bench", "bench");
+        accessManager = session.getAccessManager();
+        paths = new Path[FANOUT * FANOUT * FANOUT];
+        int n = 0;
+        for (int a = 0; a < FANOUT; a++) {
+            for (int b = 0; b < FANOUT; b++) {
+                for (int c = 0; c < FANOUT; c++) {
+                    paths[n++] = session.getQPath("/acl/a" + a + "/b" + b + "/c" + c);
+                }
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        session.logout();
+        repository.shutdown();
+    }
+
+    @Benchmark
+    public boolean grantsRead(Cursor cursor) throws RepositoryException {
+        return accessManager.isGranted(
+                paths[cursor.next(paths.length)], Permission.READ);
+    }
+
+    @Benchmark
+    public boolean grantsWrite(Cursor cursor) throws RepositoryException {
+        return accessManager.isGranted(paths[cursor.next(paths.length)],
+                Permission.ADD_NODE | Permission.SET_PROPERTY);
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.conversion;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.NamespaceException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Name resolution by the {@link CachingNameResolver}, which every session
+ * uses to convert between JCR names and internal names. The number of
+ * distinct names controls whether they all fit into the generational cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CachingNameResolverBenchmark {
+
+    private static final String URI = "http://www.example.com/benchmark/1.0";
+
+    /**
+     * Number of distinct names, a power of two.
+     */
+    @Param({"64", "4096"})
+    public int count;
+
+    private NameResolver parsing;
+
+    private NameResolver caching;
+
+    private String[] jcrNames;
+
+    private Name[] names;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        int next(int count) {
+            next = (next + 1) & (count - 1);
+            return next;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        NamespaceMapping mapping = new NamespaceMapping();
+        mapping.setMapping("bench", URI);
+        parsing = new ParsingNameResolver(NameFactoryImpl.getInstance(), mapping);
+        caching = new CachingNameResolver(parsing);
+
+        jcrNames = new String[count];
+        names = new Name[count];
+        for (int i = 0; i < count; i++) {
+            jcrNames[i] = "bench:name" + i;
+            names[i] = parsing.getQName(jcrNames[i]);
+        }
+    }
+
+    @Benchmark
+    public Name parse(Cursor cursor) throws Exception {
+        return parsing.getQName(jcrNames[cursor.next(count)]);
+    }
+
+    @Benchmark
+    public Name getQName(Cursor cursor) throws Exception {
+        return caching.getQName(jcrNames[cursor.next(count)]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Name getQNameConcurrently(Cursor cursor) throws Exception {
+        return caching.getQName(jcrNames[cursor.next(count)]);
+    }
+
+    @Benchmark
+    public String getJCRName(Cursor cursor) throws NamespaceException {
+        return caching.getJCRName(names[cursor.next(count)]);
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.name;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation and comparison of names by the {@link NameFactoryImpl}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NameFactoryBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private static final String URI = "http://www.example.com/benchmark/1.0";
+
+    private final NameFactory factory = NameFactoryImpl.getInstance();
+
+    private final String[] localNames = new String[COUNT];
+
+    private final String[] expandedNames = new String[COUNT];
+
+    private final Name[] names = new Name[COUNT];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < COUNT; i++) {
+            localNames[i] = "name" + i;
+            expandedNames[i] = "{" + URI + "}" + localNames[i];
+            names[i] = factory.create(URI, localNames[i]);
+        }
+    }
+
+    private int next() {
+        next = (next + 1) & (COUNT - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Name create() {
+        return factory.create(URI, localNames[next()]);
+    }
+
+    @Benchmark
+    public Name createFromExpandedForm() {
+        return factory.create(expandedNames[next()]);
+    }
+
+    @Benchmark
+    public String toExpandedForm() {
+        return names[next()].toString();
+    }
+
+    @Benchmark
+    public boolean equal() {
+        int i = next();
+        return names[i].equals(factory.create(URI, localNames[i]));
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.spi.commons.name;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation, parsing and navigation of paths by the {@link PathFactoryImpl},
+ * as done for every path based item access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathFactoryBenchmark {
+
+    private static final int COUNT = 256;
+
+    private static final int DEPTH = 8;
+
+    private final NameFactory nameFactory = NameFactoryImpl.getInstance();
+
+    private final PathFactory factory = PathFactoryImpl.getInstance();
+
+    private final Name[] names = new Name[COUNT];
+
+    private final Path[] paths = new Path[COUNT];
+
+    private final String[] strings = new String[COUNT];
+
+    private int next;
+
+    @Setup
+    public void setUp() throws RepositoryException {
+        for (int i = 0; i < COUNT; i++) {
+            names[i] = nameFactory.create("", "node" + i);
+        }
+        for (int i = 0; i < COUNT; i++) {
+            Path path = factory.getRootPath();
+            for (int j = 0; j < DEPTH; j++) {
+                path = factory.create(path, names[(i + j) % COUNT], true);
+            }
+            paths[i] = path;
+            strings[i] = path.getString();
+        }
+    }
+
+    private int next() {
+        next = (next + 1) & (COUNT - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Path createChild() throws RepositoryException {
+        int i = next();
+        return factory.create(paths[i], names[i], true);
+    }
+
+    @Benchmark
+    public Path createFromString() {
+        return factory.create(strings[next()]);
+    }
+
+    @Benchmark
+    public String getString() {
+        return paths[next()].getString();
+    }
+
+    @Benchmark
+    public Path ancestor() throws RepositoryException {
+        return paths[next()].getAncestor(DEPTH / 2);
+    }
+
+    @Benchmark
+    public boolean isDescendant() throws RepositoryException {
+        int i = next();
+        return paths[i].isDescendantOf(paths[i].getAncestor(DEPTH / 2));
+    }
+
+    @Benchmark
+    public boolean equal() {
+        int i = next();
+        return paths[i].equals(factory.create(strings[i]));
+    }
+
+}